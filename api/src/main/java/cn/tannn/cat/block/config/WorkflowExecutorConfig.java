@@ -0,0 +1,43 @@
+package cn.tannn.cat.block.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 流程执行线程池配置
+ * 固定大小的线程池，{@link cn.tannn.cat.block.service.ExecutionQueue} 按空闲线程数从持久化队列抢占执行，
+ * 排队中的执行留在 execution_queue 表中（上限见 workflow.queue.max-pending），不在线程池中堆积
+ *
+ * @author tnnn
+ */
+@Configuration
+@Slf4j
+public class WorkflowExecutorConfig {
+
+    /**
+     * 流程执行线程池
+     *
+     * @param coreSize 线程数（每个实例同时运行的流程数）
+     */
+    @Bean
+    public ThreadPoolTaskExecutor workflowExecutor(@Value("${workflow.executor.core-size:4}") int coreSize) {
+        int size = Math.max(1, coreSize);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        // 抢占数量不超过线程数，队列只用于容纳刚结束的执行线程归还前投递的任务
+        executor.setQueueCapacity(size);
+        executor.setThreadNamePrefix("workflow-exec-");
+        // 仍然放不下时抛出 TaskRejectedException，由执行队列交还租约，等待下次轮询
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        log.info("流程执行线程池初始化: size={}", size);
+        return executor;
+    }
+}
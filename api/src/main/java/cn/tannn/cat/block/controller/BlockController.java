@@ -1,6 +1,7 @@
 package cn.tannn.cat.block.controller;
 
 import cn.tannn.cat.block.contansts.JpaPageResult;
+import cn.tannn.cat.block.controller.dto.block.BlockBatchTestDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockCreateDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockPage;
 import cn.tannn.cat.block.controller.dto.block.BlockTestDTO;
@@ -84,6 +85,14 @@ public class BlockController {
         return ResultVO.success(blockService.test(id, testDTO));
     }
 
+    @PostMapping("/{id}/test/batch")
+    @Operation(summary = "批量测试块执行", description = "用多组输入参数执行块的Python脚本，返回每个用例的结果和耗时")
+    public ResultVO<String> testBatch(
+            @Parameter(description = "块ID") @PathVariable Integer id,
+            @RequestBody BlockBatchTestDTO batchDTO) {
+        return ResultVO.success(blockService.testBatch(id, batchDTO));
+    }
+
     @PostMapping("/{id}/clone")
     @Operation(summary = "克隆块", description = "复制一个现有的块")
     public ResultVO<Block> clone(@Parameter(description = "块ID") @PathVariable Integer id) {
@@ -4,7 +4,11 @@ import cn.tannn.cat.block.contansts.JpaPageResult;
 import cn.tannn.cat.block.controller.dto.execution.ExecutionLogPage;
 import cn.tannn.cat.block.controller.dto.workflow.WorkflowExecuteDTO;
 import cn.tannn.cat.block.entity.ExecutionLog;
+import cn.tannn.cat.block.entity.ExecutionLogChunk;
+import cn.tannn.cat.block.entity.ExecutionNodeResult;
 import cn.tannn.cat.block.service.ExecutionService;
+import cn.tannn.cat.block.service.NodeOutputStore;
+import cn.tannn.jdevelops.annotations.web.authentication.ApiMapping;
 import cn.tannn.jdevelops.result.response.ResultPageVO;
 import cn.tannn.jdevelops.result.response.ResultVO;
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,7 +16,15 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * 执行管理Controller
@@ -26,6 +38,7 @@ import org.springframework.web.bind.annotation.*;
 public class ExecutionController {
 
     private final ExecutionService executionService;
+    private final NodeOutputStore nodeOutputStore;
 
     @PostMapping
     @Operation(summary = "执行流程", description = "执行指定的流程")
@@ -48,9 +61,29 @@ public class ExecutionController {
 
 
     @GetMapping("/{id}/logs")
-    @Operation(summary = "获取执行日志", description = "获取指定执行记录的日志")
-    public ResultVO<String> getLogs(@Parameter(description = "执行记录ID") @PathVariable Long id) {
-        return ResultVO.success(executionService.getLogs(id));
+    @Operation(summary = "获取执行日志", description = "获取指定执行记录的日志，可指定起始分片序号增量读取")
+    public ResultVO<String> getLogs(@Parameter(description = "执行记录ID") @PathVariable Long id,
+                                    @Parameter(description = "起始分片序号（不含），默认从头读取")
+                                    @RequestParam(defaultValue = "0") Integer afterSeq) {
+        return ResultVO.success(executionService.getLogs(id, afterSeq));
+    }
+
+    @GetMapping("/{id}/logs/chunks")
+    @Operation(summary = "获取执行日志分片", description = "获取指定分片序号之后的日志分片，用于增量拉取")
+    public ResultVO<List<ExecutionLogChunk>> getLogChunks(@Parameter(description = "执行记录ID") @PathVariable Long id,
+                                                          @Parameter(description = "起始分片序号（不含），默认从头读取")
+                                                          @RequestParam(defaultValue = "0") Integer afterSeq) {
+        return ResultVO.success(executionService.getLogChunks(id, afterSeq));
+    }
+
+    @ApiMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE, method = RequestMethod.GET)
+    @Operation(summary = "订阅执行事件", description = "实时订阅流程执行日志和节点状态（SSE），晚到的订阅者会先收到缓冲中的历史事件；"
+            + "执行排队中或由其他实例运行时返回 run-pending 事件，客户端按 retry 间隔重连；"
+            + "EventSource 不能设置请求头，token 可通过查询参数 token 传递")
+    public SseEmitter stream(@Parameter(description = "执行记录ID") @PathVariable Long id,
+                             @Parameter(description = "断线重连时已收到的最后事件ID")
+                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return executionService.stream(id, lastEventId);
     }
 
     @PostMapping("/{id}/cancel")
@@ -59,6 +92,40 @@ public class ExecutionController {
         return ResultVO.success(executionService.cancel(id));
     }
 
+    @PostMapping("/{id}/resume")
+    @Operation(summary = "恢复执行", description = "恢复失败或已取消的执行：复用已成功节点的输出，只重新执行失败的节点及其下游节点")
+    public ResultVO<ExecutionLog> resume(@Parameter(description = "执行记录ID") @PathVariable Long id,
+                                         @Parameter(description = "单个节点超时时间（秒），默认60")
+                                         @RequestParam(required = false) Long timeoutSeconds,
+                                         @Parameter(description = "整个流程最长执行时间（秒），默认使用全局配置")
+                                         @RequestParam(required = false) Long workflowTimeoutSeconds) {
+        return ResultVO.success(executionService.resume(id, timeoutSeconds, workflowTimeoutSeconds));
+    }
+
+    @GetMapping("/{id}/nodes")
+    @Operation(summary = "获取节点执行结果", description = "获取执行中已结束节点的状态和输出")
+    public ResultVO<List<ExecutionNodeResult>> getNodeResults(@Parameter(description = "执行记录ID") @PathVariable Long id) {
+        return ResultVO.success(executionService.getNodeResults(id));
+    }
+
+    @GetMapping("/{id}/children")
+    @Operation(summary = "获取子流程执行记录", description = "获取子流程节点触发的执行记录")
+    public ResultVO<List<ExecutionLog>> getChildren(@Parameter(description = "执行记录ID") @PathVariable Long id) {
+        return ResultVO.success(executionService.getChildren(id));
+    }
+
+    @GetMapping("/outputs/{digest}")
+    @Operation(summary = "下载节点大输出", description = "根据引用中的摘要下载转存为文件的节点输出值（JSON或原始字节）")
+    public ResponseEntity<Resource> downloadOutput(@Parameter(description = "输出摘要") @PathVariable String digest) {
+        Path file = nodeOutputStore.find(digest);
+        if (file == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(NodeOutputStore.isRaw(file) ? MediaType.APPLICATION_OCTET_STREAM : MediaType.APPLICATION_JSON)
+                .body(new FileSystemResource(file));
+    }
+
     @DeleteMapping("/{id}")
     @Operation(summary = "删除执行记录", description = "根据ID删除执行记录")
     public ResultVO<Void> delete(@Parameter(description = "执行记录ID") @PathVariable Long id) {
@@ -0,0 +1,36 @@
+package cn.tannn.cat.block.controller;
+
+import cn.tannn.cat.block.controller.dto.webhook.WebhookReceiptVO;
+import cn.tannn.cat.block.service.WebhookDispatcher;
+import cn.tannn.jdevelops.annotations.web.authentication.ApiMapping;
+import cn.tannn.jdevelops.result.response.ResultVO;
+import com.alibaba.fastjson2.JSONObject;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Webhook触发Controller
+ *
+ * @author tnnn
+ */
+@RestController
+@RequestMapping("/hooks")
+@RequiredArgsConstructor
+@Tag(name = "Webhook触发", description = "外部系统通过流程的Webhook密钥触发执行")
+public class HookController {
+
+    private final WebhookDispatcher webhookDispatcher;
+
+    @ApiMapping(value = "/{workflowKey}", checkToken = false, method = RequestMethod.POST)
+    @Operation(summary = "Webhook触发流程", description = "请求体作为流程输入参数，受理后异步创建执行；" +
+            "相同 Idempotency-Key 只执行一次，未传入时合并窗口内内容相同的事件只执行一次")
+    public ResultVO<WebhookReceiptVO> trigger(
+            @Parameter(description = "流程Webhook密钥") @PathVariable String workflowKey,
+            @Parameter(description = "幂等键") @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestBody(required = false) JSONObject payload) {
+        return ResultVO.success(webhookDispatcher.accept(workflowKey, idempotencyKey, payload));
+    }
+}
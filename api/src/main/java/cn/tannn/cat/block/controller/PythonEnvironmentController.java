@@ -11,6 +11,7 @@ import cn.tannn.cat.block.controller.dto.pythonenvironment.UploadedPackageFileDT
 import cn.tannn.cat.block.entity.PythonEnvironment;
 import cn.tannn.cat.block.service.ProgressLogService;
 import cn.tannn.cat.block.service.PythonEnvironmentService;
+import cn.tannn.cat.block.service.PythonExecutionScheduler;
 import cn.tannn.jdevelops.annotations.web.authentication.ApiMapping;
 import cn.tannn.jdevelops.result.response.ResultPageVO;
 import cn.tannn.jdevelops.result.response.ResultVO;
@@ -25,6 +26,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Python环境管理Controller
@@ -39,6 +41,7 @@ public class PythonEnvironmentController {
 
     private final PythonEnvironmentService pythonEnvironmentService;
     private final ProgressLogService progressLogService;
+    private final PythonExecutionScheduler pythonExecutionScheduler;
 
     @PostMapping
     @Operation(summary = "创建环境", description = "创建新的Python环境")
@@ -97,6 +100,12 @@ public class PythonEnvironmentController {
         return ResultVO.success(pythonEnvironmentService.getDefaultEnvironment());
     }
 
+    @GetMapping("/scheduler/stats")
+    @Operation(summary = "脚本调度统计", description = "全局及各环境的正在执行数、排队深度和排队等待时间")
+    public ResultVO<Map<String, Object>> schedulerStats() {
+        return ResultVO.success(pythonExecutionScheduler.stats());
+    }
+
     @PutMapping("/{id}/set-default")
     @Operation(summary = "设置默认环境", description = "将指定的Python环境设置为默认")
     public ResultVO<PythonEnvironment> setAsDefault(@Parameter(description = "环境ID") @PathVariable Integer id) {
@@ -87,6 +87,18 @@ public class WorkflowController {
         return ResultVO.success(workflowService.togglePublic(id));
     }
 
+    @PostMapping("/{id}/webhook-key")
+    @Operation(summary = "生成Webhook密钥", description = "生成或重置流程的Webhook密钥，通过 POST /hooks/{webhookKey} 触发执行，旧密钥立即失效")
+    public ResultVO<Workflow> resetWebhookKey(@Parameter(description = "流程ID") @PathVariable Integer id) {
+        return ResultVO.success(workflowService.resetWebhookKey(id));
+    }
+
+    @DeleteMapping("/{id}/webhook-key")
+    @Operation(summary = "关闭Webhook触发", description = "清除流程的Webhook密钥")
+    public ResultVO<Workflow> disableWebhook(@Parameter(description = "流程ID") @PathVariable Integer id) {
+        return ResultVO.success(workflowService.disableWebhook(id));
+    }
+
     @GetMapping("/categories")
     @Operation(summary = "获取所有分类", description = "获取所有流程分类列表")
     public ResultVO<List<String>> getAllCategories() {
@@ -0,0 +1,30 @@
+package cn.tannn.cat.block.controller.dto.block;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 块批量测试请求DTO
+ *
+ * @author tnnn
+ */
+@Data
+@Schema(description = "块批量测试请求")
+public class BlockBatchTestDTO implements Serializable {
+
+    @Schema(description = "测试用例，每个元素为一组输入参数（最多1000个）", requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<Map<String, Object>> cases;
+
+    @Schema(description = "临时脚本（如果提供则使用此脚本而非块的script字段）")
+    private String tempScript;
+
+    @Schema(description = "单个用例的超时时间（秒），默认60秒", example = "60")
+    private Long timeoutSeconds;
+
+    @Schema(description = "并行度（同时执行的解释器数），默认为CPU核数，常驻进程模式下不超过每个环境的最大工作进程数", example = "4")
+    private Integer parallelism;
+}
@@ -61,4 +61,10 @@ public class BlockCreateDTO implements Serializable {
 
     @Schema(description = "标签列表", example = "[\"网络\", \"SSH\", \"上传\"]")
     private List<String> tags;
+
+    @Schema(description = "是否缓存执行结果(仅适用于相同输入必然得到相同输出的块)", example = "false")
+    private Boolean cacheEnabled;
+
+    @Schema(description = "结果缓存时长(秒)，为空时使用全局默认值", example = "300")
+    private Integer cacheTtlSeconds;
 }
@@ -32,4 +32,13 @@ public class PythonEnvironmentCreateDTO implements Serializable {
 
     @Schema(description = "Python解释器路径", example = "C:\\Python39\\python.exe")
     private String pythonExecutable;
+
+    @Schema(description = "资源限制，例如: {\"memoryMb\": 512, \"cpuSeconds\": 60, \"cpuQuota\": 1, \"maxProcesses\": 32, \"maxOpenFiles\": 256, \"maxOutputBytes\": 10485760}")
+    private JSONObject resourceLimits;
+
+    @Schema(description = "最大并发执行数（同时运行的脚本数）", example = "4")
+    private Integer maxConcurrency;
+
+    @Schema(description = "调度权重，排队时各环境按权重比例轮流放行", example = "1")
+    private Integer scheduleWeight;
 }
@@ -0,0 +1,29 @@
+package cn.tannn.cat.block.controller.dto.webhook;
+
+import cn.tannn.cat.block.enums.WebhookAcceptStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Webhook受理回执
+ * 执行记录异步批量写入，受理时尚无执行ID，可通过 workflowId + eventId 关联执行记录
+ *
+ * @author tnnn
+ */
+@Schema(description = "Webhook受理回执")
+@Getter
+@ToString
+@AllArgsConstructor
+public class WebhookReceiptVO {
+
+    @Schema(description = "流程ID")
+    private Integer workflowId;
+
+    @Schema(description = "事件ID（Idempotency-Key，未传入时由服务端生成；重复或合并时为首次受理的事件ID）")
+    private String eventId;
+
+    @Schema(description = "受理结果: ACCEPTED/DUPLICATE/COALESCED")
+    private WebhookAcceptStatus status;
+}
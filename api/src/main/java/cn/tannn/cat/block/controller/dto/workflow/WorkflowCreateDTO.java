@@ -1,5 +1,6 @@
 package cn.tannn.cat.block.controller.dto.workflow;
 
+import cn.tannn.cat.block.enums.MisfirePolicy;
 import com.alibaba.fastjson2.JSONObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
@@ -44,4 +45,19 @@ public class WorkflowCreateDTO implements Serializable {
 
     @Schema(description = "是否公开", example = "false")
     private Boolean isPublic;
+
+    @Schema(description = "是否启用定时触发", example = "false")
+    private Boolean scheduleEnabled;
+
+    @Schema(description = "定时触发Cron表达式(秒 分 时 日 月 周)", example = "0 0/5 * * * ?")
+    private String scheduleCron;
+
+    @Schema(description = "定时触发间隔(秒)，未配置Cron表达式时生效", example = "300")
+    private Integer scheduleIntervalSeconds;
+
+    @Schema(description = "错过触发的处理策略，默认 FIRE_ONCE", example = "FIRE_ONCE")
+    private MisfirePolicy scheduleMisfirePolicy;
+
+    @Schema(description = "触发抖动(秒)，在计划时间后随机延迟", example = "0")
+    private Integer scheduleJitterSeconds;
 }
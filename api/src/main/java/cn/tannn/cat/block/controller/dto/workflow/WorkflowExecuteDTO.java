@@ -26,4 +26,7 @@ public class WorkflowExecuteDTO implements Serializable {
 
     @Schema(description = "超时时间（秒），默认60秒", example = "60")
     private Long timeoutSeconds;
+
+    @Schema(description = "整个流程的最长执行时间（秒），超时后终止所有运行中的节点，默认3600秒，小于等于0表示不限制", example = "3600")
+    private Long workflowTimeoutSeconds;
 }
@@ -117,4 +117,14 @@ public class Block extends EntityPfield {
     @Comment("标签列表，用于typecode的细分表示")
     private List<String> tags;
 
+    @Comment("是否缓存执行结果(仅适用于相同输入必然得到相同输出的块)")
+    @Schema(description = "是否缓存执行结果")
+    @ColumnDefault("0")
+    private Boolean cacheEnabled;
+
+    @Column()
+    @Comment("结果缓存时长(秒)，为空时使用全局默认值")
+    @Schema(description = "结果缓存时长(秒)")
+    private Integer cacheTtlSeconds;
+
 }
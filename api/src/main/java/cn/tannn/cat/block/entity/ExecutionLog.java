@@ -26,7 +26,9 @@ import java.time.LocalDateTime;
 @Table(name = "execution_logs", indexes = {
         @Index(name = "idx_workflow", columnList = "workflowId"),
         @Index(name = "idx_status", columnList = "status"),
-        @Index(name = "idx_start_time", columnList = "startTime")
+        @Index(name = "idx_start_time", columnList = "startTime"),
+        @Index(name = "idx_workflow_idempotency", columnList = "workflowId,idempotencyKey", unique = true),
+        @Index(name = "idx_parent_execution", columnList = "parentExecutionId")
 })
 @Comment("执行记录表")
 public class ExecutionLog{
@@ -54,7 +56,7 @@ public class ExecutionLog{
 
     @Enumerated(EnumType.STRING)
     @Column(length = 20)
-    @Comment("执行状态: running/success/failed/cancelled")
+    @Comment("执行状态: queued/running/success/failed/cancelled")
     @Schema(description = "执行状态")
     private ExecutionStatus status;
 
@@ -88,6 +90,11 @@ public class ExecutionLog{
     @Schema(description = "输出结果")
     private JSONObject outputResult;
 
+    @Column()
+    @Comment("入队时间")
+    @Schema(description = "入队时间")
+    private LocalDateTime queuedTime;
+
     @Column(nullable = false)
     @Comment("开始时间")
     @Schema(description = "开始时间")
@@ -103,6 +110,20 @@ public class ExecutionLog{
     @Schema(description = "执行时长(秒)")
     private Integer duration;
 
+    @Column(length = 128)
+    @Comment("Webhook事件ID(调用方传入的Idempotency-Key，未传入时由服务端生成)，同一流程内唯一")
+    @Schema(description = "Webhook事件ID")
+    private String idempotencyKey;
+
+    @Comment("父执行记录ID(子流程执行时有值)")
+    @Schema(description = "父执行记录ID")
+    private Long parentExecutionId;
+
+    @Column(length = 64)
+    @Comment("触发子流程的父流程节点ID")
+    @Schema(description = "父流程节点ID")
+    private String parentNodeId;
+
     @PrePersist
     protected void onCreate() {
         if (startTime == null) {
@@ -0,0 +1,61 @@
+package cn.tannn.cat.block.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Comment;
+
+import java.time.LocalDateTime;
+
+/**
+ * 执行日志分片表
+ * 执行过程中按节点追加写入，避免反复重写整段执行日志
+ *
+ * @author tnnn
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "execution_log_chunks", indexes = {
+        @Index(name = "idx_chunk_execution_seq", columnList = "executionId,seq", unique = true)
+})
+@Comment("执行日志分片表")
+public class ExecutionLogChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Comment("主键ID")
+    @Schema(description = "主键ID")
+    private Long id;
+
+    @Column(nullable = false)
+    @Comment("执行记录ID")
+    @Schema(description = "执行记录ID")
+    private Long executionId;
+
+    @Column(nullable = false)
+    @Comment("分片序号(从1开始递增)")
+    @Schema(description = "分片序号")
+    private Integer seq;
+
+    @Lob
+    @Column(columnDefinition = "LONGTEXT")
+    @Comment("日志内容")
+    @Schema(description = "日志内容")
+    private String content;
+
+    @Column(nullable = false)
+    @Comment("写入时间")
+    @Schema(description = "写入时间")
+    private LocalDateTime createTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+    }
+}
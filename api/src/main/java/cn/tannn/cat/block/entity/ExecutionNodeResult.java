@@ -0,0 +1,88 @@
+package cn.tannn.cat.block.entity;
+
+import cn.tannn.cat.block.enums.NodeStatus;
+import com.alibaba.fastjson2.JSONObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Comment;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * 节点执行结果表
+ * 节点结束时写入，失败的执行恢复时据此复用已成功节点的输出
+ *
+ * @author tnnn
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "execution_node_results", indexes = {
+        @Index(name = "idx_node_result_execution_node", columnList = "executionId,nodeId", unique = true)
+})
+@Comment("节点执行结果表")
+public class ExecutionNodeResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Comment("主键ID")
+    @Schema(description = "主键ID")
+    private Long id;
+
+    @Column(nullable = false)
+    @Comment("执行记录ID")
+    @Schema(description = "执行记录ID")
+    private Long executionId;
+
+    @Column(nullable = false, length = 100)
+    @Comment("节点ID")
+    @Schema(description = "节点ID")
+    private String nodeId;
+
+    @Column(length = 100)
+    @Comment("块名称快照")
+    @Schema(description = "块名称快照")
+    private String blockName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @Comment("节点状态: success/failed")
+    @Schema(description = "节点状态")
+    private NodeStatus status;
+
+    @Column(columnDefinition = "JSON")
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Comment("节点输出")
+    @Schema(description = "节点输出")
+    private JSONObject output;
+
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    @Comment("错误信息")
+    @Schema(description = "错误信息")
+    private String errorMessage;
+
+    @Column()
+    @Comment("执行耗时(毫秒)")
+    @Schema(description = "执行耗时(毫秒)")
+    private Long duration;
+
+    @Column(nullable = false)
+    @Comment("结束时间")
+    @Schema(description = "结束时间")
+    private LocalDateTime finishTime;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        if (finishTime == null) {
+            finishTime = LocalDateTime.now();
+        }
+    }
+}
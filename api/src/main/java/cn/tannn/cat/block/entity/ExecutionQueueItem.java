@@ -0,0 +1,94 @@
+package cn.tannn.cat.block.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Comment;
+
+import java.time.LocalDateTime;
+
+/**
+ * 流程执行队列表
+ * 待执行和执行中的流程各占一行，由各实例通过租约（lease）抢占执行，执行结束后删除；
+ * 实例宕机后租约过期，其他实例会重新调度该执行
+ *
+ * @author tnnn
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "execution_queue", indexes = {
+        @Index(name = "idx_queue_execution", columnList = "executionId", unique = true),
+        @Index(name = "idx_queue_available", columnList = "availableTime"),
+        @Index(name = "idx_queue_lease_owner", columnList = "leaseOwner")
+})
+@Comment("流程执行队列表")
+public class ExecutionQueueItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Comment("主键ID")
+    @Schema(description = "主键ID")
+    private Long id;
+
+    @Column(nullable = false)
+    @Comment("执行记录ID")
+    @Schema(description = "执行记录ID")
+    private Long executionId;
+
+    @Column(nullable = false)
+    @Comment("流程ID")
+    @Schema(description = "流程ID")
+    private Integer workflowId;
+
+    @Column()
+    @Comment("单个节点超时时间(秒)")
+    @Schema(description = "单个节点超时时间(秒)")
+    private Long timeoutSeconds;
+
+    @Column()
+    @Comment("整个流程最长执行时间(秒)")
+    @Schema(description = "整个流程最长执行时间(秒)")
+    private Long workflowTimeoutSeconds;
+
+    @Column(nullable = false)
+    @Comment("可被调度的时间")
+    @Schema(description = "可被调度的时间")
+    private LocalDateTime availableTime;
+
+    @Column(length = 100)
+    @Comment("租约持有实例")
+    @Schema(description = "租约持有实例")
+    private String leaseOwner;
+
+    @Column()
+    @Comment("租约过期时间")
+    @Schema(description = "租约过期时间")
+    private LocalDateTime leaseExpireTime;
+
+    @Column(nullable = false)
+    @Comment("调度次数")
+    @Schema(description = "调度次数")
+    private Integer attempts;
+
+    @Column(nullable = false)
+    @Comment("入队时间")
+    @Schema(description = "入队时间")
+    private LocalDateTime createTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createTime == null) {
+            createTime = LocalDateTime.now();
+        }
+        if (availableTime == null) {
+            availableTime = createTime;
+        }
+        if (attempts == null) {
+            attempts = 0;
+        }
+    }
+}
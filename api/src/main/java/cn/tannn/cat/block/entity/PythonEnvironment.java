@@ -76,4 +76,18 @@ public class PythonEnvironment extends EntityPfield {
     @Schema(description = "pip版本，例如: 24.3.1")
     private String pipVersion;
 
+    @Column(columnDefinition = "JSON")
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Comment("资源限制")
+    @Schema(description = "资源限制（环境内所有块的默认值，节点可按字段覆盖），例如: {\"memoryMb\": 512, \"cpuSeconds\": 60, \"maxOutputBytes\": 10485760}")
+    private JSONObject resourceLimits;
+
+    @Comment("最大并发执行数")
+    @Schema(description = "最大并发执行数（同时运行的脚本数），为空时使用 python.scheduler.default-env-concurrency")
+    private Integer maxConcurrency;
+
+    @Comment("调度权重")
+    @Schema(description = "调度权重，排队时各环境按权重比例轮流放行，为空时为1", example = "1")
+    private Integer scheduleWeight;
+
 }
@@ -1,10 +1,13 @@
 package cn.tannn.cat.block.entity;
 
 import cn.tannn.cat.block.contansts.EntityPfield;
+import cn.tannn.cat.block.enums.MisfirePolicy;
 import com.alibaba.fastjson2.JSONObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
@@ -15,6 +18,8 @@ import org.hibernate.annotations.Comment;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
+import java.time.LocalDateTime;
+
 /**
  * 流程定义表
  *
@@ -28,7 +33,9 @@ import org.hibernate.type.SqlTypes;
         @Index(name = "idx_author", columnList = "authorUsername"),
         @Index(name = "idx_author_name", columnList = "authorUsername,name", unique = true),
         @Index(name = "idx_category", columnList = "category"),
-        @Index(name = "idx_active", columnList = "isActive")
+        @Index(name = "idx_active", columnList = "isActive"),
+        @Index(name = "idx_schedule_enabled", columnList = "scheduleEnabled"),
+        @Index(name = "idx_webhook_key", columnList = "webhookKey", unique = true)
 })
 @Comment("流程定义表")
 public class Workflow extends EntityPfield {
@@ -87,5 +94,49 @@ public class Workflow extends EntityPfield {
     @Schema(description = "是否公开")
     private Boolean isPublic;
 
+    @Comment("是否启用定时触发")
+    @ColumnDefault("0")
+    @Schema(description = "是否启用定时触发")
+    private Boolean scheduleEnabled;
+
+    @Column(length = 100)
+    @Comment("定时触发Cron表达式(秒 分 时 日 月 周)")
+    @Schema(description = "定时触发Cron表达式(秒 分 时 日 月 周)", example = "0 0/5 * * * ?")
+    private String scheduleCron;
+
+    @Column()
+    @Comment("定时触发间隔(秒)，未配置Cron表达式时生效")
+    @Schema(description = "定时触发间隔(秒)，未配置Cron表达式时生效")
+    private Integer scheduleIntervalSeconds;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    @Comment("错过触发的处理策略: fire_once/skip")
+    @Schema(description = "错过触发的处理策略")
+    private MisfirePolicy scheduleMisfirePolicy;
+
+    @Column()
+    @Comment("触发抖动(秒)，在计划时间后随机延迟，避免大量流程同一时刻触发")
+    @Schema(description = "触发抖动(秒)")
+    private Integer scheduleJitterSeconds;
+
+    /**
+     * 触发时间只由调度器通过条件更新维护，实体保存时不覆盖，避免并发编辑把调度器推进后的时间写回旧值
+     */
+    @Column(updatable = false)
+    @Comment("下次计划触发时间")
+    @Schema(description = "下次计划触发时间")
+    private LocalDateTime nextFireTime;
+
+    @Column(updatable = false)
+    @Comment("上次触发时间")
+    @Schema(description = "上次触发时间")
+    private LocalDateTime lastFireTime;
+
+    @Column(length = 64)
+    @Comment("Webhook触发密钥，POST /hooks/{webhookKey} 触发执行，为空表示未开启Webhook触发")
+    @Schema(description = "Webhook触发密钥")
+    private String webhookKey;
+
 
 }
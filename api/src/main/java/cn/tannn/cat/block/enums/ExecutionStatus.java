@@ -6,6 +6,11 @@ package cn.tannn.cat.block.enums;
  * @author tnnn
  */
 public enum ExecutionStatus {
+    /**
+     * 排队中（已提交，等待执行线程）
+     */
+    QUEUED,
+
     /**
      * 运行中
      */
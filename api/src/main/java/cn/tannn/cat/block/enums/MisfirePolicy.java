@@ -0,0 +1,18 @@
+package cn.tannn.cat.block.enums;
+
+/**
+ * 定时触发错过策略（服务停机等原因导致计划触发时间已过去较久时的处理方式）
+ *
+ * @author tnnn
+ */
+public enum MisfirePolicy {
+    /**
+     * 立即补触发一次（多次错过也只补一次），之后按计划继续
+     */
+    FIRE_ONCE,
+
+    /**
+     * 跳过错过的触发，从当前时间起按计划继续
+     */
+    SKIP
+}
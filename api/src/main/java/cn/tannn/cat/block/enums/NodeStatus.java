@@ -0,0 +1,23 @@
+package cn.tannn.cat.block.enums;
+
+/**
+ * 节点执行状态枚举
+ *
+ * @author tnnn
+ */
+public enum NodeStatus {
+    /**
+     * 成功
+     */
+    SUCCESS,
+
+    /**
+     * 失败
+     */
+    FAILED,
+
+    /**
+     * 跳过（入边条件均不满足，未执行）
+     */
+    SKIPPED
+}
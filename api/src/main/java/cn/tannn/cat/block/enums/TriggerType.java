@@ -24,5 +24,10 @@ public enum TriggerType {
     /**
      * API触发
      */
-    API
+    API,
+
+    /**
+     * 作为子流程由父流程的节点触发
+     */
+    SUBWORKFLOW
 }
@@ -0,0 +1,23 @@
+package cn.tannn.cat.block.enums;
+
+/**
+ * Webhook事件受理结果
+ *
+ * @author tnnn
+ */
+public enum WebhookAcceptStatus {
+    /**
+     * 已受理，将创建新的执行
+     */
+    ACCEPTED,
+
+    /**
+     * 重复事件（Idempotency-Key 已受理过），不再创建执行
+     */
+    DUPLICATE,
+
+    /**
+     * 合并事件（合并窗口内已受理过相同内容的事件），不再创建执行
+     */
+    COALESCED
+}
@@ -0,0 +1,46 @@
+package cn.tannn.cat.block.repository;
+
+import cn.tannn.cat.block.entity.ExecutionLogChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 执行日志分片Repository
+ *
+ * @author tnnn
+ */
+@Repository
+public interface ExecutionLogChunkRepository extends JpaRepository<ExecutionLogChunk, Long> {
+
+    /**
+     * 查询指定序号之后的日志分片（按序号升序）
+     *
+     * @param executionId 执行记录ID
+     * @param seq         起始序号（不含）
+     * @return 日志分片列表
+     */
+    List<ExecutionLogChunk> findByExecutionIdAndSeqGreaterThanOrderBySeqAsc(Long executionId, Integer seq);
+
+    /**
+     * 查询当前最大分片序号
+     *
+     * @param executionId 执行记录ID
+     * @return 最大序号，无分片时返回0
+     */
+    @Query("SELECT COALESCE(MAX(c.seq), 0) FROM ExecutionLogChunk c WHERE c.executionId = :executionId")
+    int findMaxSeq(@Param("executionId") Long executionId);
+
+    /**
+     * 删除执行记录的全部日志分片
+     *
+     * @param executionId 执行记录ID
+     */
+    @Modifying
+    @Query("DELETE FROM ExecutionLogChunk c WHERE c.executionId = :executionId")
+    void deleteByExecutionId(@Param("executionId") Long executionId);
+}
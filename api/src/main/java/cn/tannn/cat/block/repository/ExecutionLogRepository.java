@@ -1,11 +1,17 @@
 package cn.tannn.cat.block.repository;
 
 import cn.tannn.cat.block.entity.ExecutionLog;
+import cn.tannn.cat.block.enums.ExecutionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 执行记录Repository
@@ -15,6 +21,14 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface ExecutionLogRepository extends JpaRepository<ExecutionLog, Long>, JpaSpecificationExecutor<ExecutionLog> {
 
+    /**
+     * 查询子流程执行记录
+     *
+     * @param parentExecutionId 父执行记录ID
+     * @return 子流程执行记录
+     */
+    List<ExecutionLog> findByParentExecutionIdOrderByIdAsc(Long parentExecutionId);
+
     /**
      * 统计成功率
      *
@@ -40,4 +54,96 @@ public interface ExecutionLogRepository extends JpaRepository<ExecutionLog, Long
      * @return 执行次数
      */
     long countByWorkflowId(Long workflowId);
+
+    /**
+     * 将排队中的执行标记为运行中（仅当状态仍为 QUEUED 时生效，已取消的执行不会被启动）
+     *
+     * @param id        执行记录ID
+     * @param startTime 开始时间
+     * @return 更新行数，0表示执行已不在排队状态
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = cn.tannn.cat.block.enums.ExecutionStatus.RUNNING, e.startTime = :startTime " +
+            "WHERE e.id = :id AND e.status = cn.tannn.cat.block.enums.ExecutionStatus.QUEUED")
+    int markRunning(@Param("id") Long id, @Param("startTime") LocalDateTime startTime);
+
+    /**
+     * 将运行中的执行退回排队状态（原执行实例失联，由其他实例重新调度时使用）
+     *
+     * @param id 执行记录ID
+     * @return 更新行数，0表示执行已结束或已不在运行状态
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = cn.tannn.cat.block.enums.ExecutionStatus.QUEUED " +
+            "WHERE e.id = :id AND e.status = cn.tannn.cat.block.enums.ExecutionStatus.RUNNING")
+    int requeue(@Param("id") Long id);
+
+    /**
+     * 取消排队中的执行（仅当状态仍为 QUEUED 时生效）
+     *
+     * @param id           执行记录ID
+     * @param endTime      结束时间
+     * @param errorMessage 取消原因
+     * @return 更新行数，0表示执行已开始运行或已结束
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = cn.tannn.cat.block.enums.ExecutionStatus.CANCELLED, " +
+            "e.endTime = :endTime, e.duration = 0, e.errorMessage = :errorMessage " +
+            "WHERE e.id = :id AND e.status = cn.tannn.cat.block.enums.ExecutionStatus.QUEUED")
+    int cancelQueued(@Param("id") Long id, @Param("endTime") LocalDateTime endTime,
+                     @Param("errorMessage") String errorMessage);
+
+    /**
+     * 取消运行中的执行（仅当状态仍为 RUNNING 时生效，用于执行不在当前实例中的情况）
+     *
+     * @param id           执行记录ID
+     * @param endTime      结束时间
+     * @param duration     执行时长（秒）
+     * @param errorMessage 取消原因
+     * @return 更新行数，0表示执行已结束
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = cn.tannn.cat.block.enums.ExecutionStatus.CANCELLED, " +
+            "e.endTime = :endTime, e.duration = :duration, e.errorMessage = :errorMessage " +
+            "WHERE e.id = :id AND e.status = cn.tannn.cat.block.enums.ExecutionStatus.RUNNING")
+    int cancelRunning(@Param("id") Long id, @Param("endTime") LocalDateTime endTime,
+                      @Param("duration") Integer duration, @Param("errorMessage") String errorMessage);
+
+    /**
+     * 结束运行中的执行（仅当状态仍为 RUNNING 时生效，用于结束失联实例遗留的子流程执行）
+     *
+     * @param id           执行记录ID
+     * @param status       最终状态（FAILED 或 CANCELLED）
+     * @param endTime      结束时间
+     * @param duration     执行时长（秒）
+     * @param errorMessage 失败或取消原因
+     * @return 更新行数，0表示执行已结束
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = :status, " +
+            "e.endTime = :endTime, e.duration = :duration, e.errorMessage = :errorMessage " +
+            "WHERE e.id = :id AND e.status = cn.tannn.cat.block.enums.ExecutionStatus.RUNNING")
+    int finishRunning(@Param("id") Long id, @Param("status") ExecutionStatus status,
+                      @Param("endTime") LocalDateTime endTime, @Param("duration") Integer duration,
+                      @Param("errorMessage") String errorMessage);
+
+    /**
+     * 将失败或已取消的执行重新置为排队状态（恢复执行时使用）
+     *
+     * @param id         执行记录ID
+     * @param queuedTime 入队时间
+     * @return 更新行数，0表示执行不是失败或已取消状态
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE ExecutionLog e SET e.status = cn.tannn.cat.block.enums.ExecutionStatus.QUEUED, " +
+            "e.queuedTime = :queuedTime, e.endTime = NULL, e.duration = NULL, e.errorMessage = NULL, e.outputResult = NULL " +
+            "WHERE e.id = :id AND e.status IN (cn.tannn.cat.block.enums.ExecutionStatus.FAILED, " +
+            "cn.tannn.cat.block.enums.ExecutionStatus.CANCELLED)")
+    int markResumed(@Param("id") Long id, @Param("queuedTime") LocalDateTime queuedTime);
 }
@@ -0,0 +1,58 @@
+package cn.tannn.cat.block.repository;
+
+import cn.tannn.cat.block.entity.ExecutionNodeResult;
+import cn.tannn.cat.block.enums.NodeStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 节点执行结果Repository
+ *
+ * @author tnnn
+ */
+@Repository
+public interface ExecutionNodeResultRepository extends JpaRepository<ExecutionNodeResult, Long> {
+
+    /**
+     * 查询执行记录的全部节点结果
+     *
+     * @param executionId 执行记录ID
+     * @return 节点结果列表
+     */
+    List<ExecutionNodeResult> findByExecutionIdOrderByIdAsc(Long executionId);
+
+    /**
+     * 查询执行记录中指定状态的节点结果
+     *
+     * @param executionId 执行记录ID
+     * @param status      节点状态
+     * @return 节点结果列表
+     */
+    List<ExecutionNodeResult> findByExecutionIdAndStatus(Long executionId, NodeStatus status);
+
+    /**
+     * 查询单个节点的结果
+     *
+     * @param executionId 执行记录ID
+     * @param nodeId      节点ID
+     * @return 节点结果
+     */
+    Optional<ExecutionNodeResult> findByExecutionIdAndNodeId(Long executionId, String nodeId);
+
+    /**
+     * 删除执行记录的全部节点结果
+     *
+     * @param executionId 执行记录ID
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("DELETE FROM ExecutionNodeResult r WHERE r.executionId = :executionId")
+    void deleteByExecutionId(@Param("executionId") Long executionId);
+}
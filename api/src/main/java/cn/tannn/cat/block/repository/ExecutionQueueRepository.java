@@ -0,0 +1,117 @@
+package cn.tannn.cat.block.repository;
+
+import cn.tannn.cat.block.entity.ExecutionQueueItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 流程执行队列Repository
+ *
+ * @author tnnn
+ */
+@Repository
+public interface ExecutionQueueRepository extends JpaRepository<ExecutionQueueItem, Long> {
+
+    /**
+     * 锁定可调度的队列项（未被租用或租约已过期），已被其他实例锁定的行直接跳过
+     * MySQL 8 与 H2 2.x 均支持 FOR UPDATE SKIP LOCKED，需在事务中调用
+     *
+     * @param now   当前时间
+     * @param limit 最多锁定条数
+     * @return 队列项
+     */
+    @Query(value = "SELECT * FROM execution_queue " +
+            "WHERE available_time <= :now AND (lease_owner IS NULL OR lease_expire_time < :now) " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ExecutionQueueItem> lockAvailable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 统计等待调度的队列项（未被租用或租约已过期），不含正在执行的
+     *
+     * @param now 当前时间
+     * @return 等待调度数
+     */
+    @Query("SELECT COUNT(q) FROM ExecutionQueueItem q WHERE q.leaseOwner IS NULL OR q.leaseExpireTime < :now")
+    long countPending(@Param("now") LocalDateTime now);
+
+    /**
+     * 续约当前实例持有的队列项，返回仍由该实例持有租约的执行ID（需在事务中调用）
+     * 不在返回结果中的执行说明租约已过期并被其他实例接管，或队列项已被删除
+     *
+     * @param owner        租约持有实例
+     * @param executionIds 执行记录ID
+     * @param expireTime   新的租约过期时间
+     * @return 续约成功的执行ID
+     */
+    default Set<Long> renewLease(String owner, Collection<Long> executionIds, LocalDateTime expireTime) {
+        extendLease(owner, executionIds, expireTime);
+        return new HashSet<>(findLeasedExecutionIds(owner, executionIds));
+    }
+
+    /**
+     * 延长租约（只更新仍由该实例持有的行）
+     *
+     * @param owner        租约持有实例
+     * @param executionIds 执行记录ID
+     * @param expireTime   新的租约过期时间
+     * @return 更新条数
+     */
+    @Modifying
+    @Query("UPDATE ExecutionQueueItem q SET q.leaseExpireTime = :expireTime " +
+            "WHERE q.leaseOwner = :owner AND q.executionId IN :executionIds")
+    int extendLease(@Param("owner") String owner,
+                    @Param("executionIds") Collection<Long> executionIds,
+                    @Param("expireTime") LocalDateTime expireTime);
+
+    /**
+     * 查询仍由该实例持有租约的执行
+     *
+     * @param owner        租约持有实例
+     * @param executionIds 执行记录ID
+     * @return 执行ID
+     */
+    @Query("SELECT q.executionId FROM ExecutionQueueItem q WHERE q.leaseOwner = :owner AND q.executionId IN :executionIds")
+    List<Long> findLeasedExecutionIds(@Param("owner") String owner,
+                                      @Param("executionIds") Collection<Long> executionIds);
+
+    /**
+     * 释放租约（交还队列，由其他实例或稍后重新调度）
+     *
+     * @param owner       租约持有实例
+     * @param executionId 执行记录ID
+     * @return 更新条数
+     */
+    @Modifying
+    @Query("UPDATE ExecutionQueueItem q SET q.leaseOwner = NULL, q.leaseExpireTime = NULL " +
+            "WHERE q.leaseOwner = :owner AND q.executionId = :executionId")
+    int releaseLease(@Param("owner") String owner, @Param("executionId") Long executionId);
+
+    /**
+     * 执行结束后出队（只删除仍由该实例持有租约的行，租约已被其他实例接管时不影响接管的执行）
+     *
+     * @param owner       租约持有实例
+     * @param executionId 执行记录ID
+     * @return 删除条数
+     */
+    @Modifying
+    @Query("DELETE FROM ExecutionQueueItem q WHERE q.executionId = :executionId AND q.leaseOwner = :owner")
+    int deleteLeased(@Param("owner") String owner, @Param("executionId") Long executionId);
+
+    /**
+     * 出队，不检查租约（删除执行记录时调用）
+     *
+     * @param executionId 执行记录ID
+     */
+    @Modifying
+    @Query("DELETE FROM ExecutionQueueItem q WHERE q.executionId = :executionId")
+    void deleteByExecutionId(@Param("executionId") Long executionId);
+}
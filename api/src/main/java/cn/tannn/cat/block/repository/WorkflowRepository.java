@@ -1,14 +1,18 @@
 package cn.tannn.cat.block.repository;
 
 import cn.tannn.cat.block.entity.Workflow;
+import cn.tannn.cat.block.enums.MisfirePolicy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -219,4 +223,119 @@ public interface WorkflowRepository extends JpaRepository<Workflow, Integer> , J
      * @return 流程分页列表
      */
     Page<Workflow> findByIsPublicAndIsActive(Boolean isPublic, Boolean isActive, Pageable pageable);
+
+    /**
+     * 查询所有启用了定时触发的流程（只查询调度所需字段，不加载流程定义）
+     *
+     * @return 定时配置列表
+     */
+    List<ScheduleView> findScheduleByScheduleEnabledTrueAndIsActiveTrue();
+
+    /**
+     * 查询流程的定时配置
+     *
+     * @param id 流程ID
+     * @return 定时配置
+     */
+    Optional<ScheduleView> findScheduleById(Integer id);
+
+    /**
+     * 抢占一次定时触发：仅当下次触发时间仍为预期值时推进到下一次，
+     * 多实例同时触发同一流程时只有一个实例更新成功
+     *
+     * @param id           流程ID
+     * @param expectedTime 预期的下次触发时间（本次触发的计划时间）
+     * @param nextTime     新的下次触发时间
+     * @param firedTime    本次触发时间
+     * @return 更新行数，0表示已被其他实例触发或配置已变更
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE Workflow w SET w.nextFireTime = :nextTime, w.lastFireTime = :firedTime " +
+            "WHERE w.id = :id AND w.nextFireTime = :expectedTime")
+    int claimFire(@Param("id") Integer id,
+                  @Param("expectedTime") LocalDateTime expectedTime,
+                  @Param("nextTime") LocalDateTime nextTime,
+                  @Param("firedTime") LocalDateTime firedTime);
+
+    /**
+     * 跳过一次定时触发：仅推进下次触发时间，不记录触发
+     *
+     * @param id           流程ID
+     * @param expectedTime 预期的下次触发时间
+     * @param nextTime     新的下次触发时间
+     * @return 更新行数，0表示已被其他实例处理或配置已变更
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE Workflow w SET w.nextFireTime = :nextTime WHERE w.id = :id AND w.nextFireTime = :expectedTime")
+    int skipFire(@Param("id") Integer id,
+                 @Param("expectedTime") LocalDateTime expectedTime,
+                 @Param("nextTime") LocalDateTime nextTime);
+
+    /**
+     * 重置下次触发时间（定时配置变更时调用）
+     *
+     * @param id       流程ID
+     * @param nextTime 下次触发时间，null表示不再触发
+     * @return 更新行数
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE Workflow w SET w.nextFireTime = :nextTime WHERE w.id = :id")
+    int resetNextFireTime(@Param("id") Integer id, @Param("nextTime") LocalDateTime nextTime);
+
+    /**
+     * 初始化下次触发时间（仅当尚未设置时生效）
+     *
+     * @param id       流程ID
+     * @param nextTime 下次触发时间
+     * @return 更新行数
+     */
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query("UPDATE Workflow w SET w.nextFireTime = :nextTime WHERE w.id = :id AND w.nextFireTime IS NULL")
+    int initNextFireTime(@Param("id") Integer id, @Param("nextTime") LocalDateTime nextTime);
+
+    /**
+     * 按Webhook密钥查询流程
+     *
+     * @param webhookKey Webhook密钥
+     * @return 流程Webhook视图
+     */
+    Optional<WebhookView> findWebhookByWebhookKey(String webhookKey);
+
+    /**
+     * 流程Webhook视图
+     */
+    interface WebhookView {
+        Integer getId();
+
+        String getName();
+
+        Boolean getIsActive();
+    }
+
+    /**
+     * 流程定时配置视图
+     */
+    interface ScheduleView {
+        Integer getId();
+
+        String getName();
+
+        Boolean getIsActive();
+
+        Boolean getScheduleEnabled();
+
+        String getScheduleCron();
+
+        Integer getScheduleIntervalSeconds();
+
+        MisfirePolicy getScheduleMisfirePolicy();
+
+        Integer getScheduleJitterSeconds();
+
+        LocalDateTime getNextFireTime();
+    }
 }
@@ -1,5 +1,6 @@
 package cn.tannn.cat.block.service;
 
+import cn.tannn.cat.block.controller.dto.block.BlockBatchTestDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockCreateDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockPage;
 import cn.tannn.cat.block.controller.dto.block.BlockTestDTO;
@@ -67,6 +68,15 @@ public interface BlockService {
      */
     String test(Integer id, BlockTestDTO testDTO);
 
+    /**
+     * 批量测试块执行（同一脚本依次执行多组输入参数）
+     *
+     * @param id       块ID
+     * @param batchDTO 批量测试参数
+     * @return 测试结果（汇总及每个用例的结果）
+     */
+    String testBatch(Integer id, BlockBatchTestDTO batchDTO);
+
 
     /**
      * 克隆块
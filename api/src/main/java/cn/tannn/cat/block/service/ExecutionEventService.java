@@ -0,0 +1,363 @@
+package cn.tannn.cat.block.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流程执行事件服务 - 用于实时推送执行日志和节点状态（SSE）
+ * 与 {@link ProgressLogService} 不同，同一个执行可以有多个订阅者，
+ * 并为每个执行保留有界的事件回放缓冲，晚到的订阅者无需查库即可追上进度；
+ * 发布事件只写入缓冲和订阅者的待发送队列，由专用发送线程推送，慢速客户端不会阻塞节点线程
+ *
+ * @author tnnn
+ */
+@Slf4j
+@Service
+public class ExecutionEventService {
+
+    /** 节点开始执行 */
+    public static final String NODE_STARTED = "node-started";
+    /** 节点控制台输出（按行） */
+    public static final String STDOUT_LINE = "stdout-line";
+    /** 节点执行结束 */
+    public static final String NODE_FINISHED = "node-finished";
+    /** 新增执行日志分片 */
+    public static final String LOG = "log";
+    /** 执行排队中或由其他实例运行，当前实例没有事件通道 */
+    public static final String RUN_PENDING = "run-pending";
+    /** 流程执行结束 */
+    public static final String RUN_FINISHED = "run-finished";
+
+    /**
+     * 每个执行保留的最大事件数
+     */
+    @Value("${workflow.execution.event-replay-size:500}")
+    private int replaySize;
+
+    /**
+     * 执行结束后事件缓冲的保留时间（秒）
+     */
+    @Value("${workflow.execution.event-retain-seconds:60}")
+    private long retainSeconds;
+
+    /**
+     * 每个订阅者待发送事件数上限，超出后断开该订阅者（客户端可按 Last-Event-ID 重连补齐）
+     */
+    @Value("${workflow.execution.event-subscriber-buffer-size:1000}")
+    private int subscriberBufferSize;
+
+    /**
+     * 事件发送线程数
+     */
+    @Value("${workflow.execution.event-sender-threads:2}")
+    private int senderThreads;
+
+    /**
+     * key: executionId, value: 执行事件通道
+     */
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "execution-event-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 事件发送线程池
+     */
+    private ExecutorService sender;
+
+    /**
+     * 执行事件
+     */
+    private record ExecutionEvent(long id, String type, Object data) {}
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread thread = new Thread(r, "execution-event-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 打开执行事件通道（由运行该执行的实例在执行开始前调用，结束时必须调用 {@link #finish}）
+     *
+     * @param executionId 执行记录ID
+     */
+    public void open(Long executionId) {
+        // 已结束的通道（如恢复执行前的上一轮）替换为新通道
+        channels.compute(executionId, (id, channel) ->
+                channel == null || channel.isFinished() ? new Channel(id, replaySize, subscriberBufferSize, sender) : channel);
+    }
+
+    /**
+     * 当前JVM中是否存在该执行的事件通道
+     *
+     * @param executionId 执行记录ID
+     * @return 是否存在
+     */
+    public boolean isOpen(Long executionId) {
+        return channels.containsKey(executionId);
+    }
+
+    /**
+     * 发布执行事件（可在并行节点线程中调用）
+     *
+     * @param executionId 执行记录ID
+     * @param type        事件类型
+     * @param data        事件数据
+     */
+    public void publish(Long executionId, String type, Object data) {
+        Channel channel = channels.get(executionId);
+        if (channel != null) {
+            channel.publish(type, data);
+        }
+    }
+
+    /**
+     * 发布流程结束事件并关闭所有订阅，事件缓冲在保留时间后释放
+     *
+     * @param executionId 执行记录ID
+     * @param data        结束事件数据
+     */
+    public void finish(Long executionId, Object data) {
+        Channel channel = channels.get(executionId);
+        if (channel == null) {
+            return;
+        }
+        channel.publish(RUN_FINISHED, data);
+        channel.finish();
+        cleaner.schedule(() -> channels.remove(executionId, channel), retainSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 订阅执行事件，先回放缓冲中的事件再推送实时事件
+     *
+     * @param executionId 执行记录ID
+     * @param lastEventId 客户端已收到的最后事件ID（断线重连时由 Last-Event-ID 提供），null表示全部回放
+     * @return SSE连接，通道不存在时返回null
+     */
+    public SseEmitter subscribe(Long executionId, Long lastEventId) {
+        Channel channel = channels.get(executionId);
+        if (channel == null) {
+            return null;
+        }
+        return channel.subscribe(lastEventId == null ? 0L : lastEventId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        channels.values().forEach(Channel::finish);
+        sender.shutdown();
+    }
+
+    /**
+     * 单个执行的事件通道
+     */
+    private static final class Channel {
+        private final Long executionId;
+        private final int capacity;
+        private final int subscriberBufferSize;
+        private final ExecutorService sender;
+        private final Deque<ExecutionEvent> buffer = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private long nextEventId = 1;
+        private boolean finished;
+
+        private Channel(Long executionId, int capacity, int subscriberBufferSize, ExecutorService sender) {
+            this.executionId = executionId;
+            this.capacity = Math.max(1, capacity);
+            this.subscriberBufferSize = Math.max(1, subscriberBufferSize);
+            this.sender = sender;
+        }
+
+        private synchronized void publish(String type, Object data) {
+            if (finished) {
+                return;
+            }
+            ExecutionEvent event = new ExecutionEvent(nextEventId++, type, data);
+            buffer.addLast(event);
+            if (buffer.size() > capacity) {
+                buffer.removeFirst();
+            }
+            subscribers.removeIf(subscriber -> {
+                if (subscriber.offer(event, subscriberBufferSize)) {
+                    return false;
+                }
+                log.warn("SSE订阅者接收过慢，断开连接, executionId: {}, 待发送事件数: {}",
+                        executionId, subscriberBufferSize);
+                subscriber.close();
+                return true;
+            });
+        }
+
+        private synchronized boolean isFinished() {
+            return finished;
+        }
+
+        private synchronized void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            // 已入队的事件（含结束事件）发送完后再关闭连接
+            subscribers.forEach(Subscriber::complete);
+            subscribers.clear();
+        }
+
+        private synchronized SseEmitter subscribe(long lastEventId) {
+            // 超时时间设置为30分钟
+            SseEmitter emitter = new SseEmitter(1800000L);
+            Subscriber subscriber = new Subscriber(executionId, emitter, sender);
+            emitter.onCompletion(() -> remove(subscriber));
+            emitter.onTimeout(() -> remove(subscriber));
+            emitter.onError(e -> remove(subscriber));
+
+            // 回放缓冲本身有界，回放的事件不受待发送数上限限制
+            for (ExecutionEvent event : buffer) {
+                if (event.id() > lastEventId) {
+                    subscriber.offer(event, Integer.MAX_VALUE);
+                }
+            }
+            if (finished) {
+                subscriber.complete();
+            } else {
+                subscribers.add(subscriber);
+            }
+            log.debug("订阅执行事件, executionId: {}, 当前订阅数: {}", executionId, subscribers.size());
+            return emitter;
+        }
+
+        private void remove(Subscriber subscriber) {
+            subscriber.close();
+            synchronized (this) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    /**
+     * 单个订阅者：待发送事件由发送线程按顺序推送，同一订阅者同时只有一个发送任务
+     * 发布线程只操作队列，不调用 SseEmitter，连接的发送和关闭都在发送线程中进行
+     */
+    private static final class Subscriber implements Runnable {
+        private final Long executionId;
+        private final SseEmitter emitter;
+        private final ExecutorService sender;
+        private final Deque<ExecutionEvent> pending = new ArrayDeque<>();
+        /** 是否已提交发送任务 */
+        private boolean scheduled;
+        /** 发送完已入队的事件后正常关闭 */
+        private boolean completing;
+        /** 立即关闭，丢弃未发送的事件 */
+        private boolean closed;
+        /** 连接是否已关闭（只在发送线程中访问） */
+        private boolean emitterDone;
+
+        private Subscriber(Long executionId, SseEmitter emitter, ExecutorService sender) {
+            this.executionId = executionId;
+            this.emitter = emitter;
+            this.sender = sender;
+        }
+
+        /**
+         * 加入待发送队列
+         *
+         * @return 队列已满或订阅者已关闭时返回false
+         */
+        private synchronized boolean offer(ExecutionEvent event, int limit) {
+            if (closed || completing || pending.size() >= limit) {
+                return false;
+            }
+            pending.addLast(event);
+            schedule();
+            return true;
+        }
+
+        private synchronized void complete() {
+            completing = true;
+            schedule();
+        }
+
+        private synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            try {
+                sender.execute(this);
+            } catch (RejectedExecutionException e) {
+                // 服务关闭中，不再推送
+                scheduled = false;
+                closed = true;
+                pending.clear();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ExecutionEvent event;
+                boolean done;
+                synchronized (this) {
+                    event = closed ? null : pending.pollFirst();
+                    done = event == null && (closed || completing);
+                    if (event == null) {
+                        scheduled = false;
+                    }
+                }
+                if (event == null) {
+                    if (done && !emitterDone) {
+                        emitterDone = true;
+                        emitter.complete();
+                    }
+                    return;
+                }
+                if (!send(event)) {
+                    close();
+                }
+            }
+        }
+
+        private boolean send(ExecutionEvent event) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.id()))
+                        .name(event.type())
+                        .data(event.data()));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("推送执行事件失败, executionId: {}, error: {}", executionId, e.getMessage());
+                return false;
+            }
+        }
+    }
+}
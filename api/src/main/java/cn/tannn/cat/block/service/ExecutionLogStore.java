@@ -0,0 +1,116 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.ExecutionLogChunk;
+import cn.tannn.cat.block.repository.ExecutionLogChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 执行日志存储 - 追加写入的分片日志
+ * 每次只写入新增的日志行（一行记录一个分片），读取时按序号拼接
+ *
+ * @author tnnn
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExecutionLogStore {
+
+    private final ExecutionLogChunkRepository executionLogChunkRepository;
+
+    /**
+     * 正在写入的执行记录的分片序号
+     * key: executionId, value: 已分配的最大序号
+     */
+    private final Map<Long, Sequence> sequences = new ConcurrentHashMap<>();
+
+    /**
+     * 单个执行的分片序号，分配序号和写入分片在同一把锁内完成
+     */
+    private static final class Sequence {
+        private int last;
+
+        private Sequence(int last) {
+            this.last = last;
+        }
+    }
+
+    /**
+     * 追加日志分片（可在并行节点线程中调用）
+     * 同一执行的分片串行写入，序号N+1的分片不会先于N提交，按 afterSeq 增量拉取时不会跳过分片
+     *
+     * @param executionId 执行记录ID
+     * @param content     新增的日志内容
+     * @return 分片序号，内容为空时返回-1
+     */
+    public int append(Long executionId, CharSequence content) {
+        if (content == null || content.length() == 0) {
+            return -1;
+        }
+        Sequence sequence = sequences.computeIfAbsent(executionId,
+                id -> new Sequence(executionLogChunkRepository.findMaxSeq(id)));
+        ExecutionLogChunk chunk = new ExecutionLogChunk();
+        chunk.setExecutionId(executionId);
+        chunk.setContent(content.toString());
+        synchronized (sequence) {
+            chunk.setSeq(sequence.last + 1);
+            executionLogChunkRepository.save(chunk);
+            sequence.last = chunk.getSeq();
+        }
+        return chunk.getSeq();
+    }
+
+    /**
+     * 执行结束，释放序号计数器
+     *
+     * @param executionId 执行记录ID
+     */
+    public void close(Long executionId) {
+        sequences.remove(executionId);
+    }
+
+    /**
+     * 读取指定序号之后的日志分片
+     *
+     * @param executionId 执行记录ID
+     * @param afterSeq    起始序号（不含），0表示从头读取
+     * @return 日志分片列表
+     */
+    public List<ExecutionLogChunk> readChunks(Long executionId, int afterSeq) {
+        return executionLogChunkRepository.findByExecutionIdAndSeqGreaterThanOrderBySeqAsc(executionId, afterSeq);
+    }
+
+    /**
+     * 读取并拼接日志
+     *
+     * @param executionId 执行记录ID
+     * @param afterSeq    起始序号（不含），0表示从头读取
+     * @return 拼接后的日志，无分片时返回null
+     */
+    public String read(Long executionId, int afterSeq) {
+        List<ExecutionLogChunk> chunks = readChunks(executionId, afterSeq);
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        StringBuilder logs = new StringBuilder();
+        chunks.forEach(chunk -> logs.append(chunk.getContent()));
+        return logs.toString();
+    }
+
+    /**
+     * 删除执行记录的全部日志
+     *
+     * @param executionId 执行记录ID
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void delete(Long executionId) {
+        sequences.remove(executionId);
+        executionLogChunkRepository.deleteByExecutionId(executionId);
+    }
+}
@@ -0,0 +1,588 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.Workflow;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * 流程执行计划（由 Workflow.flowDefinition 编译得到，不可变）
+ * 节点按下标编号，邻接关系、入度和拓扑序都使用 int 数组表示；
+ * 每个节点的入边绑定（sourceHandle/targetHandle 解析后的参数名、拆分好的字段路径）在编译时预先计算，
+ * 执行时无需再解析JSON或扫描全部连接
+ *
+ * @author tnnn
+ */
+public final class ExecutionPlan {
+
+    /**
+     * 数组下标无法解析时的标记值
+     */
+    public static final int INVALID_INDEX = Integer.MIN_VALUE;
+
+    private final Integer workflowId;
+    private final LocalDateTime updateTime;
+    private final String[] nodeIds;
+    private final JSONObject[] nodeData;
+    private final Map<String, Integer> nodeIndex;
+    private final int[][] successors;
+    private final int[] inDegree;
+    private final Binding[][] incoming;
+    private final Edge[] edges;
+    /**
+     * 节点重试策略，未配置重试的节点为null
+     */
+    private final Retry[] retries;
+    /**
+     * map节点配置，普通节点为null
+     */
+    private final MapSpec[] maps;
+    /**
+     * 节点资源限制（node.data.resourceLimits，未配置时使用 blockSnapshot.resourceLimits），未配置的节点为null
+     */
+    private final ResourceLimits[] resourceLimits;
+    /**
+     * 拓扑序，存在循环依赖时为null
+     */
+    private final int[] topologicalOrder;
+
+    private ExecutionPlan(Integer workflowId, LocalDateTime updateTime, String[] nodeIds, JSONObject[] nodeData,
+                          Map<String, Integer> nodeIndex, int[][] successors, int[] inDegree,
+                          Binding[][] incoming, Edge[] edges, Retry[] retries, MapSpec[] maps,
+                          ResourceLimits[] resourceLimits, int[] topologicalOrder) {
+        this.workflowId = workflowId;
+        this.updateTime = updateTime;
+        this.nodeIds = nodeIds;
+        this.nodeData = nodeData;
+        this.nodeIndex = nodeIndex;
+        this.successors = successors;
+        this.inDegree = inDegree;
+        this.incoming = incoming;
+        this.edges = edges;
+        this.retries = retries;
+        this.maps = maps;
+        this.resourceLimits = resourceLimits;
+        this.topologicalOrder = topologicalOrder;
+    }
+
+    /**
+     * 编译流程定义
+     *
+     * @param workflow 流程
+     * @return 执行计划
+     */
+    public static ExecutionPlan compile(Workflow workflow) {
+        JSONObject flowDefinition = workflow.getFlowDefinition();
+        if (flowDefinition == null) {
+            throw new RuntimeException("流程定义为空");
+        }
+        JSONArray nodes = flowDefinition.getJSONArray("nodes");
+        JSONArray edgeArray = flowDefinition.getJSONArray("edges");
+        if (nodes == null || nodes.isEmpty()) {
+            throw new RuntimeException("流程中没有节点");
+        }
+
+        // 节点编号
+        int nodeCount = nodes.size();
+        String[] nodeIds = new String[nodeCount];
+        JSONObject[] nodeData = new JSONObject[nodeCount];
+        Retry[] retries = new Retry[nodeCount];
+        MapSpec[] maps = new MapSpec[nodeCount];
+        ResourceLimits[] resourceLimits = new ResourceLimits[nodeCount];
+        Map<String, Integer> nodeIndex = new HashMap<>(nodeCount * 2);
+        for (int i = 0; i < nodeCount; i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            nodeIds[i] = node.getString("id");
+            nodeData[i] = node.getJSONObject("data");
+            retries[i] = Retry.compile(nodeData[i]);
+            maps[i] = MapSpec.compile(nodeIds[i], nodeData[i]);
+            resourceLimits[i] = compileResourceLimits(nodeData[i]);
+            if (nodeIndex.put(nodeIds[i], i) != null) {
+                throw new RuntimeException("流程中存在重复的节点ID: " + nodeIds[i]);
+            }
+        }
+
+        // 连接与入边绑定
+        int edgeCount = edgeArray != null ? edgeArray.size() : 0;
+        Edge[] edges = new Edge[edgeCount];
+        List<List<Integer>> successorList = new ArrayList<>(nodeCount);
+        List<List<Binding>> incomingList = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            successorList.add(new ArrayList<>());
+            incomingList.add(new ArrayList<>());
+        }
+        int[] inDegree = new int[nodeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            JSONObject edge = edgeArray.getJSONObject(i);
+            String source = edge.getString("source");
+            String target = edge.getString("target");
+            String sourceHandle = edge.getString("sourceHandle");
+            String targetHandle = edge.getString("targetHandle");
+            Integer sourceIndex = nodeIndex.get(source);
+            Integer targetIndex = nodeIndex.get(target);
+            if (sourceIndex == null || targetIndex == null) {
+                throw new RuntimeException(String.format("连接 %d 引用了不存在的节点: %s -> %s", i + 1, source, target));
+            }
+            edges[i] = new Edge(sourceIndex, targetIndex, source, target, sourceHandle, targetHandle);
+
+            // target依赖于source，source的输出被target使用
+            successorList.get(sourceIndex).add(targetIndex);
+            inDegree[targetIndex]++;
+
+            JSONObject edgeData = edge.getJSONObject("data");
+            String fieldPath = edgeData != null ? edgeData.getString("fieldPath") : null;
+            if (fieldPath != null && fieldPath.trim().isEmpty()) {
+                fieldPath = null;
+            }
+            incomingList.get(targetIndex).add(new Binding(sourceIndex, source,
+                    sourceHandle != null ? sourceHandle.replace("output-", "") : null,
+                    targetHandle != null ? targetHandle.replace("input-", "") : null,
+                    fieldPath, parsePath(fieldPath),
+                    Condition.compile(i, edgeData != null ? edgeData.getJSONObject("condition") : null)));
+        }
+
+        int[][] successors = new int[nodeCount][];
+        Binding[][] incoming = new Binding[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            successors[i] = successorList.get(i).stream().mapToInt(Integer::intValue).toArray();
+            incoming[i] = incomingList.get(i).toArray(new Binding[0]);
+        }
+
+        return new ExecutionPlan(workflow.getId(), workflow.getUpdateTime(), nodeIds, nodeData,
+                Collections.unmodifiableMap(nodeIndex), successors, inDegree, incoming, edges, retries, maps,
+                resourceLimits, topologicalSort(successors, inDegree));
+    }
+
+    /**
+     * 拓扑排序（Kahn算法）
+     *
+     * @return 拓扑序，存在循环时返回null
+     */
+    private static int[] topologicalSort(int[][] successors, int[] inDegree) {
+        int nodeCount = inDegree.length;
+        int[] remaining = inDegree.clone();
+        int[] order = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (remaining[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int current = order[head++];
+            for (int successor : successors[current]) {
+                if (--remaining[successor] == 0) {
+                    order[tail++] = successor;
+                }
+            }
+        }
+        return tail == nodeCount ? order : null;
+    }
+
+    /**
+     * 拆分字段路径
+     * 支持格式：点分隔 fullUrl.projects、数组索引 items[0]、组合 data.users[0].name
+     */
+    static PathSegment[] parsePath(String fieldPath) {
+        if (fieldPath == null) {
+            return null;
+        }
+        String[] parts = fieldPath.split("\\.");
+        PathSegment[] segments = new PathSegment[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            int open = part.indexOf('[');
+            int close = part.indexOf(']');
+            if (open >= 0 && close >= 0) {
+                String indexStr = part.substring(open + 1, close);
+                int index;
+                try {
+                    index = Integer.parseInt(indexStr);
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    index = INVALID_INDEX;
+                }
+                segments[i] = new PathSegment(part.substring(0, open), true, index, indexStr);
+            } else {
+                segments[i] = new PathSegment(part, false, 0, null);
+            }
+        }
+        return segments;
+    }
+
+    public Integer getWorkflowId() {
+        return workflowId;
+    }
+
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public String getNodeId(int index) {
+        return nodeIds[index];
+    }
+
+    /**
+     * 节点ID对应的下标，不存在时返回null
+     */
+    public Integer indexOf(String nodeId) {
+        return nodeIndex.get(nodeId);
+    }
+
+    /**
+     * 节点数据（node.data），调用方不可修改
+     */
+    public JSONObject getNodeData(int index) {
+        return nodeData[index];
+    }
+
+    /**
+     * 全部节点的后继邻接表（nodeIndex -> 依赖它的节点下标），调用方不可修改
+     */
+    public int[][] getSuccessors() {
+        return successors;
+    }
+
+    /**
+     * 依赖该节点的后继节点下标，调用方不可修改
+     */
+    public int[] getSuccessors(int index) {
+        return successors[index];
+    }
+
+    /**
+     * 入度（返回副本）
+     */
+    public int[] getInDegree() {
+        return inDegree.clone();
+    }
+
+    public int getInDegree(int index) {
+        return inDegree[index];
+    }
+
+    /**
+     * 节点的入边绑定，调用方不可修改
+     */
+    public Binding[] getIncoming(int index) {
+        return incoming[index];
+    }
+
+    public int getEdgeCount() {
+        return edges.length;
+    }
+
+    public Edge getEdge(int index) {
+        return edges[index];
+    }
+
+    /**
+     * 节点重试策略，未配置重试时返回null
+     */
+    public Retry getRetry(int index) {
+        return retries[index];
+    }
+
+    /**
+     * map节点配置，普通节点返回null
+     */
+    public MapSpec getMap(int index) {
+        return maps[index];
+    }
+
+    /**
+     * 节点资源限制，未配置时返回null（执行时再与Python环境的限制合并）
+     */
+    public ResourceLimits getResourceLimits(int index) {
+        return resourceLimits[index];
+    }
+
+    private static ResourceLimits compileResourceLimits(JSONObject data) {
+        if (data == null) {
+            return null;
+        }
+        JSONObject config = data.getJSONObject("resourceLimits");
+        if (config == null) {
+            JSONObject blockSnapshot = data.getJSONObject("blockSnapshot");
+            config = blockSnapshot != null ? blockSnapshot.getJSONObject("resourceLimits") : null;
+        }
+        return ResourceLimits.from(config);
+    }
+
+    public boolean hasCycle() {
+        return topologicalOrder == null;
+    }
+
+    /**
+     * 拓扑序（返回副本），存在循环依赖时返回null
+     */
+    public int[] getTopologicalOrder() {
+        return topologicalOrder != null ? topologicalOrder.clone() : null;
+    }
+
+    /**
+     * 连接
+     *
+     * @param source       源节点下标
+     * @param target       目标节点下标
+     * @param sourceNodeId 源节点ID
+     * @param targetNodeId 目标节点ID
+     * @param sourceHandle 源端口（output-xxx）
+     * @param targetHandle 目标端口（input-xxx）
+     */
+    public record Edge(int source, int target, String sourceNodeId, String targetNodeId,
+                       String sourceHandle, String targetHandle) {
+    }
+
+    /**
+     * 入边绑定：将前置节点的某个输出传递给当前节点的某个输入
+     *
+     * @param source       源节点下标
+     * @param sourceNodeId 源节点ID
+     * @param outputKey    源节点输出参数名
+     * @param inputKey     当前节点输入参数名
+     * @param fieldPath    字段路径原文（无路径时为null）
+     * @param path         拆分后的字段路径（无路径时为null）
+     * @param condition    连接条件（无条件时为null）
+     */
+    public record Binding(int source, String sourceNodeId, String outputKey, String inputKey,
+                          String fieldPath, PathSegment[] path, Condition condition) {
+    }
+
+    /**
+     * 连接条件
+     * 读取 edge.data.condition，格式：{"operator": "eq", "value": "ok"}；
+     * 对连接传递的值（源端口输出，按字段路径提取后）求值，不满足时连接不生效，
+     * 目标节点的入边全部不生效时该节点被跳过，其下游仅经由它的分支也随之跳过
+     *
+     * @param operator 运算符：eq、ne、gt、gte、lt、lte、in、contains、truthy、falsy
+     * @param value    比较值（truthy、falsy 不需要）
+     */
+    public record Condition(String operator, Object value) {
+
+        private static final Set<String> OPERATORS = Set.of(
+                "eq", "ne", "gt", "gte", "lt", "lte", "in", "contains", "truthy", "falsy");
+
+        static Condition compile(int edgeIndex, JSONObject config) {
+            if (config == null) {
+                return null;
+            }
+            String operator = config.getString("operator");
+            if (operator == null || operator.isBlank()) {
+                return null;
+            }
+            if (!OPERATORS.contains(operator)) {
+                throw new RuntimeException(String.format("连接 %d 的条件运算符无效: %s", edgeIndex + 1, operator));
+            }
+            return new Condition(operator, config.get("value"));
+        }
+
+        /**
+         * 条件是否满足
+         *
+         * @param actual 连接传递的值
+         */
+        public boolean test(Object actual) {
+            return switch (operator) {
+                case "eq" -> valueEquals(actual, value);
+                case "ne" -> !valueEquals(actual, value);
+                case "gt" -> compare(actual, value, c -> c > 0);
+                case "gte" -> compare(actual, value, c -> c >= 0);
+                case "lt" -> compare(actual, value, c -> c < 0);
+                case "lte" -> compare(actual, value, c -> c <= 0);
+                case "in" -> value instanceof Collection<?> options
+                        && options.stream().anyMatch(option -> valueEquals(actual, option));
+                case "contains" -> actual instanceof Collection<?> items
+                        ? items.stream().anyMatch(item -> valueEquals(item, value))
+                        : actual != null && value != null && String.valueOf(actual).contains(String.valueOf(value));
+                case "truthy" -> isTruthy(actual);
+                case "falsy" -> !isTruthy(actual);
+                default -> false;
+            };
+        }
+
+        /**
+         * 相等比较：数值按数值比较（1 与 1.0 相等），其余按字符串比较
+         */
+        private static boolean valueEquals(Object left, Object right) {
+            if (left == null || right == null) {
+                return left == right;
+            }
+            BigDecimal l = toNumber(left);
+            BigDecimal r = toNumber(right);
+            if (l != null && r != null) {
+                return l.compareTo(r) == 0;
+            }
+            return String.valueOf(left).equals(String.valueOf(right));
+        }
+
+        /**
+         * 大小比较：仅比较数值，任一方不是数值时视为不满足
+         */
+        private static boolean compare(Object left, Object right, IntPredicate matcher) {
+            BigDecimal l = toNumber(left);
+            BigDecimal r = toNumber(right);
+            return l != null && r != null && matcher.test(l.compareTo(r));
+        }
+
+        private static BigDecimal toNumber(Object value) {
+            if (value instanceof Boolean) {
+                return null;
+            }
+            if (value instanceof Number || value instanceof String) {
+                try {
+                    return new BigDecimal(String.valueOf(value).trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 真值判断（与Python一致）：null、false、0、空字符串、空集合为假
+         */
+        private static boolean isTruthy(Object value) {
+            if (value == null) {
+                return false;
+            }
+            if (value instanceof Boolean b) {
+                return b;
+            }
+            if (value instanceof Number n) {
+                BigDecimal number = toNumber(n);
+                return number != null && number.signum() != 0;
+            }
+            if (value instanceof CharSequence text) {
+                return !text.isEmpty();
+            }
+            if (value instanceof Collection<?> items) {
+                return !items.isEmpty();
+            }
+            if (value instanceof Map<?, ?> map) {
+                return !map.isEmpty();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 节点重试策略（指数退避）
+     * 读取 node.data.retry，未配置时使用块快照中的 blockSnapshot.retry，格式：
+     * {"maxAttempts": 3, "backoffMillis": 1000, "multiplier": 2, "maxBackoffMillis": 30000, "retryOn": ["TIMEOUT"]}
+     *
+     * @param maxAttempts      最大尝试次数（含首次）
+     * @param backoffMillis    首次重试前的等待时间（毫秒）
+     * @param multiplier       退避倍数
+     * @param maxBackoffMillis 单次等待时间上限（毫秒）
+     * @param retryOn          需要重试的错误类型（{@link PythonScriptExecutor.ErrorType}）
+     */
+    public record Retry(int maxAttempts, long backoffMillis, double multiplier, long maxBackoffMillis,
+                        Set<String> retryOn) {
+
+        /**
+         * 未配置 retryOn 时重试的错误类型：超时和运行时错误可能是暂时性的，语法错误和缺少模块重试也不会成功
+         */
+        private static final Set<String> DEFAULT_RETRY_ON = Set.of(
+                PythonScriptExecutor.ErrorType.TIMEOUT, PythonScriptExecutor.ErrorType.RUNTIME_ERROR);
+
+        /**
+         * 重试次数上限，防止配置错误导致无限重试
+         */
+        private static final int MAX_ATTEMPTS_LIMIT = 10;
+
+        static Retry compile(JSONObject data) {
+            if (data == null) {
+                return null;
+            }
+            JSONObject config = data.getJSONObject("retry");
+            if (config == null) {
+                JSONObject blockSnapshot = data.getJSONObject("blockSnapshot");
+                config = blockSnapshot != null ? blockSnapshot.getJSONObject("retry") : null;
+            }
+            if (config == null) {
+                return null;
+            }
+            Integer maxAttempts = config.getInteger("maxAttempts");
+            if (maxAttempts == null || maxAttempts <= 1) {
+                return null;
+            }
+            Long backoffMillis = config.getLong("backoffMillis");
+            Double multiplier = config.getDouble("multiplier");
+            Long maxBackoffMillis = config.getLong("maxBackoffMillis");
+            JSONArray retryOn = config.getJSONArray("retryOn");
+            return new Retry(Math.min(maxAttempts, MAX_ATTEMPTS_LIMIT),
+                    backoffMillis != null ? Math.max(0, backoffMillis) : 1000,
+                    multiplier != null ? Math.max(1, multiplier) : 2,
+                    maxBackoffMillis != null && maxBackoffMillis > 0 ? maxBackoffMillis : 60_000,
+                    retryOn != null && !retryOn.isEmpty()
+                            ? Set.copyOf(retryOn.toJavaList(String.class)) : DEFAULT_RETRY_ON);
+        }
+
+        /**
+         * 失败后是否重试
+         *
+         * @param failedAttempts 已失败次数（从1开始）
+         * @param errorType      本次失败的错误类型
+         */
+        public boolean shouldRetry(int failedAttempts, String errorType) {
+            return failedAttempts < maxAttempts && retryOn.contains(errorType);
+        }
+
+        /**
+         * 第 failedAttempts 次失败后的等待时间：backoffMillis * multiplier^(failedAttempts-1)，不超过 maxBackoffMillis
+         */
+        public long delayMillis(int failedAttempts) {
+            double delay = backoffMillis * Math.pow(multiplier, Math.max(0, failedAttempts - 1));
+            return (long) Math.min(delay, maxBackoffMillis);
+        }
+    }
+
+    /**
+     * map节点配置（对列表中的每个元素执行同一个块）
+     * 读取 node.data.map，格式：{"inputKey": "url", "parallelism": 4, "outputKey": "results"}；
+     * 执行时 inputKey 对应的输入应为数组，每个元素替换该输入后执行一次块，
+     * 各元素的输出按原数组顺序收集到 outputKey 中
+     *
+     * @param inputKey    拆分的输入参数名
+     * @param parallelism 最大并行数
+     * @param outputKey   收集结果的输出参数名
+     */
+    public record MapSpec(String inputKey, int parallelism, String outputKey) {
+
+        static MapSpec compile(String nodeId, JSONObject data) {
+            JSONObject config = data != null ? data.getJSONObject("map") : null;
+            if (config == null) {
+                return null;
+            }
+            String inputKey = config.getString("inputKey");
+            if (inputKey == null || inputKey.isBlank()) {
+                throw new RuntimeException("map节点未配置拆分的输入参数: " + nodeId);
+            }
+            Integer parallelism = config.getInteger("parallelism");
+            String outputKey = config.getString("outputKey");
+            return new MapSpec(inputKey,
+                    parallelism != null && parallelism > 0 ? parallelism : 4,
+                    outputKey != null && !outputKey.isBlank() ? outputKey : "results");
+        }
+    }
+
+    /**
+     * 字段路径片段
+     *
+     * @param field    字段名（数组片段可能为空，如 [0]）
+     * @param indexed  是否带数组下标
+     * @param index    数组下标，无法解析时为 {@link #INVALID_INDEX}
+     * @param rawIndex 数组下标原文
+     */
+    public record PathSegment(String field, boolean indexed, int index, String rawIndex) {
+    }
+}
@@ -0,0 +1,77 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.Workflow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 流程执行计划缓存
+ * 以 流程ID + 更新时间 作为版本，流程未修改时重复执行直接复用已编译的计划；
+ * 流程更新或删除时由 WorkflowServiceImpl 主动失效
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class ExecutionPlanCache {
+
+    /**
+     * key: workflowId, value: 执行计划（按访问顺序淘汰）
+     */
+    private final Map<Integer, ExecutionPlan> plans;
+
+    public ExecutionPlanCache(@Value("${workflow.execution.plan-cache-size:256}") int maxSize) {
+        int capacity = Math.max(1, maxSize);
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ExecutionPlan> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 获取流程的执行计划，缓存未命中或流程已修改时重新编译
+     *
+     * @param workflow 流程
+     * @return 执行计划
+     */
+    public ExecutionPlan get(Workflow workflow) {
+        Integer workflowId = workflow.getId();
+        if (workflowId == null) {
+            return ExecutionPlan.compile(workflow);
+        }
+        ExecutionPlan plan;
+        synchronized (plans) {
+            plan = plans.get(workflowId);
+        }
+        if (plan != null && Objects.equals(plan.getUpdateTime(), workflow.getUpdateTime())) {
+            return plan;
+        }
+
+        // 编译在锁外进行，并发编译同一流程的结果等价，后写入者覆盖即可
+        plan = ExecutionPlan.compile(workflow);
+        synchronized (plans) {
+            plans.put(workflowId, plan);
+        }
+        log.debug("编译流程执行计划, workflowId: {}, 节点数: {}, 连接数: {}",
+                workflowId, plan.getNodeCount(), plan.getEdgeCount());
+        return plan;
+    }
+
+    /**
+     * 失效流程的执行计划
+     *
+     * @param workflowId 流程ID
+     */
+    public void invalidate(Integer workflowId) {
+        synchronized (plans) {
+            plans.remove(workflowId);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.ExecutionLog;
+import cn.tannn.cat.block.entity.ExecutionQueueItem;
+import cn.tannn.cat.block.enums.ExecutionStatus;
+import cn.tannn.cat.block.repository.ExecutionLogRepository;
+import cn.tannn.cat.block.repository.ExecutionQueueRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 持久化的流程执行队列
+ * 执行请求写入 execution_queue 表，各实例按空闲容量通过 SELECT ... FOR UPDATE SKIP LOCKED 抢占并加租约，
+ * 执行期间定时续约；实例宕机后租约过期，队列项会被其他实例重新调度
+ *
+ * @author tnnn
+ */
+@Slf4j
+@Service
+public class ExecutionQueue {
+
+    private final ExecutionQueueRepository executionQueueRepository;
+    private final ExecutionLogRepository executionLogRepository;
+    private final ExecutionRegistry executionRegistry;
+    private final ThreadPoolTaskExecutor workflowExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 当前实例标识（租约持有者）
+     */
+    private final String nodeId;
+
+    /**
+     * 轮询间隔（毫秒）
+     */
+    private final long pollIntervalMillis;
+
+    /**
+     * 租约时长（秒），执行期间每 1/3 租约时长续约一次
+     */
+    private final long leaseSeconds;
+
+    /**
+     * 最大调度次数（含首次），超过后不再重新调度
+     */
+    private final int maxAttempts;
+
+    /**
+     * 等待调度的执行数上限（不含已被实例租用、正在执行的）
+     */
+    private final long maxPending;
+
+    /**
+     * 当前实例已抢占的执行
+     */
+    private final Set<Long> leased = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "execution-queue-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Consumer<ExecutionQueueItem> handler;
+
+    public ExecutionQueue(ExecutionQueueRepository executionQueueRepository,
+                          ExecutionLogRepository executionLogRepository,
+                          ExecutionRegistry executionRegistry,
+                          ThreadPoolTaskExecutor workflowExecutor,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${workflow.queue.node-id:}") String nodeId,
+                          @Value("${workflow.queue.poll-interval-millis:1000}") long pollIntervalMillis,
+                          @Value("${workflow.queue.lease-seconds:30}") long leaseSeconds,
+                          @Value("${workflow.queue.max-attempts:3}") int maxAttempts,
+                          @Value("${workflow.queue.max-pending:1000}") long maxPending) {
+        this.executionQueueRepository = executionQueueRepository;
+        this.executionLogRepository = executionLogRepository;
+        this.executionRegistry = executionRegistry;
+        this.workflowExecutor = workflowExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.nodeId = StringUtils.hasText(nodeId) ? nodeId : defaultNodeId();
+        this.pollIntervalMillis = Math.max(100, pollIntervalMillis);
+        this.leaseSeconds = Math.max(3, leaseSeconds);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * 注册执行处理器并开始调度（处理器在流程执行线程池中被调用，返回即视为执行结束）
+     *
+     * @param handler 执行处理器
+     */
+    public void start(Consumer<ExecutionQueueItem> handler) {
+        this.handler = handler;
+        dispatcher.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        long heartbeatMillis = leaseSeconds * 1000 / 3;
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        log.info("流程执行队列已启动: 实例={}, 轮询间隔={}ms, 租约={}s, 最大调度次数={}",
+                nodeId, pollIntervalMillis, leaseSeconds, maxAttempts);
+    }
+
+    /**
+     * 距排队上限的剩余名额（供不经过 {@link #enqueue} 批量写入队列的调用方做背压）
+     *
+     * @return 剩余名额，未设置上限时返回 Long.MAX_VALUE
+     */
+    public long remainingPending() {
+        if (maxPending <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, maxPending - executionQueueRepository.countPending(LocalDateTime.now()));
+    }
+
+    /**
+     * 执行入队
+     *
+     * @param executionLog           执行记录（已保存，状态为 QUEUED）
+     * @param timeoutSeconds         单个节点超时时间（秒）
+     * @param workflowTimeoutSeconds 整个流程最长执行时间（秒）
+     * @return 是否入队成功，排队数已达上限时返回false
+     */
+    public boolean enqueue(ExecutionLog executionLog, Long timeoutSeconds, long workflowTimeoutSeconds) {
+        if (maxPending > 0 && executionQueueRepository.countPending(LocalDateTime.now()) >= maxPending) {
+            return false;
+        }
+        ExecutionQueueItem item = new ExecutionQueueItem();
+        item.setExecutionId(executionLog.getId());
+        item.setWorkflowId(executionLog.getWorkflowId());
+        item.setTimeoutSeconds(timeoutSeconds);
+        item.setWorkflowTimeoutSeconds(workflowTimeoutSeconds);
+        executionQueueRepository.save(item);
+        // 立即尝试调度，不必等到下一次轮询
+        wakeUp();
+        return true;
+    }
+
+    /**
+     * 移出队列（执行记录被删除时调用）
+     *
+     * @param executionId 执行记录ID
+     */
+    public void remove(Long executionId) {
+        transactionTemplate.executeWithoutResult(status -> executionQueueRepository.deleteByExecutionId(executionId));
+    }
+
+    /**
+     * 最大调度次数（含首次）
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 当前实例标识
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 唤醒调度线程立即轮询
+     */
+    public void wakeUp() {
+        if (handler != null && !dispatcher.isShutdown()) {
+            try {
+                dispatcher.execute(this::poll);
+            } catch (RejectedExecutionException e) {
+                log.debug("执行队列调度线程已关闭");
+            }
+        }
+    }
+
+    /**
+     * 按空闲容量抢占队列项并投递到流程执行线程池
+     */
+    private void poll() {
+        try {
+            int capacity = workflowExecutor.getCorePoolSize() - leased.size();
+            if (capacity <= 0) {
+                return;
+            }
+            List<ExecutionQueueItem> claimed = claim(capacity);
+            for (ExecutionQueueItem item : claimed) {
+                leased.add(item.getExecutionId());
+                try {
+                    workflowExecutor.execute(() -> run(item));
+                } catch (TaskRejectedException e) {
+                    leased.remove(item.getExecutionId());
+                    transactionTemplate.executeWithoutResult(status ->
+                            executionQueueRepository.releaseLease(nodeId, item.getExecutionId()));
+                    log.warn("流程执行线程池已满，交还队列项, executionId: {}", item.getExecutionId());
+                }
+            }
+        } catch (Exception e) {
+            log.error("轮询流程执行队列失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在事务中锁定并租用队列项
+     */
+    private List<ExecutionQueueItem> claim(int limit) {
+        List<ExecutionQueueItem> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<ExecutionQueueItem> items = executionQueueRepository.lockAvailable(now, limit);
+            for (ExecutionQueueItem item : items) {
+                if (item.getLeaseOwner() != null) {
+                    log.warn("执行租约已过期，重新调度, executionId: {}, 原实例: {}, 已调度次数: {}",
+                            item.getExecutionId(), item.getLeaseOwner(), item.getAttempts());
+                }
+                item.setLeaseOwner(nodeId);
+                item.setLeaseExpireTime(now.plusSeconds(leaseSeconds));
+                item.setAttempts(item.getAttempts() + 1);
+            }
+            return executionQueueRepository.saveAll(items);
+        });
+        return claimed != null ? claimed : Collections.emptyList();
+    }
+
+    /**
+     * 执行队列项，结束后出队
+     */
+    private void run(ExecutionQueueItem item) {
+        try {
+            handler.accept(item);
+        } catch (Exception e) {
+            log.error("处理执行队列项失败, executionId: {}, error: {}", item.getExecutionId(), e.getMessage(), e);
+        } finally {
+            try {
+                Integer deleted = transactionTemplate.execute(status ->
+                        executionQueueRepository.deleteLeased(nodeId, item.getExecutionId()));
+                if (deleted == null || deleted == 0) {
+                    log.warn("执行租约已被其他实例接管，不出队, executionId: {}", item.getExecutionId());
+                }
+            } catch (Exception e) {
+                log.error("执行出队失败, executionId: {}, error: {}", item.getExecutionId(), e.getMessage());
+            } finally {
+                leased.remove(item.getExecutionId());
+            }
+            // 释放了容量，立即调度下一个
+            wakeUp();
+        }
+    }
+
+    /**
+     * 续约当前实例持有的队列项，终止租约已失效的执行，并同步其他实例发起的取消
+     */
+    private void heartbeat() {
+        if (leased.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> executionIds = new ArrayList<>(leased);
+            Set<Long> renewed = transactionTemplate.execute(status -> executionQueueRepository.renewLease(nodeId,
+                    executionIds, LocalDateTime.now().plusSeconds(leaseSeconds)));
+
+            // 租约已被其他实例接管（本实例停顿超过租约时长），停止本实例中的执行，避免同一执行被两个实例同时运行
+            for (Long executionId : executionIds) {
+                if (renewed != null && !renewed.contains(executionId) && leased.remove(executionId)) {
+                    log.warn("执行租约已失效，终止本实例中的执行, executionId: {}", executionId);
+                    executionRegistry.revoke(executionId, "执行租约已失效，由其他实例接管");
+                }
+            }
+
+            // 取消请求可能落在其他实例上，只更新了数据库状态，这里负责终止本实例中的执行
+            for (ExecutionLog executionLog : executionLogRepository.findAllById(executionIds)) {
+                if (executionLog.getStatus() == ExecutionStatus.CANCELLED) {
+                    executionRegistry.cancel(executionLog.getId(), "用户取消执行");
+                }
+            }
+        } catch (Exception e) {
+            log.error("执行租约续约失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + ProcessHandle.current().pid() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+}
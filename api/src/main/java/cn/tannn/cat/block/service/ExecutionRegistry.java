@@ -0,0 +1,235 @@
+package cn.tannn.cat.block.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * 运行中执行的注册表
+ * 记录 executionId 对应的节点任务 Future 和 Python 子进程，
+ * 用于真正取消执行（终止进程树、跳过未执行节点）以及整个流程的超时控制
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class ExecutionRegistry {
+
+    /**
+     * 当前线程正在执行的流程（节点线程中由调度器绑定，供脚本执行器登记子进程）
+     */
+    private static final ThreadLocal<RunningExecution> CURRENT = new ThreadLocal<>();
+
+    /**
+     * key: executionId, value: 运行中的执行
+     */
+    private final Map<Long, RunningExecution> executions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "execution-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 登记运行中的执行
+     *
+     * @param executionId     执行记录ID
+     * @param deadlineSeconds 整个流程的最长执行时间（秒），小于等于0表示不限制
+     * @param username        执行用户（用于脚本执行的公平调度，可为null）
+     * @return 运行中的执行
+     */
+    public RunningExecution register(Long executionId, long deadlineSeconds, String username) {
+        RunningExecution running = new RunningExecution(executionId, username);
+        executions.put(executionId, running);
+        if (deadlineSeconds > 0) {
+            running.deadlineTask = deadlineTimer.schedule(() -> {
+                log.warn("流程执行超时（{}秒），强制终止, executionId: {}", deadlineSeconds, executionId);
+                running.cancel("流程执行超时（" + deadlineSeconds + "秒）", true);
+            }, deadlineSeconds, TimeUnit.SECONDS);
+        }
+        return running;
+    }
+
+    /**
+     * 取消运行中的执行
+     *
+     * @param executionId 执行记录ID
+     * @param reason      取消原因
+     * @return 执行是否在当前实例中运行
+     */
+    public boolean cancel(Long executionId, String reason) {
+        RunningExecution running = executions.get(executionId);
+        if (running == null) {
+            return false;
+        }
+        running.cancel(reason, false);
+        return true;
+    }
+
+    /**
+     * 撤销本实例对执行的所有权（租约已被其他实例接管）
+     * 终止运行中的节点任务和进程，执行线程不再写入最终状态和日志，由接管的实例负责
+     *
+     * @param executionId 执行记录ID
+     * @param reason      原因
+     */
+    public void revoke(Long executionId, String reason) {
+        RunningExecution running = executions.get(executionId);
+        if (running != null) {
+            running.revoked = true;
+            running.cancel(reason, false);
+        }
+    }
+
+    /**
+     * 执行结束，移出注册表
+     *
+     * @param executionId 执行记录ID
+     */
+    public void unregister(Long executionId) {
+        RunningExecution running = executions.remove(executionId);
+        if (running != null && running.deadlineTask != null) {
+            running.deadlineTask.cancel(false);
+        }
+    }
+
+    /**
+     * 当前线程绑定的执行（不在流程节点线程中时返回null）
+     */
+    public static RunningExecution current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 将执行绑定到当前线程
+     *
+     * @param running 运行中的执行（可为null）
+     * @return 之前绑定的执行，用于恢复
+     */
+    public static RunningExecution bind(RunningExecution running) {
+        RunningExecution previous = CURRENT.get();
+        if (running == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(running);
+        }
+        return previous;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deadlineTimer.shutdownNow();
+        executions.values().forEach(running -> running.cancel("服务关闭", false));
+    }
+
+    /**
+     * 运行中的执行
+     */
+    public static final class RunningExecution {
+        private final Long executionId;
+        private final String username;
+        private final Set<Future<?>> futures = ConcurrentHashMap.newKeySet();
+        private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+        private volatile String cancelReason;
+        private volatile boolean timedOut;
+        private volatile boolean revoked;
+        private volatile ScheduledFuture<?> deadlineTask;
+
+        private RunningExecution(Long executionId, String username) {
+            this.executionId = executionId;
+            this.username = username;
+        }
+
+        public Long getExecutionId() {
+            return executionId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * 是否已取消（用户取消或超时）
+         */
+        public boolean isCancelled() {
+            return cancelReason != null;
+        }
+
+        /**
+         * 是否因整个流程超时而终止
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * 本实例是否已失去执行的所有权（租约被其他实例接管），此时不应再写入执行记录
+         */
+        public boolean isRevoked() {
+            return revoked;
+        }
+
+        public String getCancelReason() {
+            return cancelReason;
+        }
+
+        /**
+         * 已取消时抛出 CancellationException
+         */
+        public void throwIfCancelled() {
+            if (cancelReason != null) {
+                throw new CancellationException(cancelReason);
+            }
+        }
+
+        /**
+         * 登记节点任务
+         */
+        public void addFuture(Future<?> future) {
+            futures.add(future);
+            if (isCancelled()) {
+                future.cancel(true);
+            }
+        }
+
+        public void removeFuture(Future<?> future) {
+            futures.remove(future);
+        }
+
+        /**
+         * 登记Python子进程（已取消时立即终止）
+         */
+        public void track(Process process) {
+            processes.add(process);
+            if (isCancelled()) {
+                destroyTree(process);
+            }
+        }
+
+        public void untrack(Process process) {
+            processes.remove(process);
+        }
+
+        private synchronized void cancel(String reason, boolean timeout) {
+            if (cancelReason != null) {
+                return;
+            }
+            timedOut = timeout;
+            cancelReason = reason;
+            processes.forEach(RunningExecution::destroyTree);
+            futures.forEach(future -> future.cancel(true));
+            log.info("执行已终止, executionId: {}, 原因: {}, 终止进程: {}, 中断节点: {}",
+                    executionId, reason, processes.size(), futures.size());
+        }
+
+        private static void destroyTree(Process process) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+}
@@ -3,7 +3,13 @@ package cn.tannn.cat.block.service;
 import cn.tannn.cat.block.controller.dto.execution.ExecutionLogPage;
 import cn.tannn.cat.block.controller.dto.workflow.WorkflowExecuteDTO;
 import cn.tannn.cat.block.entity.ExecutionLog;
+import cn.tannn.cat.block.entity.ExecutionLogChunk;
+import cn.tannn.cat.block.entity.ExecutionNodeResult;
+import cn.tannn.cat.block.enums.TriggerType;
 import org.springframework.data.domain.Page;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
 
 /**
  * 执行管理Service接口
@@ -20,6 +26,15 @@ public interface ExecutionService {
      */
     ExecutionLog execute(WorkflowExecuteDTO executeDTO);
 
+    /**
+     * 执行流程
+     *
+     * @param executeDTO  执行DTO
+     * @param triggerType 触发方式
+     * @return 执行记录
+     */
+    ExecutionLog execute(WorkflowExecuteDTO executeDTO, TriggerType triggerType);
+
     /**
      * 根据ID查询执行记录
      *
@@ -45,6 +60,61 @@ public interface ExecutionService {
      */
     String getLogs(Long id);
 
+    /**
+     * 获取执行日志（从指定分片之后开始拼接，用于增量读取）
+     *
+     * @param id       执行记录ID
+     * @param afterSeq 起始分片序号（不含），0表示从头读取
+     * @return 执行日志
+     */
+    String getLogs(Long id, int afterSeq);
+
+    /**
+     * 获取执行日志分片
+     *
+     * @param id       执行记录ID
+     * @param afterSeq 起始分片序号（不含），0表示从头读取
+     * @return 日志分片列表（按序号升序）
+     */
+    List<ExecutionLogChunk> getLogChunks(Long id, int afterSeq);
+
+    /**
+     * 订阅执行事件（SSE）
+     * 推送 node-started、stdout-line、node-finished、log、run-finished 事件
+     *
+     * @param id          执行记录ID
+     * @param lastEventId 已收到的最后事件ID（断线重连时使用），null表示从缓冲起点回放
+     * @return SSE连接
+     */
+    SseEmitter stream(Long id, Long lastEventId);
+
+    /**
+     * 获取执行的节点结果
+     *
+     * @param id 执行记录ID
+     * @return 节点结果列表
+     */
+    List<ExecutionNodeResult> getNodeResults(Long id);
+
+    /**
+     * 获取子流程执行记录
+     *
+     * @param id 父执行记录ID
+     * @return 子流程执行记录（不含日志）
+     */
+    List<ExecutionLog> getChildren(Long id);
+
+    /**
+     * 恢复失败或已取消的执行
+     * 复用已成功节点的输出，只重新执行失败的节点及其下游节点
+     *
+     * @param id                     执行记录ID
+     * @param timeoutSeconds         单个节点超时时间（秒），为空时使用默认值
+     * @param workflowTimeoutSeconds 整个流程最长执行时间（秒），为空时使用默认值
+     * @return 执行记录
+     */
+    ExecutionLog resume(Long id, Long timeoutSeconds, Long workflowTimeoutSeconds);
+
     /**
      * 取消执行
      *
@@ -0,0 +1,26 @@
+package cn.tannn.cat.block.service;
+
+/**
+ * 节点脚本执行失败
+ * 携带 {@link PythonScriptExecutor.ErrorType} 错误类型，供节点重试策略判断是否值得重试
+ *
+ * @author tnnn
+ */
+public class NodeExecutionException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String errorType;
+
+    public NodeExecutionException(String message, String errorType) {
+        super(message);
+        this.errorType = errorType != null ? errorType : PythonScriptExecutor.ErrorType.UNKNOWN;
+    }
+
+    /**
+     * 错误类型（{@link PythonScriptExecutor.ErrorType}）
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+}
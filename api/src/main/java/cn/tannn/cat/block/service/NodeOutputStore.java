@@ -0,0 +1,303 @@
+package cn.tannn.cat.block.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 节点大输出的文件存储
+ * 序列化后超过阈值的输出值按内容的 SHA-256 写入 ${root-path}/{前两位}/{摘要}.json，
+ * 节点输出、执行记录和日志中只保留引用 {"$blob": 摘要, "size": 字节数, "path": 文件路径}；
+ * 下游Python节点收到引用后通过内存映射读取文件，Java侧只在需要按字段路径提取或判断条件时才读取；
+ * Python脚本也可以调用 shared_output(value) 直接写入该目录（目录通过环境变量 {@value #ROOT_ENV} 传入），
+ * 数据只序列化一次，节点输出中只有引用；bytes/memoryview 按原始字节写入（format=raw，如 numpy 缓冲区、Arrow IPC），
+ * 下游拿到的是只读内存映射，不经过任何复制和解析；
+ * 超过保留时长未被再次写入的文件定期清理；
+ * 多实例部署时 root-path 必须是所有实例共享的目录（如 NFS），执行可能由其他实例接管、恢复或下载，
+ * 各实例按摘要在自己的挂载位置查找文件，引用中的 path 只在写入的实例上有效
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class NodeOutputStore {
+
+    /**
+     * 引用对象中的摘要字段，包含该字段的对象视为大输出引用（与Python包装脚本保持一致）
+     */
+    public static final String REF_KEY = "$blob";
+
+    /**
+     * 引用对象中的格式字段：json（默认）或 raw（原始字节）
+     */
+    public static final String FORMAT_KEY = "format";
+
+    public static final String FORMAT_RAW = "raw";
+
+    /**
+     * 传给Python进程的存储目录环境变量（与Python包装脚本、block_worker.py 保持一致）
+     */
+    public static final String ROOT_ENV = "BLOCKFLOW_OUTPUT_STORE";
+
+    /**
+     * 控制台输出单独记录到日志，不转存
+     */
+    private static final String CONSOLE_OUTPUT_KEY = "_console_output";
+
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+    private static final String JSON_SUFFIX = ".json";
+
+    private static final String RAW_SUFFIX = ".bin";
+
+    private final Path root;
+
+    /**
+     * 转存阈值（字节），小于等于0表示不转存
+     */
+    private final long thresholdBytes;
+
+    private final long retentionMillis;
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "node-output-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NodeOutputStore(@Value("${workflow.output-store.root-path:${python.env.root-path:${user.dir}/python-envs}/.outputs}") String rootPath,
+                           @Value("${workflow.output-store.threshold-bytes:1048576}") long thresholdBytes,
+                           @Value("${workflow.output-store.retention-hours:168}") long retentionHours) {
+        this.root = Paths.get(rootPath).toAbsolutePath();
+        this.thresholdBytes = thresholdBytes;
+        this.retentionMillis = Math.max(1, retentionHours) * 3600_000L;
+        cleaner.scheduleWithFixedDelay(this::cleanExpired, 10, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 将超过阈值的输出值转存为文件，原位置替换为引用
+     *
+     * @param output   节点输出
+     * @param sizeHint 输出序列化后的大小估计（如脚本输出的字符数），不超过阈值时直接返回；未知时传-1
+     * @return 转存后的输出（没有需要转存的值时返回原对象）
+     */
+    public JSONObject offload(JSONObject output, long sizeHint) {
+        if (output == null || thresholdBytes <= 0 || (sizeHint >= 0 && sizeHint <= thresholdBytes)) {
+            return output;
+        }
+        JSONObject offloaded = null;
+        for (Map.Entry<String, Object> entry : output.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null || value instanceof Number || value instanceof Boolean
+                    || CONSOLE_OUTPUT_KEY.equals(entry.getKey()) || isReference(value)) {
+                continue;
+            }
+            byte[] bytes = JSON.toJSONBytes(value);
+            if (bytes.length <= thresholdBytes) {
+                continue;
+            }
+            if (offloaded == null) {
+                offloaded = new JSONObject(output);
+            }
+            offloaded.put(entry.getKey(), store(bytes));
+        }
+        return offloaded != null ? offloaded : output;
+    }
+
+    /**
+     * 是否为大输出引用
+     */
+    public static boolean isReference(Object value) {
+        return value instanceof Map<?, ?> map && map.get(REF_KEY) instanceof String && map.containsKey("path");
+    }
+
+    /**
+     * 存储目录
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 引用读取为实际的值，非引用原样返回
+     *
+     * @throws IllegalStateException 文件不存在（已被清理）、读取失败或为原始字节格式
+     */
+    public Object resolve(Object value) {
+        if (!isReference(value)) {
+            return value;
+        }
+        Map<?, ?> reference = (Map<?, ?>) value;
+        String digest = (String) reference.get(REF_KEY);
+        if (FORMAT_RAW.equals(reference.get(FORMAT_KEY))) {
+            throw new IllegalStateException("原始字节格式的共享输出只能由Python节点读取，不支持按字段路径提取或条件判断: " + digest);
+        }
+        if (!DIGEST.matcher(digest).matches()) {
+            throw new IllegalStateException("无效的大输出引用: " + digest);
+        }
+        Path file = pathOf(digest, JSON_SUFFIX);
+        try {
+            return JSON.parse(Files.readAllBytes(file));
+        } catch (NoSuchFileException e) {
+            throw new IllegalStateException(missingMessage(digest));
+        } catch (IOException e) {
+            throw new IllegalStateException("读取大输出文件失败: " + digest + ", " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将引用中的文件路径替换为当前实例存储目录下的路径（传给Python节点前调用），非引用原样返回
+     *
+     * @throws IllegalStateException 当前实例的存储目录中没有该文件
+     */
+    public Object localize(Object value) {
+        if (!isReference(value)) {
+            return value;
+        }
+        Map<?, ?> reference = (Map<?, ?>) value;
+        String digest = (String) reference.get(REF_KEY);
+        Path file = find(digest);
+        if (file == null) {
+            throw new IllegalStateException(missingMessage(digest));
+        }
+        if (file.toString().equals(reference.get("path"))) {
+            return value;
+        }
+        JSONObject localized = new JSONObject();
+        reference.forEach((key, item) -> localized.put(String.valueOf(key), item));
+        localized.put("path", file.toString());
+        return localized;
+    }
+
+    /**
+     * 输出中引用的文件是否都在当前实例的存储目录中
+     */
+    public boolean isAvailable(Map<String, Object> output) {
+        if (output == null) {
+            return true;
+        }
+        for (Object value : output.values()) {
+            if (isReference(value) && find((String) ((Map<?, ?>) value).get(REF_KEY)) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 摘要对应的文件（JSON或原始字节，摘要格式无效或文件不存在时返回null）
+     */
+    public Path find(String digest) {
+        if (digest == null || !DIGEST.matcher(digest).matches()) {
+            return null;
+        }
+        for (String suffix : new String[]{JSON_SUFFIX, RAW_SUFFIX}) {
+            Path file = pathOf(digest, suffix);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否为原始字节格式的文件
+     */
+    public static boolean isRaw(Path file) {
+        return file.getFileName().toString().endsWith(RAW_SUFFIX);
+    }
+
+    private JSONObject store(byte[] bytes) {
+        String digest = sha256(bytes);
+        Path target = pathOf(digest, JSON_SUFFIX);
+        try {
+            if (Files.isRegularFile(target)) {
+                // 内容相同的输出已存在，刷新修改时间以延后清理
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                // 先写临时文件再原子改名，并发写入同一内容时不会读到半个文件
+                Path dir = target.getParent();
+                Files.createDirectories(dir);
+                Path temp = Files.createTempFile(dir, digest, ".tmp");
+                try {
+                    Files.write(temp, bytes);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    log.debug("大输出已由其他线程写入: {}", target);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("写入大输出文件失败: " + e.getMessage(), e);
+        }
+        log.debug("节点输出转存: {} ({} 字节)", target, bytes.length);
+
+        JSONObject reference = new JSONObject();
+        reference.put(REF_KEY, digest);
+        reference.put("size", bytes.length);
+        reference.put("path", target.toString());
+        return reference;
+    }
+
+    private static String missingMessage(String digest) {
+        return "大输出文件不存在或已过期清理: " + digest
+                + "（多实例部署时 workflow.output-store.root-path 必须是所有实例共享的目录）";
+    }
+
+    private Path pathOf(String digest, String suffix) {
+        return root.resolve(digest.substring(0, 2)).resolve(digest + suffix);
+    }
+
+    /**
+     * 清理超过保留时长的文件
+     */
+    private void cleanExpired() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - retentionMillis;
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (Files.getLastModifiedTime(file).toMillis() < expireBefore && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("清理大输出文件失败: {}", e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("清理过期的大输出文件: {} 个", deleted);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+}
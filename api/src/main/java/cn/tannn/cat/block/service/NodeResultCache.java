@@ -0,0 +1,179 @@
+package cn.tannn.cat.block.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点执行结果缓存
+ * 对开启了结果缓存的块（确定性脚本，如解析、查表），以 脚本 + Python环境ID + 规范化后的输入参数 的摘要为key
+ * 缓存成功执行的输出，相同输入再次执行时直接返回，不再启动Python进程；
+ * 条目按TTL过期，超过容量时按最近最少使用淘汰
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class NodeResultCache {
+
+    private final long defaultTtlMillis;
+
+    /**
+     * key: 缓存key, value: 缓存条目（按访问顺序淘汰）
+     */
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public NodeResultCache(@Value("${workflow.node-cache.max-entries:1024}") int maxEntries,
+                           @Value("${workflow.node-cache.default-ttl-seconds:300}") long defaultTtlSeconds) {
+        int capacity = Math.max(1, maxEntries);
+        this.defaultTtlMillis = Math.max(1, defaultTtlSeconds) * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 计算缓存key
+     * 输入参数按键排序后序列化，参数顺序不同的相同输入得到相同的key
+     *
+     * @param script      脚本内容
+     * @param pythonEnvId Python环境ID
+     * @param inputs      输入参数
+     * @return 缓存key
+     */
+    public String key(String script, Integer pythonEnvId, Map<String, Object> inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(script != null ? script.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+            digest.update((byte) 0);
+            digest.update(String.valueOf(pythonEnvId).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(JSON.toJSONBytes(inputs, JSONWriter.Feature.SortMapEntriesByKeys, JSONWriter.Feature.WriteMapNullValue));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 获取缓存的输出
+     *
+     * @param key 缓存key
+     * @return 输出结果（调用方不可修改），未命中或已过期时返回null
+     */
+    public JSONObject get(String key) {
+        long now = System.currentTimeMillis();
+        JSONObject output = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expireAt() > now) {
+                    output = entry.output();
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        (output != null ? hits : misses).incrementAndGet();
+        return output;
+    }
+
+    /**
+     * 缓存成功执行的输出
+     *
+     * @param key        缓存key
+     * @param output     输出结果，缓存后调用方不可再修改
+     * @param ttlSeconds 缓存时长（秒），为空或小于等于0时使用默认值
+     */
+    public void put(String key, JSONObject output, Integer ttlSeconds) {
+        if (output == null) {
+            return;
+        }
+        long ttlMillis = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds * 1000L : defaultTtlMillis;
+        synchronized (entries) {
+            entries.put(key, new Entry(output, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        log.info("节点结果缓存已清空");
+    }
+
+    /**
+     * 累计命中次数
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * 累计未命中次数
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(JSONObject output, long expireAt) {
+    }
+
+    /**
+     * 单次流程执行内的缓存命中统计（节点并行执行，计数需线程安全）
+     */
+    public static class RunStats {
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+
+        public void hit() {
+            hits.incrementAndGet();
+        }
+
+        public void miss() {
+            misses.incrementAndGet();
+        }
+
+        public int getHits() {
+            return hits.get();
+        }
+
+        public int getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * 是否有节点使用了结果缓存
+         */
+        public boolean isUsed() {
+            return hits.get() + misses.get() > 0;
+        }
+    }
+}
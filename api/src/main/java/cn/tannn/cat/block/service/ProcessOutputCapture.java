@@ -0,0 +1,436 @@
+package cn.tannn.cat.block.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Python进程输出流的有界捕获
+ * 普通输出只在内存中保留开头 headBytes 和结尾 tailBytes（环形缓冲），中间部分只计数；
+ * 以结果标记开头的行（结果帧）单独捕获，超过 spillThresholdBytes 后转写到临时文件，
+ * 结束后从内存或文件流式解析为 JSON，不会拼成一个完整的字符串；
+ * 以其他帧标记开头的行（如资源使用统计）按标记保存最后一帧（最多 headBytes）
+ * <p>
+ * 只由一个读取线程写入，读取完成（{@link #drain} 或 {@link #complete} 返回）后再由执行线程读取结果
+ *
+ * @author tnnn
+ */
+@Slf4j
+class ProcessOutputCapture implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final int headBytes;
+    private final int tailBytes;
+    private final long spillThresholdBytes;
+    private final long maxBytes;
+    private final Runnable onExceeded;
+
+    private final byte[] resultMarker;
+    private final byte[][] frameMarkers;
+    private final int maxMarkerLength;
+
+    // ========== 普通输出 ==========
+    private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+    private final byte[] tail;
+    private int tailPos;
+    private int tailSize;
+    private long consoleBytes;
+
+    // ========== 结果帧 ==========
+    private ByteArrayOutputStream resultBuffer;
+    private Path resultFile;
+    private OutputStream resultFileOut;
+    private long resultBytes = -1;
+
+    // ========== 其他帧 ==========
+    private final Map<String, String> frames = new HashMap<>();
+    private ByteArrayOutputStream frameBuffer;
+    private String frameMarker;
+
+    /**
+     * 行首尚未确定类型的字节（可能是标记的前缀）
+     */
+    private final ByteArrayOutputStream lineStart = new ByteArrayOutputStream();
+    private Mode mode = Mode.LINE_START;
+    private long totalBytes;
+    private boolean exceeded;
+
+    /**
+     * @param headBytes           普通输出保留的开头字节数
+     * @param tailBytes           普通输出保留的结尾字节数
+     * @param spillThresholdBytes 结果帧超过该大小后转写到临时文件
+     * @param maxBytes            最多读取的字节数（含结果帧），小于0表示不限制
+     * @param onExceeded          超过 maxBytes 时的回调（可为null），回调后停止读取
+     * @param resultMarker        结果帧标记（可为null）
+     * @param frameMarkers        其他帧标记
+     */
+    ProcessOutputCapture(int headBytes, int tailBytes, long spillThresholdBytes, long maxBytes, Runnable onExceeded,
+                         String resultMarker, String... frameMarkers) {
+        this.headBytes = Math.max(0, headBytes);
+        this.tailBytes = Math.max(0, tailBytes);
+        this.spillThresholdBytes = Math.max(0, spillThresholdBytes);
+        this.maxBytes = maxBytes;
+        this.onExceeded = onExceeded;
+        this.tail = new byte[this.tailBytes];
+        this.resultMarker = resultMarker != null ? resultMarker.getBytes(StandardCharsets.UTF_8) : null;
+        this.frameMarkers = new byte[frameMarkers.length][];
+        int maxLength = this.resultMarker != null ? this.resultMarker.length : 0;
+        for (int i = 0; i < frameMarkers.length; i++) {
+            this.frameMarkers[i] = frameMarkers[i].getBytes(StandardCharsets.UTF_8);
+            maxLength = Math.max(maxLength, this.frameMarkers[i].length);
+        }
+        this.maxMarkerLength = maxLength;
+    }
+
+    /**
+     * 读取输出流直到EOF（或超过 maxBytes）
+     */
+    void drain(InputStream stream, String name) {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try (InputStream in = stream) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                totalBytes += n;
+                if (maxBytes >= 0 && totalBytes > maxBytes) {
+                    exceeded = true;
+                    if (onExceeded != null) {
+                        onExceeded.run();
+                    }
+                    return;
+                }
+                accept(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            log.debug("读取{}结束: {}", name, e.getMessage());
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * 逐段写入输出（由调用方读取流的场景，如常驻工作进程的结果行），写完后调用 {@link #complete}
+     */
+    void write(byte[] buffer, int offset, int length) throws IOException {
+        totalBytes += length;
+        accept(buffer, offset, offset + length);
+    }
+
+    /**
+     * 结束逐段写入
+     */
+    void complete() {
+        finish();
+    }
+
+    private void accept(byte[] buffer, int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            if (mode == Mode.LINE_START) {
+                byte b = buffer[i++];
+                lineStart.write(b);
+                if (b == '\n') {
+                    writeConsole(lineStart.toByteArray());
+                    lineStart.reset();
+                } else {
+                    classifyLine();
+                }
+                continue;
+            }
+            int newline = indexOf(buffer, (byte) '\n', i, to);
+            int end = newline >= 0 ? newline : to;
+            switch (mode) {
+                case CONSOLE -> writeConsole(buffer, i, newline >= 0 ? end + 1 - i : end - i);
+                case RESULT -> writeResult(buffer, i, end - i);
+                case FRAME -> writeFrame(buffer, i, end - i);
+                default -> {
+                }
+            }
+            i = newline >= 0 ? end + 1 : end;
+            if (newline >= 0) {
+                endLine();
+            }
+        }
+    }
+
+    /**
+     * 根据行首字节判断行类型：完整匹配标记后进入帧模式，不可能再匹配任何标记时作为普通输出
+     */
+    private void classifyLine() throws IOException {
+        byte[] prefix = lineStart.toByteArray();
+        if (resultMarker != null && startsWith(prefix, resultMarker)) {
+            startResult();
+            lineStart.reset();
+            return;
+        }
+        for (byte[] marker : frameMarkers) {
+            if (startsWith(prefix, marker)) {
+                mode = Mode.FRAME;
+                frameMarker = new String(marker, StandardCharsets.UTF_8);
+                frameBuffer = new ByteArrayOutputStream();
+                lineStart.reset();
+                return;
+            }
+        }
+        if (prefix.length >= maxMarkerLength || !isMarkerPrefix(prefix)) {
+            mode = Mode.CONSOLE;
+            writeConsole(prefix);
+            lineStart.reset();
+        }
+    }
+
+    private void endLine() throws IOException {
+        if (mode == Mode.RESULT && resultFileOut != null) {
+            resultFileOut.flush();
+        } else if (mode == Mode.FRAME) {
+            frames.put(frameMarker, frameBuffer.toString(StandardCharsets.UTF_8));
+            frameBuffer = null;
+        }
+        mode = Mode.LINE_START;
+    }
+
+    private void finish() {
+        try {
+            if (mode == Mode.LINE_START && lineStart.size() > 0) {
+                writeConsole(lineStart.toByteArray());
+            } else if (mode != Mode.LINE_START) {
+                endLine();
+            }
+            if (resultFileOut != null) {
+                resultFileOut.close();
+                resultFileOut = null;
+            }
+        } catch (IOException e) {
+            log.debug("结束输出捕获失败: {}", e.getMessage());
+        }
+    }
+
+    // ========== 普通输出 ==========
+
+    private void writeConsole(byte[] bytes) {
+        writeConsole(bytes, 0, bytes.length);
+    }
+
+    private void writeConsole(byte[] bytes, int offset, int length) {
+        consoleBytes += length;
+        int toHead = Math.min(length, headBytes - head.size());
+        if (toHead > 0) {
+            head.write(bytes, offset, toHead);
+            offset += toHead;
+            length -= toHead;
+        }
+        if (length <= 0 || tail.length == 0) {
+            return;
+        }
+        // 只保留最后 tailBytes 个字节
+        if (length >= tail.length) {
+            System.arraycopy(bytes, offset + length - tail.length, tail, 0, tail.length);
+            tailPos = 0;
+            tailSize = tail.length;
+            return;
+        }
+        int first = Math.min(length, tail.length - tailPos);
+        System.arraycopy(bytes, offset, tail, tailPos, first);
+        System.arraycopy(bytes, offset + first, tail, 0, length - first);
+        tailPos = (tailPos + length) % tail.length;
+        tailSize = Math.min(tail.length, tailSize + length);
+    }
+
+    /**
+     * 普通输出文本，超出部分只保留开头和结尾
+     */
+    String text() {
+        String headText = head.toString(StandardCharsets.UTF_8);
+        if (tailSize == 0) {
+            return headText;
+        }
+        byte[] tailCopy = new byte[tailSize];
+        int start = (tailPos - tailSize + tail.length) % tail.length;
+        int first = Math.min(tailSize, tail.length - start);
+        System.arraycopy(tail, start, tailCopy, 0, first);
+        System.arraycopy(tail, 0, tailCopy, first, tailSize - first);
+        long omitted = consoleBytes - head.size() - tailSize;
+        String tailText = new String(tailCopy, StandardCharsets.UTF_8);
+        if (omitted <= 0) {
+            return headText + tailText;
+        }
+        return headText + "\n... 省略 " + omitted + " 字节 ...\n" + tailText;
+    }
+
+    /**
+     * 普通输出的总字节数
+     */
+    long consoleBytes() {
+        return consoleBytes;
+    }
+
+    // ========== 结果帧 ==========
+
+    private void startResult() throws IOException {
+        // 以最后一个结果帧为准
+        discardResult();
+        mode = Mode.RESULT;
+        resultBuffer = new ByteArrayOutputStream();
+        resultBytes = 0;
+    }
+
+    private void writeResult(byte[] bytes, int offset, int length) throws IOException {
+        resultBytes += length;
+        if (resultFileOut == null && resultBuffer.size() + length > spillThresholdBytes) {
+            resultFile = Files.createTempFile("python-result-", ".json");
+            resultFileOut = new BufferedOutputStream(Files.newOutputStream(resultFile));
+            resultBuffer.writeTo(resultFileOut);
+            resultBuffer = null;
+            log.debug("结果帧超过 {} 字节，转写到临时文件: {}", spillThresholdBytes, resultFile);
+        }
+        if (resultFileOut != null) {
+            resultFileOut.write(bytes, offset, length);
+        } else {
+            resultBuffer.write(bytes, offset, length);
+        }
+    }
+
+    private void discardResult() throws IOException {
+        if (resultFileOut != null) {
+            resultFileOut.close();
+            resultFileOut = null;
+        }
+        if (resultFile != null) {
+            Files.deleteIfExists(resultFile);
+            resultFile = null;
+        }
+        resultBuffer = null;
+        resultBytes = -1;
+    }
+
+    boolean hasResult() {
+        return resultBytes >= 0;
+    }
+
+    /**
+     * 结果帧的字节数，没有结果帧时返回-1
+     */
+    long resultBytes() {
+        return resultBytes;
+    }
+
+    /**
+     * 流式解析结果帧
+     *
+     * @return 结果对象，没有结果帧时返回null
+     * @throws com.alibaba.fastjson2.JSONException 结果帧不是JSON对象
+     */
+    JSONObject parseResult() throws IOException {
+        if (!hasResult()) {
+            return null;
+        }
+        try (InputStream in = openResult(); JSONReader reader = JSONReader.of(in, StandardCharsets.UTF_8)) {
+            return reader.readJSONObject();
+        }
+    }
+
+    /**
+     * 结果帧文本（超过 maxBytes 时截断），没有结果帧时返回null
+     */
+    String resultText(int maxBytes) throws IOException {
+        if (!hasResult()) {
+            return null;
+        }
+        try (InputStream in = openResult()) {
+            byte[] bytes = in.readNBytes(maxBytes);
+            String text = new String(bytes, StandardCharsets.UTF_8).trim();
+            return resultBytes > maxBytes ? text + "... (共 " + resultBytes + " 字节)" : text;
+        }
+    }
+
+    private InputStream openResult() throws IOException {
+        return resultFile != null
+                ? new BufferedInputStream(Files.newInputStream(resultFile))
+                : new ByteArrayInputStream(resultBuffer.toByteArray());
+    }
+
+    // ========== 其他帧 ==========
+
+    private void writeFrame(byte[] bytes, int offset, int length) {
+        int allowed = Math.min(length, headBytes - frameBuffer.size());
+        if (allowed > 0) {
+            frameBuffer.write(bytes, offset, allowed);
+        }
+    }
+
+    /**
+     * 指定标记的最后一帧内容，没有时返回null
+     */
+    String frame(String marker) {
+        return frames.get(marker);
+    }
+
+    /**
+     * 是否因超过 maxBytes 停止读取
+     */
+    boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * 删除结果帧的临时文件
+     */
+    @Override
+    public void close() {
+        try {
+            discardResult();
+        } catch (IOException e) {
+            log.debug("删除结果帧临时文件失败: {}", e.getMessage());
+        }
+    }
+
+    private boolean isMarkerPrefix(byte[] prefix) {
+        if (resultMarker != null && startsWith(resultMarker, prefix)) {
+            return true;
+        }
+        for (byte[] marker : frameMarkers) {
+            if (startsWith(marker, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, byte target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private enum Mode {
+        /**
+         * 行首，尚未确定类型
+         */
+        LINE_START,
+        CONSOLE,
+        RESULT,
+        FRAME
+    }
+}
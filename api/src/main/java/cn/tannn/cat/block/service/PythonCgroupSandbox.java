@@ -0,0 +1,206 @@
+package cn.tannn.cat.block.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Python脚本进程的 cgroup v2 资源限制（仅Linux）
+ * 配置 python.sandbox.cgroup-root 为一个已委派给服务用户的 cgroup v2 目录
+ * （如 systemd 的 Delegate=yes 服务目录下的子目录，且 cgroup.subtree_control 已开启 memory、cpu、pids 控制器），
+ * 每个受限的脚本进程在其下创建独立的子 cgroup，执行结束后读取峰值内存和CPU时间并删除；
+ * 未配置或目录不可用时不做 cgroup 限制，仅依赖脚本进程内的 setrlimit
+ * <p>
+ * 进程只能在启动之后按 pid 加入 cgroup，为了让解释器启动（包括 site-packages 中的 .pth、sitecustomize）
+ * 也受限制，受限进程通过 {@link #gate} 由 /bin/sh 启动：shell 先从标准输入读取一行放行信号，
+ * 执行器在 {@link #attach} 完成后写入放行行，shell 再 exec 解释器（pid 不变，已在 cgroup 中）
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class PythonCgroupSandbox {
+
+    /**
+     * cpu.max 的周期（微秒）
+     */
+    private static final long CPU_PERIOD_MICROS = 100_000;
+
+    /**
+     * 放行信号（写入 gate 包装后进程的标准输入）
+     */
+    static final byte[] RELEASE = {'\n'};
+
+    private final Path root;
+
+    public PythonCgroupSandbox(@Value("${python.sandbox.cgroup-root:}") String cgroupRoot) {
+        Path path = null;
+        if (StringUtils.hasText(cgroupRoot)) {
+            path = Paths.get(cgroupRoot);
+            if (!Files.isWritable(path.resolve("cgroup.subtree_control"))) {
+                log.warn("cgroup目录不可用（不存在、不是cgroup v2或未委派写权限），仅使用setrlimit限制资源: {}", cgroupRoot);
+                path = null;
+            } else {
+                log.info("Python脚本cgroup资源限制已启用: {}", cgroupRoot);
+            }
+        }
+        this.root = path;
+    }
+
+    public boolean isEnabled() {
+        return root != null;
+    }
+
+    /**
+     * 是否需要为该执行加入 cgroup（启用且有资源限制时）
+     */
+    public boolean applies(ResourceLimits limits) {
+        return root != null && limits != null;
+    }
+
+    /**
+     * 包装启动命令：由 /bin/sh 先等待标准输入中的一行放行信号再 exec 原命令，
+     * 调用方在 {@link #attach} 之后、写入其他标准输入之前写入 {@link #RELEASE}
+     *
+     * @param command 原启动命令
+     * @return 包装后的启动命令
+     */
+    public List<String> gate(List<String> command) {
+        List<String> gated = new ArrayList<>(command.size() + 3);
+        gated.add("/bin/sh");
+        gated.add("-c");
+        // read 从管道逐字节读取，不会多读放行行之后的输入参数
+        gated.add("read -r _blockflow_release && exec \"$0\" \"$@\"");
+        gated.addAll(command);
+        return gated;
+    }
+
+    /**
+     * 为进程创建子 cgroup 并写入限制（进程启动后立即调用，之后启动的子进程会继承该 cgroup）；
+     * 未经 {@link #gate} 启动的进程在加入之前已执行的部分不受限制
+     *
+     * @param process 脚本进程
+     * @param limits  资源限制
+     * @return cgroup，未启用或创建失败时返回null
+     */
+    public Cgroup attach(Process process, ResourceLimits limits) {
+        if (root == null || limits == null) {
+            return null;
+        }
+        Path dir = root.resolve("blockflow-" + process.pid());
+        try {
+            Files.createDirectories(dir);
+            Cgroup cgroup = new Cgroup(dir);
+            if (limits.memoryMb() != null) {
+                cgroup.write("memory.max", String.valueOf(limits.memoryMb() * 1024 * 1024));
+                cgroup.writeOptional("memory.swap.max", "0");
+            }
+            if (limits.cpuQuota() != null) {
+                long quota = Math.max(1000, (long) (limits.cpuQuota() * CPU_PERIOD_MICROS));
+                cgroup.write("cpu.max", quota + " " + CPU_PERIOD_MICROS);
+            }
+            if (limits.maxProcesses() != null) {
+                cgroup.write("pids.max", String.valueOf(limits.maxProcesses()));
+            }
+            cgroup.write("cgroup.procs", String.valueOf(process.pid()));
+            return cgroup;
+        } catch (IOException e) {
+            log.warn("创建cgroup失败，仅使用setrlimit限制资源: {}, {}", dir, e.getMessage());
+            try {
+                Files.deleteIfExists(dir);
+            } catch (IOException ignored) {
+                // 目录中仍有进程时无法删除，由后续执行覆盖
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 进程的子 cgroup
+     */
+    public static class Cgroup {
+        private final Path dir;
+
+        Cgroup(Path dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * 峰值内存（KB），内核不支持 memory.peak（5.19 之前）时返回null
+         */
+        public Long peakMemoryKb() {
+            String value = read("memory.peak");
+            try {
+                return value != null ? Long.parseLong(value.trim()) / 1024 : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * CPU时间（毫秒）
+         */
+        public Long cpuTimeMillis() {
+            String stat = read("cpu.stat");
+            if (stat == null) {
+                return null;
+            }
+            return stat.lines()
+                    .filter(line -> line.startsWith("usage_usec "))
+                    .findFirst()
+                    .map(line -> Long.parseLong(line.substring("usage_usec ".length()).trim()) / 1000)
+                    .orElse(null);
+        }
+
+        /**
+         * 是否因超出内存限制被内核终止
+         */
+        public boolean isOomKilled() {
+            String events = read("memory.events");
+            return events != null && events.lines()
+                    .anyMatch(line -> line.startsWith("oom_kill ") && !line.endsWith(" 0"));
+        }
+
+        /**
+         * 删除 cgroup（进程树已全部退出后调用）
+         */
+        public void remove() {
+            try {
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                log.debug("删除cgroup失败: {}, {}", dir, e.getMessage());
+            }
+        }
+
+        private void write(String file, String value) throws IOException {
+            Files.writeString(dir.resolve(file), value);
+        }
+
+        /**
+         * 写入可选的控制文件（如未开启swap时没有 memory.swap.max）
+         */
+        private void writeOptional(String file, String value) {
+            try {
+                write(file, value);
+            } catch (IOException e) {
+                log.debug("写入cgroup控制文件失败: {}, {}", file, e.getMessage());
+            }
+        }
+
+        private String read(String file) {
+            try {
+                return Files.readString(dir.resolve(file));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.PythonEnvironment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Python脚本执行的并发控制与公平调度
+ * 全局最多同时执行 python.scheduler.max-concurrency 个脚本，每个环境最多同时执行 maxConcurrency 个（环境上配置，
+ * 未配置时使用 python.scheduler.default-env-concurrency）；
+ * 没有空闲名额时进入等待队列，名额释放后按环境的调度权重 scheduleWeight 做赤字轮转（DRR）：
+ * 每轮每个有排队的环境可放行 weight 个，已达到自身并发上限的环境跳过本轮；
+ * 同一环境内按执行用户轮转，避免单个用户的大批量执行占满环境
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class PythonExecutionScheduler {
+
+    /**
+     * 未绑定用户的执行（如块测试）归入的用户队列
+     */
+    private static final String ANONYMOUS = "";
+
+    private final boolean enabled;
+
+    /**
+     * 全局并发上限
+     */
+    private final int maxConcurrency;
+
+    /**
+     * 环境未配置并发上限时的默认值，小于等于0表示只受全局上限约束
+     */
+    private final int defaultEnvConcurrency;
+
+    /**
+     * 最长排队时间（毫秒）
+     */
+    private final long queueTimeoutMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * key: 环境ID
+     */
+    private final Map<Integer, EnvQueue> queues = new HashMap<>();
+
+    /**
+     * 有排队请求的环境，按轮转顺序排列
+     */
+    private final ArrayDeque<EnvQueue> activeQueues = new ArrayDeque<>();
+
+    private int running;
+
+    private int queued;
+
+    public PythonExecutionScheduler(@Value("${python.scheduler.enabled:true}") boolean enabled,
+                                    @Value("${python.scheduler.max-concurrency:0}") int maxConcurrency,
+                                    @Value("${python.scheduler.default-env-concurrency:0}") int defaultEnvConcurrency,
+                                    @Value("${python.scheduler.queue-timeout-seconds:600}") long queueTimeoutSeconds) {
+        this.enabled = enabled;
+        this.maxConcurrency = maxConcurrency > 0 ? maxConcurrency : Runtime.getRuntime().availableProcessors() * 2;
+        this.defaultEnvConcurrency = defaultEnvConcurrency;
+        this.queueTimeoutMillis = Math.max(1, queueTimeoutSeconds) * 1000;
+        if (enabled) {
+            log.info("Python脚本并发调度已启用，全局并发上限: {}, 环境默认并发上限: {}", this.maxConcurrency,
+                    defaultEnvConcurrency > 0 ? defaultEnvConcurrency : "不限");
+        }
+    }
+
+    /**
+     * 获取执行名额，没有空闲名额时排队等待（可被中断，如流程被取消）
+     *
+     * @param environment Python环境
+     * @param username    执行用户（可为null）
+     * @return 执行名额，执行结束后必须 close
+     * @throws TimeoutException     排队超过 python.scheduler.queue-timeout-seconds
+     * @throws InterruptedException 等待时被中断
+     */
+    public Permit acquire(PythonEnvironment environment, String username) throws TimeoutException, InterruptedException {
+        if (!enabled || environment.getId() == null) {
+            return Permit.NONE;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            EnvQueue queue = queues.computeIfAbsent(environment.getId(), EnvQueue::new);
+            queue.configure(environment, defaultEnvConcurrency);
+            if (queued == 0 && running < maxConcurrency && queue.hasCapacity()) {
+                grant(queue, 0);
+                return new Permit(this, queue, 0);
+            }
+
+            Waiter waiter = new Waiter(lock.newCondition(), start);
+            queue.enqueue(username != null ? username : ANONYMOUS, waiter);
+            if (queue.size() == 1) {
+                activeQueues.addLast(queue);
+            }
+            queued++;
+            dispatch();
+
+            long remaining = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis) - (System.nanoTime() - start);
+            try {
+                while (!waiter.granted && remaining > 0) {
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (!waiter.granted) {
+                    cancel(queue, waiter);
+                    throw e;
+                }
+                // 已获得名额时保留中断状态，由调用方在执行中响应
+                Thread.currentThread().interrupt();
+            }
+            if (!waiter.granted) {
+                cancel(queue, waiter);
+                throw new TimeoutException("等待执行名额超时（" + queueTimeoutMillis / 1000 + "秒），环境 "
+                        + environment.getName() + " 当前排队 " + queue.size() + " 个");
+            }
+            return new Permit(this, queue, waiter.waitMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 各环境的调度统计
+     */
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            List<EnvStats> environments = new ArrayList<>();
+            for (EnvQueue queue : queues.values()) {
+                environments.add(queue.stats());
+            }
+            environments.sort(Comparator.comparing(EnvStats::envId));
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("enabled", enabled);
+            stats.put("maxConcurrency", maxConcurrency);
+            stats.put("running", running);
+            stats.put("queued", queued);
+            stats.put("environments", environments);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(EnvQueue queue) {
+        lock.lock();
+        try {
+            running--;
+            queue.running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按赤字轮转放行排队的请求，直到没有空闲名额或剩余排队的环境都已达到自身并发上限（调用方持有锁）
+     */
+    private void dispatch() {
+        int blocked = 0;
+        while (running < maxConcurrency && !activeQueues.isEmpty() && blocked < activeQueues.size()) {
+            EnvQueue queue = activeQueues.peekFirst();
+            if (!queue.hasCapacity()) {
+                // 达到环境并发上限，放弃本轮，不累积赤字
+                queue.deficit = 0;
+                activeQueues.addLast(activeQueues.pollFirst());
+                blocked++;
+                continue;
+            }
+            if (queue.deficit <= 0) {
+                queue.deficit += queue.weight;
+            }
+            Waiter waiter = queue.poll();
+            queued--;
+            waiter.waitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiter.enqueuedAt);
+            waiter.granted = true;
+            grant(queue, waiter.waitMillis);
+            waiter.condition.signal();
+            queue.deficit--;
+            blocked = 0;
+
+            if (queue.size() == 0) {
+                activeQueues.pollFirst();
+                queue.deficit = 0;
+            } else if (queue.deficit <= 0) {
+                activeQueues.addLast(activeQueues.pollFirst());
+            }
+        }
+    }
+
+    private void grant(EnvQueue queue, long waitMillis) {
+        running++;
+        queue.running++;
+        queue.acquired++;
+        queue.totalWaitMillis += waitMillis;
+        queue.maxWaitMillis = Math.max(queue.maxWaitMillis, waitMillis);
+    }
+
+    /**
+     * 放弃排队（超时或被中断，调用方持有锁）
+     */
+    private void cancel(EnvQueue queue, Waiter waiter) {
+        if (queue.remove(waiter)) {
+            queued--;
+            queue.abandoned++;
+            if (queue.size() == 0) {
+                activeQueues.remove(queue);
+                queue.deficit = 0;
+            }
+        }
+    }
+
+    /**
+     * 执行名额
+     */
+    public static final class Permit implements AutoCloseable {
+
+        /**
+         * 未启用调度时的空名额
+         */
+        static final Permit NONE = new Permit(null, null, 0);
+
+        private final PythonExecutionScheduler scheduler;
+        private final EnvQueue queue;
+        private final long waitMillis;
+        private boolean released;
+
+        private Permit(PythonExecutionScheduler scheduler, EnvQueue queue, long waitMillis) {
+            this.scheduler = scheduler;
+            this.queue = queue;
+            this.waitMillis = waitMillis;
+        }
+
+        /**
+         * 排队等待时间（毫秒）
+         */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        @Override
+        public void close() {
+            if (scheduler != null && !released) {
+                released = true;
+                scheduler.release(queue);
+            }
+        }
+    }
+
+    /**
+     * 环境的调度统计
+     *
+     * @param envId          环境ID
+     * @param envName        环境名称
+     * @param weight         调度权重
+     * @param maxConcurrency 并发上限，0表示只受全局上限约束
+     * @param running        正在执行数
+     * @param queued         排队数（队列深度）
+     * @param acquired       累计放行数
+     * @param abandoned      累计排队超时/取消数
+     * @param avgWaitMillis  平均排队时间（毫秒）
+     * @param maxWaitMillis  最长排队时间（毫秒）
+     */
+    public record EnvStats(Integer envId, String envName, int weight, int maxConcurrency, int running, int queued,
+                           long acquired, long abandoned, long avgWaitMillis, long maxWaitMillis) {
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private final long enqueuedAt;
+        private boolean granted;
+        private long waitMillis;
+
+        private Waiter(Condition condition, long enqueuedAt) {
+            this.condition = condition;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * 环境的排队队列（内部按用户轮转，所有字段在调度器的锁内访问）
+     */
+    private static final class EnvQueue {
+        private final Integer envId;
+        private String envName;
+        private int weight = 1;
+        private int maxConcurrency;
+        private int deficit;
+        private int running;
+        private int size;
+        private long acquired;
+        private long abandoned;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+
+        /**
+         * key: 用户，轮转顺序为插入顺序，取出一个请求后该用户移到末尾
+         */
+        private final LinkedHashMap<String, ArrayDeque<Waiter>> users = new LinkedHashMap<>();
+
+        private EnvQueue(Integer envId) {
+            this.envId = envId;
+        }
+
+        /**
+         * 每次获取名额时按环境的最新配置更新权重和并发上限
+         */
+        private void configure(PythonEnvironment environment, int defaultConcurrency) {
+            envName = environment.getName();
+            weight = environment.getScheduleWeight() != null && environment.getScheduleWeight() > 0
+                    ? environment.getScheduleWeight() : 1;
+            maxConcurrency = environment.getMaxConcurrency() != null && environment.getMaxConcurrency() > 0
+                    ? environment.getMaxConcurrency() : Math.max(0, defaultConcurrency);
+        }
+
+        private boolean hasCapacity() {
+            return maxConcurrency <= 0 || running < maxConcurrency;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void enqueue(String user, Waiter waiter) {
+            users.computeIfAbsent(user, k -> new ArrayDeque<>()).addLast(waiter);
+            size++;
+        }
+
+        private Waiter poll() {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> iterator = users.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> first = iterator.next();
+            Waiter waiter = first.getValue().pollFirst();
+            iterator.remove();
+            if (!first.getValue().isEmpty()) {
+                users.put(first.getKey(), first.getValue());
+            }
+            size--;
+            return waiter;
+        }
+
+        private boolean remove(Waiter waiter) {
+            for (Iterator<ArrayDeque<Waiter>> iterator = users.values().iterator(); iterator.hasNext(); ) {
+                ArrayDeque<Waiter> waiters = iterator.next();
+                if (waiters.remove(waiter)) {
+                    if (waiters.isEmpty()) {
+                        iterator.remove();
+                    }
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private EnvStats stats() {
+            return new EnvStats(envId, envName, weight, maxConcurrency, running, size, acquired, abandoned,
+                    acquired > 0 ? totalWaitMillis / acquired : 0, maxWaitMillis);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.PythonEnvironment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * 包装后Python脚本的磁盘缓存
+ * 块脚本按 (包装器版本, 用户脚本) 的 SHA-256 命名存放在 ${python.env.root-path}/.scripts 下，
+ * 相同块重复执行时直接复用已有文件，不再拼装包装脚本，也不再产生任何写入；
+ * 每个环境的解释器还会把包装脚本编译为 .pyc（存放在 .scripts/pyc/{环境ID}-{解释器修改时间} 下，
+ * 解释器升级后自动换目录），之后直接执行字节码，省去每次的编译；
+ * 命中缓存时刷新文件修改时间，超过 python.script-cache.retention-hours 未使用的脚本和字节码定期清理
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class PythonScriptCache {
+
+    /**
+     * 编译字节码：py_compile 先写临时文件再改名，并发编译同一脚本时不会读到半个文件
+     */
+    private static final String COMPILE_COMMAND =
+            "import py_compile, sys; py_compile.compile(sys.argv[1], cfile=sys.argv[2], doraise=True)";
+
+    private static final long COMPILE_TIMEOUT_SECONDS = 30;
+
+    @Value("${python.env.root-path:${user.dir}/python-envs}")
+    private String pythonEnvRootPath;
+
+    /**
+     * 是否预编译字节码
+     */
+    @Value("${python.script-cache.precompile:true}")
+    private boolean precompile;
+
+    /**
+     * 缓存文件的保留时长（小时），超过该时长未使用的文件被清理
+     */
+    @Value("${python.script-cache.retention-hours:168}")
+    private long retentionHours;
+
+    /**
+     * 正在编译的字节码文件，避免重复提交
+     */
+    private final Set<Path> compiling = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 编译字节码、预热缓存和定期清理共用的后台线程
+     */
+    private final ScheduledExecutorService compiler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "python-script-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void scheduleCleanup() {
+        compiler.scheduleWithFixedDelay(this::cleanExpired, 10, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 获取块脚本包装后的缓存文件，不存在时调用包装器生成并写入
+     *
+     * @param userScript     块脚本
+     * @param wrapperVersion 包装器版本（包装逻辑变化后旧的缓存不再命中）
+     * @param wrapper        包装器
+     * @return 包装后的脚本文件路径
+     * @throws IOException 写入失败
+     */
+    public Path resolveWrapped(String userScript, String wrapperVersion, UnaryOperator<String> wrapper) throws IOException {
+        String key = sha256((wrapperVersion + "\n" + userScript).getBytes(StandardCharsets.UTF_8));
+        Path target = scriptDir().resolve(key + ".py");
+        if (!Files.isRegularFile(target)) {
+            String wrapped = wrapper.apply(userScript);
+            if (log.isDebugEnabled()) {
+                log.debug("包装后的完整Python脚本:\n{}", wrapped);
+            }
+            write(target, wrapped.getBytes(StandardCharsets.UTF_8));
+        } else {
+            touch(target);
+        }
+        return target;
+    }
+
+    /**
+     * 获取脚本在该环境下已编译的字节码文件
+     *
+     * @param source      脚本文件（resolveWrapped 的返回值）
+     * @param environment Python环境
+     * @return 字节码文件，尚未编译或未开启预编译时返回null
+     */
+    public Path compiled(Path source, PythonEnvironment environment) {
+        if (!precompile) {
+            return null;
+        }
+        Path target = bytecodeFile(source, environment);
+        if (target == null || !Files.isRegularFile(target)) {
+            return null;
+        }
+        touch(target);
+        return target;
+    }
+
+    /**
+     * 在后台用该环境的解释器将脚本编译为字节码（已编译或正在编译时忽略）
+     *
+     * @param source      脚本文件
+     * @param environment Python环境
+     */
+    public void compileAsync(Path source, PythonEnvironment environment) {
+        if (!precompile) {
+            return;
+        }
+        Path target = bytecodeFile(source, environment);
+        if (target == null || Files.isRegularFile(target) || !compiling.add(target)) {
+            return;
+        }
+        try {
+            compiler.execute(() -> {
+                try {
+                    compile(source, target, environment);
+                } finally {
+                    compiling.remove(target);
+                }
+            });
+        } catch (RuntimeException e) {
+            compiling.remove(target);
+            log.debug("提交字节码编译失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台执行任务（用于保存块时预热缓存，不阻塞保存）
+     */
+    public void submit(Runnable task) {
+        if (!precompile) {
+            return;
+        }
+        try {
+            compiler.execute(task);
+        } catch (RuntimeException e) {
+            log.debug("提交预热任务失败: {}", e.getMessage());
+        }
+    }
+
+    private void compile(Path source, Path target, PythonEnvironment environment) {
+        Process process = null;
+        try {
+            Files.createDirectories(target.getParent());
+            ProcessBuilder pb = new ProcessBuilder(environment.getPythonExecutable(), "-c", COMPILE_COMMAND,
+                    source.toString(), target.toString());
+            PythonScriptExecutor.configureEnvironment(pb, environment, null);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            process = pb.start();
+            if (!process.waitFor(COMPILE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("编译Python字节码超时: {}", source);
+            } else if (process.exitValue() != 0) {
+                // 语法错误等，执行时照常运行源码并报告错误
+                log.debug("编译Python字节码失败，退出码: {}, 脚本: {}", process.exitValue(), source);
+            } else {
+                log.debug("编译Python字节码: {}", target);
+            }
+        } catch (IOException e) {
+            log.warn("编译Python字节码失败: {}, {}", source, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * 字节码文件路径：目录名包含解释器文件的修改时间，环境的运行时被替换后不会用到旧版本解释器编译的字节码
+     */
+    private Path bytecodeFile(Path source, PythonEnvironment environment) {
+        if (environment.getId() == null || environment.getPythonExecutable() == null) {
+            return null;
+        }
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(Paths.get(environment.getPythonExecutable())).toMillis();
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+        String name = source.getFileName().toString().replace(".py", ".pyc");
+        return scriptDir().resolve("pyc").resolve(environment.getId() + "-" + Long.toHexString(modified)).resolve(name);
+    }
+
+    /**
+     * 刷新命中文件的修改时间，使正在使用的缓存不会被清理
+     * 只在距上次刷新超过保留时长的 1/4 时写入，重复执行基本不产生文件系统写入
+     */
+    private void touch(Path file) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > retentionMillis() / 4) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            log.debug("刷新脚本缓存修改时间失败: {}, {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 清理超过保留时长未使用的包装脚本和字节码，以及清理后为空的字节码目录（如已替换的解释器版本）
+     */
+    private void cleanExpired() {
+        Path root = scriptDir();
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - retentionMillis();
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (Files.getLastModifiedTime(file).toMillis() < expireBefore && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("清理Python脚本缓存失败: {}", e.getMessage());
+        }
+        Path pycRoot = root.resolve("pyc");
+        if (Files.isDirectory(pycRoot)) {
+            try (Stream<Path> dirs = Files.list(pycRoot)) {
+                for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                    try (Stream<Path> entries = Files.list(dir)) {
+                        if (entries.findAny().isEmpty()) {
+                            Files.deleteIfExists(dir);
+                        }
+                    } catch (IOException e) {
+                        // 并发写入了新的字节码，下次再清理
+                        log.debug("清理字节码目录失败: {}, {}", dir, e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("清理Python字节码目录失败: {}", e.getMessage());
+            }
+        }
+        if (deleted > 0) {
+            log.info("清理过期的Python脚本缓存: {} 个", deleted);
+        }
+    }
+
+    private long retentionMillis() {
+        return Math.max(1, retentionHours) * 3600_000L;
+    }
+
+    private Path scriptDir() {
+        return Paths.get(pythonEnvRootPath, ".scripts");
+    }
+
+    /**
+     * 先写临时文件再原子改名，并发写入同一脚本时不会读到半个文件
+     */
+    private void write(Path target, byte[] bytes) throws IOException {
+        Path dir = target.getParent();
+        Files.createDirectories(dir);
+        String name = target.getFileName().toString();
+        Path temp = Files.createTempFile(dir, name.substring(0, name.lastIndexOf('.')), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("缓存Python脚本: {}", target);
+        } catch (FileAlreadyExistsException e) {
+            log.debug("Python脚本已由其他线程缓存: {}", target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compiler.shutdownNow();
+    }
+}
@@ -4,16 +4,24 @@ import cn.tannn.cat.block.entity.PythonEnvironment;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONException;
 import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Python脚本执行器
@@ -26,12 +34,215 @@ import java.util.concurrent.TimeUnit;
 public class PythonScriptExecutor {
 
     private final PythonEnvironmentService pythonEnvironmentService;
+    private final PythonWorkerPool pythonWorkerPool;
+    private final PythonScriptCache pythonScriptCache;
+    private final NodeOutputStore nodeOutputStore;
+    private final PythonCgroupSandbox cgroupSandbox;
+    private final PythonExecutionScheduler scheduler;
+
+    /**
+     * 标准输出/错误输出在内存中保留的开头、结尾字节数（超出部分只计数）
+     */
+    private final int outputHeadBytes;
+    private final int outputTailBytes;
+
+    /**
+     * 结果帧超过该大小后转写到临时文件
+     */
+    private final long resultSpillThresholdBytes;
+
+    /**
+     * 包装器版本：空脚本包装结果的哈希，包装逻辑（含各辅助函数）变化后自动改变，旧的脚本缓存不再命中
+     */
+    private final String wrapperVersion;
+
+    /**
+     * 共享输出函数（与 python/block_worker.py 保持一致）
+     * 数据写入节点输出存储目录并返回引用，下游节点通过内存映射读取
+     */
+    private static final String SHARED_OUTPUT_HELPER = """
+            def shared_output(value):
+                \"""将数据写入共享存储，节点之间只传递引用；bytes/bytearray/memoryview 按原始字节写入，其余按JSON序列化一次\"""
+                import hashlib, os, tempfile
+                _root = os.environ.get('%s')
+                if not _root:
+                    raise RuntimeError('未配置共享输出存储目录')
+                if isinstance(value, (bytes, bytearray, memoryview)):
+                    _data, _format, _suffix = memoryview(value).cast('B'), 'raw', '.bin'
+                else:
+                    _data, _format, _suffix = json.dumps(value, ensure_ascii=False).encode('utf-8'), 'json', '.json'
+                _digest = hashlib.sha256(_data).hexdigest()
+                _dir = os.path.join(_root, _digest[:2])
+                _target = os.path.join(_dir, _digest + _suffix)
+                if os.path.exists(_target):
+                    os.utime(_target)
+                else:
+                    os.makedirs(_dir, exist_ok=True)
+                    _fd, _temp = tempfile.mkstemp(prefix=_digest, suffix='.tmp', dir=_dir)
+                    try:
+                        with os.fdopen(_fd, 'wb') as _f:
+                            _f.write(_data)
+                        os.replace(_temp, _target)
+                    finally:
+                        if os.path.exists(_temp):
+                            os.remove(_temp)
+                return {'%s': _digest, 'size': len(_data), 'path': _target, '%s': _format}
+            """.formatted(NodeOutputStore.ROOT_ENV, NodeOutputStore.REF_KEY, NodeOutputStore.FORMAT_KEY);
 
     // 默认超时时间：60秒
     private static final long DEFAULT_TIMEOUT = 60;
 
-    public PythonScriptExecutor(PythonEnvironmentService pythonEnvironmentService) {
+    /**
+     * 资源使用帧标记：包装脚本在结果帧之前写出 getrusage 统计
+     */
+    private static final String USAGE_MARKER = "@@BLOCKFLOW_USAGE@@";
+
+    /**
+     * 传给包装脚本的 setrlimit 配置环境变量
+     */
+    private static final String RLIMITS_ENV = "BLOCKFLOW_RLIMITS";
+
+    /**
+     * 被信号终止的进程退出码为 128 + 信号值：SIGKILL（cgroup OOM）、SIGXCPU（超出 RLIMIT_CPU）
+     */
+    private static final int EXIT_SIGKILL = 128 + 9;
+    private static final int EXIT_SIGXCPU = 128 + 24;
+
+    /**
+     * 脚本 print 输出的捕获（与 python/block_worker.py 保持一致）
+     * 只保留开头和结尾各 64K 字符，避免大量 print 撑满脚本进程内存和结果帧
+     */
+    private static final String CONSOLE_HELPER = """
+            class _BoundedConsole(io.TextIOBase):
+                def __init__(self, head=65536, tail=65536):
+                    super().__init__()
+                    self._head_limit, self._tail_limit = head, tail
+                    self._head, self._tail, self._dropped = io.StringIO(), '', 0
+
+                def writable(self):
+                    return True
+
+                def write(self, s):
+                    _size = len(s)
+                    _room = self._head_limit - self._head.tell()
+                    if _room > 0:
+                        self._head.write(s[:_room])
+                        s = s[_room:]
+                    if s:
+                        self._tail += s
+                        if len(self._tail) > self._tail_limit:
+                            self._dropped += len(self._tail) - self._tail_limit
+                            self._tail = self._tail[-self._tail_limit:]
+                    return _size
+
+                def getvalue(self):
+                    if self._dropped:
+                        return f'{self._head.getvalue()}\\n... 省略 {self._dropped} 个字符 ...\\n{self._tail}'
+                    return self._head.getvalue() + self._tail
+            """;
+
+    /**
+     * 资源限制与使用统计（resource 模块仅类Unix系统可用，Windows 下跳过）
+     * 进程启动后先按 BLOCKFLOW_RLIMITS 设置 setrlimit（硬限制同时收紧，脚本无法自行放宽），
+     * 结果帧之前写出峰值内存和CPU时间（包含已回收的子进程）
+     */
+    private static final String RESOURCE_HELPER = """
+            def _apply_rlimits():
+                _spec = os.environ.get('%s')
+                if not _spec:
+                    return
+                try:
+                    import resource
+                except ImportError:
+                    return
+                _limits = json.loads(_spec)
+                for _name, _key, _scale in (('RLIMIT_AS', 'memoryMb', 1024 * 1024), ('RLIMIT_CPU', 'cpuSeconds', 1),
+                                            ('RLIMIT_NOFILE', 'maxOpenFiles', 1)):
+                    _value = _limits.get(_key)
+                    if not _value or not hasattr(resource, _name):
+                        continue
+                    _which = getattr(resource, _name)
+                    _value = int(_value * _scale)
+                    _hard = resource.getrlimit(_which)[1]
+                    # CPU时间到软限制时收到 SIGXCPU，硬限制多留1秒，到达后才是 SIGKILL
+                    _limit = _value + 1 if _name == 'RLIMIT_CPU' else _value
+                    if _hard != resource.RLIM_INFINITY:
+                        _value, _limit = min(_value, _hard), min(_limit, _hard)
+                    resource.setrlimit(_which, (_value, _limit))
+
+            def _write_usage():
+                try:
+                    import resource
+                    _self = resource.getrusage(resource.RUSAGE_SELF)
+                    _children = resource.getrusage(resource.RUSAGE_CHILDREN)
+                    # Linux 下 ru_maxrss 单位为KB，macOS 下为字节
+                    _scale = 1024 if sys.platform == 'darwin' else 1
+                    _usage = {'peakMemoryKb': max(_self.ru_maxrss, _children.ru_maxrss) // _scale,
+                              'cpuTimeMillis': int((_self.ru_utime + _self.ru_stime
+                                                    + _children.ru_utime + _children.ru_stime) * 1000)}
+                    sys.stdout.write(_USAGE_MARKER + json.dumps(_usage) + '\\n')
+                except Exception:
+                    pass
+
+            try:
+                _apply_rlimits()
+            except Exception as e:
+                sys.stdout.write(_RESULT_MARKER + json.dumps({'error': f'设置资源限制失败: {str(e)}'}) + '\\n')
+                sys.exit(1)
+            """.formatted(RLIMITS_ENV);
+
+    /**
+     * 进程退出后等待输出流EOF的宽限时间（毫秒）
+     */
+    private static final long STREAM_EOF_GRACE_MILLIS = 5000;
+
+    /**
+     * 批量执行的用例执行线程
+     */
+    private final ExecutorService batchRunners = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "python-batch-runner-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * 输出流读取线程池（线程复用，空闲60秒回收）
+     */
+    private final ExecutorService streamReaders = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "python-stream-reader-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public PythonScriptExecutor(PythonEnvironmentService pythonEnvironmentService,
+                                PythonWorkerPool pythonWorkerPool,
+                                PythonScriptCache pythonScriptCache,
+                                NodeOutputStore nodeOutputStore,
+                                PythonCgroupSandbox cgroupSandbox,
+                                PythonExecutionScheduler scheduler,
+                                @Value("${python.output.head-bytes:65536}") int outputHeadBytes,
+                                @Value("${python.output.tail-bytes:65536}") int outputTailBytes,
+                                @Value("${python.output.result-spill-threshold-bytes:4194304}") long resultSpillThresholdBytes) {
         this.pythonEnvironmentService = pythonEnvironmentService;
+        this.pythonWorkerPool = pythonWorkerPool;
+        this.pythonScriptCache = pythonScriptCache;
+        this.nodeOutputStore = nodeOutputStore;
+        this.cgroupSandbox = cgroupSandbox;
+        this.scheduler = scheduler;
+        this.outputHeadBytes = Math.max(1024, outputHeadBytes);
+        this.outputTailBytes = Math.max(0, outputTailBytes);
+        this.resultSpillThresholdBytes = Math.max(0, resultSpillThresholdBytes);
+        this.wrapperVersion = PythonScriptCache.sha256(wrapScript("").getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -46,6 +257,132 @@ public class PythonScriptExecutor {
         return execute(pythonEnvId, scriptContent, inputs, DEFAULT_TIMEOUT);
     }
 
+    /**
+     * 预热块脚本缓存：在后台生成包装脚本并用环境的解释器编译为字节码，之后执行该块时直接运行字节码
+     * （保存块时调用；启用常驻工作进程时块脚本由工作进程在内存中编译缓存，不预热）
+     *
+     * @param pythonEnvId   Python环境ID（为空时使用默认环境）
+     * @param scriptContent 脚本内容
+     */
+    public void precompile(Integer pythonEnvId, String scriptContent) {
+        if (scriptContent == null || scriptContent.isBlank() || pythonWorkerPool.isEnabled()) {
+            return;
+        }
+        pythonScriptCache.submit(() -> {
+            try {
+                PythonEnvironment environment = pythonEnvId == null
+                        ? pythonEnvironmentService.getDefaultEnvironment()
+                        : pythonEnvironmentService.getById(pythonEnvId);
+                if (environment.getPythonExecutable() == null || environment.getPythonExecutable().isEmpty()) {
+                    return;
+                }
+                Path scriptFile = pythonScriptCache.resolveWrapped(scriptContent, wrapperVersion, this::wrapScript);
+                pythonScriptCache.compileAsync(scriptFile, environment);
+            } catch (Exception e) {
+                log.debug("预热块脚本缓存失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 批量执行同一脚本（块批量测试）
+     * 用例按顺序分给最多 parallelism 个执行线程，每个线程依次执行取到的用例；
+     * 常驻进程模式下同一个解释器连续执行多个用例（脚本编译结果在工作进程内缓存），
+     * 并行度不超过每个环境的最大工作进程数和CPU核数，吞吐取决于CPU而不是进程启动
+     *
+     * @param pythonEnvId    Python环境ID
+     * @param scriptContent  脚本内容
+     * @param inputsList     每个用例的输入参数
+     * @param timeoutSeconds 单个用例的超时时间（秒）
+     * @param parallelism    期望的并行度
+     * @return 与 inputsList 顺序一致的执行结果
+     */
+    public List<ExecutionResult> executeBatch(Integer pythonEnvId, String scriptContent,
+                                              List<Map<String, Object>> inputsList, long timeoutSeconds,
+                                              int parallelism) {
+        int size = inputsList.size();
+        int threads = Math.min(Math.min(Math.max(1, parallelism), size), Runtime.getRuntime().availableProcessors());
+        if (pythonWorkerPool.isEnabled()) {
+            threads = Math.min(threads, pythonWorkerPool.getMaxSizePerEnv());
+        }
+        threads = Math.max(1, threads);
+
+        ExecutionResult[] results = new ExecutionResult[size];
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        // 正在执行用例的线程，被中断时逐个中断（终止运行中的解释器）
+        Set<Thread> workers = new HashSet<>();
+        CountDownLatch finished = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Runnable runner = () -> {
+                try {
+                    synchronized (workers) {
+                        if (stopped.get()) {
+                            return;
+                        }
+                        workers.add(Thread.currentThread());
+                    }
+                    int index;
+                    while (!stopped.get() && (index = next.getAndIncrement()) < size) {
+                        try {
+                            results[index] = execute(pythonEnvId, scriptContent, inputsList.get(index), timeoutSeconds);
+                        } catch (RuntimeException e) {
+                            log.error("批量执行脚本异常, 用例序号: {}", index, e);
+                            ExecutionResult failed = new ExecutionResult();
+                            failed.setSuccess(false);
+                            failed.setErrorMessage("执行异常: " + e.getMessage());
+                            results[index] = failed;
+                        }
+                    }
+                } finally {
+                    // 退出前移除并清除中断标记，线程归还线程池后不会被误中断
+                    synchronized (workers) {
+                        workers.remove(Thread.currentThread());
+                        Thread.interrupted();
+                    }
+                    finished.countDown();
+                }
+            };
+            try {
+                batchRunners.execute(runner);
+            } catch (RejectedExecutionException e) {
+                // 服务关闭中，剩余用例记为未执行
+                finished.countDown();
+            }
+        }
+        // 等所有执行线程退出后再读取结果；被中断时停止分配用例并中断所有执行线程，仍然等待它们退出
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                if (!interrupted) {
+                    interrupted = true;
+                    synchronized (workers) {
+                        stopped.set(true);
+                        workers.forEach(Thread::interrupt);
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 被中断或异常而未执行的用例记为失败
+        List<ExecutionResult> list = new ArrayList<>(size);
+        for (ExecutionResult result : results) {
+            if (result == null) {
+                result = new ExecutionResult();
+                result.setSuccess(false);
+                result.setErrorMessage("批量执行被中断，用例未执行");
+            }
+            list.add(result);
+        }
+        return list;
+    }
+
     /**
      * 执行Python脚本（带超时）
      *
@@ -56,12 +393,51 @@ public class PythonScriptExecutor {
      * @return 执行结果
      */
     public ExecutionResult execute(Integer pythonEnvId, String scriptContent, Map<String, Object> inputs, long timeoutSeconds) {
+        return execute(pythonEnvId, scriptContent, inputs, timeoutSeconds, null);
+    }
+
+    /**
+     * 执行Python脚本（带超时和控制台输出监听）
+     * 常驻进程模式下按行实时回调；单进程模式下在执行结束后按行回放
+     *
+     * @param pythonEnvId    Python环境ID
+     * @param scriptContent  脚本内容
+     * @param inputs         输入参数
+     * @param timeoutSeconds 超时时间（秒）
+     * @param outputListener 控制台输出行监听（可为null）
+     * @return 执行结果
+     */
+    public ExecutionResult execute(Integer pythonEnvId, String scriptContent, Map<String, Object> inputs,
+                                   long timeoutSeconds, Consumer<String> outputListener) {
+        return execute(pythonEnvId, scriptContent, inputs, timeoutSeconds, outputListener, null);
+    }
+
+    /**
+     * 执行Python脚本（带资源限制）
+     * 节点/块的限制按字段覆盖环境上配置的限制；有资源限制的脚本不使用常驻工作进程
+     * （setrlimit 对整个进程生效且不可放宽，不能按任务切换），每次在单独的进程中执行
+     *
+     * @param pythonEnvId    Python环境ID
+     * @param scriptContent  脚本内容
+     * @param inputs         输入参数
+     * @param timeoutSeconds 超时时间（秒）
+     * @param outputListener 控制台输出行监听（可为null）
+     * @param resourceLimits 节点/块的资源限制（可为null）
+     * @return 执行结果（包含峰值内存和CPU时间）
+     */
+    public ExecutionResult execute(Integer pythonEnvId, String scriptContent, Map<String, Object> inputs,
+                                   long timeoutSeconds, Consumer<String> outputListener,
+                                   ResourceLimits resourceLimits) {
         ExecutionResult result = new ExecutionResult();
         result.setSuccess(false);
 
         Process process = null;
-        File tempScript = null;
-        File tempInputFile = null;
+        PythonCgroupSandbox.Cgroup cgroup = null;
+        ProcessOutputCapture stdout = null;
+        ProcessOutputCapture stderr = null;
+        PythonExecutionScheduler.Permit permit = null;
+        // 登记到当前流程执行，取消执行时终止整个进程树
+        ExecutionRegistry.RunningExecution running = ExecutionRegistry.current();
 
         try {
             // 获取Python环境
@@ -79,63 +455,82 @@ public class PythonScriptExecutor {
                 return result;
             }
 
-            // 包装脚本：添加输入参数读取和输出格式化逻辑
-            String wrappedScript = wrapScript(scriptContent, inputs != null && !inputs.isEmpty());
+            ResourceLimits limits = ResourceLimits.merge(resourceLimits,
+                    ResourceLimits.from(environment.getResourceLimits()));
 
-            // 打印完整脚本用于调试（仅在DEBUG级别）
-            if (log.isDebugEnabled()) {
-                log.debug("========================================");
-                log.debug("包装后的完整Python脚本:");
-                log.debug("========================================");
-                log.debug("\n{}", wrappedScript);
-                log.debug("========================================");
+            // 按环境并发上限和调度权重排队获取执行名额，执行结束（含常驻进程模式）后释放
+            try {
+                permit = scheduler.acquire(environment, running != null ? running.getUsername() : null);
+            } catch (TimeoutException e) {
+                result.setErrorMessage(e.getMessage());
+                log.warn("Python脚本排队超时: {}", e.getMessage());
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.setErrorMessage("排队等待执行名额时被取消");
+                result.setErrorType(ErrorType.CANCELLED);
+                return result;
+            }
+            result.setQueueWaitMillis(permit.getWaitMillis());
+            if (permit.getWaitMillis() > 0) {
+                log.debug("Python脚本排队等待: {}ms, 环境: {}", permit.getWaitMillis(), environment.getName());
             }
 
-            // 创建临时脚本文件
-            tempScript = File.createTempFile("python_script_", ".py");
-            tempScript.deleteOnExit();
-            java.nio.file.Files.write(tempScript.toPath(), wrappedScript.getBytes(StandardCharsets.UTF_8));
+            // 优先使用常驻工作进程执行，省去解释器启动和依赖导入开销
+            if (pythonWorkerPool.isEnabled() && limits == null) {
+                try {
+                    ExecutionResult pooled = pythonWorkerPool.execute(environment, scriptContent, inputs,
+                            timeoutSeconds, outputListener);
+                    if (!pooled.isSuccess()) {
+                        parseError(pooled, pythonEnvId);
+                    }
+                    pooled.setQueueWaitMillis(permit.getWaitMillis());
+                    return pooled;
+                } catch (IOException e) {
+                    log.warn("Python常驻工作进程启动失败，回退为单进程执行: {}", e.getMessage());
+                }
+            }
 
-            log.info("临时脚本路径: {}", tempScript.getAbsolutePath());
+            // 包装脚本（添加输入参数读取和输出格式化逻辑）按块脚本和包装器版本缓存在磁盘上，
+            // 同一个块重复执行不再拼装和写文件；已编译为字节码时直接执行 .pyc，否则后台编译供下次使用
+            Path scriptFile = pythonScriptCache.resolveWrapped(scriptContent, wrapperVersion, this::wrapScript);
+            Path compiledFile = pythonScriptCache.compiled(scriptFile, environment);
+            if (compiledFile == null) {
+                pythonScriptCache.compileAsync(scriptFile, environment);
+            }
+
+            // 输入参数通过标准输入传递，不再生成临时输入文件
+            byte[] inputPayload = inputs != null && !inputs.isEmpty()
+                    ? JSON.toJSONBytes(inputs)
+                    : new byte[0];
             if (log.isDebugEnabled()) {
-                log.debug("可使用以下命令手动测试脚本:");
-                log.debug("  {} {}", environment.getPythonExecutable(), tempScript.getAbsolutePath());
-                if (tempInputFile != null) {
-                    log.debug("  输入文件: {}", tempInputFile.getAbsolutePath());
-                }
+                log.debug("脚本路径: {}, 字节码: {}", scriptFile, compiledFile);
+                log.debug("输入参数: {}", new String(inputPayload, StandardCharsets.UTF_8));
+                log.debug("可使用以下命令手动测试脚本（输入参数从标准输入读取）:");
+                log.debug("  echo '<输入参数JSON>' | {} {}", environment.getPythonExecutable(), scriptFile);
             }
 
-            // 如果有输入参数，创建临时输入文件
             List<String> command = new ArrayList<>();
             command.add(environment.getPythonExecutable());
-            command.add(tempScript.getAbsolutePath());
-
-            if (inputs != null && !inputs.isEmpty()) {
-                tempInputFile = File.createTempFile("python_input_", ".json");
-                tempInputFile.deleteOnExit();
-                String inputJson = JSON.toJSONString(inputs);
-                java.nio.file.Files.write(tempInputFile.toPath(), inputJson.getBytes(StandardCharsets.UTF_8));
-                command.add(tempInputFile.getAbsolutePath());
-                log.info("输入参数: {}", inputJson);
+            command.add((compiledFile != null ? compiledFile : scriptFile).toString());
+
+            // 进程只能在 pb.start() 之后按 pid 加入 cgroup，直接启动解释器时，解释器初始化、
+            // site-packages 中的 .pth 和 sitecustomize 会在加入之前不受限制地运行；
+            // 因此需要加入 cgroup 时由 /bin/sh 启动：shell 阻塞在 read 上等待一行放行信号，
+            // attach 把 shell 的 pid 加入 cgroup 后才写入 RELEASE，shell 再 exec 解释器（pid 不变，仍在 cgroup 中）
+            boolean gated = cgroupSandbox.applies(limits);
+            if (gated) {
+                command = cgroupSandbox.gate(command);
             }
 
             // 构建ProcessBuilder
             ProcessBuilder pb = new ProcessBuilder(command);
 
             // 设置环境变量 - 关键：设置PYTHONPATH实现依赖隔离
-            Map<String, String> envVars = pb.environment();
-
-            // 禁用Python输出缓冲（确保Docker环境下输出及时）
-            envVars.put("PYTHONUNBUFFERED", "1");
-
-            if (environment.getSitePackagesPath() != null && !environment.getSitePackagesPath().isEmpty()) {
-                String existingPythonPath = envVars.get("PYTHONPATH");
-                String newPythonPath = environment.getSitePackagesPath();
-                if (existingPythonPath != null && !existingPythonPath.isEmpty()) {
-                    newPythonPath = newPythonPath + File.pathSeparator + existingPythonPath;
-                }
-                envVars.put("PYTHONPATH", newPythonPath);
-                log.info("设置PYTHONPATH: {}", newPythonPath);
+            configureEnvironment(pb, environment, nodeOutputStore.getRoot());
+            if (limits != null) {
+                pb.environment().put(RLIMITS_ENV, limits.toRlimitSpec());
+                log.debug("资源限制: {}", limits);
             }
 
             // 不合并错误输出，分别读取
@@ -144,68 +539,61 @@ public class PythonScriptExecutor {
             // 执行脚本
             long startTime = System.currentTimeMillis();
             process = pb.start();
-
-            // 读取标准输出和错误输出
-            StringBuilder stdout = new StringBuilder();
-            StringBuilder stderr = new StringBuilder();
-
-            // 获取输入输出流
+            if (running != null) {
+                running.track(process);
+            }
+            cgroup = cgroupSandbox.attach(process, limits);
+
+            // 读取标准输出和错误输出（共享读取线程池，读到EOF即结束，不再为每次执行创建线程）
+            // 普通输出只保留开头和结尾，结果帧超过阈值后转写到临时文件，内存占用与输出大小无关
+            long maxOutputBytes = limits != null && limits.maxOutputBytes() != null ? limits.maxOutputBytes() : -1;
+            Process started = process;
+            stdout = new ProcessOutputCapture(outputHeadBytes, outputTailBytes, resultSpillThresholdBytes,
+                    maxOutputBytes, () -> {
+                        // 输出超过限制，终止进程树，之后的输出不再读取
+                        started.descendants().forEach(ProcessHandle::destroyForcibly);
+                        started.destroyForcibly();
+                    }, PythonWorkerPool.RESULT_MARKER, USAGE_MARKER);
+            stderr = new ProcessOutputCapture(outputHeadBytes, outputTailBytes, resultSpillThresholdBytes,
+                    -1, null, null);
+            ProcessOutputCapture stdoutCapture = stdout;
+            ProcessOutputCapture stderrCapture = stderr;
             InputStream stdoutStream = process.getInputStream();
             InputStream stderrStream = process.getErrorStream();
-
-            // 启动线程读取stdout
-            Process finalProcess = process;
-            Thread stdoutReader = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stdoutStream, StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        stdout.append(line).append("\n");
-                        log.debug("Python stdout: {}", line);
-                    }
-                } catch (IOException e) {
-                    log.error("读取stdout失败", e);
+            Future<?> stdoutDone = streamReaders.submit(() -> stdoutCapture.drain(stdoutStream, "stdout"));
+            Future<?> stderrDone = streamReaders.submit(() -> stderrCapture.drain(stderrStream, "stderr"));
+
+            // 放行暂停中的进程（cgroup 创建失败时同样放行，仅依赖 setrlimit），
+            // 然后写入输入参数并关闭标准输入（脚本在解析阶段就失败时管道已关闭，忽略写入异常）
+            try (OutputStream stdin = process.getOutputStream()) {
+                if (gated) {
+                    stdin.write(PythonCgroupSandbox.RELEASE);
                 }
-            });
-            stdoutReader.setDaemon(false); // 非守护线程，确保读取完成
-
-            // 启动线程读取stderr
-            Thread stderrReader = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stderrStream, StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        stderr.append(line).append("\n");
-                        log.debug("Python stderr: {}", line);
-                    }
-                } catch (IOException e) {
-                    log.error("读取stderr失败", e);
-                }
-            });
-            stderrReader.setDaemon(false); // 非守护线程，确保读取完成
-
-            stdoutReader.start();
-            stderrReader.start();
+                stdin.write(inputPayload);
+            } catch (IOException e) {
+                log.debug("写入脚本输入参数失败: {}", e.getMessage());
+            }
 
             // 等待执行完成（带超时）
             boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
             long endTime = System.currentTimeMillis();
-
-            // 确保子进程已完全退出并输出流关闭
-            if (finished) {
-                // 等待更长时间确保输出流完全刷新（Docker 环境下很关键）
-                Thread.sleep(300);
+            if (!finished) {
+                // 先终止进程树，管道写端随之关闭，读取任务才能读到EOF
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
             }
 
-            // 等待输出读取完成（增加到5秒，确保大输出也能完全读取）
-            stdoutReader.join(5000);
-            stderrReader.join(5000);
+            // 进程退出后等待两个输出流读到EOF，输出即为完整输出，无需固定休眠
+            awaitEof(process, stdoutDone, stderrDone);
+            recordUsage(result, stdout.frame(USAGE_MARKER), cgroup);
+            result.setOutput(resultText(stdout));
+            result.setOutputBytes(stdout.hasResult() ? stdout.resultBytes() : stdout.consoleBytes());
+            result.setError(stderr.text().trim());
+            result.setExecutionTime(endTime - startTime);
 
             if (!finished) {
-                process.destroyForcibly();
                 result.setSuccess(false);
                 result.setErrorMessage("脚本执行超时（" + timeoutSeconds + "秒）");
-                result.setOutput(stdout.toString());
-                result.setError(stderr.toString());
-                result.setExecutionTime(endTime - startTime);
                 // 解析错误并生成友好提示
                 parseError(result, pythonEnvId);
                 log.error("脚本执行超时");
@@ -214,43 +602,59 @@ public class PythonScriptExecutor {
 
             int exitCode = process.exitValue();
             result.setExitCode(exitCode);
-            result.setExecutionTime(endTime - startTime);
-            result.setOutput(stdout.toString().trim());
-            result.setError(stderr.toString().trim());
 
-            log.debug("脚本执行完成 - 退出码: {}, stdout长度: {}, stderr长度: {}",
-                     exitCode, stdout.length(), stderr.length());
-            if (stdout.length() > 0) {
-                log.debug("stdout内容: {}", stdout.toString());
+            // 执行被取消时进程由注册表终止，不视为超出资源限制
+            String limitExceeded = running != null && running.isCancelled()
+                    ? null : limitExceeded(exitCode, limits, stdout.isExceeded(), cgroup);
+            if (limitExceeded != null) {
+                result.setSuccess(false);
+                result.setErrorMessage("脚本超出资源限制被终止: " + limitExceeded);
+                parseError(result, pythonEnvId);
+                log.error("脚本超出资源限制被终止: {}, 限制: {}", limitExceeded, limits);
+                return result;
             }
-            if (stderr.length() > 0) {
-                log.debug("stderr内容: {}", stderr.toString());
+
+            log.debug("脚本执行完成 - 退出码: {}, 结果帧: {} 字节, 其他stdout: {} 字节, stderr: {} 字节",
+                    exitCode, stdout.resultBytes(), stdout.consoleBytes(), stderr.consoleBytes());
+            if (stdout.consoleBytes() > 0) {
+                log.debug("结果帧之外的stdout: {}", stdout.text());
             }
 
             if (exitCode == 0) {
                 result.setSuccess(true);
 
-                // 尝试解析JSON输出
-                String output = result.getOutput();
-                if (output != null && !output.isEmpty()) {
+                // 结果帧直接从捕获缓冲（或临时文件）流式解析，不经过完整的字符串
+                if (stdout.hasResult()) {
                     try {
-                        JSONObject jsonOutput = JSON.parseObject(output);
-                        result.setJsonOutput(jsonOutput);
-                        log.info("脚本执行成功，耗时: {}ms, 输出: {}", result.getExecutionTime(), jsonOutput);
+                        result.setJsonOutput(stdout.parseResult());
+                        log.info("脚本执行成功，耗时: {}ms, 输出: {} 字节", result.getExecutionTime(), result.getOutputBytes());
                     } catch (JSONException e) {
-                        log.info("脚本执行成功，耗时: {}ms, 输出（非JSON）: {}", result.getExecutionTime(), output);
+                        log.info("脚本执行成功，耗时: {}ms, 输出（非JSON）: {}", result.getExecutionTime(), result.getOutput());
                     }
+                } else if (result.getOutput() != null && !result.getOutput().isEmpty()) {
+                    log.info("脚本执行成功，耗时: {}ms, 输出（无结果帧）: {}", result.getExecutionTime(), result.getOutput());
                 } else {
                     log.info("脚本执行成功，耗时: {}ms, 无输出", result.getExecutionTime());
                 }
+                if (log.isDebugEnabled()) {
+                    log.debug("输出内容: {}", result.getOutput());
+                }
             } else {
                 result.setSuccess(false);
                 result.setErrorMessage("脚本执行失败，退出代码: " + exitCode);
                 // 解析错误并生成友好提示
                 parseError(result, pythonEnvId);
-                log.error("脚本执行失败，退出代码: {}, stdout: {}, stderr: {}", exitCode, stdout, stderr);
+                log.error("脚本执行失败，退出代码: {}, stdout: {}, stderr: {}", exitCode, result.getOutput(), result.getError());
             }
 
+        } catch (InterruptedException e) {
+            // 流程被取消或节点线程被中断，保留中断状态，不按脚本错误处理
+            Thread.currentThread().interrupt();
+            result.setSuccess(false);
+            result.setErrorMessage("脚本执行已取消");
+            result.setErrorType(ErrorType.CANCELLED);
+            result.setFriendlyMessage("脚本执行已取消");
+            log.info("Python脚本执行被中断，已终止进程");
         } catch (Exception e) {
             result.setSuccess(false);
             result.setErrorMessage("脚本执行异常: " + e.getMessage());
@@ -260,19 +664,186 @@ public class PythonScriptExecutor {
             log.error("脚本执行异常", e);
         } finally {
             // 清理资源
-            if (process != null && process.isAlive()) {
-                process.destroyForcibly();
+            if (process != null) {
+                if (running != null) {
+                    running.untrack(process);
+                }
+                if (process.isAlive()) {
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly();
+                }
+            }
+            if (cgroup != null) {
+                cgroup.remove();
+            }
+            if (stdout != null) {
+                stdout.close();
+            }
+            if (stderr != null) {
+                stderr.close();
+            }
+            if (permit != null) {
+                permit.close();
             }
-            // 临时文件会通过deleteOnExit自动删除
         }
 
+        replayConsoleOutput(result, outputListener);
         return result;
     }
 
+    /**
+     * 等待输出流读取完成
+     * 正常情况下进程退出即读到EOF；若脚本启动的后台子进程继承了输出管道导致迟迟没有EOF，
+     * 在宽限时间后终止这些子进程并关闭管道
+     */
+    private void awaitEof(Process process, Future<?>... readers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STREAM_EOF_GRACE_MILLIS);
+        for (Future<?> reader : readers) {
+            try {
+                reader.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Python进程已退出但输出流未关闭，终止残留子进程, pid: {}", process.pid());
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                closeQuietly(process.getInputStream());
+                closeQuietly(process.getErrorStream());
+                try {
+                    reader.get(STREAM_EOF_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException | TimeoutException ignored) {
+                    reader.cancel(true);
+                }
+            } catch (ExecutionException e) {
+                log.debug("读取输出流失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // ignore
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamReaders.shutdownNow();
+        batchRunners.shutdownNow();
+    }
+
+    /**
+     * 记录资源使用：优先使用 cgroup 的统计（包含脚本启动的子进程），否则使用包装脚本写出的 getrusage 统计
+     */
+    private void recordUsage(ExecutionResult result, String usageFrame, PythonCgroupSandbox.Cgroup cgroup) {
+        if (usageFrame != null) {
+            try {
+                JSONObject usage = JSON.parseObject(usageFrame);
+                if (usage != null) {
+                    result.setPeakMemoryKb(usage.getLong("peakMemoryKb"));
+                    result.setCpuTimeMillis(usage.getLong("cpuTimeMillis"));
+                }
+            } catch (JSONException e) {
+                log.debug("解析资源使用统计失败: {}", e.getMessage());
+            }
+        }
+        if (cgroup != null) {
+            Long peakMemoryKb = cgroup.peakMemoryKb();
+            Long cpuTimeMillis = cgroup.cpuTimeMillis();
+            if (peakMemoryKb != null) {
+                result.setPeakMemoryKb(peakMemoryKb);
+            }
+            if (cpuTimeMillis != null) {
+                result.setCpuTimeMillis(cpuTimeMillis);
+            }
+        }
+    }
+
+    /**
+     * 判断进程是否因超出资源限制被终止
+     *
+     * @return 超出的限制说明，未超出时返回null
+     */
+    private static String limitExceeded(int exitCode, ResourceLimits limits, boolean outputExceeded,
+                                        PythonCgroupSandbox.Cgroup cgroup) {
+        if (limits == null) {
+            return null;
+        }
+        if (outputExceeded) {
+            return "输出超过 " + limits.maxOutputBytes() + " 字节";
+        }
+        if (exitCode == EXIT_SIGXCPU) {
+            return "CPU时间超过 " + limits.cpuSeconds() + " 秒";
+        }
+        if (cgroup != null && cgroup.isOomKilled()) {
+            return "内存超过 " + limits.memoryMb() + " MB";
+        }
+        if (exitCode == EXIT_SIGKILL && limits.memoryMb() != null) {
+            return "进程被强制终止，可能是内存超过 " + limits.memoryMb() + " MB";
+        }
+        return null;
+    }
+
+    /**
+     * 结果文本：有结果帧时为结果帧（超过 outputHeadBytes 时截断，完整内容只用于流式解析），没有结果帧时为标准输出
+     * 脚本之外（如C扩展直接写fd）混入标准输出的内容不会破坏结果解析
+     */
+    private String resultText(ProcessOutputCapture stdout) throws IOException {
+        return stdout.hasResult() ? stdout.resultText(outputHeadBytes) : stdout.text().trim();
+    }
+
+    /**
+     * 单进程模式下控制台输出在结束后才能拿到，按行回放给监听者
+     */
+    private void replayConsoleOutput(ExecutionResult result, Consumer<String> outputListener) {
+        if (outputListener == null || result.getOutput() == null || result.getOutput().isEmpty()) {
+            return;
+        }
+        JSONObject output = result.getJsonOutput();
+        if (output == null) {
+            try {
+                output = JSON.parseObject(result.getOutput());
+            } catch (JSONException e) {
+                return;
+            }
+        }
+        String console = output != null ? output.getString("_console_output") : null;
+        if (console != null && !console.isEmpty()) {
+            console.lines().forEach(outputListener);
+        }
+    }
+
+    /**
+     * 设置Python进程环境变量
+     * 禁用输出缓冲，并将环境的site-packages加入PYTHONPATH实现依赖隔离
+     *
+     * @param pb              进程构建器
+     * @param environment     Python环境
+     * @param outputStoreRoot 节点共享输出的存储目录（shared_output 写入的位置，可为null）
+     */
+    static void configureEnvironment(ProcessBuilder pb, PythonEnvironment environment, Path outputStoreRoot) {
+        Map<String, String> envVars = pb.environment();
+
+        // 禁用Python输出缓冲（确保Docker环境下输出及时）
+        envVars.put("PYTHONUNBUFFERED", "1");
+        if (outputStoreRoot != null) {
+            envVars.put(NodeOutputStore.ROOT_ENV, outputStoreRoot.toString());
+        }
+
+        if (environment.getSitePackagesPath() != null && !environment.getSitePackagesPath().isEmpty()) {
+            String existingPythonPath = envVars.get("PYTHONPATH");
+            String newPythonPath = environment.getSitePackagesPath();
+            if (existingPythonPath != null && !existingPythonPath.isEmpty()) {
+                newPythonPath = newPythonPath + File.pathSeparator + existingPythonPath;
+            }
+            envVars.put("PYTHONPATH", newPythonPath);
+            log.debug("设置PYTHONPATH: {}", newPythonPath);
+        }
+    }
+
     /**
      * 包装Python脚本，添加输入输出处理逻辑
      */
-    private String wrapScript(String userScript, boolean hasInputs) {
+    private String wrapScript(String userScript) {
         StringBuilder wrapped = new StringBuilder();
         wrapped.append("# -*- coding: utf-8 -*-\n");
         wrapped.append("import sys\n");
@@ -288,22 +859,42 @@ public class PythonScriptExecutor {
         wrapped.append("sys.stderr = io.TextIOWrapper(sys.stderr.buffer, encoding='utf-8', line_buffering=True)\n");
         wrapped.append("\n");
 
-        if (hasInputs) {
-            wrapped.append("# 读取输入参数\n");
-            wrapped.append("try:\n");
-            wrapped.append("    if len(sys.argv) > 1:\n");
-            wrapped.append("        with open(sys.argv[1], 'r', encoding='utf-8') as f:\n");
-            wrapped.append("            inputs = json.load(f)\n");
-            wrapped.append("    else:\n");
-            wrapped.append("        inputs = {}\n");
-            wrapped.append("except Exception as e:\n");
-            wrapped.append("    print(json.dumps({'error': f'读取输入参数失败: {str(e)}'}))\n");
-            wrapped.append("    sys.exit(1)\n");
-            wrapped.append("\n");
-        } else {
-            wrapped.append("inputs = {}\n");
-            wrapped.append("\n");
-        }
+        // 结果帧标记：结果写在标记之后，与其他混入标准输出的内容区分开
+        wrapped.append("_RESULT_MARKER = '").append(PythonWorkerPool.RESULT_MARKER).append("'\n");
+        wrapped.append("_USAGE_MARKER = '").append(USAGE_MARKER).append("'\n");
+        wrapped.append("\n");
+        wrapped.append(RESOURCE_HELPER);
+        wrapped.append("\n");
+        wrapped.append("# 读取输入参数（由执行器通过标准输入传递）\n");
+        wrapped.append("try:\n");
+        wrapped.append("    _input_text = sys.stdin.buffer.read().decode('utf-8')\n");
+        wrapped.append("    inputs = json.loads(_input_text) if _input_text.strip() else {}\n");
+        wrapped.append("except Exception as e:\n");
+        wrapped.append("    sys.stdout.write(_RESULT_MARKER + json.dumps({'error': f'读取输入参数失败: {str(e)}'}) + '\\n')\n");
+        wrapped.append("    sys.exit(1)\n");
+        wrapped.append("\n");
+
+        // 上游转存为文件的大输出以引用传入，通过内存映射读取（与 NodeOutputStore、block_worker.py 保持一致）
+        // 原始字节格式直接交给脚本只读内存映射（可用 numpy.frombuffer、pyarrow.ipc 等零拷贝读取）
+        wrapped.append("def _resolve_blob_refs(values):\n");
+        wrapped.append("    import mmap\n");
+        wrapped.append("    for _key, _value in list(values.items()):\n");
+        wrapped.append("        if isinstance(_value, dict) and '").append(NodeOutputStore.REF_KEY).append("' in _value and 'path' in _value:\n");
+        wrapped.append("            with open(_value['path'], 'rb') as _f:\n");
+        wrapped.append("                _m = mmap.mmap(_f.fileno(), 0, access=mmap.ACCESS_READ)\n");
+        wrapped.append("            if _value.get('").append(NodeOutputStore.FORMAT_KEY).append("') == '").append(NodeOutputStore.FORMAT_RAW).append("':\n");
+        wrapped.append("                values[_key] = _m\n");
+        wrapped.append("            else:\n");
+        wrapped.append("                with _m:\n");
+        wrapped.append("                    values[_key] = json.loads(_m[:])\n");
+        wrapped.append("    return values\n");
+        wrapped.append("\n");
+        wrapped.append("try:\n");
+        wrapped.append("    inputs = _resolve_blob_refs(inputs)\n");
+        wrapped.append("except Exception as e:\n");
+        wrapped.append("    sys.stdout.write(_RESULT_MARKER + json.dumps({'error': f'读取上游大输出失败: {str(e)}'}) + '\\n')\n");
+        wrapped.append("    sys.exit(1)\n");
+        wrapped.append("\n");
 
         // 注入内置的安全类型转换函数
         wrapped.append("# ========== 内置安全类型转换函数 ==========\n");
@@ -344,11 +935,15 @@ public class PythonScriptExecutor {
         wrapped.append("            return default\n");
         wrapped.append("    return value if value is not None else default\n");
         wrapped.append("\n");
+        wrapped.append(SHARED_OUTPUT_HELPER);
+        wrapped.append("\n");
+        wrapped.append(CONSOLE_HELPER);
+        wrapped.append("\n");
 
         // 捕获 print 输出
         wrapped.append("# 捕获 print 输出，避免混入 JSON 结果\n");
         wrapped.append("_original_stdout = sys.stdout\n");
-        wrapped.append("_console_output = io.StringIO()\n");
+        wrapped.append("_console_output = _BoundedConsole()\n");
         wrapped.append("sys.stdout = _console_output\n");
         wrapped.append("\n");
 
@@ -381,7 +976,8 @@ public class PythonScriptExecutor {
         wrapped.append("    if _console_text:\n");
         wrapped.append("        _final_output['_console_output'] = _console_text.rstrip()\n");
         wrapped.append("\n");
-        wrapped.append("    print(json.dumps(_final_output, ensure_ascii=False))\n");
+        wrapped.append("    _write_usage()\n");
+        wrapped.append("    sys.stdout.write(_RESULT_MARKER + json.dumps(_final_output, ensure_ascii=False) + '\\n')\n");
         wrapped.append("    sys.stdout.flush()  # 强制刷新输出缓冲区\n");
 
         // except块与try对齐
@@ -393,7 +989,8 @@ public class PythonScriptExecutor {
         wrapped.append("    _error_output = {'error': str(e), 'traceback': error_msg}\n");
         wrapped.append("    if _console_text:\n");
         wrapped.append("        _error_output['_console_output'] = _console_text.rstrip()\n");
-        wrapped.append("    print(json.dumps(_error_output, ensure_ascii=False))\n");
+        wrapped.append("    _write_usage()\n");
+        wrapped.append("    sys.stdout.write(_RESULT_MARKER + json.dumps(_error_output, ensure_ascii=False) + '\\n')\n");
         wrapped.append("    sys.stdout.flush()  # 强制刷新输出缓冲区\n");
         wrapped.append("    sys.exit(1)\n");
 
@@ -440,18 +1037,26 @@ public class PythonScriptExecutor {
             result.setSuggestion("请检查脚本语法，确保缩进和语句正确");
 
         // 3. 检测超时
-        } else if (fullError.contains("执行超时")) {
+        } else if (fullError.contains("执行超时")
+                || (result.getErrorMessage() != null && result.getErrorMessage().contains("执行超时"))) {
             result.setErrorType(ErrorType.TIMEOUT);
             result.setFriendlyMessage("脚本执行超时");
             result.setSuggestion("脚本执行时间过长，请优化脚本逻辑或增加超时时间");
 
-        // 4. 其他运行时错误
+        // 4. 检测超出资源限制（被终止，或受内存限制时抛出 MemoryError）
+        } else if ((result.getErrorMessage() != null && result.getErrorMessage().contains("超出资源限制"))
+                || fullError.contains("MemoryError")) {
+            result.setErrorType(ErrorType.RESOURCE_LIMIT);
+            result.setFriendlyMessage("脚本超出资源限制");
+            result.setSuggestion("请减少脚本的内存/CPU/输出占用，或在Python环境、节点上调高资源限制");
+
+        // 5. 其他运行时错误
         } else if (fullError.contains("Error") || fullError.contains("Exception")) {
             result.setErrorType(ErrorType.RUNTIME_ERROR);
             result.setFriendlyMessage("脚本执行时发生错误");
             result.setSuggestion("请查看详细错误信息，检查脚本逻辑");
 
-        // 5. 未知错误
+        // 6. 未知错误
         } else {
             result.setErrorType(ErrorType.UNKNOWN);
             result.setFriendlyMessage("脚本执行失败");
@@ -488,9 +1093,15 @@ public class PythonScriptExecutor {
         /** 是否执行成功 */
         private boolean success;
 
-        /** 标准输出 */
+        /** 结果帧文本（超过 python.output.head-bytes 时截断），没有结果帧时为标准输出 */
         private String output;
 
+        /** 结果帧（没有结果帧时为标准输出）的完整字节数 */
+        private long outputBytes;
+
+        /** 排队等待执行名额的时间（毫秒） */
+        private long queueWaitMillis;
+
         /** 标准错误输出 */
         private String error;
 
@@ -520,6 +1131,12 @@ public class PythonScriptExecutor {
 
         /** Python环境ID */
         private Integer pythonEnvId;
+
+        /** 峰值内存（KB，包含子进程），无法统计时为null */
+        private Long peakMemoryKb;
+
+        /** CPU时间（毫秒，用户态 + 内核态，包含子进程），无法统计时为null */
+        private Long cpuTimeMillis;
     }
 
     /**
@@ -530,6 +1147,8 @@ public class PythonScriptExecutor {
         public static final String SYNTAX_ERROR = "SYNTAX_ERROR";
         public static final String RUNTIME_ERROR = "RUNTIME_ERROR";
         public static final String TIMEOUT = "TIMEOUT";
+        public static final String RESOURCE_LIMIT = "RESOURCE_LIMIT";
+        public static final String CANCELLED = "CANCELLED";
         public static final String UNKNOWN = "UNKNOWN";
     }
 }
@@ -0,0 +1,582 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.PythonEnvironment;
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Python常驻工作进程池
+ * 每个Python环境维护一组长驻解释器进程，任务通过管道协议（按行JSON）下发，
+ * 避免每次执行都重新启动解释器并重复导入 numpy/pandas 等依赖
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class PythonWorkerPool {
+
+    /**
+     * 工作进程结果行前缀（与 python/block_worker.py 保持一致）
+     */
+    static final String RESULT_MARKER = "@@BLOCKFLOW_RESULT@@";
+
+    /**
+     * 工作进程实时控制台输出行前缀（与 python/block_worker.py 保持一致）
+     */
+    private static final String LOG_MARKER = "@@BLOCKFLOW_LOG@@";
+
+    /**
+     * 非协议行（C扩展直接写fd的输出）最多保留的字符数
+     */
+    private static final int MAX_NOISE_CHARS = 65536;
+
+    /**
+     * 结果行之外的单行最多读取的字节数，超出部分丢弃
+     */
+    private static final int MAX_LINE_BYTES = 32768;
+
+    /**
+     * 已读取但尚未被执行线程取走的行数上限，队列满时读取线程阻塞，由管道向工作进程施加背压
+     */
+    private static final int STDOUT_QUEUE_CAPACITY = 128;
+
+    private static final String WORKER_SCRIPT_RESOURCE = "python/block_worker.py";
+
+    @Value("${python.worker-pool.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 每个环境的最大工作进程数
+     */
+    @Value("${python.worker-pool.max-size-per-env:4}")
+    private int maxSizePerEnv;
+
+    /**
+     * 空闲回收时间（秒）
+     */
+    @Value("${python.worker-pool.idle-timeout-seconds:300}")
+    private long idleTimeoutSeconds;
+
+    /**
+     * 单个工作进程执行多少个任务后重建（防止内存泄漏、模块状态污染累积）
+     */
+    @Value("${python.worker-pool.max-jobs-per-worker:200}")
+    private int maxJobsPerWorker;
+
+    @Value("${python.env.root-path:${user.dir}/python-envs}")
+    private String pythonEnvRootPath;
+
+    /**
+     * 结果帧文本最多保留的字节数（完整内容只用于流式解析）
+     */
+    @Value("${python.output.head-bytes:65536}")
+    private int outputHeadBytes;
+
+    /**
+     * 结果帧超过该大小后转写到临时文件
+     */
+    @Value("${python.output.result-spill-threshold-bytes:4194304}")
+    private long resultSpillThresholdBytes;
+
+    /**
+     * key: 环境签名（环境ID + 解释器 + site-packages），value: 该环境的进程池
+     */
+    private final Map<String, EnvPool> pools = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "python-worker-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger workerIndex = new AtomicInteger();
+
+    private volatile Path workerScript;
+
+    private final NodeOutputStore nodeOutputStore;
+
+    public PythonWorkerPool(NodeOutputStore nodeOutputStore) {
+        this.nodeOutputStore = nodeOutputStore;
+        evictor.scheduleWithFixedDelay(this::evictIdleWorkers, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 是否启用常驻进程池
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 每个环境的最大工作进程数
+     */
+    public int getMaxSizePerEnv() {
+        return maxSizePerEnv;
+    }
+
+    /**
+     * 在常驻工作进程中执行脚本
+     *
+     * @param environment    Python环境
+     * @param scriptContent  用户脚本（未包装）
+     * @param inputs         输入参数
+     * @param timeoutSeconds 超时时间（秒）
+     * @param outputListener 控制台输出行监听（可为null），在调用线程中按行实时回调
+     * @return 执行结果（错误友好提示由调用方补充）
+     * @throws IOException 工作进程无法启动
+     */
+    public PythonScriptExecutor.ExecutionResult execute(PythonEnvironment environment, String scriptContent,
+                                                        Map<String, Object> inputs, long timeoutSeconds,
+                                                        Consumer<String> outputListener)
+            throws IOException, InterruptedException {
+        PythonScriptExecutor.ExecutionResult result = new PythonScriptExecutor.ExecutionResult();
+        result.setSuccess(false);
+
+        EnvPool pool = pools.computeIfAbsent(signature(environment), k -> new EnvPool(maxSizePerEnv));
+        long startTime = System.currentTimeMillis();
+        if (!pool.permits.tryAcquire(timeoutSeconds, TimeUnit.SECONDS)) {
+            result.setErrorMessage("等待Python工作进程超时（" + timeoutSeconds + "秒）");
+            result.setError(result.getErrorMessage());
+            result.setExecutionTime(System.currentTimeMillis() - startTime);
+            return result;
+        }
+
+        PythonWorker worker = null;
+        ProcessOutputCapture frame = null;
+        boolean reusable = false;
+        // 登记到当前流程执行，取消执行时可直接终止工作进程
+        ExecutionRegistry.RunningExecution running = ExecutionRegistry.current();
+        try {
+            worker = pool.idle.pollFirst();
+            while (worker != null && !worker.process.isAlive()) {
+                worker.destroy();
+                worker = pool.idle.pollFirst();
+            }
+            if (worker == null) {
+                worker = startWorker(environment);
+            }
+            if (running != null) {
+                running.track(worker.process);
+            }
+
+            // 丢弃上一个任务残留的输出（例如脚本遗留的后台线程打印）
+            worker.discardPending();
+
+            JSONObject job = new JSONObject();
+            job.put("script", scriptContent);
+            job.put("inputs", inputs != null ? inputs : Collections.emptyMap());
+            worker.stdin.write(job.toJSONString());
+            worker.stdin.newLine();
+            worker.stdin.flush();
+            worker.jobs++;
+
+            // 等待结果行，非协议行（例如C扩展直接写fd的输出）视为控制台输出
+            long deadline = System.currentTimeMillis() + timeoutSeconds * 1000;
+            StringBuilder noise = new StringBuilder();
+            while (frame == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                WorkerLine line = remaining > 0 ? worker.stdoutLines.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (line == null) {
+                    result.setErrorMessage("脚本执行超时（" + timeoutSeconds + "秒）");
+                    result.setError(result.getErrorMessage());
+                    result.setOutput(noise.toString());
+                    result.setExecutionTime(System.currentTimeMillis() - startTime);
+                    log.error("脚本执行超时（常驻进程）, worker: {}", worker.name);
+                    return result;
+                }
+                if (line == WorkerLine.EOF) {
+                    result.setErrorMessage("Python工作进程异常退出");
+                    result.setError(worker.stderrTail());
+                    result.setOutput(noise.toString());
+                    result.setExecutionTime(System.currentTimeMillis() - startTime);
+                    return result;
+                }
+                if (line.frame() != null) {
+                    frame = line.frame();
+                } else if (line.text().startsWith(LOG_MARKER)) {
+                    if (outputListener != null) {
+                        outputListener.accept(line.text().substring(LOG_MARKER.length()));
+                    }
+                } else if (noise.length() < MAX_NOISE_CHARS) {
+                    noise.append(line.text()).append("\n");
+                }
+            }
+            result.setExecutionTime(System.currentTimeMillis() - startTime);
+            reusable = true;
+
+            // 结果帧直接从捕获缓冲（或临时文件）流式解析，不经过完整的字符串
+            result.setOutputBytes(frame.resultBytes());
+            JSONObject response;
+            try {
+                response = frame.parseResult();
+            } catch (JSONException | IOException e) {
+                // 脚本已执行完成，读取结果失败不能按进程启动失败抛出（调用方会回退重新执行）
+                result.setErrorMessage("解析工作进程结果失败: " + e.getMessage());
+                result.setOutput(frameText(frame));
+                return result;
+            }
+            if (response == null) {
+                result.setErrorMessage("解析工作进程结果失败: 结果为空");
+                return result;
+            }
+            JSONObject output = response.getJSONObject("output");
+            if (noise.length() > 0 && output != null) {
+                String console = output.getString("_console_output");
+                output.put("_console_output", console == null ? noise.toString().trim() : noise + console);
+            }
+            if (output == null) {
+                result.setOutput("");
+            } else {
+                // 超大结果不再整体序列化，文本只保留开头（完整内容在 jsonOutput 中）
+                result.setOutput(frame.resultBytes() <= outputHeadBytes
+                        ? output.toJSONString() : frameText(frame));
+            }
+            result.setError(response.getString("stderr") != null ? response.getString("stderr").trim() : "");
+            JSONObject usage = response.getJSONObject("usage");
+            if (usage != null) {
+                result.setPeakMemoryKb(usage.getLong("peakMemoryKb"));
+                result.setCpuTimeMillis(usage.getLong("cpuTimeMillis"));
+            }
+            if (Boolean.TRUE.equals(response.getBoolean("ok"))) {
+                result.setSuccess(true);
+                result.setExitCode(0);
+                result.setJsonOutput(output);
+                log.info("脚本执行成功（常驻进程 {}），耗时: {}ms", worker.name, result.getExecutionTime());
+            } else {
+                result.setExitCode(1);
+                result.setErrorMessage("脚本执行失败，退出代码: 1");
+                log.error("脚本执行失败（常驻进程 {}）, stdout: {}, stderr: {}", worker.name, result.getOutput(), result.getError());
+            }
+            return result;
+        } finally {
+            if (frame != null) {
+                frame.close();
+            }
+            if (worker != null) {
+                if (running != null) {
+                    running.untrack(worker.process);
+                }
+                if (reusable && worker.process.isAlive() && worker.jobs < maxJobsPerWorker) {
+                    worker.lastUsed = System.currentTimeMillis();
+                    pool.idle.offerFirst(worker);
+                } else {
+                    worker.destroy();
+                }
+            }
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * 结果帧文本（超过 outputHeadBytes 时截断）
+     */
+    private String frameText(ProcessOutputCapture frame) {
+        try {
+            return frame.resultText(outputHeadBytes);
+        } catch (IOException e) {
+            log.debug("读取结果帧失败: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * 启动工作进程
+     */
+    private PythonWorker startWorker(PythonEnvironment environment) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(environment.getPythonExecutable());
+        command.add(ensureWorkerScript().toString());
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        PythonScriptExecutor.configureEnvironment(pb, environment, nodeOutputStore.getRoot());
+        pb.redirectErrorStream(false);
+
+        String name = "python-worker-" + environment.getId() + "-" + workerIndex.incrementAndGet();
+        PythonWorker worker = new PythonWorker(name, pb.start(), resultSpillThresholdBytes);
+        log.info("启动Python常驻工作进程: {}, pid: {}", name, worker.process.pid());
+        return worker;
+    }
+
+    /**
+     * 将工作进程脚本释放到环境根目录
+     */
+    private Path ensureWorkerScript() throws IOException {
+        Path script = workerScript;
+        if (script == null) {
+            synchronized (this) {
+                if (workerScript == null) {
+                    Path dir = Paths.get(pythonEnvRootPath, ".worker");
+                    Files.createDirectories(dir);
+                    Path target = dir.resolve("block_worker.py");
+                    try (InputStream in = new ClassPathResource(WORKER_SCRIPT_RESOURCE).getInputStream()) {
+                        Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    workerScript = target;
+                }
+                script = workerScript;
+            }
+        }
+        return script;
+    }
+
+    /**
+     * 回收空闲超时的工作进程
+     */
+    private void evictIdleWorkers() {
+        long expireBefore = System.currentTimeMillis() - idleTimeoutSeconds * 1000;
+        pools.forEach((key, pool) -> {
+            Iterator<PythonWorker> iterator = pool.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                PythonWorker worker = iterator.next();
+                if (worker.lastUsed < expireBefore || !worker.process.isAlive()) {
+                    if (pool.idle.removeFirstOccurrence(worker)) {
+                        log.info("回收空闲Python工作进程: {}", worker.name);
+                        worker.destroy();
+                    }
+                }
+            }
+        });
+    }
+
+    private String signature(PythonEnvironment environment) {
+        return environment.getId() + "|" + environment.getPythonExecutable() + "|" + environment.getSitePackagesPath();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+        pools.values().forEach(pool -> {
+            PythonWorker worker;
+            while ((worker = pool.idle.pollFirst()) != null) {
+                worker.destroy();
+            }
+        });
+    }
+
+    /**
+     * 单个环境的进程池
+     */
+    private static final class EnvPool {
+        /** 空闲进程（栈式复用，最近使用的优先，便于尾部进程空闲回收） */
+        private final ConcurrentLinkedDeque<PythonWorker> idle = new ConcurrentLinkedDeque<>();
+        /** 并发许可（即该环境最多同时存在的工作进程数） */
+        private final Semaphore permits;
+
+        private EnvPool(int maxSize) {
+            this.permits = new Semaphore(Math.max(1, maxSize), true);
+        }
+    }
+
+    /**
+     * 常驻工作进程
+     */
+    private static final class PythonWorker {
+        private static final int STDERR_TAIL_LIMIT = 8192;
+
+        private static final byte[] RESULT_MARKER_BYTES = RESULT_MARKER.getBytes(StandardCharsets.UTF_8);
+
+        private final String name;
+        private final Process process;
+        private final BufferedWriter stdin;
+        private final long resultSpillThresholdBytes;
+        private final BlockingQueue<WorkerLine> stdoutLines = new ArrayBlockingQueue<>(STDOUT_QUEUE_CAPACITY);
+        private final StringBuilder stderrTail = new StringBuilder();
+        private int jobs;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean destroyed;
+
+        private PythonWorker(String name, Process process, long resultSpillThresholdBytes) {
+            this.name = name;
+            this.process = process;
+            this.resultSpillThresholdBytes = resultSpillThresholdBytes;
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+            Thread stdoutReader = new Thread(this::readStdout, name + "-stdout");
+            stdoutReader.setDaemon(true);
+            stdoutReader.start();
+
+            Thread stderrReader = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        log.debug("Python worker {} stderr: {}", name, line);
+                        synchronized (stderrTail) {
+                            stderrTail.append(line).append("\n");
+                            if (stderrTail.length() > STDERR_TAIL_LIMIT) {
+                                stderrTail.delete(0, stderrTail.length() - STDERR_TAIL_LIMIT);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("读取工作进程stderr结束: {}", e.getMessage());
+                }
+            }, name + "-stderr");
+            stderrReader.setDaemon(true);
+            stderrReader.start();
+        }
+
+        /**
+         * 按行读取stdout：普通行最多保留 MAX_LINE_BYTES 字节，
+         * 结果行写入有界捕获（超过阈值转写临时文件），整行读完后再交给执行线程
+         */
+        private void readStdout() {
+            byte[] buffer = new byte[8192];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ProcessOutputCapture frame = null;
+            try (InputStream in = process.getInputStream()) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    int start = 0;
+                    while (start < n) {
+                        int newline = indexOf(buffer, start, n);
+                        int end = newline >= 0 ? newline : n;
+                        if (frame != null) {
+                            frame.write(buffer, start, end - start);
+                        } else {
+                            int allowed = Math.min(end - start, MAX_LINE_BYTES - line.size());
+                            if (allowed > 0) {
+                                line.write(buffer, start, allowed);
+                            }
+                            if (allowed < end - start && isResultLine(line)) {
+                                // 结果行超过单行上限，改为写入结果帧捕获
+                                frame = startFrame(line);
+                                frame.write(buffer, start + allowed, end - start - allowed);
+                            }
+                        }
+                        if (newline < 0) {
+                            break;
+                        }
+                        if (frame == null && isResultLine(line)) {
+                            frame = startFrame(line);
+                        }
+                        if (frame != null) {
+                            frame.complete();
+                            ProcessOutputCapture completed = frame;
+                            frame = null;
+                            if (!enqueue(new WorkerLine(null, completed))) {
+                                completed.close();
+                            }
+                        } else {
+                            enqueue(new WorkerLine(line.toString(StandardCharsets.UTF_8), null));
+                        }
+                        line.reset();
+                        start = newline + 1;
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("读取工作进程stdout结束: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (frame != null) {
+                    frame.close();
+                }
+                try {
+                    enqueue(WorkerLine.EOF);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private ProcessOutputCapture startFrame(ByteArrayOutputStream line) throws IOException {
+            ProcessOutputCapture frame = new ProcessOutputCapture(0, 0, resultSpillThresholdBytes, -1, null,
+                    RESULT_MARKER);
+            byte[] bytes = line.toByteArray();
+            frame.write(bytes, 0, bytes.length);
+            line.reset();
+            return frame;
+        }
+
+        private static boolean isResultLine(ByteArrayOutputStream line) {
+            if (line.size() < RESULT_MARKER_BYTES.length) {
+                return false;
+            }
+            byte[] bytes = line.toByteArray();
+            for (int i = 0; i < RESULT_MARKER_BYTES.length; i++) {
+                if (bytes[i] != RESULT_MARKER_BYTES[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int indexOf(byte[] bytes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 放入行队列，队列满时等待执行线程取走；进程已销毁时放弃
+         *
+         * @return 是否已放入
+         */
+        private boolean enqueue(WorkerLine line) throws InterruptedException {
+            while (!destroyed) {
+                if (stdoutLines.offer(line, 1, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 丢弃队列中残留的输出（保留EOF）
+         */
+        private void discardPending() {
+            stdoutLines.removeIf(line -> {
+                if (line == WorkerLine.EOF) {
+                    return false;
+                }
+                if (line.frame() != null) {
+                    line.frame().close();
+                }
+                return true;
+            });
+        }
+
+        private String stderrTail() {
+            synchronized (stderrTail) {
+                return stderrTail.toString().trim();
+            }
+        }
+
+        private void destroy() {
+            destroyed = true;
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            discardPending();
+        }
+    }
+
+    /**
+     * 工作进程stdout的一行：普通行为 text，结果行为 frame
+     */
+    private record WorkerLine(String text, ProcessOutputCapture frame) {
+        /**
+         * 输出流结束标记
+         */
+        private static final WorkerLine EOF = new WorkerLine("", null);
+    }
+}
@@ -0,0 +1,104 @@
+package cn.tannn.cat.block.service;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * Python脚本的资源限制
+ * 可配置在Python环境上（环境内所有块的默认值），也可配置在节点 node.data.resourceLimits
+ * 或块快照 blockSnapshot.resourceLimits 上（按字段覆盖环境的配置），格式：
+ * {"memoryMb": 512, "cpuSeconds": 60, "cpuQuota": 1.5, "maxProcesses": 32, "maxOpenFiles": 256, "maxOutputBytes": 10485760}
+ * <p>
+ * 内存、CPU时间和文件描述符通过 setrlimit 在脚本进程内生效（仅类Unix系统）；
+ * 配置了 cgroup v2 目录时，内存、CPU配额和进程数同时由 cgroup 限制（覆盖脚本启动的子进程）；
+ * 输出大小由执行器在读取标准输出时限制
+ *
+ * @param memoryMb       内存上限（MB），setrlimit 下限制的是虚拟地址空间
+ * @param cpuSeconds     CPU时间上限（秒），超出后进程被 SIGXCPU 终止
+ * @param cpuQuota       CPU配额（核数，如 0.5、2），仅 cgroup 下生效
+ * @param maxProcesses   最大进程/线程数，仅 cgroup 下生效（RLIMIT_NPROC 按用户计数，会受服务自身线程影响，不使用）
+ * @param maxOpenFiles   最大打开文件数
+ * @param maxOutputBytes 标准输出最大字节数，超出后终止进程
+ * @author tnnn
+ */
+public record ResourceLimits(Long memoryMb, Long cpuSeconds, Double cpuQuota, Integer maxProcesses,
+                             Integer maxOpenFiles, Long maxOutputBytes) {
+
+    /**
+     * 解析资源限制配置，未配置任何限制时返回null
+     */
+    public static ResourceLimits from(JSONObject config) {
+        if (config == null || config.isEmpty()) {
+            return null;
+        }
+        ResourceLimits limits = new ResourceLimits(
+                positive(config.getLong("memoryMb")),
+                positive(config.getLong("cpuSeconds")),
+                config.getDouble("cpuQuota") != null && config.getDouble("cpuQuota") > 0 ? config.getDouble("cpuQuota") : null,
+                positive(config.getInteger("maxProcesses")),
+                positive(config.getInteger("maxOpenFiles")),
+                positive(config.getLong("maxOutputBytes")));
+        return limits.isEmpty() ? null : limits;
+    }
+
+    /**
+     * 按字段合并，overrides 中配置的字段优先
+     *
+     * @param overrides 节点/块的限制（可为null）
+     * @param defaults  环境的限制（可为null）
+     * @return 合并后的限制，都未配置时返回null
+     */
+    public static ResourceLimits merge(ResourceLimits overrides, ResourceLimits defaults) {
+        if (overrides == null || defaults == null) {
+            return overrides != null ? overrides : defaults;
+        }
+        return new ResourceLimits(
+                overrides.memoryMb != null ? overrides.memoryMb : defaults.memoryMb,
+                overrides.cpuSeconds != null ? overrides.cpuSeconds : defaults.cpuSeconds,
+                overrides.cpuQuota != null ? overrides.cpuQuota : defaults.cpuQuota,
+                overrides.maxProcesses != null ? overrides.maxProcesses : defaults.maxProcesses,
+                overrides.maxOpenFiles != null ? overrides.maxOpenFiles : defaults.maxOpenFiles,
+                overrides.maxOutputBytes != null ? overrides.maxOutputBytes : defaults.maxOutputBytes);
+    }
+
+    public boolean isEmpty() {
+        return memoryMb == null && cpuSeconds == null && cpuQuota == null && maxProcesses == null
+                && maxOpenFiles == null && maxOutputBytes == null;
+    }
+
+    /**
+     * 脚本进程内通过 setrlimit 生效的部分（传给包装脚本）
+     */
+    public String toRlimitSpec() {
+        JSONObject spec = new JSONObject();
+        spec.put("memoryMb", memoryMb);
+        spec.put("cpuSeconds", cpuSeconds);
+        spec.put("maxOpenFiles", maxOpenFiles);
+        return spec.toJSONString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "内存", memoryMb, "MB");
+        append(sb, "CPU时间", cpuSeconds, "s");
+        append(sb, "CPU配额", cpuQuota, "核");
+        append(sb, "进程数", maxProcesses, "");
+        append(sb, "文件数", maxOpenFiles, "");
+        append(sb, "输出", maxOutputBytes, "字节");
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, Object value, String unit) {
+        if (value != null) {
+            sb.append(sb.isEmpty() ? "" : ", ").append(name).append(' ').append(value).append(unit);
+        }
+    }
+
+    private static Long positive(Long value) {
+        return value != null && value > 0 ? value : null;
+    }
+
+    private static Integer positive(Integer value) {
+        return value != null && value > 0 ? value : null;
+    }
+}
@@ -0,0 +1,401 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.controller.dto.webhook.WebhookReceiptVO;
+import cn.tannn.cat.block.enums.ExecutionStatus;
+import cn.tannn.cat.block.enums.TriggerType;
+import cn.tannn.cat.block.enums.WebhookAcceptStatus;
+import cn.tannn.cat.block.repository.WorkflowRepository;
+import cn.tannn.jdevelops.exception.built.BusinessException;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Webhook事件受理
+ * 请求线程只做内存操作：按密钥从缓存解析流程、按 Idempotency-Key 去重、合并窗口内内容相同的事件，
+ * 然后放入有界缓冲区立即返回；后台线程把缓冲区中的事件攒批，在一个事务里用 JDBC 批量写入执行记录和执行队列；
+ * 批量写入不经过 {@link ExecutionQueue#enqueue}，排队上限由受理时按后台线程刷新的剩余名额检查
+ *
+ * @author tnnn
+ */
+@Slf4j
+@Service
+public class WebhookDispatcher {
+
+    private static final String INSERT_LOG_SQL = "INSERT INTO execution_logs " +
+            "(workflow_id, workflow_name, executor_username, status, trigger_type, input_params, " +
+            "queued_time, start_time, idempotency_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_QUEUE_SQL = "INSERT INTO execution_queue " +
+            "(execution_id, workflow_id, timeout_seconds, workflow_timeout_seconds, available_time, attempts, create_time) " +
+            "VALUES (?, ?, ?, ?, ?, 0, ?)";
+
+    /**
+     * Webhook触发的执行人
+     */
+    private static final String WEBHOOK_EXECUTOR = "webhook";
+
+    /**
+     * 单个节点默认超时时间（秒），与手动执行保持一致
+     */
+    private static final long DEFAULT_NODE_TIMEOUT_SECONDS = 60L;
+
+    /**
+     * 写入失败时的重试次数
+     */
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final WorkflowRepository workflowRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutionQueue executionQueue;
+
+    private final int batchSize;
+    private final long lingerMillis;
+    private final long coalesceWindowMillis;
+    private final long idempotencyWindowMillis;
+    private final int idempotencyMaxEntries;
+    private final long keyCacheMillis;
+    private final long defaultWorkflowTimeoutSeconds;
+
+    /**
+     * 待写入的事件
+     */
+    private final BlockingQueue<WebhookEvent> buffer;
+
+    /**
+     * key: workflowId + Idempotency-Key 或 workflowId + 内容摘要，value: 首次受理的事件
+     */
+    private final Map<String, Accepted> recent = new ConcurrentHashMap<>();
+
+    /**
+     * key: webhookKey, value: 解析结果（包括不存在的密钥）
+     */
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    /**
+     * 执行队列剩余的排队名额（workflow.queue.max-pending），由写入线程在每批写入后和每秒刷新，
+     * 请求线程据此拒绝超出名额的事件，不查询数据库
+     */
+    private volatile long pendingCapacity = Long.MAX_VALUE;
+
+    private volatile boolean running = true;
+    private final Thread flusher;
+
+    public WebhookDispatcher(WorkflowRepository workflowRepository,
+                             JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             ExecutionQueue executionQueue,
+                             @Value("${workflow.webhook.batch-size:200}") int batchSize,
+                             @Value("${workflow.webhook.linger-millis:20}") long lingerMillis,
+                             @Value("${workflow.webhook.max-buffered-events:10000}") int maxBufferedEvents,
+                             @Value("${workflow.webhook.coalesce-window-millis:1000}") long coalesceWindowMillis,
+                             @Value("${workflow.webhook.idempotency-window-seconds:600}") long idempotencyWindowSeconds,
+                             @Value("${workflow.webhook.idempotency-max-entries:100000}") int idempotencyMaxEntries,
+                             @Value("${workflow.webhook.key-cache-seconds:30}") long keyCacheSeconds,
+                             @Value("${workflow.execution.default-workflow-timeout-seconds:3600}") long defaultWorkflowTimeoutSeconds) {
+        this.workflowRepository = workflowRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.executionQueue = executionQueue;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, maxBufferedEvents));
+        this.coalesceWindowMillis = Math.max(0, coalesceWindowMillis);
+        this.idempotencyWindowMillis = Math.max(0, idempotencyWindowSeconds) * 1000;
+        this.idempotencyMaxEntries = Math.max(0, idempotencyMaxEntries);
+        this.keyCacheMillis = Math.max(0, keyCacheSeconds) * 1000;
+        this.defaultWorkflowTimeoutSeconds = defaultWorkflowTimeoutSeconds;
+        this.flusher = new Thread(this::flushLoop, "webhook-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 受理Webhook事件
+     *
+     * @param webhookKey     Webhook密钥
+     * @param idempotencyKey 幂等键，为空时按内容在合并窗口内合并
+     * @param payload        事件内容（作为流程输入参数）
+     * @return 受理回执
+     */
+    public WebhookReceiptVO accept(String webhookKey, String idempotencyKey, JSONObject payload) {
+        Target target = resolve(webhookKey);
+        if (target.workflowId() == null) {
+            throw new BusinessException("Webhook不存在");
+        }
+        if (!target.active()) {
+            throw new BusinessException("流程未启用");
+        }
+        if (idempotencyKey != null && idempotencyKey.length() > 128) {
+            throw new BusinessException("Idempotency-Key 长度不能超过128");
+        }
+
+        long now = System.currentTimeMillis();
+        String eventId;
+        String dedupeKey;
+        long expireAt;
+        if (StringUtils.hasText(idempotencyKey)) {
+            eventId = idempotencyKey.trim();
+            dedupeKey = target.workflowId() + "#" + eventId;
+            expireAt = now + idempotencyWindowMillis;
+        } else {
+            eventId = UUID.randomUUID().toString().replace("-", "");
+            dedupeKey = coalesceWindowMillis > 0 ? target.workflowId() + "@" + digest(payload) : null;
+            expireAt = now + coalesceWindowMillis;
+        }
+
+        if (dedupeKey != null && recent.size() < idempotencyMaxEntries) {
+            Accepted accepted = new Accepted(eventId, expireAt);
+            Accepted existing = recent.putIfAbsent(dedupeKey, accepted);
+            if (existing != null && existing.expireAt() < now && recent.replace(dedupeKey, existing, accepted)) {
+                existing = null;
+            }
+            if (existing != null) {
+                return new WebhookReceiptVO(target.workflowId(), existing.eventId(),
+                        StringUtils.hasText(idempotencyKey) ? WebhookAcceptStatus.DUPLICATE : WebhookAcceptStatus.COALESCED);
+            }
+        }
+
+        WebhookEvent event = new WebhookEvent(target.workflowId(), target.name(), eventId, dedupeKey,
+                payload != null ? payload : new JSONObject(), LocalDateTime.now());
+        // 已缓冲待写入的事件也占用执行队列的排队名额
+        boolean queueFull = buffer.size() >= pendingCapacity;
+        if (queueFull || !buffer.offer(event)) {
+            if (dedupeKey != null) {
+                recent.remove(dedupeKey);
+            }
+            throw new BusinessException(queueFull ? "执行队列已满，请稍后重试" : "Webhook事件过多，请稍后重试");
+        }
+        return new WebhookReceiptVO(target.workflowId(), eventId, WebhookAcceptStatus.ACCEPTED);
+    }
+
+    /**
+     * 失效流程的Webhook密钥缓存（密钥重置、关闭或流程删除、停用后调用）
+     *
+     * @param workflowId 流程ID
+     */
+    public void invalidate(Integer workflowId) {
+        targets.values().removeIf(target -> Objects.equals(target.workflowId(), workflowId));
+    }
+
+    /**
+     * 按密钥解析流程，结果缓存 key-cache-seconds 秒（不存在的密钥也缓存，避免无效请求打到数据库）
+     */
+    private Target resolve(String webhookKey) {
+        long now = System.currentTimeMillis();
+        Target target = targets.get(webhookKey);
+        if (target == null || target.expireAt() < now) {
+            target = workflowRepository.findWebhookByWebhookKey(webhookKey)
+                    .map(view -> new Target(view.getId(), view.getName(), Boolean.TRUE.equals(view.getIsActive()),
+                            now + keyCacheMillis))
+                    .orElseGet(() -> new Target(null, null, false, now + keyCacheMillis));
+            if (targets.size() >= idempotencyMaxEntries) {
+                targets.values().removeIf(t -> t.expireAt() < now);
+            }
+            targets.put(webhookKey, target);
+        }
+        return target;
+    }
+
+    private void flushLoop() {
+        List<WebhookEvent> batch = new ArrayList<>(batchSize);
+        long nextPurge = 0;
+        while (running) {
+            try {
+                long now = System.currentTimeMillis();
+                if (now >= nextPurge) {
+                    recent.values().removeIf(accepted -> accepted.expireAt() < now);
+                    refreshPendingCapacity();
+                    nextPurge = now + 1000;
+                }
+                WebhookEvent first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // 短暂等待让突发请求攒成一批
+                    if (lingerMillis > 0 && buffer.size() < batchSize - 1) {
+                        Thread.sleep(lingerMillis);
+                    }
+                    buffer.drainTo(batch, batchSize - 1);
+                    flush(batch);
+                    batch.clear();
+                    refreshPendingCapacity();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Webhook事件写入异常: {}", e.getMessage(), e);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 刷新执行队列剩余的排队名额，查询失败时保留上一次的值
+     */
+    private void refreshPendingCapacity() {
+        try {
+            pendingCapacity = executionQueue.remainingPending();
+        } catch (Exception e) {
+            log.warn("查询执行队列排队数失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 批量写入执行记录和执行队列
+     */
+    private void flush(List<WebhookEvent> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<WebhookEvent> written;
+                try {
+                    written = transactionTemplate.execute(status -> insert(batch));
+                } catch (DuplicateKeyException e) {
+                    // 批次中有超出内存去重窗口的重复事件，逐条写入并跳过重复项
+                    written = new ArrayList<>(batch.size());
+                    for (WebhookEvent event : batch) {
+                        try {
+                            written.addAll(Objects.requireNonNull(
+                                    transactionTemplate.execute(status -> insert(List.of(event)))));
+                        } catch (DuplicateKeyException duplicate) {
+                            log.info("忽略重复的Webhook事件, workflowId: {}, eventId: {}",
+                                    event.workflowId(), event.eventId());
+                        }
+                    }
+                }
+                if (written != null && !written.isEmpty()) {
+                    executionQueue.wakeUp();
+                    log.debug("Webhook事件已写入, 本批: {}, 写入: {}", batch.size(), written.size());
+                }
+                return;
+            } catch (Exception e) {
+                if (attempt >= MAX_FLUSH_ATTEMPTS) {
+                    for (WebhookEvent event : batch) {
+                        if (event.dedupeKey() != null) {
+                            recent.remove(event.dedupeKey());
+                        }
+                    }
+                    log.error("Webhook事件写入失败，丢弃 {} 个事件: {}", batch.size(), e.getMessage(), e);
+                    return;
+                }
+                log.warn("Webhook事件写入失败，{}ms后重试({}/{}): {}", 200L * attempt, attempt, MAX_FLUSH_ATTEMPTS, e.getMessage());
+                Thread.sleep(200L * attempt);
+            }
+        }
+    }
+
+    private List<WebhookEvent> insert(List<WebhookEvent> events) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_LOG_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        WebhookEvent event = events.get(i);
+                        Timestamp queuedTime = Timestamp.valueOf(event.receivedTime());
+                        ps.setInt(1, event.workflowId());
+                        ps.setString(2, event.workflowName());
+                        ps.setString(3, WEBHOOK_EXECUTOR);
+                        ps.setString(4, ExecutionStatus.QUEUED.name());
+                        ps.setString(5, TriggerType.WEBHOOK.name());
+                        ps.setString(6, event.payload().toJSONString());
+                        ps.setTimestamp(7, queuedTime);
+                        ps.setTimestamp(8, queuedTime);
+                        ps.setString(9, event.eventId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != events.size()) {
+            throw new IllegalStateException("执行记录主键数量不匹配: " + keys.size() + "/" + events.size());
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_QUEUE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, ((Number) keys.get(i).values().iterator().next()).longValue());
+                ps.setInt(2, events.get(i).workflowId());
+                ps.setLong(3, DEFAULT_NODE_TIMEOUT_SECONDS);
+                ps.setLong(4, defaultWorkflowTimeoutSeconds);
+                ps.setTimestamp(5, now);
+                ps.setTimestamp(6, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return events.size();
+            }
+        });
+        return events;
+    }
+
+    /**
+     * 事件内容摘要（键排序后序列化，字段顺序不同的相同内容视为同一事件）
+     */
+    private static String digest(JSONObject payload) {
+        String canonical = payload != null ? JSON.toJSONString(payload, JSONWriter.Feature.SortMapEntriesByKeys) : "{}";
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        // 尽量写入已受理的事件
+        List<WebhookEvent> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            try {
+                flush(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+            } catch (Exception e) {
+                log.error("关闭时写入Webhook事件失败: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private record Target(Integer workflowId, String name, boolean active, long expireAt) {
+    }
+
+    private record Accepted(String eventId, long expireAt) {
+    }
+
+    private record WebhookEvent(Integer workflowId, String workflowName, String eventId, String dedupeKey,
+                                JSONObject payload, LocalDateTime receivedTime) {
+    }
+}
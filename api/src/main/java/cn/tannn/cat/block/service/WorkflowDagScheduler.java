@@ -0,0 +1,403 @@
+package cn.tannn.cat.block.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流程DAG并行调度器
+ * 按波前方式调度节点：入度归零的节点立即投递到有界线程池中执行，
+ * 相互独立的分支可以并发运行，整体耗时趋近于关键路径耗时
+ *
+ * @author tnnn
+ */
+@Component
+@Slf4j
+public class WorkflowDagScheduler {
+
+    /**
+     * 等待重试期间检查取消的最长间隔（毫秒）
+     */
+    private static final long RETRY_POLL_MILLIS = 500;
+
+    /**
+     * 单个流程内同时运行的最大节点数
+     */
+    private final int workflowMaxConcurrency;
+
+    /**
+     * 全局节点执行线程池（所有流程共享，线程数即全局并发上限）
+     */
+    private final ThreadPoolExecutor nodeExecutor;
+
+    /**
+     * map节点的元素执行线程池（与节点线程池分开，避免节点线程等待同一线程池中的元素任务而死锁）
+     */
+    private final ThreadPoolExecutor elementExecutor;
+
+    public WorkflowDagScheduler(
+            @Value("${workflow.execution.global-max-concurrency:8}") int globalMaxConcurrency,
+            @Value("${workflow.execution.workflow-max-concurrency:4}") int workflowMaxConcurrency,
+            @Value("${workflow.execution.map-max-concurrency:8}") int mapMaxConcurrency) {
+        this.workflowMaxConcurrency = Math.max(1, workflowMaxConcurrency);
+        int poolSize = Math.max(1, globalMaxConcurrency);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.nodeExecutor = new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "dag-node-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.nodeExecutor.allowCoreThreadTimeOut(true);
+        int elementPoolSize = Math.max(1, mapMaxConcurrency);
+        AtomicInteger elementThreadIndex = new AtomicInteger();
+        this.elementExecutor = new ThreadPoolExecutor(elementPoolSize, elementPoolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "dag-map-" + elementThreadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.elementExecutor.allowCoreThreadTimeOut(true);
+        log.info("流程DAG调度器初始化: 全局并发={}, 单流程并发={}, map元素并发={}",
+                poolSize, this.workflowMaxConcurrency, elementPoolSize);
+    }
+
+    /**
+     * 调度执行整张DAG
+     * 节点以下标表示（见 {@link ExecutionPlan}），调用线程作为协调者，负责维护入度和投递就绪节点；
+     * 节点失败时先询问重试策略，需要重试的节点按退避时间放入重试队列，到期后重新投递，
+     * 等待期间不占用节点线程；不再重试的失败才视为节点失败，此后不再投递新节点，
+     * 中断仍在运行的节点并立即抛出首个异常；
+     * 执行被取消时运行中的节点同样会被中断，未投递和等待重试的节点直接跳过
+     *
+     * @param successors  后继节点（nodeIndex -> 依赖它的节点下标）
+     * @param inDegree    入度（不会被修改）
+     * @param task        节点执行逻辑（在线程池中执行，重试时以相同下标再次调用）
+     * @param running     运行中的执行（可为null），用于取消和登记节点任务
+     * @param retryPolicy 重试策略（可为null，表示不重试）
+     * @throws Exception 节点执行失败、执行被取消（CancellationException）或存在循环依赖
+     */
+    public void run(int[][] successors,
+                    int[] inDegree,
+                    NodeTask task,
+                    ExecutionRegistry.RunningExecution running,
+                    RetryPolicy retryPolicy) throws Exception {
+        int nodeCount = inDegree.length;
+        int[] remaining = inDegree.clone();
+        int[] failedAttempts = new int[nodeCount];
+        PriorityQueue<PendingRetry> retries = new PriorityQueue<>(Comparator.comparingLong(PendingRetry::dueAtMillis));
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < nodeCount; i++) {
+            if (remaining[i] == 0) {
+                ready.offer(i);
+            }
+        }
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(nodeExecutor);
+        Map<Future<Integer>, Integer> inFlight = new HashMap<>();
+        int finished = 0;
+        Exception failure = null;
+
+        try {
+            while (finished < nodeCount) {
+                if (failure == null && running != null && running.isCancelled()) {
+                    failure = new CancellationException(running.getCancelReason());
+                }
+
+                // 退避时间已到的重试节点重新进入就绪队列
+                long now = System.currentTimeMillis();
+                while (failure == null && !retries.isEmpty() && retries.peek().dueAtMillis() <= now) {
+                    ready.offer(retries.poll().nodeIndex());
+                }
+
+                // 投递就绪节点（受单流程并发上限约束）
+                while (failure == null && !ready.isEmpty() && inFlight.size() < workflowMaxConcurrency) {
+                    int nodeIndex = ready.poll();
+                    Future<Integer> future = completionService.submit(() -> {
+                        ExecutionRegistry.RunningExecution previous = ExecutionRegistry.bind(running);
+                        try {
+                            task.execute(nodeIndex);
+                            return nodeIndex;
+                        } finally {
+                            ExecutionRegistry.bind(previous);
+                        }
+                    });
+                    inFlight.put(future, nodeIndex);
+                    if (running != null) {
+                        running.addFuture(future);
+                    }
+                }
+
+                if (failure != null || (inFlight.isEmpty() && retries.isEmpty())) {
+                    // 已失败或已取消，或者没有运行中、就绪和等待重试的节点（存在循环依赖）
+                    break;
+                }
+
+                // 有等待重试的节点时最多等到最早的重试到期（并定期检查取消），否则等待任一节点结束
+                Future<Integer> done;
+                if (retries.isEmpty()) {
+                    done = completionService.take();
+                } else {
+                    long waitMillis = Math.min(RETRY_POLL_MILLIS, Math.max(1, retries.peek().dueAtMillis() - now));
+                    done = completionService.poll(waitMillis, TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        continue;
+                    }
+                }
+                int nodeIndex = inFlight.remove(done);
+                if (running != null) {
+                    running.removeFuture(done);
+                }
+                try {
+                    done.get();
+                    finished++;
+                    for (int dependent : successors[nodeIndex]) {
+                        if (--remaining[dependent] == 0) {
+                            ready.offer(dependent);
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ex ? ex : new RuntimeException(e.getCause());
+                    failedAttempts[nodeIndex]++;
+                    boolean cancelled = running != null && running.isCancelled();
+                    long delay = failure == null && !cancelled && retryPolicy != null
+                            ? retryPolicy.retryDelayMillis(nodeIndex, failedAttempts[nodeIndex], cause)
+                            : -1;
+                    if (delay >= 0) {
+                        retries.offer(new PendingRetry(System.currentTimeMillis() + delay, nodeIndex));
+                        continue;
+                    }
+                    if (failure == null) {
+                        failure = cause;
+                    }
+                } catch (CancellationException e) {
+                    if (failure == null) {
+                        failure = new CancellationException(running != null && running.getCancelReason() != null
+                                ? running.getCancelReason() : "节点任务已取消");
+                    }
+                }
+            }
+        } finally {
+            // 失败、取消或协调线程被中断时，中断仍在运行的节点，不再等待它们结束
+            for (Future<Integer> future : inFlight.keySet()) {
+                future.cancel(true);
+                if (running != null) {
+                    running.removeFuture(future);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (finished < nodeCount) {
+            throw new RuntimeException("流程中存在循环依赖，无法执行");
+        }
+    }
+
+    /**
+     * 在调用线程中串行执行整张DAG（子流程使用）
+     * 按入度归零的顺序逐个执行节点，不向节点线程池投递任务：子流程运行在父节点所在的线程中，
+     * 不占用额外的节点线程，也不会出现节点线程等待同一线程池中排队任务的死锁；
+     * 节点失败后按重试策略在调用线程中退避等待，等待期间响应取消
+     *
+     * @param successors  后继节点（nodeIndex -> 依赖它的节点下标）
+     * @param inDegree    入度（不会被修改）
+     * @param task        节点执行逻辑（在调用线程中执行）
+     * @param running     运行中的执行（可为null），用于取消
+     * @param retryPolicy 重试策略（可为null，表示不重试）
+     * @throws Exception 节点执行失败、执行被取消（CancellationException）或存在循环依赖
+     */
+    public void runInline(int[][] successors,
+                          int[] inDegree,
+                          NodeTask task,
+                          ExecutionRegistry.RunningExecution running,
+                          RetryPolicy retryPolicy) throws Exception {
+        int nodeCount = inDegree.length;
+        int[] remaining = inDegree.clone();
+        int[] failedAttempts = new int[nodeCount];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < nodeCount; i++) {
+            if (remaining[i] == 0) {
+                ready.offer(i);
+            }
+        }
+
+        int finished = 0;
+        while (!ready.isEmpty()) {
+            if (running != null) {
+                running.throwIfCancelled();
+            }
+            int nodeIndex = ready.peek();
+            try {
+                task.execute(nodeIndex);
+            } catch (CancellationException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                failedAttempts[nodeIndex]++;
+                boolean cancelled = running != null && running.isCancelled();
+                long delay = !cancelled && retryPolicy != null
+                        ? retryPolicy.retryDelayMillis(nodeIndex, failedAttempts[nodeIndex], e)
+                        : -1;
+                if (delay < 0) {
+                    throw e;
+                }
+                sleepForRetry(delay, running);
+                continue;
+            }
+            ready.poll();
+            finished++;
+            for (int dependent : successors[nodeIndex]) {
+                if (--remaining[dependent] == 0) {
+                    ready.offer(dependent);
+                }
+            }
+        }
+        if (finished < nodeCount) {
+            throw new RuntimeException("流程中存在循环依赖，无法执行");
+        }
+    }
+
+    /**
+     * 重试退避等待（分段等待以便及时响应取消）
+     */
+    private static void sleepForRetry(long delayMillis, ExecutionRegistry.RunningExecution running)
+            throws InterruptedException {
+        long dueAt = System.currentTimeMillis() + delayMillis;
+        long now;
+        while ((now = System.currentTimeMillis()) < dueAt) {
+            if (running != null) {
+                running.throwIfCancelled();
+            }
+            Thread.sleep(Math.min(RETRY_POLL_MILLIS, dueAt - now));
+        }
+    }
+
+    /**
+     * 并行执行map节点的各个元素
+     * 在元素线程池中最多同时运行 parallelism 个元素，调用线程（节点线程）等待全部元素结束；
+     * 任一元素失败或执行被取消时中断其余元素并抛出首个异常
+     *
+     * @param count       元素数量
+     * @param parallelism 最大并行数
+     * @param running     运行中的执行（可为null），用于取消和登记元素任务
+     * @param task        元素执行逻辑
+     * @throws Exception 元素执行失败或执行被取消（CancellationException）
+     */
+    public void forEach(int count,
+                        int parallelism,
+                        ExecutionRegistry.RunningExecution running,
+                        ElementTask task) throws Exception {
+        int limit = Math.max(1, parallelism);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(elementExecutor);
+        Set<Future<Integer>> inFlight = new HashSet<>();
+        int next = 0;
+        int finished = 0;
+        Exception failure = null;
+        try {
+            while (finished < count) {
+                if (failure == null && running != null && running.isCancelled()) {
+                    failure = new CancellationException(running.getCancelReason());
+                }
+                while (failure == null && next < count && inFlight.size() < limit) {
+                    int elementIndex = next++;
+                    Future<Integer> future = completionService.submit(() -> {
+                        ExecutionRegistry.RunningExecution previous = ExecutionRegistry.bind(running);
+                        try {
+                            task.execute(elementIndex);
+                            return elementIndex;
+                        } finally {
+                            ExecutionRegistry.bind(previous);
+                        }
+                    });
+                    inFlight.add(future);
+                    if (running != null) {
+                        running.addFuture(future);
+                    }
+                }
+                if (failure != null || inFlight.isEmpty()) {
+                    break;
+                }
+
+                Future<Integer> done = completionService.take();
+                inFlight.remove(done);
+                if (running != null) {
+                    running.removeFuture(done);
+                }
+                try {
+                    done.get();
+                    finished++;
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception ex ? ex : new RuntimeException(e.getCause());
+                } catch (CancellationException e) {
+                    failure = new CancellationException(running != null && running.getCancelReason() != null
+                            ? running.getCancelReason() : "元素任务已取消");
+                }
+            }
+        } finally {
+            // 失败、取消或节点线程被中断时，不再等待其余元素
+            for (Future<Integer> future : inFlight) {
+                future.cancel(true);
+                if (running != null) {
+                    running.removeFuture(future);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        nodeExecutor.shutdownNow();
+        elementExecutor.shutdownNow();
+    }
+
+    /**
+     * 节点执行逻辑
+     */
+    @FunctionalInterface
+    public interface NodeTask {
+        void execute(int nodeIndex) throws Exception;
+    }
+
+    /**
+     * map节点的元素执行逻辑
+     */
+    @FunctionalInterface
+    public interface ElementTask {
+        void execute(int elementIndex) throws Exception;
+    }
+
+    /**
+     * 节点重试策略
+     */
+    @FunctionalInterface
+    public interface RetryPolicy {
+        /**
+         * 节点失败后的重试等待时间（在调用线程中执行）
+         *
+         * @param nodeIndex      节点下标
+         * @param failedAttempts 已失败次数（从1开始）
+         * @param failure        本次失败的异常
+         * @return 重试前等待的毫秒数，小于0表示不再重试
+         */
+        long retryDelayMillis(int nodeIndex, int failedAttempts, Exception failure);
+    }
+
+    /**
+     * 等待重试的节点
+     */
+    private record PendingRetry(long dueAtMillis, int nodeIndex) {
+    }
+}
@@ -0,0 +1,337 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.controller.dto.workflow.WorkflowExecuteDTO;
+import cn.tannn.cat.block.enums.MisfirePolicy;
+import cn.tannn.cat.block.enums.TriggerType;
+import cn.tannn.cat.block.repository.WorkflowRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 流程定时触发调度器
+ * 启用定时触发的流程按下次触发时间放入优先队列，由单个调度线程等待最早到期的触发；
+ * 到期后通过 nextFireTime 的条件更新抢占本次触发，多实例部署时同一次触发只会被一个实例执行，
+ * 执行请求写入持久化执行队列后立即返回，调度线程不会被流程执行占用
+ *
+ * @author tnnn
+ */
+@Slf4j
+@Component
+public class WorkflowScheduler {
+
+    /**
+     * 定时触发的执行人
+     */
+    private static final String SCHEDULE_EXECUTOR = "system";
+
+    private final WorkflowRepository workflowRepository;
+    private final ExecutionService executionService;
+
+    /**
+     * 全量同步定时配置的间隔（毫秒），用于感知其他实例上的修改
+     */
+    private final long refreshIntervalMillis;
+
+    /**
+     * 超过计划时间多久视为错过触发（秒）
+     */
+    private final long misfireThresholdSeconds;
+
+    private final Object lock = new Object();
+
+    /**
+     * 按到期时间排序的触发队列（可能包含已过期的旧条目，出队时与 triggers 比对后丢弃）
+     */
+    private final PriorityQueue<Trigger> queue = new PriorityQueue<>(Comparator.comparingLong(Trigger::dueAtMillis));
+
+    /**
+     * key: workflowId, value: 当前有效的触发
+     */
+    private final Map<Integer, Trigger> triggers = new HashMap<>();
+
+    /**
+     * 待重新加载定时配置的流程
+     */
+    private final Set<Integer> pending = new LinkedHashSet<>();
+
+    private long nextRefreshMillis;
+    private volatile boolean running;
+    private Thread thread;
+
+    public WorkflowScheduler(WorkflowRepository workflowRepository,
+                             ExecutionService executionService,
+                             @Value("${workflow.schedule.refresh-interval-seconds:30}") long refreshIntervalSeconds,
+                             @Value("${workflow.schedule.misfire-threshold-seconds:60}") long misfireThresholdSeconds) {
+        this.workflowRepository = workflowRepository;
+        this.executionService = executionService;
+        this.refreshIntervalMillis = Math.max(1, refreshIntervalSeconds) * 1000;
+        this.misfireThresholdSeconds = Math.max(0, misfireThresholdSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        thread = new Thread(this::loop, "workflow-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("流程定时调度器已启动: 同步间隔={}ms, 错过阈值={}s", refreshIntervalMillis, misfireThresholdSeconds);
+    }
+
+    /**
+     * 计算下次触发时间
+     *
+     * @param cron            Cron表达式（秒 分 时 日 月 周），优先使用
+     * @param intervalSeconds 触发间隔（秒）
+     * @param after           起算时间
+     * @return 下次触发时间（精确到秒），无法再触发时返回null
+     * @throws IllegalArgumentException Cron表达式无效或未配置触发规则
+     */
+    public static LocalDateTime nextFireTime(String cron, Integer intervalSeconds, LocalDateTime after) {
+        LocalDateTime base = after.truncatedTo(ChronoUnit.SECONDS);
+        if (StringUtils.hasText(cron)) {
+            return CronExpression.parse(cron.trim()).next(base);
+        }
+        if (intervalSeconds != null && intervalSeconds > 0) {
+            return base.plusSeconds(intervalSeconds);
+        }
+        throw new IllegalArgumentException("未配置Cron表达式或触发间隔");
+    }
+
+    /**
+     * 重新加载流程的定时配置（流程新增、修改、删除后调用，在事务中调用时等提交后再加载）
+     *
+     * @param workflowId 流程ID
+     */
+    public void reschedule(Integer workflowId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markPending(workflowId);
+                }
+            });
+        } else {
+            markPending(workflowId);
+        }
+    }
+
+    private void markPending(Integer workflowId) {
+        synchronized (lock) {
+            pending.add(workflowId);
+            lock.notifyAll();
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            try {
+                Trigger due = null;
+                List<Integer> reload = null;
+                boolean refresh = false;
+                synchronized (lock) {
+                    long now = System.currentTimeMillis();
+                    if (now >= nextRefreshMillis) {
+                        refresh = true;
+                        nextRefreshMillis = now + refreshIntervalMillis;
+                    } else if (!pending.isEmpty()) {
+                        reload = new ArrayList<>(pending);
+                        pending.clear();
+                    } else {
+                        Trigger head = queue.peek();
+                        while (head != null && triggers.get(head.workflowId()) != head) {
+                            queue.poll();
+                            head = queue.peek();
+                        }
+                        if (head != null && head.dueAtMillis() <= now) {
+                            due = queue.poll();
+                            triggers.remove(due.workflowId());
+                        } else {
+                            long wakeAt = head != null ? Math.min(head.dueAtMillis(), nextRefreshMillis) : nextRefreshMillis;
+                            lock.wait(Math.max(1, wakeAt - now));
+                        }
+                    }
+                }
+
+                // 数据库操作和触发都在锁外进行
+                if (refresh) {
+                    refreshAll();
+                } else if (reload != null) {
+                    reload.forEach(this::reload);
+                } else if (due != null) {
+                    fire(due);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("流程定时调度异常: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 全量同步定时配置
+     */
+    private void refreshAll() {
+        Set<Integer> seen = new HashSet<>();
+        for (WorkflowRepository.ScheduleView view : workflowRepository.findScheduleByScheduleEnabledTrueAndIsActiveTrue()) {
+            seen.add(view.getId());
+            schedule(view);
+        }
+        synchronized (lock) {
+            triggers.keySet().retainAll(seen);
+        }
+    }
+
+    /**
+     * 重新加载单个流程的定时配置
+     */
+    private void reload(Integer workflowId) {
+        Optional<WorkflowRepository.ScheduleView> view = workflowRepository.findScheduleById(workflowId);
+        if (view.isPresent() && isEnabled(view.get())) {
+            schedule(view.get());
+        } else {
+            synchronized (lock) {
+                triggers.remove(workflowId);
+            }
+        }
+    }
+
+    /**
+     * 按数据库中的下次触发时间放入触发队列（尚未设置时先初始化）
+     */
+    private void schedule(WorkflowRepository.ScheduleView view) {
+        LocalDateTime fireTime = view.getNextFireTime();
+        if (fireTime == null) {
+            LocalDateTime next = computeNext(view, LocalDateTime.now());
+            if (next == null) {
+                return;
+            }
+            if (workflowRepository.initNextFireTime(view.getId(), next) == 0) {
+                // 其他实例已初始化，以数据库为准
+                view = workflowRepository.findScheduleById(view.getId()).orElse(null);
+                if (view == null || view.getNextFireTime() == null) {
+                    return;
+                }
+                next = view.getNextFireTime();
+            }
+            fireTime = next;
+        }
+        synchronized (lock) {
+            Trigger current = triggers.get(view.getId());
+            if (current != null && current.fireTime().equals(fireTime)) {
+                // 计划未变化，保留已生成的抖动
+                return;
+            }
+            int jitterSeconds = view.getScheduleJitterSeconds() != null ? Math.max(0, view.getScheduleJitterSeconds()) : 0;
+            long jitterMillis = jitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(jitterSeconds * 1000L + 1) : 0;
+            Trigger trigger = new Trigger(view.getId(), fireTime, toEpochMillis(fireTime) + jitterMillis);
+            triggers.put(view.getId(), trigger);
+            queue.add(trigger);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 到期触发：抢占成功后提交执行，并安排下一次触发
+     */
+    private void fire(Trigger trigger) {
+        Integer workflowId = trigger.workflowId();
+        WorkflowRepository.ScheduleView view = workflowRepository.findScheduleById(workflowId).orElse(null);
+        if (view == null || !isEnabled(view)) {
+            return;
+        }
+        if (!trigger.fireTime().equals(view.getNextFireTime())) {
+            // 已被其他实例触发或配置已变更
+            schedule(view);
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        boolean misfired = Duration.between(trigger.fireTime(), now).getSeconds() > misfireThresholdSeconds;
+        LocalDateTime next = computeNext(view, misfired ? now : trigger.fireTime());
+        boolean skip = misfired && view.getScheduleMisfirePolicy() == MisfirePolicy.SKIP;
+
+        int claimed = skip
+                ? workflowRepository.skipFire(workflowId, trigger.fireTime(), next)
+                : workflowRepository.claimFire(workflowId, trigger.fireTime(), next, now);
+        if (claimed == 0) {
+            reload(workflowId);
+            return;
+        }
+
+        if (skip) {
+            log.warn("跳过错过的定时触发, workflowId: {}, 计划时间: {}, 下次触发: {}", workflowId, trigger.fireTime(), next);
+        } else {
+            if (misfired) {
+                log.warn("补触发错过的定时触发, workflowId: {}, 计划时间: {}", workflowId, trigger.fireTime());
+            }
+            submit(view, trigger.fireTime());
+        }
+        if (next != null) {
+            reload(workflowId);
+        }
+    }
+
+    private void submit(WorkflowRepository.ScheduleView view, LocalDateTime fireTime) {
+        WorkflowExecuteDTO executeDTO = new WorkflowExecuteDTO();
+        executeDTO.setWorkflowId(view.getId());
+        executeDTO.setExecutorUsername(SCHEDULE_EXECUTOR);
+        try {
+            executionService.execute(executeDTO, TriggerType.SCHEDULE);
+            log.info("定时触发流程, workflowId: {}, workflowName: {}, 计划时间: {}", view.getId(), view.getName(), fireTime);
+        } catch (Exception e) {
+            log.error("定时触发流程失败, workflowId: {}, 计划时间: {}, error: {}", view.getId(), fireTime, e.getMessage());
+        }
+    }
+
+    private LocalDateTime computeNext(WorkflowRepository.ScheduleView view, LocalDateTime after) {
+        try {
+            return nextFireTime(view.getScheduleCron(), view.getScheduleIntervalSeconds(), after);
+        } catch (IllegalArgumentException e) {
+            log.warn("流程定时配置无效, workflowId: {}, error: {}", view.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isEnabled(WorkflowRepository.ScheduleView view) {
+        return Boolean.TRUE.equals(view.getScheduleEnabled()) && Boolean.TRUE.equals(view.getIsActive());
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * 触发
+     *
+     * @param workflowId  流程ID
+     * @param fireTime    计划触发时间
+     * @param dueAtMillis 实际触发时间（计划时间 + 抖动）
+     */
+    private record Trigger(Integer workflowId, LocalDateTime fireTime, long dueAtMillis) {
+    }
+}
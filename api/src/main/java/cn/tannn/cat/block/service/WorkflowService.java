@@ -81,6 +81,22 @@ public interface WorkflowService {
      */
     Workflow togglePublic(Integer id);
 
+    /**
+     * 生成（或重置）流程的Webhook密钥，旧密钥立即失效
+     *
+     * @param id 流程ID
+     * @return 更新后的流程
+     */
+    Workflow resetWebhookKey(Integer id);
+
+    /**
+     * 关闭流程的Webhook触发
+     *
+     * @param id 流程ID
+     * @return 更新后的流程
+     */
+    Workflow disableWebhook(Integer id);
+
     /**
      * 获取所有分类
      *
@@ -1,5 +1,6 @@
 package cn.tannn.cat.block.service.impl;
 
+import cn.tannn.cat.block.controller.dto.block.BlockBatchTestDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockCreateDTO;
 import cn.tannn.cat.block.controller.dto.block.BlockPage;
 import cn.tannn.cat.block.controller.dto.block.BlockTestDTO;
@@ -44,6 +45,11 @@ public class BlockServiceImpl implements BlockService {
     private final PythonScriptExecutor pythonScriptExecutor;
     private final ContextVariableRepository contextVariableRepository;
 
+    /**
+     * 单次批量测试的最大用例数
+     */
+    private static final int MAX_BATCH_CASES = 1000;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Block create(BlockCreateDTO createDTO, String username) {
@@ -64,8 +70,14 @@ public class BlockServiceImpl implements BlockService {
         if (block.getIsPublic() == null) {
             block.setIsPublic(true);
         }
+        if (block.getCacheEnabled() == null) {
+            block.setCacheEnabled(false);
+        }
         block.setAuthorUsername(username);
-        return blockRepository.save(block);
+        Block saved = blockRepository.save(block);
+        // 后台预热包装脚本和字节码缓存，首次执行不再等待包装和编译
+        pythonScriptExecutor.precompile(saved.getPythonEnvId(), saved.getScript());
+        return saved;
     }
 
     @Override
@@ -121,12 +133,22 @@ public class BlockServiceImpl implements BlockService {
         if (updateDTO.getIsPublic() != null) {
             block.setIsPublic(updateDTO.getIsPublic());
         }
+        if (updateDTO.getCacheEnabled() != null) {
+            block.setCacheEnabled(updateDTO.getCacheEnabled());
+        }
+        if (updateDTO.getCacheTtlSeconds() != null) {
+            block.setCacheTtlSeconds(updateDTO.getCacheTtlSeconds());
+        }
         if (updateDTO.getTags() != null) {
             block.setTags(updateDTO.getTags());
         }
         block.setUpdateTime(LocalDateTime.now());
 
-        return blockRepository.save(block);
+        Block saved = blockRepository.save(block);
+        if (updateDTO.getScript() != null || updateDTO.getPythonEnvId() != null) {
+            pythonScriptExecutor.precompile(saved.getPythonEnvId(), saved.getScript());
+        }
+        return saved;
     }
 
     @Override
@@ -170,21 +192,7 @@ public class BlockServiceImpl implements BlockService {
     @Transactional(rollbackFor = Exception.class)
     public String test(Integer id, BlockTestDTO testDTO) {
         Block block = getById(id);
-
-        // 确定要执行的脚本：如果提供了tempScript则使用tempScript，否则使用block.getScript()
-        String scriptToExecute;
-        if (testDTO.getTempScript() != null && !testDTO.getTempScript().isEmpty()) {
-            scriptToExecute = testDTO.getTempScript();
-            log.info("使用临时脚本测试块: {}", block.getName());
-        } else {
-            scriptToExecute = block.getScript();
-            log.info("使用块的脚本测试: {}", block.getName());
-        }
-
-        // 验证脚本是否存在
-        if (scriptToExecute == null || scriptToExecute.isEmpty()) {
-            throw new BusinessException("脚本为空，无法测试");
-        }
+        String scriptToExecute = resolveTestScript(block, testDTO.getTempScript());
 
         log.info("开始测试块: {}, 输入参数: {}", block.getName(), testDTO.getInputs());
 
@@ -200,68 +208,12 @@ public class BlockServiceImpl implements BlockService {
 
         try {
             // 合并上下文变量到 inputs
-            Map<String, Object> mergedInputs = new HashMap<>();
-            if (testDTO.getInputs() != null) {
-                // 过滤掉空值参数（null、空字符串）
-                // 这样 Python 代码的 inputs.get('param', default) 可以使用默认值
-                testDTO.getInputs().forEach((key, value) -> {
-                    if (value != null && !"".equals(value)) {
-                        mergedInputs.put(key, value);
-                    }
-                });
-                log.info("过滤后的输入参数数量: {} (原始: {})",
-                    mergedInputs.size(), testDTO.getInputs().size());
-            }
-
-            // 校验非空参数
-            if (block.getInputs() != null) {
-                List<String> missingRequiredParams = new ArrayList<>();
-                block.getInputs().forEach((paramName, paramDefObj) -> {
-                    if (paramDefObj instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> paramDef = (Map<String, Object>) paramDefObj;
-                        Boolean required = (Boolean) paramDef.get("required");
-                        if (required != null && required) {
-                            Object value = mergedInputs.get(paramName);
-                            // 如果参数为空
-                            if (value == null || "".equals(value)) {
-                                // 检查是否有默认值
-                                Object defaultValue = paramDef.get("defaultValue");
-                                if (defaultValue == null || "".equals(defaultValue)) {
-                                    missingRequiredParams.add(paramName);
-                                }
-                            }
-                        }
-                    }
-                });
-
-                if (!missingRequiredParams.isEmpty()) {
-                    throw new BusinessException("以下参数为必填项：" + String.join(", ", missingRequiredParams));
-                }
-            }
-
-            // 注入上下文变量（仅注入脚本中实际使用的上下文变量）
-            if (scriptToExecute != null && scriptToExecute.contains("ctx.")) {
-                List<String> contextKeys = ContextVariableUtil.extractContextKeys(scriptToExecute);
-                if (!contextKeys.isEmpty()) {
-                    List<ContextVariable> contextVariables = contextVariableRepository.findByVarKeyIn(contextKeys);
-                    for (ContextVariable cv : contextVariables) {
-                        String key = "ctx." + cv.getVarKey();
-                        mergedInputs.put(key, cv.getVarValue());
-                    }
-                    log.info("注入上下文变量: {} 个 {}", contextVariables.size(),
-                        contextVariables.stream()
-                            .map(ContextVariable::getVarKey)
-                            .collect(Collectors.toList()));
-                }
-            }
+            Map<String, Object> mergedInputs = mergeTestInputs(block, testDTO.getInputs(), loadContextInputs(scriptToExecute));
 
             log.info("测试块 {}, 输入参数数量: {}", block.getName(), mergedInputs.size());
 
             // 获取超时时间（如果未指定则使用默认值60秒）
-            long timeoutSeconds = testDTO.getTimeoutSeconds() != null && testDTO.getTimeoutSeconds() > 0
-                    ? testDTO.getTimeoutSeconds()
-                    : 60L;
+            long timeoutSeconds = testTimeout(testDTO.getTimeoutSeconds());
             log.info("使用超时时间: {} 秒", timeoutSeconds);
 
             // 执行Python脚本（使用确定的脚本和超时时间）
@@ -271,59 +223,13 @@ public class BlockServiceImpl implements BlockService {
                     mergedInputs,
                     timeoutSeconds
             );
-
-            // 构建返回结果
-            Map<String, Object> response = new java.util.HashMap<>();
-            response.put("success", result.isSuccess());
-            response.put("executionTime", result.getExecutionTime());
-
             if (result.isSuccess()) {
-                // 成功执行
-                if (result.getJsonOutput() != null) {
-                    response.put("output", result.getJsonOutput());
-                } else if (result.getOutput() != null && !result.getOutput().isEmpty()) {
-                    response.put("output", result.getOutput());
-                } else {
-                    response.put("output", Map.of("message", "执行成功，无输出"));
-                }
-
-                if (result.getError() != null && !result.getError().isEmpty()) {
-                    response.put("warnings", result.getError());
-                }
-
                 log.info("块测试成功: {}, 耗时: {}ms", block.getName(), result.getExecutionTime());
             } else {
-                // 执行失败
-                response.put("errorMessage", result.getErrorMessage());
-                if (result.getOutput() != null && !result.getOutput().isEmpty()) {
-                    response.put("stdout", result.getOutput());
-                }
-                if (result.getError() != null && !result.getError().isEmpty()) {
-                    response.put("stderr", result.getError());
-                }
-                response.put("exitCode", result.getExitCode());
-
-                // 添加友好的错误提示信息
-                if (result.getErrorType() != null) {
-                    response.put("errorType", result.getErrorType());
-                }
-                if (result.getMissingModule() != null) {
-                    response.put("missingModule", result.getMissingModule());
-                }
-                if (result.getFriendlyMessage() != null) {
-                    response.put("friendlyMessage", result.getFriendlyMessage());
-                }
-                if (result.getSuggestion() != null) {
-                    response.put("suggestion", result.getSuggestion());
-                }
-                if (result.getPythonEnvId() != null) {
-                    response.put("pythonEnvId", result.getPythonEnvId());
-                }
-
                 log.error("块测试失败: {}, 错误: {}", block.getName(), result.getErrorMessage());
             }
 
-            return JSON.toJSONString(response);
+            return JSON.toJSONString(toTestResponse(result));
 
         } catch (Exception e) {
             log.error("块测试异常: {}", block.getName(), e);
@@ -334,6 +240,229 @@ public class BlockServiceImpl implements BlockService {
         }
     }
 
+    @Override
+    public String testBatch(Integer id, BlockBatchTestDTO batchDTO) {
+        Block block = getById(id);
+        String scriptToExecute = resolveTestScript(block, batchDTO.getTempScript());
+        List<Map<String, Object>> cases = batchDTO.getCases();
+        if (cases == null || cases.isEmpty()) {
+            throw new BusinessException("测试用例不能为空");
+        }
+        if (cases.size() > MAX_BATCH_CASES) {
+            throw new BusinessException("单次批量测试最多 " + MAX_BATCH_CASES + " 个用例");
+        }
+
+        // 上下文变量只查询一次，参数校验失败的用例不执行，直接记为失败
+        Map<String, Object> contextInputs = loadContextInputs(scriptToExecute);
+        List<Map<String, Object>> runnable = new ArrayList<>();
+        List<Integer> runnableIndexes = new ArrayList<>();
+        Map<Integer, String> invalid = new HashMap<>();
+        for (int i = 0; i < cases.size(); i++) {
+            try {
+                runnable.add(mergeTestInputs(block, cases.get(i), contextInputs));
+                runnableIndexes.add(i);
+            } catch (BusinessException e) {
+                invalid.put(i, e.getMessage());
+            }
+        }
+
+        long timeoutSeconds = testTimeout(batchDTO.getTimeoutSeconds());
+        int parallelism = batchDTO.getParallelism() != null && batchDTO.getParallelism() > 0
+                ? batchDTO.getParallelism() : Runtime.getRuntime().availableProcessors();
+        log.info("批量测试块: {}, 用例: {} 个, 参数无效: {} 个, 并行度: {}, 单个超时: {} 秒",
+                block.getName(), cases.size(), invalid.size(), parallelism, timeoutSeconds);
+
+        long startTime = System.currentTimeMillis();
+        List<PythonScriptExecutor.ExecutionResult> results = runnable.isEmpty()
+                ? List.of()
+                : pythonScriptExecutor.executeBatch(block.getPythonEnvId(), scriptToExecute, runnable,
+                timeoutSeconds, parallelism);
+        long totalTime = System.currentTimeMillis() - startTime;
+
+        List<Map<String, Object>> caseResponses = new ArrayList<>(cases.size());
+        for (int i = 0; i < cases.size(); i++) {
+            caseResponses.add(null);
+        }
+        int passed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> caseResponse = toTestResponse(results.get(i));
+            caseResponse.put("index", runnableIndexes.get(i));
+            caseResponses.set(runnableIndexes.get(i), caseResponse);
+            if (results.get(i).isSuccess()) {
+                passed++;
+            }
+        }
+        invalid.forEach((index, message) -> {
+            Map<String, Object> caseResponse = new HashMap<>();
+            caseResponse.put("index", index);
+            caseResponse.put("success", false);
+            caseResponse.put("errorMessage", message);
+            caseResponses.set(index, caseResponse);
+        });
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", passed == cases.size());
+        response.put("total", cases.size());
+        response.put("passed", passed);
+        response.put("failed", cases.size() - passed);
+        response.put("totalTime", totalTime);
+        response.put("results", caseResponses);
+        log.info("批量测试块完成: {}, 通过: {}/{}, 总耗时: {}ms", block.getName(), passed, cases.size(), totalTime);
+        return JSON.toJSONString(response);
+    }
+
+    /**
+     * 确定要执行的脚本：如果提供了tempScript则使用tempScript，否则使用block.getScript()
+     */
+    private String resolveTestScript(Block block, String tempScript) {
+        String scriptToExecute;
+        if (tempScript != null && !tempScript.isEmpty()) {
+            scriptToExecute = tempScript;
+            log.info("使用临时脚本测试块: {}", block.getName());
+        } else {
+            scriptToExecute = block.getScript();
+            log.info("使用块的脚本测试: {}", block.getName());
+        }
+
+        // 验证脚本是否存在
+        if (scriptToExecute == null || scriptToExecute.isEmpty()) {
+            throw new BusinessException("脚本为空，无法测试");
+        }
+        return scriptToExecute;
+    }
+
+    private static long testTimeout(Long timeoutSeconds) {
+        return timeoutSeconds != null && timeoutSeconds > 0 ? timeoutSeconds : 60L;
+    }
+
+    /**
+     * 查询脚本中实际使用的上下文变量（键为 ctx.变量名）
+     */
+    private Map<String, Object> loadContextInputs(String scriptToExecute) {
+        Map<String, Object> contextInputs = new HashMap<>();
+        if (scriptToExecute != null && scriptToExecute.contains("ctx.")) {
+            List<String> contextKeys = ContextVariableUtil.extractContextKeys(scriptToExecute);
+            if (!contextKeys.isEmpty()) {
+                List<ContextVariable> contextVariables = contextVariableRepository.findByVarKeyIn(contextKeys);
+                for (ContextVariable cv : contextVariables) {
+                    contextInputs.put("ctx." + cv.getVarKey(), cv.getVarValue());
+                }
+                log.info("注入上下文变量: {} 个 {}", contextVariables.size(),
+                    contextVariables.stream()
+                        .map(ContextVariable::getVarKey)
+                        .collect(Collectors.toList()));
+            }
+        }
+        return contextInputs;
+    }
+
+    /**
+     * 过滤空值参数、校验必填参数并注入上下文变量
+     *
+     * @throws BusinessException 必填参数缺失
+     */
+    private Map<String, Object> mergeTestInputs(Block block, Map<String, Object> rawInputs, Map<String, Object> contextInputs) {
+        Map<String, Object> inputs = new HashMap<>();
+        if (rawInputs != null) {
+            // 过滤掉空值参数（null、空字符串）
+            // 这样 Python 代码的 inputs.get('param', default) 可以使用默认值
+            rawInputs.forEach((key, value) -> {
+                if (value != null && !"".equals(value)) {
+                    inputs.put(key, value);
+                }
+            });
+            log.debug("过滤后的输入参数数量: {} (原始: {})", inputs.size(), rawInputs.size());
+        }
+
+        // 校验非空参数
+        if (block.getInputs() != null) {
+            List<String> missingRequiredParams = new ArrayList<>();
+            block.getInputs().forEach((paramName, paramDefObj) -> {
+                if (paramDefObj instanceof Map) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> paramDef = (Map<String, Object>) paramDefObj;
+                    Boolean required = (Boolean) paramDef.get("required");
+                    if (required != null && required) {
+                        Object value = inputs.get(paramName);
+                        // 如果参数为空
+                        if (value == null || "".equals(value)) {
+                            // 检查是否有默认值
+                            Object defaultValue = paramDef.get("defaultValue");
+                            if (defaultValue == null || "".equals(defaultValue)) {
+                                missingRequiredParams.add(paramName);
+                            }
+                        }
+                    }
+                }
+            });
+
+            if (!missingRequiredParams.isEmpty()) {
+                throw new BusinessException("以下参数为必填项：" + String.join(", ", missingRequiredParams));
+            }
+        }
+
+        inputs.putAll(contextInputs);
+        return inputs;
+    }
+
+    /**
+     * 单次执行结果转为测试响应
+     */
+    private Map<String, Object> toTestResponse(PythonScriptExecutor.ExecutionResult result) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", result.isSuccess());
+        response.put("executionTime", result.getExecutionTime());
+        if (result.getPeakMemoryKb() != null) {
+            response.put("peakMemoryKb", result.getPeakMemoryKb());
+        }
+        if (result.getCpuTimeMillis() != null) {
+            response.put("cpuTimeMillis", result.getCpuTimeMillis());
+        }
+
+        if (result.isSuccess()) {
+            // 成功执行
+            if (result.getJsonOutput() != null) {
+                response.put("output", result.getJsonOutput());
+            } else if (result.getOutput() != null && !result.getOutput().isEmpty()) {
+                response.put("output", result.getOutput());
+            } else {
+                response.put("output", Map.of("message", "执行成功，无输出"));
+            }
+
+            if (result.getError() != null && !result.getError().isEmpty()) {
+                response.put("warnings", result.getError());
+            }
+        } else {
+            // 执行失败
+            response.put("errorMessage", result.getErrorMessage());
+            if (result.getOutput() != null && !result.getOutput().isEmpty()) {
+                response.put("stdout", result.getOutput());
+            }
+            if (result.getError() != null && !result.getError().isEmpty()) {
+                response.put("stderr", result.getError());
+            }
+            response.put("exitCode", result.getExitCode());
+
+            // 添加友好的错误提示信息
+            if (result.getErrorType() != null) {
+                response.put("errorType", result.getErrorType());
+            }
+            if (result.getMissingModule() != null) {
+                response.put("missingModule", result.getMissingModule());
+            }
+            if (result.getFriendlyMessage() != null) {
+                response.put("friendlyMessage", result.getFriendlyMessage());
+            }
+            if (result.getSuggestion() != null) {
+                response.put("suggestion", result.getSuggestion());
+            }
+            if (result.getPythonEnvId() != null) {
+                response.put("pythonEnvId", result.getPythonEnvId());
+            }
+        }
+        return response;
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Block clone(Integer id) {
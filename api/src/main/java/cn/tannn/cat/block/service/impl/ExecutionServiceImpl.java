@@ -5,32 +5,55 @@ import cn.tannn.cat.block.controller.dto.workflow.WorkflowExecuteDTO;
 import cn.tannn.cat.block.entity.Block;
 import cn.tannn.cat.block.entity.ContextVariable;
 import cn.tannn.cat.block.entity.ExecutionLog;
+import cn.tannn.cat.block.entity.ExecutionLogChunk;
+import cn.tannn.cat.block.entity.ExecutionNodeResult;
+import cn.tannn.cat.block.entity.ExecutionQueueItem;
 import cn.tannn.cat.block.entity.Workflow;
 import cn.tannn.cat.block.enums.ExecutionStatus;
+import cn.tannn.cat.block.enums.NodeStatus;
 import cn.tannn.cat.block.enums.TriggerType;
 import cn.tannn.cat.block.repository.BlockRepository;
 import cn.tannn.cat.block.repository.ContextVariableRepository;
 import cn.tannn.cat.block.repository.ExecutionLogRepository;
+import cn.tannn.cat.block.repository.ExecutionNodeResultRepository;
 import cn.tannn.cat.block.repository.WorkflowRepository;
+import cn.tannn.cat.block.service.ExecutionEventService;
+import cn.tannn.cat.block.service.ExecutionRegistry;
+import cn.tannn.cat.block.service.ExecutionLogStore;
+import cn.tannn.cat.block.service.ExecutionPlan;
+import cn.tannn.cat.block.service.ExecutionPlanCache;
+import cn.tannn.cat.block.service.ExecutionQueue;
 import cn.tannn.cat.block.service.ExecutionService;
+import cn.tannn.cat.block.service.NodeExecutionException;
+import cn.tannn.cat.block.service.NodeOutputStore;
+import cn.tannn.cat.block.service.NodeResultCache;
 import cn.tannn.cat.block.service.PythonScriptExecutor;
+import cn.tannn.cat.block.service.ResourceLimits;
+import cn.tannn.cat.block.service.WorkflowDagScheduler;
 import cn.tannn.cat.block.util.ContextVariableUtil;
 import cn.tannn.jdevelops.exception.built.BusinessException;
 import cn.tannn.jdevelops.result.exception.ServiceException;
 import cn.tannn.jdevelops.util.jpa.select.EnhanceSpecification;
-import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.Collectors;
 
 /**
@@ -44,14 +67,48 @@ import java.util.stream.Collectors;
 public class ExecutionServiceImpl implements ExecutionService {
 
     private final ExecutionLogRepository executionLogRepository;
+    private final ExecutionNodeResultRepository executionNodeResultRepository;
     private final WorkflowRepository workflowRepository;
     private final BlockRepository blockRepository;
     private final ContextVariableRepository contextVariableRepository;
     private final PythonScriptExecutor pythonScriptExecutor;
+    private final WorkflowDagScheduler workflowDagScheduler;
+    private final ExecutionLogStore executionLogStore;
+    private final ExecutionEventService executionEventService;
+    private final ExecutionRegistry executionRegistry;
+    private final ExecutionPlanCache executionPlanCache;
+    private final ExecutionQueue executionQueue;
+    private final NodeResultCache nodeResultCache;
+    private final NodeOutputStore nodeOutputStore;
+
+    /**
+     * 整个流程的默认最长执行时间（秒），小于等于0表示不限制
+     */
+    @Value("${workflow.execution.default-workflow-timeout-seconds:3600}")
+    private long defaultWorkflowTimeoutSeconds;
+
+    /**
+     * 执行排队中或不在当前实例运行时，SSE客户端的重连间隔（毫秒）
+     */
+    @Value("${workflow.execution.event-pending-retry-millis:3000}")
+    private long pendingReconnectMillis;
+
+    /**
+     * 子流程最大嵌套层数
+     */
+    @Value("${workflow.execution.max-sub-workflow-depth:5}")
+    private int maxSubWorkflowDepth;
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public ExecutionLog execute(WorkflowExecuteDTO executeDTO) {
+        return execute(executeDTO, TriggerType.MANUAL);
+    }
+
+    /**
+     * 执行记录单独提交后再投递到执行线程池，执行线程才能读到该记录，因此这里不开启事务
+     */
+    @Override
+    public ExecutionLog execute(WorkflowExecuteDTO executeDTO, TriggerType triggerType) {
         // 验证流程是否存在
         Workflow workflow = workflowRepository.findById(executeDTO.getWorkflowId())
                 .orElseThrow(() -> new BusinessException("请选择正确的流程"));
@@ -61,36 +118,163 @@ public class ExecutionServiceImpl implements ExecutionService {
         executionLog.setWorkflowId(executeDTO.getWorkflowId());
         executionLog.setWorkflowName(workflow.getName());
         executionLog.setExecutorUsername(executeDTO.getExecutorUsername());
-        executionLog.setStatus(ExecutionStatus.RUNNING);
-        executionLog.setTriggerType(TriggerType.MANUAL);
+        executionLog.setStatus(ExecutionStatus.QUEUED);
+        executionLog.setTriggerType(triggerType);
         executionLog.setInputParams(executeDTO.getInputParams());
-        executionLog.setStartTime(LocalDateTime.now());
+        executionLog.setQueuedTime(LocalDateTime.now());
+        executionLog.setStartTime(executionLog.getQueuedTime());
 
         // 保存执行记录
         executionLog = executionLogRepository.save(executionLog);
 
-        log.info("流程执行已启动, executionId: {}, workflowId: {}, workflowName: {}",
-                executionLog.getId(), workflow.getId(), workflow.getName());
-
-        // 异步执行流程
+        // 写入持久化执行队列，由空闲实例抢占执行，请求线程立即返回
+        // 事件通道由抢占到执行的实例在开始运行时打开，这里不打开
         Long executionId = executionLog.getId();
         Long timeoutSeconds = executeDTO.getTimeoutSeconds() != null && executeDTO.getTimeoutSeconds() > 0
                 ? executeDTO.getTimeoutSeconds()
                 : 60L;
-        executeWorkflowAsync(executionId, workflow, executeDTO.getInputParams(), timeoutSeconds);
+        long workflowTimeoutSeconds = executeDTO.getWorkflowTimeoutSeconds() != null
+                ? executeDTO.getWorkflowTimeoutSeconds()
+                : defaultWorkflowTimeoutSeconds;
+        if (!executionQueue.enqueue(executionLog, timeoutSeconds, workflowTimeoutSeconds)) {
+            log.warn("流程执行队列已满，拒绝执行, executionId: {}, workflowId: {}", executionId, workflow.getId());
+            executionLog.setStatus(ExecutionStatus.FAILED);
+            executionLog.setErrorMessage("执行队列已满，请稍后重试");
+            executionLog.setEndTime(LocalDateTime.now());
+            executionLog.setDuration(0);
+            executionLogRepository.save(executionLog);
+            executionEventService.finish(executionId, eventData("status", ExecutionStatus.FAILED,
+                    "duration", 0,
+                    "errorMessage", executionLog.getErrorMessage()));
+            throw new BusinessException("执行队列已满，请稍后重试");
+        }
 
+        log.info("流程执行已提交, executionId: {}, workflowId: {}, workflowName: {}",
+                executionId, workflow.getId(), workflow.getName());
         return executionLog;
     }
 
+    @PostConstruct
+    public void startQueue() {
+        executionQueue.start(this::runQueued);
+    }
+
     /**
-     * 异步执行流程
+     * 执行从队列中抢占到的执行
+     * 调度次数大于1说明之前持有租约的实例已失联，执行重新开始（已成功的节点复用之前的输出）
      */
-    @Async
-    public void executeWorkflowAsync(Long executionId, Workflow workflow, JSONObject inputParams, Long timeoutSeconds) {
-        ExecutionLog executionLog = executionLogRepository.findById(executionId)
-                .orElseThrow(() -> new RuntimeException("执行记录不存在"));
+    private void runQueued(ExecutionQueueItem item) {
+        Long executionId = item.getExecutionId();
+        if (item.getAttempts() > 1) {
+            // 原实例中正在运行的子流程随实例失联，最终状态不会再被写入
+            finishOrphanedChildren(executionId, ExecutionStatus.FAILED, "父执行的执行实例失联，子流程已终止");
+            if (item.getAttempts() > executionQueue.getMaxAttempts()) {
+                failExecution(executionId, String.format("执行实例失联，已达到最大调度次数（%d）",
+                        executionQueue.getMaxAttempts()));
+                return;
+            }
+            if (executionLogRepository.requeue(executionId) > 0) {
+                appendLogs(executionId, String.format("\n=== 执行实例失联，由 %s 重新调度（第 %d 次） ===\n\n",
+                        executionQueue.getNodeId(), item.getAttempts()));
+            }
+        }
+
+        ExecutionLog queued = executionLogRepository.findById(executionId).orElse(null);
+        if (queued == null) {
+            log.info("执行记录已删除，跳过执行, executionId: {}", executionId);
+            return;
+        }
+        Workflow workflow = workflowRepository.findById(item.getWorkflowId()).orElse(null);
+        if (workflow == null) {
+            failExecution(executionId, "流程不存在");
+            return;
+        }
+        runWorkflow(executionId, workflow, queued.getInputParams(),
+                item.getTimeoutSeconds() != null ? item.getTimeoutSeconds() : 60L,
+                item.getWorkflowTimeoutSeconds() != null ? item.getWorkflowTimeoutSeconds() : defaultWorkflowTimeoutSeconds);
+    }
 
+    /**
+     * 结束父执行遗留的运行中子流程执行记录（含更深层的子流程）
+     * 子流程在父执行的节点线程中运行，最终状态只由该线程写入；父执行所在实例失联后被重新调度，
+     * 或在其他实例上被取消时，由这里结束子流程记录，避免一直停留在运行状态
+     */
+    private void finishOrphanedChildren(Long parentExecutionId, ExecutionStatus status, String errorMessage) {
+        for (ExecutionLog child : executionLogRepository.findByParentExecutionIdOrderByIdAsc(parentExecutionId)) {
+            if (child.getStatus() != ExecutionStatus.RUNNING) {
+                continue;
+            }
+            LocalDateTime endTime = LocalDateTime.now();
+            Integer duration = child.getStartTime() != null
+                    ? (int) Duration.between(child.getStartTime(), endTime).getSeconds() : null;
+            if (executionLogRepository.finishRunning(child.getId(), status, endTime, duration, errorMessage) > 0) {
+                appendLogs(child.getId(), String.format("%s错误信息: %s\n结束时间: %s\n",
+                        status == ExecutionStatus.CANCELLED ? "\n=== 流程执行已取消 ===\n" : "\n=== 流程执行失败 ===\n",
+                        errorMessage, endTime));
+                executionLogStore.close(child.getId());
+                executionEventService.finish(child.getId(), eventData("status", status,
+                        "duration", duration,
+                        "errorMessage", errorMessage));
+                log.warn("结束遗留的子流程执行: executionId={}, parentExecutionId={}, status={}",
+                        child.getId(), parentExecutionId, status);
+            }
+            finishOrphanedChildren(child.getId(), status, errorMessage);
+        }
+    }
+
+    /**
+     * 将尚未结束的执行标记为失败
+     */
+    private void failExecution(Long executionId, String errorMessage) {
+        executionLogRepository.findById(executionId).ifPresent(executionLog -> {
+            if (executionLog.getStatus() != ExecutionStatus.QUEUED
+                    && executionLog.getStatus() != ExecutionStatus.RUNNING) {
+                return;
+            }
+            LocalDateTime endTime = LocalDateTime.now();
+            appendLogs(executionId, String.format("\n=== 流程执行失败 ===\n错误信息: %s\n结束时间: %s\n",
+                    errorMessage, endTime));
+            executionLogStore.close(executionId);
+            executionLog.setStatus(ExecutionStatus.FAILED);
+            executionLog.setErrorMessage(errorMessage);
+            executionLog.setEndTime(endTime);
+            if (executionLog.getStartTime() != null) {
+                executionLog.setDuration((int) Duration.between(executionLog.getStartTime(), endTime).getSeconds());
+            }
+            executionLogRepository.save(executionLog);
+            executionEventService.finish(executionId, eventData("status", ExecutionStatus.FAILED,
+                    "duration", executionLog.getDuration(),
+                    "errorMessage", errorMessage));
+            log.warn("流程执行失败: executionId={}, error={}", executionId, errorMessage);
+        });
+    }
+
+    /**
+     * 在流程执行线程池中执行流程
+     *
+     * @param timeoutSeconds         单个节点的超时时间（秒）
+     * @param workflowTimeoutSeconds 整个流程的最长执行时间（秒），超时后终止所有运行中的节点
+     */
+    private void runWorkflow(Long executionId, Workflow workflow, JSONObject inputParams,
+                             Long timeoutSeconds, long workflowTimeoutSeconds) {
+        // QUEUED -> RUNNING，排队期间已被取消的执行不再启动
         LocalDateTime startTime = LocalDateTime.now();
+        if (executionLogRepository.markRunning(executionId, startTime) == 0) {
+            log.info("执行已不在排队状态（可能已取消），跳过执行, executionId: {}", executionId);
+            return;
+        }
+        ExecutionLog executionLog = executionLogRepository.findById(executionId)
+                .orElseThrow(() -> new RuntimeException("执行记录不存在"));
+        // 执行可能由其他实例受理，在当前实例打开事件通道
+        executionEventService.open(executionId);
+        log.info("流程开始执行, executionId: {}, workflowId: {}, 排队耗时: {}ms", executionId, workflow.getId(),
+                executionLog.getQueuedTime() != null
+                        ? Duration.between(executionLog.getQueuedTime(), startTime).toMillis() : 0);
+        // 登记运行中的执行，取消或整体超时时由注册表终止节点任务和Python进程树
+        ExecutionRegistry.RunningExecution running = executionRegistry.register(executionId, workflowTimeoutSeconds,
+                executionLog.getExecutorUsername());
+
+        // 待写入的日志缓冲，每次刷新作为一个分片追加写入，不再重写整段日志
         StringBuilder logsBuilder = new StringBuilder();
         logsBuilder.append("=== 流程执行开始 ===\n");
         logsBuilder.append(String.format("流程名称: %s\n", workflow.getName()));
@@ -99,397 +283,959 @@ public class ExecutionServiceImpl implements ExecutionService {
         logsBuilder.append("\n");
 
         try {
-            // 解析流程定义
-            JSONObject flowDefinition = workflow.getFlowDefinition();
-            if (flowDefinition == null) {
-                throw new RuntimeException("流程定义为空");
-            }
-
-            JSONArray nodes = flowDefinition.getJSONArray("nodes");
-            JSONArray edges = flowDefinition.getJSONArray("edges");
-
-            if (nodes == null || nodes.isEmpty()) {
-                throw new RuntimeException("流程中没有节点");
-            }
+            // 获取编译好的执行计划（流程未修改时直接复用缓存）
+            ExecutionPlan plan = executionPlanCache.get(workflow);
 
             logsBuilder.append(String.format("解析流程定义: 共 %d 个节点, %d 条连接\n\n",
-                    nodes.size(), edges != null ? edges.size() : 0));
+                    plan.getNodeCount(), plan.getEdgeCount()));
 
-            // 构建节点映射
-            Map<String, JSONObject> nodeMap = new HashMap<>();
-            for (int i = 0; i < nodes.size(); i++) {
-                JSONObject node = nodes.getJSONObject(i);
-                nodeMap.put(node.getString("id"), node);
-            }
-
-            // 构建依赖图和入度
-            Map<String, List<String>> graph = new HashMap<>(); // nodeId -> [依赖的nodeId列表]
-            Map<String, List<String>> reverseGraph = new HashMap<>(); // nodeId -> [依赖于它的nodeId列表]
-            Map<String, Integer> inDegree = new HashMap<>();
-
-            // 初始化
-            for (String nodeId : nodeMap.keySet()) {
-                graph.put(nodeId, new ArrayList<>());
-                reverseGraph.put(nodeId, new ArrayList<>());
-                inDegree.put(nodeId, 0);
-            }
-
-            // 构建依赖关系（添加详细日志）
-            if (edges != null) {
+            // 连接详情
+            if (plan.getEdgeCount() > 0) {
                 logsBuilder.append("边详情:\n");
-                for (int i = 0; i < edges.size(); i++) {
-                    JSONObject edge = edges.getJSONObject(i);
-                    String source = edge.getString("source");
-                    String target = edge.getString("target");
-                    String sourceHandle = edge.getString("sourceHandle");
-                    String targetHandle = edge.getString("targetHandle");
-
+                for (int i = 0; i < plan.getEdgeCount(); i++) {
+                    ExecutionPlan.Edge edge = plan.getEdge(i);
                     logsBuilder.append(String.format("  边 %d: %s (%s) -> %s (%s)\n",
-                            i + 1, source, sourceHandle, target, targetHandle));
-
-                    graph.get(target).add(source); // target依赖于source
-                    reverseGraph.get(source).add(target); // source的输出被target使用
-                    inDegree.put(target, inDegree.get(target) + 1);
+                            i + 1, edge.sourceNodeId(), edge.sourceHandle(), edge.targetNodeId(), edge.targetHandle()));
                 }
                 logsBuilder.append("\n");
             }
 
-            // 拓扑排序
             logsBuilder.append("节点入度信息:\n");
-            for (Map.Entry<String, Integer> entry : inDegree.entrySet()) {
-                JSONObject node = nodeMap.get(entry.getKey());
-                JSONObject nodeData = node.getJSONObject("data");
-                String blockName = nodeData.getString("blockName");
-                logsBuilder.append(String.format("  %s: 入度=%d\n", blockName, entry.getValue()));
+            for (int i = 0; i < plan.getNodeCount(); i++) {
+                logsBuilder.append(String.format("  %s: 入度=%d\n",
+                        plan.getNodeData(i).getString("blockName"), plan.getInDegree(i)));
             }
             logsBuilder.append("\n");
 
-            List<String> executionOrder = topologicalSort(nodeMap.keySet(), reverseGraph, inDegree);
+            int[] executionOrder = plan.getTopologicalOrder();
             if (executionOrder == null) {
                 throw new RuntimeException("流程中存在循环依赖，无法执行");
             }
 
-            logsBuilder.append("执行顺序:\n");
-            for (int i = 0; i < executionOrder.size(); i++) {
-                String nodeId = executionOrder.get(i);
-                JSONObject node = nodeMap.get(nodeId);
-                JSONObject nodeData = node.getJSONObject("data");
-                logsBuilder.append(String.format("  %d. %s (块ID: %s)\n",
+            logsBuilder.append("执行顺序（拓扑序，无依赖关系的节点将并行执行）:\n");
+            for (int i = 0; i < executionOrder.length; i++) {
+                JSONObject nodeData = plan.getNodeData(executionOrder[i]);
+                Integer subWorkflowId = nodeData.getInteger("subWorkflowId");
+                logsBuilder.append(String.format("  %d. %s (%s: %s)\n",
                         i + 1,
                         nodeData.getString("blockName"),
-                        nodeData.getInteger("blockId")));
+                        subWorkflowId != null ? "子流程ID" : "块ID",
+                        subWorkflowId != null ? subWorkflowId : nodeData.getInteger("blockId")));
             }
             logsBuilder.append("\n");
 
+            // 恢复执行时复用已成功节点的输出，这些节点不再执行
+            PlanRun run = new PlanRun(executionId, plan, inputParams, timeoutSeconds,
+                    List.of(workflow.getId()), executionLog.getExecutorUsername(),
+                    restoreNodeOutputs(executionId, plan, logsBuilder));
+
             // 更新日志
-            executionLog.setLogs(logsBuilder.toString());
+            flushLogs(executionId, logsBuilder);
+
+            // 按DAG波前并行执行：入度归零的节点立即投递，独立分支并发运行；
+            // 失败节点按重试策略退避后重新投递，等待期间不占用节点线程
+            workflowDagScheduler.run(plan.getSuccessors(), plan.getInDegree(), run::runNode,
+                    running, run::retryDelayMillis);
+
+            if (running.isRevoked()) {
+                // 租约已被其他实例接管，执行记录由接管的实例写入
+                log.warn("执行租约已失效，不再写入执行结果, executionId: {}", executionId);
+                return;
+            }
+
+            // 流程执行成功
+            LocalDateTime endTime = LocalDateTime.now();
+            logsBuilder.append("=== 流程执行成功 ===\n");
+            run.appendSummary(logsBuilder);
+            logsBuilder.append(String.format("结束时间: %s\n", endTime));
+
+            // 构建最终输出
+            JSONObject finalOutput = new JSONObject();
+            finalOutput.put("success", true);
+            finalOutput.put("message", "流程执行成功");
+            finalOutput.put("nodeOutputs", run.nodeOutputs);
+
+            flushLogs(executionId, logsBuilder);
+            executionLog.setStatus(ExecutionStatus.SUCCESS);
+            executionLog.setOutputResult(finalOutput);
+            executionLog.setEndTime(endTime);
+            executionLog.setDuration((int) Duration.between(startTime, endTime).getSeconds());
+
             executionLogRepository.save(executionLog);
 
-            // 存储每个节点的输出结果
-            Map<String, Map<String, Object>> nodeOutputs = new HashMap<>();
+            executionEventService.finish(executionId, eventData("status", ExecutionStatus.SUCCESS,
+                    "duration", executionLog.getDuration()));
 
-            // 按顺序执行每个节点
-            for (int i = 0; i < executionOrder.size(); i++) {
-                String nodeId = executionOrder.get(i);
-                JSONObject node = nodeMap.get(nodeId);
-                JSONObject nodeData = node.getJSONObject("data");
+            log.info("流程执行成功: executionId={}, workflowId={}, duration={}s",
+                    executionId, workflow.getId(), executionLog.getDuration());
 
-                Integer blockId = nodeData.getInteger("blockId");
-                String blockName = nodeData.getString("blockName");
+        } catch (Exception e) {
+            if (running.isRevoked()) {
+                log.warn("执行租约已失效，本实例中的执行已终止, executionId: {}", executionId);
+                return;
+            }
+            // 用户取消的执行记为已取消，整体超时和节点异常记为失败
+            boolean cancelled = running.isCancelled() && !running.isTimedOut();
+            ExecutionStatus status = cancelled ? ExecutionStatus.CANCELLED : ExecutionStatus.FAILED;
+            String errorMessage = running.isCancelled() ? running.getCancelReason() : e.getMessage();
 
-                logsBuilder.append(String.format("--- 执行节点 [%d/%d]: %s ---\n",
-                        i + 1, executionOrder.size(), blockName));
+            LocalDateTime endTime = LocalDateTime.now();
+            logsBuilder.append(cancelled ? "\n=== 流程执行已取消 ===\n" : "\n=== 流程执行失败 ===\n");
+            logsBuilder.append(String.format("错误信息: %s\n", errorMessage));
+            logsBuilder.append(String.format("结束时间: %s\n", endTime));
 
-                // 从快照获取块信息（优先使用快照，兼容旧流程）
-                JSONObject blockSnapshot = nodeData.getJSONObject("blockSnapshot");
-                String script;
-                Integer pythonEnvId;
+            flushLogs(executionId, logsBuilder);
+            executionLog.setStatus(status);
+            executionLog.setErrorMessage(errorMessage);
+            executionLog.setEndTime(endTime);
+            executionLog.setDuration((int) Duration.between(startTime, endTime).getSeconds());
 
-                if (blockSnapshot != null && blockSnapshot.getString("script") != null) {
-                    // 使用快照中的块信息
-                    script = blockSnapshot.getString("script");
-                    pythonEnvId = blockSnapshot.getInteger("pythonEnvId");
-                    logsBuilder.append("  使用流程快照中的块定义\n");
-                } else {
-                    // 兼容旧流程：从数据库获取块定义
-                    Block block = blockRepository.findById(blockId)
-                            .orElseThrow(() -> new RuntimeException("块不存在: " + blockName));
-                    script = block.getScript();
-                    pythonEnvId = block.getPythonEnvId();
-                    logsBuilder.append("  使用数据库中的块定义（旧流程兼容模式）\n");
-                }
+            executionLogRepository.save(executionLog);
+            executionEventService.finish(executionId, eventData("status", status,
+                    "duration", executionLog.getDuration(),
+                    "errorMessage", errorMessage));
 
-                // 准备输入参数
-                Map<String, Object> blockInputs = new HashMap<>();
-
-                // 1. 添加用户配置的输入值（过滤空值）
-                JSONObject inputValues = nodeData.getJSONObject("inputValues");
-                if (inputValues != null) {
-                    // 过滤掉空值参数（null、空字符串）
-                    // 这样 Python 代码的 inputs.get('param', default) 可以使用默认值
-                    inputValues.forEach((key, value) -> {
-                        if (value != null && !"".equals(value)) {
-                            blockInputs.put(key, value);
-                        }
-                    });
-                    log.debug("块 {} 输入参数（已过滤空值）: {}", blockName, blockInputs);
-                }
+            if (e instanceof CancellationException) {
+                log.warn("流程执行已终止: executionId={}, workflowId={}, reason={}",
+                        executionId, workflow.getId(), errorMessage);
+            } else {
+                log.error("流程执行失败: executionId={}, workflowId={}, error={}",
+                        executionId, workflow.getId(), e.getMessage(), e);
+            }
+        } finally {
+            executionRegistry.unregister(executionId);
+            executionLogStore.close(executionId);
+        }
+    }
 
-                // 2. 添加从前置节点传递的数据
-                if (edges != null) {
-                    for (int j = 0; j < edges.size(); j++) {
-                        JSONObject edge = edges.getJSONObject(j);
-                        if (nodeId.equals(edge.getString("target"))) {
-                            String sourceNodeId = edge.getString("source");
-                            String sourceHandle = edge.getString("sourceHandle"); // "output-xxx"
-                            String targetHandle = edge.getString("targetHandle"); // "input-xxx"
-
-                            if (nodeOutputs.containsKey(sourceNodeId)) {
-                                Map<String, Object> sourceOutput = nodeOutputs.get(sourceNodeId);
-                                String outputKey = sourceHandle.replace("output-", "");
-                                String inputKey = targetHandle.replace("input-", "");
-
-                                if (sourceOutput.containsKey(outputKey)) {
-                                    Object value = sourceOutput.get(outputKey);
-
-                                    // 支持 JSON 路径提取
-                                    JSONObject edgeData = edge.getJSONObject("data");
-                                    String fieldPath = edgeData != null ? edgeData.getString("fieldPath") : null;
-
-                                    if (fieldPath != null && !fieldPath.trim().isEmpty()) {
-                                        // 提取嵌套字段
-                                        value = extractFieldByPath(value, fieldPath);
-                                        logsBuilder.append(String.format("  接收参数: %s = %s (来自前置节点，路径: %s)\n",
-                                                inputKey, value, fieldPath));
-                                    } else {
-                                        logsBuilder.append(String.format("  接收参数: %s = %s (来自前置节点)\n",
-                                                inputKey, value));
-                                    }
-
-                                    blockInputs.put(inputKey, value);
-                                }
-                            }
-                        }
-                    }
+    /**
+     * 一次执行计划的运行状态（主流程和每个子流程各一份）
+     * 节点任务在节点线程中并行执行，共享的状态需线程安全
+     */
+    private class PlanRun {
+        private final Long executionId;
+        private final ExecutionPlan plan;
+        private final JSONObject inputParams;
+        private final Long timeoutSeconds;
+        /**
+         * 从主流程到当前流程的流程ID链，用于检测子流程循环引用和限制嵌套层数
+         */
+        private final List<Integer> workflowChain;
+        private final String executorUsername;
+        /**
+         * 恢复执行时复用了输出、不再执行的节点
+         */
+        private final boolean[] restored;
+        /**
+         * 存储每个节点的输出结果（节点并行执行，需线程安全）
+         */
+        private final Map<String, Map<String, Object>> nodeOutputs;
+        private final int totalNodes;
+        private final AtomicInteger startedCount = new AtomicInteger();
+        private final NodeResultCache.RunStats cacheStats = new NodeResultCache.RunStats();
+        /**
+         * 节点尝试次数和启动序号（重试时沿用首次尝试的序号）
+         */
+        private final AtomicIntegerArray attempts;
+        private final AtomicIntegerArray startIndexes;
+        /**
+         * 入边条件均不满足而跳过的节点
+         */
+        private final boolean[] skipped;
+        private final AtomicInteger skippedCount = new AtomicInteger();
+
+        PlanRun(Long executionId, ExecutionPlan plan, JSONObject inputParams, Long timeoutSeconds,
+                List<Integer> workflowChain, String executorUsername, RestoredOutputs restoredOutputs) {
+            this.executionId = executionId;
+            this.plan = plan;
+            this.inputParams = inputParams;
+            this.timeoutSeconds = timeoutSeconds;
+            this.workflowChain = workflowChain;
+            this.executorUsername = executorUsername;
+            int nodeCount = plan.getNodeCount();
+            this.restored = restoredOutputs != null ? restoredOutputs.restored() : new boolean[nodeCount];
+            this.nodeOutputs = restoredOutputs != null ? restoredOutputs.nodeOutputs() : new ConcurrentHashMap<>();
+            int restoredCount = 0;
+            for (boolean r : restored) {
+                if (r) {
+                    restoredCount++;
                 }
+            }
+            this.totalNodes = nodeCount - restoredCount;
+            this.attempts = new AtomicIntegerArray(nodeCount);
+            this.startIndexes = new AtomicIntegerArray(nodeCount);
+            this.skipped = new boolean[nodeCount];
+        }
 
-                // 3. 添加全局输入参数
-                if (inputParams != null) {
-                    blockInputs.putAll(inputParams);
+        /**
+         * 执行单个节点（DAG调度器的节点任务）
+         */
+        void runNode(int nodeIndex) throws Exception {
+            if (restored[nodeIndex]) {
+                return;
+            }
+            String nodeId = plan.getNodeId(nodeIndex);
+            if (isPruned(plan, nodeIndex, nodeOutputs, skipped)) {
+                // 跳过的节点不启动Python进程，其下游仅经由它的分支也会被跳过
+                skipped[nodeIndex] = true;
+                skippedCount.incrementAndGet();
+                appendLogs(executionId, new StringBuilder(String.format(
+                        "--- 跳过节点: %s（入边条件均不满足） ---\n\n",
+                        plan.getNodeData(nodeIndex).getString("blockName"))));
+                saveNodeResult(executionId, plan, nodeIndex, NodeStatus.SKIPPED, null, null, 0);
+                executionEventService.publish(executionId, ExecutionEventService.NODE_FINISHED,
+                        eventData("nodeId", nodeId, "success", true, "skipped", true, "duration", 0));
+                return;
+            }
+            int attempt = attempts.incrementAndGet(nodeIndex);
+            if (attempt == 1) {
+                startIndexes.set(nodeIndex, startedCount.incrementAndGet());
+            }
+            // 每个节点使用独立的日志缓冲，结束后整体追加，避免并行节点日志交错
+            StringBuilder nodeLogs = new StringBuilder();
+            if (attempt > 1) {
+                nodeLogs.append(String.format("--- 重试节点: 第 %d 次尝试 ---\n", attempt));
+            }
+            long nodeStartTime = System.currentTimeMillis();
+            String nodeError = null;
+            try {
+                if (plan.getNodeData(nodeIndex).getInteger("subWorkflowId") != null) {
+                    nodeOutputs.put(nodeId, executeSubWorkflow(this, nodeIndex, startIndexes.get(nodeIndex), nodeLogs));
+                } else {
+                    executeNode(executionId, plan, nodeIndex, nodeOutputs, inputParams,
+                            timeoutSeconds, startIndexes.get(nodeIndex), totalNodes, nodeLogs, cacheStats);
                 }
+            } catch (Exception e) {
+                nodeError = e.getMessage();
+                throw e;
+            } finally {
+                long nodeDuration = System.currentTimeMillis() - nodeStartTime;
+                if (plan.getRetry(nodeIndex) != null) {
+                    nodeLogs.append(String.format("  第 %d 次尝试%s (耗时: %dms)\n",
+                            attempt, nodeError == null ? "成功" : "失败", nodeDuration));
+                }
+                saveNodeResult(executionId, plan, nodeIndex,
+                        nodeError == null ? NodeStatus.SUCCESS : NodeStatus.FAILED,
+                        nodeOutputs.get(nodeId), nodeError, nodeDuration);
+                nodeLogs.append("\n");
+                appendLogs(executionId, nodeLogs);
+                executionEventService.publish(executionId, ExecutionEventService.NODE_FINISHED,
+                        eventData("nodeId", nodeId,
+                                "success", nodeError == null,
+                                "attempt", attempt,
+                                "duration", nodeDuration,
+                                "error", nodeError));
+            }
+        }
 
-                // 4. 注入上下文变量（仅注入脚本中实际使用的上下文变量）
-                if (script != null && script.contains("ctx.")) {
-                    // 解析脚本中使用的上下文变量 key
-                    List<String> contextKeys = ContextVariableUtil.extractContextKeys(script);
-                    if (!contextKeys.isEmpty()) {
-                        // 根据 key 查询对应的上下文变量
-                        List<ContextVariable> contextVariables = contextVariableRepository.findByVarKeyIn(contextKeys);
-                        for (ContextVariable cv : contextVariables) {
-                            String key = "ctx." + cv.getVarKey();
-                            blockInputs.put(key, cv.getVarValue());
-                        }
-                        if (!contextVariables.isEmpty()) {
-                            logsBuilder.append(String.format("  注入上下文变量: %d 个 %s\n",
-                                contextVariables.size(),
-                                contextVariables.stream()
-                                    .map(ContextVariable::getVarKey)
-                                    .collect(Collectors.joining(", ", "[", "]"))));
-                        }
-                    }
+        /**
+         * 节点失败后的重试等待时间（DAG调度器的重试策略）
+         */
+        long retryDelayMillis(int nodeIndex, int failedAttempts, Exception failure) {
+            ExecutionPlan.Retry retry = plan.getRetry(nodeIndex);
+            // 只重试带错误类型的脚本执行失败，块不存在、参数错误等配置问题重试也不会成功
+            if (retry == null || !(failure instanceof NodeExecutionException nodeFailure)
+                    || !retry.shouldRetry(failedAttempts, nodeFailure.getErrorType())) {
+                return -1;
+            }
+            long delay = retry.delayMillis(failedAttempts);
+            appendLogs(executionId, new StringBuilder(String.format(
+                    "节点 %s 执行失败（%s），%dms 后进行第 %d 次尝试\n\n",
+                    plan.getNodeData(nodeIndex).getString("blockName"), nodeFailure.getErrorType(),
+                    delay, failedAttempts + 1)));
+            return delay;
+        }
+
+        /**
+         * 执行结束时的汇总日志
+         */
+        void appendSummary(StringBuilder logsBuilder) {
+            if (skippedCount.get() > 0) {
+                logsBuilder.append(String.format("条件分支: 跳过 %d 个节点\n", skippedCount.get()));
+            }
+            if (cacheStats.isUsed()) {
+                logsBuilder.append(String.format("结果缓存: 命中 %d 个节点, 未命中 %d 个节点\n",
+                        cacheStats.getHits(), cacheStats.getMisses()));
+            }
+        }
+    }
+
+    /**
+     * 读取已成功节点的输出（恢复执行或实例失联后重新调度时）
+     * 只有所有前置节点都已复用的成功节点才会被复用，其余节点及其下游全部重新执行
+     *
+     * @return 各节点是否已复用输出（按节点下标）及复用的输出
+     */
+    private RestoredOutputs restoreNodeOutputs(Long executionId, ExecutionPlan plan, StringBuilder logsBuilder) {
+        boolean[] restored = new boolean[plan.getNodeCount()];
+        Map<String, Map<String, Object>> nodeOutputs = new ConcurrentHashMap<>();
+        List<ExecutionNodeResult> succeeded = executionNodeResultRepository
+                .findByExecutionIdAndStatus(executionId, NodeStatus.SUCCESS);
+        if (succeeded.isEmpty()) {
+            return new RestoredOutputs(restored, nodeOutputs);
+        }
+        Map<String, ExecutionNodeResult> resultByNode = new HashMap<>(succeeded.size() * 2);
+        succeeded.forEach(result -> resultByNode.put(result.getNodeId(), result));
+
+        List<String> restoredNames = new ArrayList<>();
+        for (int nodeIndex : plan.getTopologicalOrder()) {
+            ExecutionNodeResult result = resultByNode.get(plan.getNodeId(nodeIndex));
+            if (result == null) {
+                continue;
+            }
+            if (!nodeOutputStore.isAvailable(result.getOutput())) {
+                // 大输出文件由其他实例写入或已过期清理，该节点及其下游重新执行
+                logsBuilder.append(String.format("恢复执行: 节点 %s 的大输出文件在当前实例不存在，重新执行"
+                                + "（多实例部署时 workflow.output-store.root-path 必须是所有实例共享的目录）\n",
+                        plan.getNodeData(nodeIndex).getString("blockName")));
+                log.warn("恢复执行时节点大输出文件不存在, executionId: {}, nodeId: {}, 存储目录: {}",
+                        executionId, result.getNodeId(), nodeOutputStore.getRoot());
+                continue;
+            }
+            boolean upstreamRestored = true;
+            for (ExecutionPlan.Binding binding : plan.getIncoming(nodeIndex)) {
+                if (!restored[binding.source()]) {
+                    upstreamRestored = false;
+                    break;
+                }
+            }
+            if (upstreamRestored) {
+                restored[nodeIndex] = true;
+                if (result.getOutput() != null) {
+                    nodeOutputs.put(result.getNodeId(), result.getOutput());
                 }
+                restoredNames.add(plan.getNodeData(nodeIndex).getString("blockName"));
+            }
+        }
+        if (!restoredNames.isEmpty()) {
+            logsBuilder.append(String.format("恢复执行: 复用 %d 个已成功节点的输出 %s\n\n",
+                    restoredNames.size(), restoredNames));
+        }
+        return new RestoredOutputs(restored, nodeOutputs);
+    }
+
+    /**
+     * 恢复执行时复用的节点输出
+     *
+     * @param restored    各节点是否已复用输出（按节点下标）
+     * @param nodeOutputs 复用的节点输出（key: nodeId）
+     */
+    private record RestoredOutputs(boolean[] restored, Map<String, Map<String, Object>> nodeOutputs) {
+    }
+
+    /**
+     * 节点是否被剪枝：存在入边且全部不生效（源节点被跳过，或连接条件不满足）
+     */
+    private boolean isPruned(ExecutionPlan plan, int nodeIndex, Map<String, Map<String, Object>> nodeOutputs,
+                             boolean[] skipped) {
+        ExecutionPlan.Binding[] incoming = plan.getIncoming(nodeIndex);
+        if (incoming.length == 0) {
+            return false;
+        }
+        for (ExecutionPlan.Binding binding : incoming) {
+            if (skipped[binding.source()]) {
+                continue;
+            }
+            if (binding.condition() == null || binding.condition().test(bindingValue(binding, nodeOutputs))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 连接传递的值（源端口输出，按字段路径提取后），源节点没有该输出时返回null
+     */
+    private Object bindingValue(ExecutionPlan.Binding binding, Map<String, Map<String, Object>> nodeOutputs) {
+        Map<String, Object> sourceOutput = nodeOutputs.get(binding.sourceNodeId());
+        if (sourceOutput == null) {
+            return null;
+        }
+        Object value = binding.outputKey() != null ? sourceOutput.get(binding.outputKey()) : sourceOutput;
+        // 转存的大输出在判断条件时才读取
+        value = nodeOutputStore.resolve(value);
+        return binding.path() != null ? extractFieldByPath(value, binding.path()) : value;
+    }
 
-                // 校验非空参数
-                JSONObject inputsDefinition = null;
-                if (blockSnapshot != null) {
-                    inputsDefinition = blockSnapshot.getJSONObject("inputs");
+    /**
+     * 记录节点执行结果（写入失败不影响流程执行）
+     */
+    private void saveNodeResult(Long executionId, ExecutionPlan plan, int nodeIndex, NodeStatus status,
+                                Map<String, Object> output, String error, long durationMillis) {
+        String nodeId = plan.getNodeId(nodeIndex);
+        try {
+            ExecutionNodeResult result = executionNodeResultRepository.findByExecutionIdAndNodeId(executionId, nodeId)
+                    .orElseGet(ExecutionNodeResult::new);
+            result.setExecutionId(executionId);
+            result.setNodeId(nodeId);
+            result.setBlockName(plan.getNodeData(nodeIndex).getString("blockName"));
+            result.setStatus(status);
+            result.setOutput(status == NodeStatus.SUCCESS && output != null ? new JSONObject(output) : null);
+            result.setErrorMessage(error);
+            result.setDuration(durationMillis);
+            result.setFinishTime(LocalDateTime.now());
+            executionNodeResultRepository.save(result);
+        } catch (Exception e) {
+            log.error("记录节点执行结果失败, executionId: {}, nodeId: {}, error: {}", executionId, nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 将缓冲中的日志作为新分片追加写入并清空缓冲
+     */
+    private void flushLogs(Long executionId, StringBuilder logsBuilder) {
+        appendLogs(executionId, logsBuilder);
+        logsBuilder.setLength(0);
+    }
+
+    /**
+     * 追加日志分片并推送给实时订阅者
+     */
+    private void appendLogs(Long executionId, CharSequence content) {
+        int seq = executionLogStore.append(executionId, content);
+        if (seq > 0) {
+            executionEventService.publish(executionId, ExecutionEventService.LOG,
+                    eventData("seq", seq, "content", content.toString()));
+        }
+    }
+
+    /**
+     * 构建事件数据（按 key, value 成对传入，允许 value 为 null）
+     */
+    private static Map<String, Object> eventData(Object... keyValues) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            data.put(String.valueOf(keyValues[i]), keyValues[i + 1]);
+        }
+        return data;
+    }
+
+    /**
+     * 执行单个节点
+     *
+     * @param executionId    执行记录ID
+     * @param plan           执行计划
+     * @param nodeIndex      节点下标
+     * @param nodeOutputs    已完成节点的输出结果
+     * @param inputParams    全局输入参数
+     * @param timeoutSeconds 超时时间（秒）
+     * @param startIndex     节点启动序号
+     * @param totalNodes     节点总数
+     * @param nodeLogs       节点日志缓冲
+     * @param cacheStats     本次执行的结果缓存命中统计
+     */
+    private void executeNode(Long executionId, ExecutionPlan plan, int nodeIndex,
+                             Map<String, Map<String, Object>> nodeOutputs, JSONObject inputParams,
+                             Long timeoutSeconds, int startIndex, int totalNodes, StringBuilder nodeLogs,
+                             NodeResultCache.RunStats cacheStats) throws Exception {
+        String nodeId = plan.getNodeId(nodeIndex);
+        JSONObject nodeData = plan.getNodeData(nodeIndex);
+
+        Integer blockId = nodeData.getInteger("blockId");
+        String blockName = nodeData.getString("blockName");
+
+        nodeLogs.append(String.format("--- 执行节点 [%d/%d]: %s ---\n",
+                startIndex, totalNodes, blockName));
+        executionEventService.publish(executionId, ExecutionEventService.NODE_STARTED,
+                eventData("nodeId", nodeId, "blockName", blockName, "index", startIndex, "total", totalNodes));
+
+        // 从快照获取块信息（优先使用快照，兼容旧流程）
+        JSONObject blockSnapshot = nodeData.getJSONObject("blockSnapshot");
+        String script;
+        Integer pythonEnvId;
+        boolean cacheEnabled;
+        Integer cacheTtlSeconds;
+
+        if (blockSnapshot != null && blockSnapshot.getString("script") != null) {
+            // 使用快照中的块信息
+            script = blockSnapshot.getString("script");
+            pythonEnvId = blockSnapshot.getInteger("pythonEnvId");
+            cacheEnabled = Boolean.TRUE.equals(blockSnapshot.getBoolean("cacheEnabled"));
+            cacheTtlSeconds = blockSnapshot.getInteger("cacheTtlSeconds");
+            nodeLogs.append("  使用流程快照中的块定义\n");
+        } else {
+            // 兼容旧流程：从数据库获取块定义
+            Block block = blockRepository.findById(blockId)
+                    .orElseThrow(() -> new RuntimeException("块不存在: " + blockName));
+            script = block.getScript();
+            pythonEnvId = block.getPythonEnvId();
+            cacheEnabled = Boolean.TRUE.equals(block.getCacheEnabled());
+            cacheTtlSeconds = block.getCacheTtlSeconds();
+            nodeLogs.append("  使用数据库中的块定义（旧流程兼容模式）\n");
+        }
+
+        // 准备输入参数
+        Map<String, Object> blockInputs = collectInputs(plan, nodeIndex, nodeOutputs, inputParams, nodeLogs);
+
+        // 4. 注入上下文变量（仅注入脚本中实际使用的上下文变量）
+        if (script != null && script.contains("ctx.")) {
+            // 解析脚本中使用的上下文变量 key
+            List<String> contextKeys = ContextVariableUtil.extractContextKeys(script);
+            if (!contextKeys.isEmpty()) {
+                // 根据 key 查询对应的上下文变量
+                List<ContextVariable> contextVariables = contextVariableRepository.findByVarKeyIn(contextKeys);
+                for (ContextVariable cv : contextVariables) {
+                    String key = "ctx." + cv.getVarKey();
+                    blockInputs.put(key, cv.getVarValue());
+                }
+                if (!contextVariables.isEmpty()) {
+                    nodeLogs.append(String.format("  注入上下文变量: %d 个 %s\n",
+                        contextVariables.size(),
+                        contextVariables.stream()
+                            .map(ContextVariable::getVarKey)
+                            .collect(Collectors.joining(", ", "[", "]"))));
                 }
-                if (inputsDefinition != null) {
-                    List<String> missingRequiredParams = new ArrayList<>();
-                    inputsDefinition.forEach((paramName, paramDefObj) -> {
-                        if (paramDefObj instanceof JSONObject) {
-                            JSONObject paramDef = (JSONObject) paramDefObj;
-                            Boolean required = paramDef.getBoolean("required");
-                            if (required != null && required) {
-                                Object value = blockInputs.get(paramName);
-                                // 如果参数为空
-                                if (value == null || "".equals(value)) {
-                                    // 检查是否有默认值
-                                    Object defaultValue = paramDef.get("defaultValue");
-                                    if (defaultValue == null || "".equals(defaultValue)) {
-                                        missingRequiredParams.add(paramName);
-                                    }
-                                }
+            }
+        }
+
+        // 校验非空参数
+        JSONObject inputsDefinition = null;
+        if (blockSnapshot != null) {
+            inputsDefinition = blockSnapshot.getJSONObject("inputs");
+        }
+        if (inputsDefinition != null) {
+            List<String> missingRequiredParams = new ArrayList<>();
+            inputsDefinition.forEach((paramName, paramDefObj) -> {
+                if (paramDefObj instanceof JSONObject) {
+                    JSONObject paramDef = (JSONObject) paramDefObj;
+                    Boolean required = paramDef.getBoolean("required");
+                    if (required != null && required) {
+                        Object value = blockInputs.get(paramName);
+                        // 如果参数为空
+                        if (value == null || "".equals(value)) {
+                            // 检查是否有默认值
+                            Object defaultValue = paramDef.get("defaultValue");
+                            if (defaultValue == null || "".equals(defaultValue)) {
+                                missingRequiredParams.add(paramName);
                             }
                         }
-                    });
-
-                    if (!missingRequiredParams.isEmpty()) {
-                        logsBuilder.append(String.format("  ✗ 参数校验失败: 以下参数为必填项：%s\n",
-                                String.join(", ", missingRequiredParams)));
-                        throw new RuntimeException("参数校验失败: 以下参数为必填项：" +
-                                String.join(", ", missingRequiredParams));
                     }
                 }
+            });
 
-                // 输出输入参数日志
-                logsBuilder.append("  输入参数:\n");
-                if (blockInputs.isEmpty()) {
-                    logsBuilder.append("    (无)\n");
-                } else {
-                    blockInputs.forEach((key, value) ->
-                            logsBuilder.append(String.format("    %s = %s\n", key, value)));
-                }
+            if (!missingRequiredParams.isEmpty()) {
+                nodeLogs.append(String.format("  ✗ 参数校验失败: 以下参数为必填项：%s\n",
+                        String.join(", ", missingRequiredParams)));
+                throw new RuntimeException("参数校验失败: 以下参数为必填项：" +
+                        String.join(", ", missingRequiredParams));
+            }
+        }
 
-                // 执行块
-                try {
-                    logsBuilder.append(String.format("  使用超时时间: %d 秒\n", timeoutSeconds));
-                    PythonScriptExecutor.ExecutionResult result = pythonScriptExecutor.execute(
-                            pythonEnvId,
-                            script,
-                            blockInputs,
-                            timeoutSeconds
-                    );
-
-                    if (result.isSuccess()) {
-                        logsBuilder.append(String.format("  ✓ 执行成功 (耗时: %dms)\n", result.getExecutionTime()));
-
-                        // 保存输出结果
-                        Map<String, Object> output = result.getJsonOutput();
-                        if (output != null) {
-                            nodeOutputs.put(nodeId, output);
-                            logsBuilder.append(String.format("  输出结果: %s\n", output));
-                        }
+        // 输出输入参数日志
+        nodeLogs.append("  输入参数:\n");
+        if (blockInputs.isEmpty()) {
+            nodeLogs.append("    (无)\n");
+        } else {
+            blockInputs.forEach((key, value) ->
+                    nodeLogs.append(String.format("    %s = %s\n", key, value)));
+        }
 
-                        // 如果有控制台输出，记录
-                        if (output != null && output.containsKey("_console_output")) {
-                            logsBuilder.append("  控制台输出:\n");
-                            String consoleOutput = (String) output.get("_console_output");
-                            Arrays.stream(consoleOutput.split("\n"))
-                                    .forEach(line -> logsBuilder.append("    ").append(line).append("\n"));
-                        }
-                    } else {
-                        throw new RuntimeException(String.format("块执行失败: %s", result.getError()));
-                    }
-                } catch (Exception e) {
-                    logsBuilder.append(String.format("  ✗ 执行失败: %s\n", e.getMessage()));
-                    throw e;
-                }
+        ResourceLimits resourceLimits = plan.getResourceLimits(nodeIndex);
+        ExecutionPlan.MapSpec map = plan.getMap(nodeIndex);
+        if (map == null) {
+            Map<String, Object> output = runScript(executionId, nodeId, script, pythonEnvId, blockInputs,
+                    timeoutSeconds, resourceLimits, cacheEnabled, cacheTtlSeconds, cacheStats, nodeLogs);
+            if (output != null) {
+                nodeOutputs.put(nodeId, output);
+            }
+        } else {
+            nodeOutputs.put(nodeId, executeMap(executionId, nodeId, map, script, pythonEnvId, blockInputs,
+                    timeoutSeconds, resourceLimits, cacheEnabled, cacheTtlSeconds, cacheStats, nodeLogs));
+        }
+    }
 
-                logsBuilder.append("\n");
+    /**
+     * 执行子流程节点
+     * 子流程在当前节点线程中串行执行（占用父执行的线程预算，不向节点线程池投递任务），
+     * 共享父执行的取消和整体超时；子流程有独立的执行记录（记录父执行ID和节点ID）、日志和节点结果，
+     * 节点的输入参数作为子流程的全局输入参数，子流程末端节点（没有后继的节点）的输出合并为节点输出
+     *
+     * @return 节点输出
+     */
+    private Map<String, Object> executeSubWorkflow(PlanRun parent, int nodeIndex, int startIndex,
+                                                   StringBuilder nodeLogs) throws Exception {
+        ExecutionPlan parentPlan = parent.plan;
+        String nodeId = parentPlan.getNodeId(nodeIndex);
+        JSONObject nodeData = parentPlan.getNodeData(nodeIndex);
+        Integer subWorkflowId = nodeData.getInteger("subWorkflowId");
+        String nodeName = nodeData.getString("blockName");
+
+        nodeLogs.append(String.format("--- 执行子流程节点 [%d/%d]: %s ---\n", startIndex, parent.totalNodes, nodeName));
+        executionEventService.publish(parent.executionId, ExecutionEventService.NODE_STARTED,
+                eventData("nodeId", nodeId, "blockName", nodeName, "index", startIndex, "total", parent.totalNodes));
+
+        if (parent.workflowChain.contains(subWorkflowId)) {
+            throw new RuntimeException(String.format("子流程循环引用: %s -> %d", parent.workflowChain, subWorkflowId));
+        }
+        if (parent.workflowChain.size() > maxSubWorkflowDepth) {
+            throw new RuntimeException(String.format("子流程嵌套层数超过上限: %d", maxSubWorkflowDepth));
+        }
+        Workflow child = workflowRepository.findById(subWorkflowId)
+                .orElseThrow(() -> new RuntimeException("子流程不存在: " + subWorkflowId));
+        if (!Boolean.TRUE.equals(child.getIsActive())) {
+            throw new RuntimeException("子流程已禁用: " + child.getName());
+        }
+        ExecutionPlan childPlan = executionPlanCache.get(child);
+        if (childPlan.hasCycle()) {
+            throw new RuntimeException("子流程中存在循环依赖，无法执行: " + child.getName());
+        }
+
+        JSONObject childInputs = new JSONObject(collectInputs(parentPlan, nodeIndex, parent.nodeOutputs,
+                parent.inputParams, nodeLogs));
+
+        LocalDateTime startTime = LocalDateTime.now();
+        ExecutionLog childLog = new ExecutionLog();
+        childLog.setWorkflowId(child.getId());
+        childLog.setWorkflowName(child.getName());
+        childLog.setExecutorUsername(parent.executorUsername);
+        childLog.setStatus(ExecutionStatus.RUNNING);
+        childLog.setTriggerType(TriggerType.SUBWORKFLOW);
+        childLog.setInputParams(childInputs);
+        childLog.setQueuedTime(startTime);
+        childLog.setStartTime(startTime);
+        childLog.setParentExecutionId(parent.executionId);
+        childLog.setParentNodeId(nodeId);
+        childLog = executionLogRepository.save(childLog);
+        Long childId = childLog.getId();
+        nodeLogs.append(String.format("  子流程: %s (流程ID: %d, 子执行ID: %d)\n", child.getName(), child.getId(), childId));
+
+        executionEventService.open(childId);
+        appendLogs(childId, String.format("=== 子流程执行开始 ===\n流程名称: %s\n执行时间: %s\n父执行ID: %d, 父节点: %s\n\n",
+                child.getName(), startTime, parent.executionId, nodeName));
+
+        List<Integer> workflowChain = new ArrayList<>(parent.workflowChain);
+        workflowChain.add(child.getId());
+        PlanRun childRun = new PlanRun(childId, childPlan, childInputs, parent.timeoutSeconds,
+                workflowChain, parent.executorUsername, null);
+        ExecutionRegistry.RunningExecution running = ExecutionRegistry.current();
+        try {
+            workflowDagScheduler.runInline(childPlan.getSuccessors(), childPlan.getInDegree(), childRun::runNode,
+                    running, childRun::retryDelayMillis);
+        } catch (Exception e) {
+            boolean cancelled = running != null && running.isCancelled() && !running.isTimedOut();
+            String errorMessage = running != null && running.isCancelled() ? running.getCancelReason() : e.getMessage();
+            finishChildExecution(childLog, cancelled ? ExecutionStatus.CANCELLED : ExecutionStatus.FAILED,
+                    errorMessage, null, null);
+            nodeLogs.append(String.format("  ✗ 子流程执行失败: %s\n", errorMessage));
+            if (e instanceof CancellationException || e instanceof InterruptedException) {
+                throw e;
+            }
+            throw new RuntimeException(String.format("子流程 %s 执行失败: %s", child.getName(), errorMessage), e);
+        }
 
-                // 更新日志
-                executionLog.setLogs(logsBuilder.toString());
-                executionLogRepository.save(executionLog);
+        // 末端节点的输出按拓扑序合并
+        Map<String, Object> output = new JSONObject();
+        for (int childIndex : childPlan.getTopologicalOrder()) {
+            Map<String, Object> childOutput = childRun.nodeOutputs.get(childPlan.getNodeId(childIndex));
+            if (childPlan.getSuccessors(childIndex).length == 0 && childOutput != null) {
+                output.putAll(childOutput);
             }
+        }
+        JSONObject childResult = new JSONObject();
+        childResult.put("success", true);
+        childResult.put("message", "流程执行成功");
+        childResult.put("nodeOutputs", childRun.nodeOutputs);
+        finishChildExecution(childLog, ExecutionStatus.SUCCESS, null, childResult, childRun);
+
+        nodeLogs.append(String.format("  ✓ 子流程执行成功 (耗时: %dms)\n",
+                Duration.between(startTime, LocalDateTime.now()).toMillis()));
+        nodeLogs.append(String.format("  输出结果: %s\n", output));
+        return output;
+    }
 
-            // 流程执行成功
-            LocalDateTime endTime = LocalDateTime.now();
+    /**
+     * 结束子流程执行记录
+     */
+    private void finishChildExecution(ExecutionLog childLog, ExecutionStatus status, String errorMessage,
+                                      JSONObject outputResult, PlanRun childRun) {
+        Long childId = childLog.getId();
+        LocalDateTime endTime = LocalDateTime.now();
+        StringBuilder logsBuilder = new StringBuilder();
+        if (status == ExecutionStatus.SUCCESS) {
             logsBuilder.append("=== 流程执行成功 ===\n");
-            logsBuilder.append(String.format("结束时间: %s\n", endTime));
+            childRun.appendSummary(logsBuilder);
+        } else {
+            logsBuilder.append(status == ExecutionStatus.CANCELLED ? "\n=== 流程执行已取消 ===\n" : "\n=== 流程执行失败 ===\n");
+            logsBuilder.append(String.format("错误信息: %s\n", errorMessage));
+        }
+        logsBuilder.append(String.format("结束时间: %s\n", endTime));
+        try {
+            appendLogs(childId, logsBuilder);
+            childLog.setStatus(status);
+            childLog.setErrorMessage(errorMessage);
+            childLog.setOutputResult(outputResult);
+            childLog.setEndTime(endTime);
+            childLog.setDuration((int) Duration.between(childLog.getStartTime(), endTime).getSeconds());
+            executionLogRepository.save(childLog);
+            executionEventService.finish(childId, eventData("status", status,
+                    "duration", childLog.getDuration(),
+                    "errorMessage", errorMessage));
+        } catch (Exception e) {
+            log.error("更新子流程执行记录失败, executionId: {}, error: {}", childId, e.getMessage());
+        } finally {
+            executionLogStore.close(childId);
+        }
+    }
 
-            // 构建最终输出
-            JSONObject finalOutput = new JSONObject();
-            finalOutput.put("success", true);
-            finalOutput.put("message", "流程执行成功");
-            finalOutput.put("nodeOutputs", nodeOutputs);
+    /**
+     * 收集节点的输入参数：用户配置的输入值、前置节点传递的数据、全局输入参数
+     */
+    private Map<String, Object> collectInputs(ExecutionPlan plan, int nodeIndex,
+                                              Map<String, Map<String, Object>> nodeOutputs, JSONObject inputParams,
+                                              StringBuilder nodeLogs) {
+        JSONObject nodeData = plan.getNodeData(nodeIndex);
+        Map<String, Object> blockInputs = new HashMap<>();
+
+        // 1. 添加用户配置的输入值（过滤空值）
+        JSONObject inputValues = nodeData.getJSONObject("inputValues");
+        if (inputValues != null) {
+            // 过滤掉空值参数（null、空字符串）
+            // 这样 Python 代码的 inputs.get('param', default) 可以使用默认值
+            inputValues.forEach((key, value) -> {
+                if (value != null && !"".equals(value)) {
+                    blockInputs.put(key, value);
+                }
+            });
+            log.debug("块 {} 输入参数（已过滤空值）: {}", nodeData.getString("blockName"), blockInputs);
+        }
 
-            executionLog.setStatus(ExecutionStatus.SUCCESS);
-            executionLog.setOutputResult(finalOutput);
-            executionLog.setLogs(logsBuilder.toString());
-            executionLog.setEndTime(endTime);
-            executionLog.setDuration((int) Duration.between(startTime, endTime).getSeconds());
+        // 2. 添加从前置节点传递的数据（入边绑定在编译执行计划时已预先解析）
+        for (ExecutionPlan.Binding binding : plan.getIncoming(nodeIndex)) {
+            Map<String, Object> sourceOutput = nodeOutputs.get(binding.sourceNodeId());
+            if (sourceOutput == null || !sourceOutput.containsKey(binding.outputKey())) {
+                continue;
+            }
+            Object value = sourceOutput.get(binding.outputKey());
 
-            executionLogRepository.save(executionLog);
+            // 条件不满足的连接不传递数据（节点因其他生效的入边而执行）
+            if (binding.condition() != null && !binding.condition().test(bindingValue(binding, nodeOutputs))) {
+                nodeLogs.append(String.format("  忽略参数: %s (连接条件不满足)\n", binding.inputKey()));
+                continue;
+            }
 
-            log.info("流程执行成功: executionId={}, workflowId={}, duration={}s",
-                    executionId, workflow.getId(), executionLog.getDuration());
+            // 支持 JSON 路径提取
+            if (binding.path() != null) {
+                // 提取嵌套字段（转存的大输出先读取文件，不带路径时直接把引用交给下游）
+                value = extractFieldByPath(nodeOutputStore.resolve(value), binding.path());
+                nodeLogs.append(String.format("  接收参数: %s = %s (来自前置节点，路径: %s)\n",
+                        binding.inputKey(), value, binding.fieldPath()));
+            } else {
+                // 不带路径时把引用交给下游，引用中的文件路径换成当前实例的存储目录
+                value = nodeOutputStore.localize(value);
+                nodeLogs.append(String.format("  接收参数: %s = %s (来自前置节点)\n",
+                        binding.inputKey(), value));
+            }
 
-        } catch (Exception e) {
-            // 流程执行失败
-            LocalDateTime endTime = LocalDateTime.now();
-            logsBuilder.append("\n=== 流程执行失败 ===\n");
-            logsBuilder.append(String.format("错误信息: %s\n", e.getMessage()));
-            logsBuilder.append(String.format("结束时间: %s\n", endTime));
+            blockInputs.put(binding.inputKey(), value);
+        }
 
-            executionLog.setStatus(ExecutionStatus.FAILED);
-            executionLog.setErrorMessage(e.getMessage());
-            executionLog.setLogs(logsBuilder.toString());
-            executionLog.setEndTime(endTime);
-            executionLog.setDuration((int) Duration.between(startTime, endTime).getSeconds());
+        // 3. 添加全局输入参数
+        if (inputParams != null) {
+            blockInputs.putAll(inputParams);
+        }
+        return blockInputs;
+    }
 
-            executionLogRepository.save(executionLog);
+    /**
+     * 执行map节点：拆分数组输入，在元素线程池中并行对每个元素执行块，按原数组顺序收集各元素的输出
+     *
+     * @return 节点输出（outputKey -> 各元素输出组成的数组）
+     */
+    private Map<String, Object> executeMap(Long executionId, String nodeId, ExecutionPlan.MapSpec map,
+                                           String script, Integer pythonEnvId, Map<String, Object> blockInputs,
+                                           Long timeoutSeconds, ResourceLimits resourceLimits,
+                                           boolean cacheEnabled, Integer cacheTtlSeconds,
+                                           NodeResultCache.RunStats cacheStats, StringBuilder nodeLogs) throws Exception {
+        List<Object> items = toItems(blockInputs.get(map.inputKey()));
+        if (items == null) {
+            nodeLogs.append(String.format("  ✗ map节点的输入参数 %s 不是数组\n", map.inputKey()));
+            throw new RuntimeException(String.format("map节点的输入参数 %s 不是数组", map.inputKey()));
+        }
+        int total = items.size();
+        int parallelism = Math.min(map.parallelism(), Math.max(1, total));
+        nodeLogs.append(String.format("  map: 拆分输入参数 %s, 共 %d 个元素, 并行数: %d\n",
+                map.inputKey(), total, parallelism));
+
+        long startTime = System.currentTimeMillis();
+        Object[] results = new Object[total];
+        // 每个元素使用独立的日志缓冲，结束后按元素顺序合并
+        StringBuilder[] elementLogs = new StringBuilder[total];
+        try {
+            workflowDagScheduler.forEach(total, parallelism, ExecutionRegistry.current(), elementIndex -> {
+                StringBuilder logs = new StringBuilder();
+                elementLogs[elementIndex] = logs;
+                logs.append(String.format("  -- 元素 [%d/%d] --\n", elementIndex + 1, total));
+                Map<String, Object> elementInputs = new HashMap<>(blockInputs);
+                elementInputs.put(map.inputKey(), items.get(elementIndex));
+                results[elementIndex] = runScript(executionId, nodeId, script, pythonEnvId, elementInputs,
+                        timeoutSeconds, resourceLimits, cacheEnabled, cacheTtlSeconds, cacheStats, logs);
+            });
+        } finally {
+            for (StringBuilder logs : elementLogs) {
+                if (logs != null) {
+                    nodeLogs.append(logs);
+                }
+            }
+        }
+        nodeLogs.append(String.format("  ✓ map执行完成: %d 个元素 (耗时: %dms)\n",
+                total, System.currentTimeMillis() - startTime));
+
+        JSONObject output = new JSONObject();
+        output.put(map.outputKey(), Arrays.asList(results));
+        return nodeOutputStore.offload(output, -1);
+    }
+
+    /**
+     * 将map节点的输入转换为元素列表（支持数组和JSON数组字符串），无法转换时返回null
+     */
+    private List<Object> toItems(Object value) {
+        value = nodeOutputStore.resolve(value);
+        if (value instanceof List<?> list) {
+            return new ArrayList<>(list);
+        }
+        if (value instanceof Object[] array) {
+            return Arrays.asList(array);
+        }
+        if (value instanceof String text && text.trim().startsWith("[")) {
+            try {
+                return JSON.parseArray(text);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
 
-            log.error("流程执行失败: executionId={}, workflowId={}, error={}",
-                    executionId, workflow.getId(), e.getMessage(), e);
+    /**
+     * 执行块脚本（开启结果缓存时先查缓存）
+     *
+     * @return 输出结果，脚本没有输出时返回null
+     * @throws NodeExecutionException 脚本执行失败
+     */
+    private Map<String, Object> runScript(Long executionId, String nodeId, String script, Integer pythonEnvId,
+                                          Map<String, Object> blockInputs, Long timeoutSeconds,
+                                          ResourceLimits resourceLimits, boolean cacheEnabled, Integer cacheTtlSeconds,
+                                          NodeResultCache.RunStats cacheStats, StringBuilder nodeLogs) {
+        // 开启结果缓存的块，相同输入直接复用上次的输出
+        String cacheKey = null;
+        if (cacheEnabled) {
+            cacheKey = nodeResultCache.key(script, pythonEnvId, blockInputs);
+            JSONObject cached = nodeResultCache.get(cacheKey);
+            if (cached != null) {
+                cacheStats.hit();
+                nodeLogs.append(String.format("  ✓ 命中结果缓存 (key: %s)，跳过执行\n", cacheKey.substring(0, 12)));
+                nodeLogs.append(String.format("  输出结果: %s\n", cached));
+                return cached;
+            }
+            cacheStats.miss();
+            nodeLogs.append("  结果缓存未命中\n");
+        }
+
+        // 执行块
+        try {
+            nodeLogs.append(String.format("  使用超时时间: %d 秒\n", timeoutSeconds));
+            if (resourceLimits != null) {
+                nodeLogs.append(String.format("  资源限制: %s\n", resourceLimits));
+            }
+            PythonScriptExecutor.ExecutionResult result = pythonScriptExecutor.execute(
+                    pythonEnvId,
+                    script,
+                    blockInputs,
+                    timeoutSeconds,
+                    line -> executionEventService.publish(executionId, ExecutionEventService.STDOUT_LINE,
+                            eventData("nodeId", nodeId, "line", line)),
+                    resourceLimits
+            );
+            if (result.getQueueWaitMillis() > 0) {
+                nodeLogs.append(String.format("  排队等待执行名额: %d ms\n", result.getQueueWaitMillis()));
+            }
+            if (result.getPeakMemoryKb() != null || result.getCpuTimeMillis() != null) {
+                nodeLogs.append(String.format("  资源使用: 峰值内存 %s KB, CPU时间 %s ms\n",
+                        result.getPeakMemoryKb() != null ? result.getPeakMemoryKb() : "-",
+                        result.getCpuTimeMillis() != null ? result.getCpuTimeMillis() : "-"));
+            }
+
+            if (result.isSuccess()) {
+                nodeLogs.append(String.format("  ✓ 执行成功 (耗时: %dms)\n", result.getExecutionTime()));
+
+                // 保存输出结果（超过阈值的值转存为文件，输出、缓存和日志中只保留引用）
+                JSONObject output = nodeOutputStore.offload(result.getJsonOutput(), result.getOutputBytes());
+                if (output != null) {
+                    nodeLogs.append(String.format("  输出结果: %s\n", output));
+                    if (cacheKey != null) {
+                        nodeResultCache.put(cacheKey, output, cacheTtlSeconds);
+                    }
+                }
+
+                // 如果有控制台输出，记录
+                if (output != null && output.containsKey("_console_output")) {
+                    nodeLogs.append("  控制台输出:\n");
+                    String consoleOutput = (String) output.get("_console_output");
+                    Arrays.stream(consoleOutput.split("\n"))
+                            .forEach(line -> nodeLogs.append("    ").append(line).append("\n"));
+                }
+                return output;
+            } else {
+                throw new NodeExecutionException(String.format("块执行失败: %s", result.getError()), result.getErrorType());
+            }
+        } catch (Exception e) {
+            nodeLogs.append(String.format("  ✗ 执行失败: %s\n", e.getMessage()));
+            throw e;
         }
     }
 
     /**
      * 根据路径提取嵌套字段
-     * 支持格式：
+     * 路径在编译执行计划时已拆分为片段（见 {@link ExecutionPlan#parsePath}），支持格式：
      * - 点分隔：fullUrl.projects
      * - 数组索引：items[0]
      * - 组合：data.users[0].name
      *
-     * @param value     源数据对象
-     * @param fieldPath 字段路径
+     * @param value    源数据对象
+     * @param segments 字段路径片段
      * @return 提取的值
      */
-    private Object extractFieldByPath(Object value, String fieldPath) {
-        if (value == null || fieldPath == null || fieldPath.trim().isEmpty()) {
+    private Object extractFieldByPath(Object value, ExecutionPlan.PathSegment[] segments) {
+        if (value == null || segments == null) {
             return value;
         }
 
         Object current = value;
-        String[] pathSegments = fieldPath.split("\\.");
-
-        for (String segment : pathSegments) {
+        for (ExecutionPlan.PathSegment segment : segments) {
             if (current == null) {
                 break;
             }
 
-            // 处理数组索引，例如 items[0]
-            if (segment.contains("[") && segment.contains("]")) {
-                String fieldName = segment.substring(0, segment.indexOf("["));
-                String indexStr = segment.substring(segment.indexOf("[") + 1, segment.indexOf("]"));
+            if (!segment.indexed()) {
+                // 普通字段访问
+                current = getFieldValue(current, segment.field());
+                continue;
+            }
 
-                try {
-                    int index = Integer.parseInt(indexStr);
+            // 处理数组索引，例如 items[0]
+            if (segment.index() == ExecutionPlan.INVALID_INDEX) {
+                log.warn("无效的数组索引: {}", segment.rawIndex());
+                return null;
+            }
+            int index = segment.index();
 
-                    // 先获取数组字段
-                    if (!fieldName.isEmpty()) {
-                        current = getFieldValue(current, fieldName);
-                    }
+            // 先获取数组字段
+            if (!segment.field().isEmpty()) {
+                current = getFieldValue(current, segment.field());
+            }
 
-                    // 再获取数组元素
-                    if (current instanceof List) {
-                        List<?> list = (List<?>) current;
-                        if (index >= 0 && index < list.size()) {
-                            current = list.get(index);
-                        } else {
-                            log.warn("数组索引越界: index={}, size={}", index, list.size());
-                            return null;
-                        }
-                    } else if (current instanceof JSONArray) {
-                        JSONArray array = (JSONArray) current;
-                        if (index >= 0 && index < array.size()) {
-                            current = array.get(index);
-                        } else {
-                            log.warn("数组索引越界: index={}, size={}", index, array.size());
-                            return null;
-                        }
-                    } else {
-                        log.warn("字段 {} 不是数组类型: {}", fieldName, current.getClass().getSimpleName());
-                        return null;
-                    }
-                } catch (NumberFormatException e) {
-                    log.warn("无效的数组索引: {}", indexStr);
+            // 再获取数组元素（JSONArray 也实现了 List）
+            if (current instanceof List<?> list) {
+                if (index >= 0 && index < list.size()) {
+                    current = list.get(index);
+                } else {
+                    log.warn("数组索引越界: index={}, size={}", index, list.size());
                     return null;
                 }
             } else {
-                // 普通字段访问
-                current = getFieldValue(current, segment);
+                log.warn("字段 {} 不是数组类型: {}", segment.field(),
+                        current != null ? current.getClass().getSimpleName() : "null");
+                return null;
             }
         }
 
@@ -518,47 +1264,6 @@ public class ExecutionServiceImpl implements ExecutionService {
         return null;
     }
 
-    /**
-     * 拓扑排序
-     *
-     * @param nodes        所有节点ID
-     * @param reverseGraph 反向图（nodeId -> 依赖它的节点列表）
-     * @param inDegree     入度
-     * @return 排序后的节点ID列表，如果存在循环返回null
-     */
-    private List<String> topologicalSort(Set<String> nodes,
-                                         Map<String, List<String>> reverseGraph,
-                                         Map<String, Integer> inDegree) {
-        List<String> result = new ArrayList<>();
-        Queue<String> queue = new LinkedList<>();
-
-        // 找到所有入度为0的节点
-        for (String nodeId : nodes) {
-            if (inDegree.get(nodeId) == 0) {
-                queue.offer(nodeId);
-            }
-        }
-
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            result.add(current);
-
-            // 获取所有依赖当前节点的节点（从反向图中直接获取）
-            List<String> dependents = reverseGraph.get(current);
-            if (dependents != null) {
-                for (String dependent : dependents) {
-                    inDegree.put(dependent, inDegree.get(dependent) - 1);
-                    if (inDegree.get(dependent) == 0) {
-                        queue.offer(dependent);
-                    }
-                }
-            }
-        }
-
-        // 如果有节点未被访问，说明存在循环
-        return result.size() == nodes.size() ? result : null;
-    }
-
     @Override
     public ExecutionLog getById(Long id) {
         return executionLogRepository.findById(id)
@@ -574,8 +1279,98 @@ public class ExecutionServiceImpl implements ExecutionService {
 
     @Override
     public String getLogs(Long id) {
+        return getLogs(id, 0);
+    }
+
+    @Override
+    public String getLogs(Long id, int afterSeq) {
         ExecutionLog executionLog = getById(id);
-        return executionLog.getLogs();
+        String logs = executionLogStore.read(id, afterSeq);
+        if (logs == null && afterSeq <= 0) {
+            // 兼容旧数据：分片存储之前的日志整段保存在执行记录中
+            return executionLog.getLogs();
+        }
+        return logs != null ? logs : "";
+    }
+
+    @Override
+    public List<ExecutionLogChunk> getLogChunks(Long id, int afterSeq) {
+        getById(id);
+        return executionLogStore.readChunks(id, afterSeq);
+    }
+
+    @Override
+    public SseEmitter stream(Long id, Long lastEventId) {
+        SseEmitter emitter = executionEventService.subscribe(id, lastEventId);
+        if (emitter != null) {
+            return emitter;
+        }
+
+        // 当前实例中没有该执行的事件通道（已结束并过了保留期、排队中，或由其他实例运行），按数据库中的状态返回
+        ExecutionLog executionLog = getById(id);
+        emitter = new SseEmitter(0L);
+        try {
+            if (executionLog.getStatus() != ExecutionStatus.RUNNING
+                    && executionLog.getStatus() != ExecutionStatus.QUEUED) {
+                emitter.send(SseEmitter.event()
+                        .name(ExecutionEventService.RUN_FINISHED)
+                        .data(eventData("status", executionLog.getStatus(),
+                                "duration", executionLog.getDuration(),
+                                "errorMessage", executionLog.getErrorMessage())));
+            } else {
+                // 告知客户端执行尚未在当前实例开始，EventSource 按 retry 间隔自动重连
+                emitter.send(SseEmitter.event()
+                        .name(ExecutionEventService.RUN_PENDING)
+                        .reconnectTime(pendingReconnectMillis)
+                        .data(eventData("status", executionLog.getStatus())));
+            }
+        } catch (IOException e) {
+            log.debug("推送执行状态事件失败, executionId: {}, error: {}", id, e.getMessage());
+        }
+        emitter.complete();
+        return emitter;
+    }
+
+    @Override
+    public List<ExecutionNodeResult> getNodeResults(Long id) {
+        return executionNodeResultRepository.findByExecutionIdOrderByIdAsc(id);
+    }
+
+    @Override
+    public List<ExecutionLog> getChildren(Long id) {
+        return executionLogRepository.findByParentExecutionIdOrderByIdAsc(id);
+    }
+
+    /**
+     * 与 execute 相同，重新入队后由执行线程读取记录，因此这里不开启事务
+     */
+    @Override
+    public ExecutionLog resume(Long id, Long timeoutSeconds, Long workflowTimeoutSeconds) {
+        ExecutionLog executionLog = getById(id);
+        if (executionLog.getStatus() != ExecutionStatus.FAILED
+                && executionLog.getStatus() != ExecutionStatus.CANCELLED) {
+            throw new BusinessException("只能恢复失败或已取消的执行");
+        }
+        if (executionLog.getParentExecutionId() != null) {
+            throw new BusinessException("子流程执行不能单独恢复，请恢复父执行");
+        }
+        if (!workflowRepository.existsById(executionLog.getWorkflowId())) {
+            throw new BusinessException("流程不存在");
+        }
+        if (executionLogRepository.markResumed(id, LocalDateTime.now()) == 0) {
+            throw new BusinessException("执行状态已变更，请刷新后重试");
+        }
+        executionLog = getById(id);
+
+        appendLogs(id, String.format("\n=== 恢复执行 (%s) ===\n\n", executionLog.getQueuedTime()));
+        long nodeTimeout = timeoutSeconds != null && timeoutSeconds > 0 ? timeoutSeconds : 60L;
+        long workflowTimeout = workflowTimeoutSeconds != null ? workflowTimeoutSeconds : defaultWorkflowTimeoutSeconds;
+        if (!executionQueue.enqueue(executionLog, nodeTimeout, workflowTimeout)) {
+            failExecution(id, "执行队列已满，请稍后重试");
+            throw new BusinessException("执行队列已满，请稍后重试");
+        }
+        log.info("流程恢复执行已提交, executionId: {}, workflowId: {}", id, executionLog.getWorkflowId());
+        return executionLog;
     }
 
     @Override
@@ -583,23 +1378,46 @@ public class ExecutionServiceImpl implements ExecutionService {
     public ExecutionLog cancel(Long id) {
         ExecutionLog executionLog = getById(id);
 
-        if (executionLog.getStatus() != ExecutionStatus.RUNNING) {
-            throw new ServiceException(500,"只能取消正在运行的执行");
+        if (executionLog.getStatus() != ExecutionStatus.RUNNING
+                && executionLog.getStatus() != ExecutionStatus.QUEUED) {
+            throw new ServiceException(500,"只能取消排队中或正在运行的执行");
+        }
+        if (executionLog.getParentExecutionId() != null) {
+            // 子流程在父执行的节点线程中运行，只能随父执行一起取消
+            throw new ServiceException(500,"子流程执行不能单独取消，请取消父执行");
         }
 
-        executionLog.setStatus(ExecutionStatus.CANCELLED);
-        executionLog.setEndTime(LocalDateTime.now());
-
-        // 计算执行时长
-        if (executionLog.getStartTime() != null && executionLog.getEndTime() != null) {
-            Duration duration = Duration.between(executionLog.getStartTime(), executionLog.getEndTime());
-            executionLog.setDuration((int) duration.getSeconds());
+        // 排队中的执行直接标记为已取消（条件更新，与执行线程的 QUEUED -> RUNNING 互斥）
+        if (executionLog.getStatus() == ExecutionStatus.QUEUED
+                && executionLogRepository.cancelQueued(id, LocalDateTime.now(), "用户取消执行") > 0) {
+            executionEventService.finish(id, eventData("status", ExecutionStatus.CANCELLED,
+                    "duration", 0,
+                    "errorMessage", "用户取消执行"));
+            log.info("排队中的执行已取消, executionId: {}, workflowId: {}", id, executionLog.getWorkflowId());
+            return getById(id);
         }
 
-        // TODO: 实际取消执行的逻辑需要在这里实现
-        log.info("执行已取消, executionId: {}, workflowId: {}", id, executionLog.getWorkflowId());
+        // 终止运行中的节点任务和Python进程树，未开始的节点不再调度；
+        // 执行在当前实例中时由执行线程写入最终状态，这里不再覆盖
+        if (executionRegistry.cancel(id, "用户取消执行")) {
+            log.info("执行已取消, executionId: {}, workflowId: {}, 终止运行中任务: true",
+                    id, executionLog.getWorkflowId());
+            return getById(id);
+        }
 
-        return executionLogRepository.save(executionLog);
+        // 执行不在当前实例中（如服务重启后遗留的运行状态），条件更新为已取消，执行已结束时不覆盖
+        LocalDateTime endTime = LocalDateTime.now();
+        Integer duration = executionLog.getStartTime() != null
+                ? (int) Duration.between(executionLog.getStartTime(), endTime).getSeconds() : null;
+        if (executionLogRepository.cancelRunning(id, endTime, duration, "用户取消执行") > 0) {
+            finishOrphanedChildren(id, ExecutionStatus.CANCELLED, "用户取消执行");
+            executionEventService.finish(id, eventData("status", ExecutionStatus.CANCELLED,
+                    "duration", duration,
+                    "errorMessage", "用户取消执行"));
+            log.info("执行已取消, executionId: {}, workflowId: {}, 终止运行中任务: false",
+                    id, executionLog.getWorkflowId());
+        }
+        return getById(id);
     }
 
     @Override
@@ -609,6 +1427,13 @@ public class ExecutionServiceImpl implements ExecutionService {
             throw new ServiceException(500,"执行记录不存在");
         }
         executionLogRepository.deleteById(id);
+        executionLogStore.delete(id);
+        executionNodeResultRepository.deleteByExecutionId(id);
+        executionQueue.remove(id);
+        // 子流程执行记录随父执行一起删除
+        for (ExecutionLog child : executionLogRepository.findByParentExecutionIdOrderByIdAsc(id)) {
+            delete(child.getId());
+        }
     }
 
     @Override
@@ -148,6 +148,17 @@ public class PythonEnvironmentServiceImpl implements PythonEnvironmentService {
         if (updateDTO.getDescription() != null) {
             environment.setDescription(updateDTO.getDescription());
         }
+        if (updateDTO.getResourceLimits() != null) {
+            // 传空对象表示清除限制
+            environment.setResourceLimits(updateDTO.getResourceLimits().isEmpty() ? null : updateDTO.getResourceLimits());
+        }
+        if (updateDTO.getMaxConcurrency() != null) {
+            // 传0表示不单独限制
+            environment.setMaxConcurrency(updateDTO.getMaxConcurrency() > 0 ? updateDTO.getMaxConcurrency() : null);
+        }
+        if (updateDTO.getScheduleWeight() != null) {
+            environment.setScheduleWeight(updateDTO.getScheduleWeight() > 0 ? updateDTO.getScheduleWeight() : null);
+        }
         if (updateDTO.getIsDefault() != null) {
             if (Boolean.TRUE.equals(updateDTO.getIsDefault())) {
                 clearDefaultEnvironments();
@@ -5,6 +5,9 @@ import cn.tannn.cat.block.controller.dto.workflow.WorkflowPage;
 import cn.tannn.cat.block.controller.dto.workflow.WorkflowUpdateDTO;
 import cn.tannn.cat.block.entity.Workflow;
 import cn.tannn.cat.block.repository.WorkflowRepository;
+import cn.tannn.cat.block.service.ExecutionPlanCache;
+import cn.tannn.cat.block.service.WebhookDispatcher;
+import cn.tannn.cat.block.service.WorkflowScheduler;
 import cn.tannn.cat.block.service.WorkflowService;
 import cn.tannn.jdevelops.result.exception.ServiceException;
 import cn.tannn.jdevelops.util.jpa.select.EnhanceSpecification;
@@ -16,6 +19,9 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
 import java.util.List;
 
 /**
@@ -28,6 +34,11 @@ import java.util.List;
 public class WorkflowServiceImpl implements WorkflowService {
 
     private final WorkflowRepository workflowRepository;
+    private final ExecutionPlanCache executionPlanCache;
+    private final WorkflowScheduler workflowScheduler;
+    private final WebhookDispatcher webhookDispatcher;
+
+    private static final SecureRandom WEBHOOK_KEY_RANDOM = new SecureRandom();
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -35,7 +46,13 @@ public class WorkflowServiceImpl implements WorkflowService {
         Workflow workflow = new Workflow();
         BeanUtils.copyProperties(createDTO, workflow);
         workflow.setAuthorUsername(username);
-        return workflowRepository.save(workflow);
+        if (StringUtils.isBlank(workflow.getScheduleCron())) {
+            workflow.setScheduleCron(null);
+        }
+        workflow.setNextFireTime(computeNextFireTime(workflow));
+        workflow = workflowRepository.save(workflow);
+        workflowScheduler.reschedule(workflow.getId());
+        return workflow;
     }
 
     @Override
@@ -67,8 +84,41 @@ public class WorkflowServiceImpl implements WorkflowService {
         if (updateDTO.getIsPublic() != null) {
             workflow.setIsPublic(updateDTO.getIsPublic());
         }
+        boolean scheduleChanged = updateDTO.getScheduleEnabled() != null
+                || updateDTO.getScheduleCron() != null
+                || updateDTO.getScheduleIntervalSeconds() != null
+                || updateDTO.getIsActive() != null;
+        if (updateDTO.getScheduleEnabled() != null) {
+            workflow.setScheduleEnabled(updateDTO.getScheduleEnabled());
+        }
+        if (updateDTO.getScheduleCron() != null) {
+            // 传空串表示清除Cron表达式
+            workflow.setScheduleCron(StringUtils.isBlank(updateDTO.getScheduleCron())
+                    ? null : updateDTO.getScheduleCron().trim());
+        }
+        if (updateDTO.getScheduleIntervalSeconds() != null) {
+            workflow.setScheduleIntervalSeconds(updateDTO.getScheduleIntervalSeconds());
+        }
+        if (updateDTO.getScheduleMisfirePolicy() != null) {
+            workflow.setScheduleMisfirePolicy(updateDTO.getScheduleMisfirePolicy());
+        }
+        if (updateDTO.getScheduleJitterSeconds() != null) {
+            workflow.setScheduleJitterSeconds(updateDTO.getScheduleJitterSeconds());
+        }
 
-        return workflowRepository.save(workflow);
+        executionPlanCache.invalidate(workflow.getId());
+        if (updateDTO.getIsActive() != null) {
+            webhookDispatcher.invalidate(workflow.getId());
+        }
+        workflow = workflowRepository.save(workflow);
+        if (scheduleChanged) {
+            // nextFireTime 不随实体保存，触发规则变更后单独重算
+            LocalDateTime nextFireTime = computeNextFireTime(workflow);
+            workflowRepository.resetNextFireTime(workflow.getId(), nextFireTime);
+            workflow.setNextFireTime(nextFireTime);
+            workflowScheduler.reschedule(workflow.getId());
+        }
+        return workflow;
     }
 
     @Override
@@ -78,6 +128,9 @@ public class WorkflowServiceImpl implements WorkflowService {
             throw new ServiceException(500,"流程不存在");
         }
         workflowRepository.deleteById(id);
+        executionPlanCache.invalidate(id);
+        workflowScheduler.reschedule(id);
+        webhookDispatcher.invalidate(id);
     }
 
     @Override
@@ -101,7 +154,10 @@ public class WorkflowServiceImpl implements WorkflowService {
         Specification<Workflow> select = EnhanceSpecification.beanWhere(where,x -> {
             x.ne(true,"authorUsername",username);
         });
-        return workflowRepository.findAll(select, where.getPage().pageable());
+        Page<Workflow> page = workflowRepository.findAll(select, where.getPage().pageable());
+        // Webhook密钥只对创建者可见（查询结束后实体已脱离持久化上下文，置空不会写回）
+        page.forEach(workflow -> workflow.setWebhookKey(null));
+        return page;
     }
 
     @Override
@@ -112,6 +168,11 @@ public class WorkflowServiceImpl implements WorkflowService {
 
         BeanUtils.copyProperties(original, cloned, "id", "createTime", "updateTime");
         cloned.setName(original.getName() + " (副本)");
+        // 副本默认不继承定时触发，避免同一任务被重复调度
+        cloned.setScheduleEnabled(false);
+        cloned.setNextFireTime(null);
+        cloned.setLastFireTime(null);
+        cloned.setWebhookKey(null);
 
         return workflowRepository.save(cloned);
     }
@@ -125,8 +186,46 @@ public class WorkflowServiceImpl implements WorkflowService {
         return workflowRepository.save(workflow);
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Workflow resetWebhookKey(Integer id) {
+        Workflow workflow = getById(id);
+        byte[] key = new byte[24];
+        WEBHOOK_KEY_RANDOM.nextBytes(key);
+        workflow.setWebhookKey(HexFormat.of().formatHex(key));
+        webhookDispatcher.invalidate(id);
+        return workflowRepository.save(workflow);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Workflow disableWebhook(Integer id) {
+        Workflow workflow = getById(id);
+        workflow.setWebhookKey(null);
+        webhookDispatcher.invalidate(id);
+        return workflowRepository.save(workflow);
+    }
+
     @Override
     public List<String> getAllCategories() {
         return workflowRepository.findDistinctCategories();
     }
+
+    /**
+     * 校验定时配置并计算首次触发时间，未启用定时触发时返回null
+     */
+    private LocalDateTime computeNextFireTime(Workflow workflow) {
+        if (workflow.getScheduleJitterSeconds() != null && workflow.getScheduleJitterSeconds() < 0) {
+            throw new ServiceException(500, "触发抖动不能小于0");
+        }
+        if (!Boolean.TRUE.equals(workflow.getScheduleEnabled())) {
+            return null;
+        }
+        try {
+            return WorkflowScheduler.nextFireTime(workflow.getScheduleCron(),
+                    workflow.getScheduleIntervalSeconds(), LocalDateTime.now());
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException(500, "定时配置无效: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,278 @@
+# -*- coding: utf-8 -*-
+"""
+BlockFlow 常驻Python工作进程
+
+协议：
+  - 从 stdin 按行读取任务（JSON）：{"script": "...", "inputs": {...}}
+  - 每个任务在全新的全局命名空间中执行，任务之间互不影响（已导入的模块保留在 sys.modules 中复用）
+  - 执行过程中脚本的 print 输出按行以 LOG_MARKER 开头实时写入 stdout，便于实时推送
+  - 结果以 RESULT_MARKER 开头写入 stdout 单独一行：{"ok": true/false, "output": {...}, "stderr": "...", "usage": {...}}
+  - usage 为资源使用：本任务的CPU时间，以及工作进程自启动以来的峰值内存（常驻进程无法按任务统计峰值）
+"""
+import builtins
+import functools
+import io
+import json
+import mmap
+import sys
+import traceback
+
+try:
+    import resource
+except ImportError:  # Windows
+    resource = None
+
+RESULT_MARKER = '@@BLOCKFLOW_RESULT@@'
+LOG_MARKER = '@@BLOCKFLOW_LOG@@'
+# 控制台输出只保留开头和结尾各这么多字符，单行日志超过上限时截断，避免大量 print 撑满内存和协议通道
+CONSOLE_HEAD_CHARS = 65536
+CONSOLE_TAIL_CHARS = 65536
+LOG_LINE_CHARS = 8192
+# 上游转存为文件的大输出引用中的摘要字段（与 NodeOutputStore.REF_KEY 保持一致）
+BLOB_REF_KEY = '$blob'
+
+# 协议通道固定使用 UTF-8，用户脚本的 print 输出会被重定向，不会混入协议通道
+_protocol_out = io.TextIOWrapper(sys.stdout.buffer, encoding='utf-8', line_buffering=True)
+_protocol_in = io.TextIOWrapper(sys.stdin.buffer, encoding='utf-8')
+
+# ========== 内置安全类型转换函数（与单进程模式的包装脚本保持一致） ==========
+_HELPERS = '''
+import json
+
+def safe_int(value, default=0):
+    """安全地转换为整数，处理空字符串、None和无效值"""
+    if value is None or value == '':
+        return default
+    try:
+        return int(value)
+    except (ValueError, TypeError):
+        return default
+
+def safe_float(value, default=0.0):
+    """安全地转换为浮点数，处理空字符串、None和无效值"""
+    if value is None or value == '':
+        return default
+    try:
+        return float(value)
+    except (ValueError, TypeError):
+        return default
+
+def safe_bool(value, default=False):
+    """安全地转换为布尔值"""
+    if value is None or value == '':
+        return default
+    if isinstance(value, bool):
+        return value
+    if isinstance(value, str):
+        return value.lower() in ['true', '1', 'yes', 'on']
+    return bool(value)
+
+def safe_json_parse(value, default):
+    """安全地解析JSON，自动处理字符串和对象"""
+    if isinstance(value, str):
+        try:
+            return json.loads(value)
+        except json.JSONDecodeError:
+            return default
+    return value if value is not None else default
+
+def shared_output(value):
+    """将数据写入共享存储，节点之间只传递引用；bytes/bytearray/memoryview 按原始字节写入，其余按JSON序列化一次"""
+    import hashlib, os, tempfile
+    _root = os.environ.get('BLOCKFLOW_OUTPUT_STORE')
+    if not _root:
+        raise RuntimeError('未配置共享输出存储目录')
+    if isinstance(value, (bytes, bytearray, memoryview)):
+        _data, _format, _suffix = memoryview(value).cast('B'), 'raw', '.bin'
+    else:
+        _data, _format, _suffix = json.dumps(value, ensure_ascii=False).encode('utf-8'), 'json', '.json'
+    _digest = hashlib.sha256(_data).hexdigest()
+    _dir = os.path.join(_root, _digest[:2])
+    _target = os.path.join(_dir, _digest + _suffix)
+    if os.path.exists(_target):
+        os.utime(_target)
+    else:
+        os.makedirs(_dir, exist_ok=True)
+        _fd, _temp = tempfile.mkstemp(prefix=_digest, suffix='.tmp', dir=_dir)
+        try:
+            with os.fdopen(_fd, 'wb') as _f:
+                _f.write(_data)
+            os.replace(_temp, _target)
+        finally:
+            if os.path.exists(_temp):
+                os.remove(_temp)
+    return {'$blob': _digest, 'size': len(_data), 'path': _target, 'format': _format}
+'''
+_HELPERS_CODE = compile(_HELPERS, '<blockflow-helpers>', 'exec')
+
+
+@functools.lru_cache(maxsize=256)
+def _compile_script(script):
+    """块脚本编译结果按脚本内容缓存，热点块重复执行时跳过编译"""
+    return compile(script, '<block>', 'exec')
+
+
+class _StreamingConsole(io.TextIOBase):
+    """捕获 print 输出（只保留开头和结尾），同时将完整的行实时转发到协议通道"""
+
+    def __init__(self):
+        super().__init__()
+        self._head = io.StringIO()
+        self._head_size = 0
+        self._tail = ''
+        self._dropped = 0
+        self._pending = ''
+
+    def writable(self):
+        return True
+
+    def write(self, s):
+        if self._head_size < CONSOLE_HEAD_CHARS:
+            part = s[:CONSOLE_HEAD_CHARS - self._head_size]
+            self._head.write(part)
+            self._head_size += len(part)
+            rest = s[len(part):]
+        else:
+            rest = s
+        if rest:
+            self._tail += rest
+            if len(self._tail) > CONSOLE_TAIL_CHARS:
+                self._dropped += len(self._tail) - CONSOLE_TAIL_CHARS
+                self._tail = self._tail[-CONSOLE_TAIL_CHARS:]
+
+        self._pending += s
+        if '\n' in self._pending:
+            lines = self._pending.split('\n')
+            self._pending = lines.pop()
+            for line in lines:
+                _protocol_out.write(LOG_MARKER + line[:LOG_LINE_CHARS] + '\n')
+            _protocol_out.flush()
+        elif len(self._pending) > LOG_LINE_CHARS:
+            self.flush_pending()
+        return len(s)
+
+    def flush_pending(self):
+        if self._pending:
+            _protocol_out.write(LOG_MARKER + self._pending[:LOG_LINE_CHARS] + '\n')
+            _protocol_out.flush()
+            self._pending = ''
+
+    def getvalue(self):
+        if self._dropped:
+            return f'{self._head.getvalue()}\n... 省略 {self._dropped} 个字符 ...\n{self._tail}'
+        return self._head.getvalue() + self._tail
+
+
+def _resolve_blob_refs(values):
+    """将大输出引用替换为文件内容（内存映射读取，原始字节格式直接交给脚本只读映射）"""
+    for key, value in list(values.items()):
+        if isinstance(value, dict) and BLOB_REF_KEY in value and 'path' in value:
+            with open(value['path'], 'rb') as f:
+                m = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)
+            if value.get('format') == 'raw':
+                values[key] = m
+            else:
+                with m:
+                    values[key] = json.loads(m[:])
+    return values
+
+
+def _cpu_seconds():
+    if resource is None:
+        return 0.0
+    own = resource.getrusage(resource.RUSAGE_SELF)
+    children = resource.getrusage(resource.RUSAGE_CHILDREN)
+    return own.ru_utime + own.ru_stime + children.ru_utime + children.ru_stime
+
+
+def _usage(cpu_before):
+    """资源使用：本任务的CPU时间，峰值内存为工作进程（含已回收子进程）自启动以来的峰值"""
+    if resource is None:
+        return None
+    scale = 1024 if sys.platform == 'darwin' else 1
+    peak = max(resource.getrusage(resource.RUSAGE_SELF).ru_maxrss,
+               resource.getrusage(resource.RUSAGE_CHILDREN).ru_maxrss) // scale
+    return {'peakMemoryKb': peak, 'cpuTimeMillis': int((_cpu_seconds() - cpu_before) * 1000)}
+
+
+def _error_output(message, trace, console_text):
+    output = {'error': message, 'traceback': trace}
+    if console_text:
+        output['_console_output'] = console_text.rstrip()
+    return output
+
+
+def run_job(job):
+    # 每个任务使用全新的全局命名空间，避免上一个任务的变量泄漏
+    scope = {'__name__': '__main__', '__builtins__': builtins}
+    exec(_HELPERS_CODE, scope)
+    cpu_before = _cpu_seconds()
+
+    console = _StreamingConsole()
+    errors = io.StringIO()
+    saved_stdout, saved_stderr = sys.stdout, sys.stderr
+    sys.stdout, sys.stderr = console, errors
+    ok = True
+    message, trace = '', ''
+    try:
+        scope['inputs'] = _resolve_blob_refs(job.get('inputs') or {})
+        code = _compile_script(job.get('script') or '')
+        exec(code, scope)
+    except SystemExit as e:
+        # 兼容脚本中主动调用 sys.exit()
+        if e.code not in (None, 0):
+            ok = False
+            message = f'SystemExit: {e.code}'
+            trace = traceback.format_exc()
+    except BaseException as e:
+        ok = False
+        trace = traceback.format_exc()
+        message = str(e)
+    finally:
+        sys.stdout, sys.stderr = saved_stdout, saved_stderr
+        console.flush_pending()
+
+    console_text = console.getvalue()
+    stderr_text = errors.getvalue()
+    usage = _usage(cpu_before)
+    if not ok:
+        return {'ok': False,
+                'output': _error_output(message, trace, console_text),
+                'stderr': stderr_text + trace,
+                'usage': usage}
+
+    if 'outputs' in scope:
+        outputs = scope['outputs']
+        final_output = outputs if isinstance(outputs, dict) else {'result': outputs}
+    else:
+        final_output = {'success': True}
+    if console_text:
+        final_output['_console_output'] = console_text.rstrip()
+
+    try:
+        json.dumps(final_output, ensure_ascii=False)
+    except Exception as e:
+        return {'ok': False,
+                'output': _error_output(str(e), traceback.format_exc(), console_text),
+                'stderr': stderr_text + traceback.format_exc(),
+                'usage': usage}
+    return {'ok': True, 'output': final_output, 'stderr': stderr_text, 'usage': usage}
+
+
+def main():
+    for line in _protocol_in:
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            response = run_job(json.loads(line))
+        except Exception as e:
+            response = {'ok': False,
+                        'output': _error_output(f'读取任务失败: {str(e)}', traceback.format_exc(), ''),
+                        'stderr': traceback.format_exc()}
+        _protocol_out.write(RESULT_MARKER + json.dumps(response, ensure_ascii=False) + '\n')
+        _protocol_out.flush()
+
+
+if __name__ == '__main__':
+    main()
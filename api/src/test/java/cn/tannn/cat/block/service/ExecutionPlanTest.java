@@ -0,0 +1,190 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.Workflow;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 执行计划编译：节点与连接校验、连接条件、拓扑序与重试策略
+ *
+ * @author tnnn
+ */
+class ExecutionPlanTest {
+
+    @Test
+    void compilesBindingsAndTopologicalOrder() {
+        ExecutionPlan plan = ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}, {"id": "b", "data": {}}, {"id": "c", "data": {}}],
+                 "edges": [
+                   {"source": "b", "target": "c", "sourceHandle": "output-y", "targetHandle": "input-z"},
+                   {"source": "a", "target": "b", "sourceHandle": "output-x", "targetHandle": "input-y",
+                    "data": {"fieldPath": "items[0].name"}}
+                 ]}
+                """));
+
+        assertEquals(3, plan.getNodeCount());
+        assertFalse(plan.hasCycle());
+        assertArrayEquals(new int[]{0, 1, 2}, plan.getTopologicalOrder());
+        assertArrayEquals(new int[]{0, 1, 1}, plan.getInDegree());
+
+        ExecutionPlan.Binding binding = plan.getIncoming(plan.indexOf("b"))[0];
+        assertEquals(plan.indexOf("a"), binding.source());
+        assertEquals("x", binding.outputKey());
+        assertEquals("y", binding.inputKey());
+        assertEquals("items[0].name", binding.fieldPath());
+        assertNull(binding.condition());
+    }
+
+    @Test
+    void rejectsEdgeToMissingNode() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}],
+                 "edges": [{"source": "a", "target": "ghost"}]}
+                """)));
+
+        assertEquals("连接 1 引用了不存在的节点: a -> ghost", e.getMessage());
+    }
+
+    @Test
+    void rejectsDuplicateNodeId() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}, {"id": "a", "data": {}}]}
+                """)));
+
+        assertTrue(e.getMessage().startsWith("流程中存在重复的节点ID"));
+    }
+
+    @Test
+    void rejectsEmptyWorkflow() {
+        assertThrows(RuntimeException.class, () -> ExecutionPlan.compile(new Workflow()));
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> ExecutionPlan.compile(workflow("{\"nodes\": []}")));
+        assertEquals("流程中没有节点", e.getMessage());
+    }
+
+    @Test
+    void reportsCycle() {
+        ExecutionPlan plan = ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}, {"id": "b", "data": {}}],
+                 "edges": [{"source": "a", "target": "b"}, {"source": "b", "target": "a"}]}
+                """));
+
+        assertTrue(plan.hasCycle());
+        assertNull(plan.getTopologicalOrder());
+    }
+
+    @Test
+    void compilesEdgeCondition() {
+        ExecutionPlan plan = ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}, {"id": "b", "data": {}}],
+                 "edges": [{"source": "a", "target": "b", "sourceHandle": "output-status", "targetHandle": "input-s",
+                            "data": {"condition": {"operator": "eq", "value": "ok"}}}]}
+                """));
+
+        ExecutionPlan.Condition condition = plan.getIncoming(1)[0].condition();
+        assertEquals("eq", condition.operator());
+        assertTrue(condition.test("ok"));
+        assertFalse(condition.test("failed"));
+    }
+
+    @Test
+    void rejectsInvalidConditionOperator() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> ExecutionPlan.compile(workflow("""
+                {"nodes": [{"id": "a", "data": {}}, {"id": "b", "data": {}}],
+                 "edges": [{"source": "a", "target": "b", "data": {"condition": {"operator": "like"}}}]}
+                """)));
+
+        assertEquals("连接 1 的条件运算符无效: like", e.getMessage());
+    }
+
+    @Test
+    void ignoresBlankConditionOperator() {
+        assertNull(ExecutionPlan.Condition.compile(0, null));
+        assertNull(ExecutionPlan.Condition.compile(0, JSONObject.of("operator", " ")));
+    }
+
+    @Test
+    void evaluatesConditionOperators() {
+        assertTrue(condition("eq", 1).test(1.0));
+        assertTrue(condition("eq", "2").test(2));
+        assertFalse(condition("eq", null).test("x"));
+        assertTrue(condition("eq", null).test(null));
+        assertTrue(condition("ne", "a").test("b"));
+
+        assertTrue(condition("gt", 10).test(10.5));
+        assertFalse(condition("gt", 10).test(10));
+        assertTrue(condition("gte", 10).test("10"));
+        assertTrue(condition("lt", 0).test(-1));
+        assertTrue(condition("lte", 0).test(0));
+        assertFalse(condition("gt", 1).test("abc"));
+        assertFalse(condition("gt", 0).test(true));
+
+        assertTrue(condition("in", List.of("a", 2)).test(2.0));
+        assertFalse(condition("in", List.of("a", "b")).test("c"));
+        assertFalse(condition("in", "a").test("a"));
+
+        assertTrue(condition("contains", 3).test(List.of(1, 2, 3)));
+        assertTrue(condition("contains", "world").test("hello world"));
+        assertFalse(condition("contains", "x").test(null));
+
+        assertTrue(condition("truthy", null).test("x"));
+        assertFalse(condition("truthy", null).test(0));
+        assertFalse(condition("truthy", null).test(""));
+        assertFalse(condition("truthy", null).test(List.of()));
+        assertTrue(condition("falsy", null).test(null));
+        assertTrue(condition("falsy", null).test(Map.of()));
+        assertFalse(condition("falsy", null).test(0.1));
+    }
+
+    @Test
+    void compilesRetryFromNodeOrBlockSnapshot() {
+        ExecutionPlan plan = ExecutionPlan.compile(workflow("""
+                {"nodes": [
+                   {"id": "a", "data": {"retry": {"maxAttempts": 3, "backoffMillis": 100, "multiplier": 3,
+                                                  "maxBackoffMillis": 500, "retryOn": ["SYNTAX_ERROR"]}}},
+                   {"id": "b", "data": {"blockSnapshot": {"retry": {"maxAttempts": 50}}}},
+                   {"id": "c", "data": {"retry": {"maxAttempts": 1}}},
+                   {"id": "d", "data": {}}
+                 ]}
+                """));
+
+        ExecutionPlan.Retry node = plan.getRetry(0);
+        assertEquals(3, node.maxAttempts());
+        assertEquals(Set.of(PythonScriptExecutor.ErrorType.SYNTAX_ERROR), node.retryOn());
+        assertEquals(100, node.delayMillis(1));
+        assertEquals(300, node.delayMillis(2));
+        assertEquals(500, node.delayMillis(3));
+        assertTrue(node.shouldRetry(2, PythonScriptExecutor.ErrorType.SYNTAX_ERROR));
+        assertFalse(node.shouldRetry(3, PythonScriptExecutor.ErrorType.SYNTAX_ERROR));
+        assertFalse(node.shouldRetry(1, PythonScriptExecutor.ErrorType.TIMEOUT));
+
+        ExecutionPlan.Retry snapshot = plan.getRetry(1);
+        assertEquals(10, snapshot.maxAttempts());
+        assertEquals(1000, snapshot.delayMillis(1));
+        assertEquals(2000, snapshot.delayMillis(2));
+        assertEquals(60_000, snapshot.delayMillis(10));
+        assertTrue(snapshot.shouldRetry(1, PythonScriptExecutor.ErrorType.TIMEOUT));
+        assertFalse(snapshot.shouldRetry(1, PythonScriptExecutor.ErrorType.CANCELLED));
+
+        assertNull(plan.getRetry(2));
+        assertNull(plan.getRetry(3));
+    }
+
+    private static ExecutionPlan.Condition condition(String operator, Object value) {
+        return new ExecutionPlan.Condition(operator, value);
+    }
+
+    private static Workflow workflow(String flowDefinition) {
+        Workflow workflow = new Workflow();
+        workflow.setId(1);
+        workflow.setFlowDefinition(JSON.parseObject(flowDefinition));
+        return workflow;
+    }
+}
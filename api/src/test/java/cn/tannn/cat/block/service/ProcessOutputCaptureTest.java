@@ -0,0 +1,184 @@
+package cn.tannn.cat.block.service;
+
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 进程输出捕获：开头/结尾截断、结果帧分离与转写、按字节到达的标记识别
+ *
+ * @author tnnn
+ */
+class ProcessOutputCaptureTest {
+
+    private static final String RESULT = PythonWorkerPool.RESULT_MARKER;
+    private static final String USAGE = "@@BLOCKFLOW_USAGE@@";
+
+    @Test
+    void keepsHeadAndTailOfLongOutput() {
+        ProcessOutputCapture capture = new ProcessOutputCapture(8, 8, 1024, -1, null, RESULT);
+
+        capture.drain(stream("0123456789".repeat(5)), "stdout");
+
+        assertEquals(50, capture.consoleBytes());
+        assertEquals("01234567\n... 省略 34 字节 ...\n23456789", capture.text());
+        assertFalse(capture.hasResult());
+    }
+
+    @Test
+    void keepsShortOutputIntact() {
+        ProcessOutputCapture capture = new ProcessOutputCapture(8, 8, 1024, -1, null, RESULT);
+
+        capture.drain(stream("line1\nline2\n"), "stdout");
+
+        assertEquals("line1\nline2\n", capture.text());
+    }
+
+    @Test
+    void separatesResultFrameFromConsoleOutput() throws IOException {
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, -1, null, RESULT)) {
+            capture.drain(stream("hello\n" + RESULT + "{\"a\":1,\"b\":\"x\"}\nbye\n"), "stdout");
+
+            assertEquals("hello\nbye\n", capture.text());
+            assertTrue(capture.hasResult());
+            assertEquals(15, capture.resultBytes());
+            JSONObject result = capture.parseResult();
+            assertEquals(1, result.getIntValue("a"));
+            assertEquals("x", result.getString("b"));
+        }
+    }
+
+    @Test
+    void recognizesMarkerSplitAcrossReads() throws IOException {
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, -1, null, RESULT, USAGE)) {
+            capture.drain(oneByteAtATime("start\n" + RESULT + "{\"a\":1}\n" + USAGE + "{\"cpu\":2}\nend"), "stdout");
+
+            assertEquals("start\nend", capture.text());
+            assertEquals(1, capture.parseResult().getIntValue("a"));
+            assertEquals("{\"cpu\":2}", capture.frame(USAGE));
+        }
+    }
+
+    @Test
+    void treatsLinesThatOnlyResembleMarkerAsConsole() throws IOException {
+        String almost = RESULT.substring(0, RESULT.length() - 1);
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, -1, null, RESULT)) {
+            capture.drain(oneByteAtATime(almost + "\n" + almost + "X\nx" + RESULT + "\n@@"), "stdout");
+
+            assertEquals(almost + "\n" + almost + "X\nx" + RESULT + "\n@@", capture.text());
+            assertFalse(capture.hasResult());
+            assertNull(capture.parseResult());
+        }
+    }
+
+    @Test
+    void lastResultFrameWins() throws IOException {
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, -1, null, RESULT)) {
+            capture.drain(stream(RESULT + "{\"v\":1}\n" + RESULT + "{\"v\":2}\n"), "stdout");
+
+            assertEquals(2, capture.parseResult().getIntValue("v"));
+            assertEquals("", capture.text());
+        }
+    }
+
+    @Test
+    void spillsLargeResultToTempFile() throws IOException {
+        String payload = "x".repeat(10_000);
+        long before = tempResultFiles();
+        ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 64, -1, null, RESULT);
+        try {
+            capture.drain(stream("log\n" + RESULT + "{\"data\":\"" + payload + "\"}\n"), "stdout");
+
+            assertEquals(before + 1, tempResultFiles());
+            assertEquals(payload, capture.parseResult().getString("data"));
+            assertEquals("log\n", capture.text());
+
+            String truncated = capture.resultText(16);
+            assertEquals("{\"data\":\"xxxxxxx... (共 " + capture.resultBytes() + " 字节)", truncated);
+        } finally {
+            capture.close();
+        }
+        assertEquals(before, tempResultFiles());
+        assertFalse(capture.hasResult());
+    }
+
+    @Test
+    void reportsInvalidResultJson() {
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, -1, null, RESULT)) {
+            capture.drain(stream(RESULT + "not json\n"), "stdout");
+
+            assertTrue(capture.hasResult());
+            assertThrows(JSONException.class, capture::parseResult);
+        }
+    }
+
+    @Test
+    void truncatesOtherFramesToHeadBytes() {
+        ProcessOutputCapture capture = new ProcessOutputCapture(4, 4, 1024, -1, null, RESULT, USAGE);
+
+        capture.drain(stream(USAGE + "0123456789\n"), "stderr");
+
+        assertEquals("0123", capture.frame(USAGE));
+        assertEquals(0, capture.consoleBytes());
+    }
+
+    @Test
+    void stopsReadingWhenMaxBytesExceeded() {
+        AtomicInteger exceeded = new AtomicInteger();
+        ProcessOutputCapture capture = new ProcessOutputCapture(1024, 1024, 1024, 10, exceeded::incrementAndGet, RESULT);
+
+        capture.drain(stream("0123456789".repeat(10)), "stdout");
+
+        assertTrue(capture.isExceeded());
+        assertEquals(1, exceeded.get());
+    }
+
+    @Test
+    void acceptsResultWrittenInChunks() throws IOException {
+        byte[] frame = (RESULT + "{\"a\":[1,2,3]}").getBytes(StandardCharsets.UTF_8);
+        try (ProcessOutputCapture capture = new ProcessOutputCapture(0, 0, 4, -1, null, RESULT)) {
+            for (int offset = 0; offset < frame.length; offset += 5) {
+                capture.write(frame, offset, Math.min(5, frame.length - offset));
+            }
+            capture.complete();
+
+            assertEquals(3, capture.parseResult().getJSONArray("a").size());
+            assertEquals(13, capture.resultBytes());
+        }
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每次只返回一个字节，模拟标记被拆分到多次读取
+     */
+    private static InputStream oneByteAtATime(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(1, len));
+            }
+        };
+    }
+
+    private static long tempResultFiles() throws IOException {
+        Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("python-result-")).count();
+        }
+    }
+}
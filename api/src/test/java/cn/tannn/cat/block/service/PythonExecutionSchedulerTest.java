@@ -0,0 +1,236 @@
+package cn.tannn.cat.block.service;
+
+import cn.tannn.cat.block.entity.PythonEnvironment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Python脚本并发调度：赤字轮转、用户轮转、环境并发上限、排队超时与中断
+ *
+ * @author tnnn
+ */
+class PythonExecutionSchedulerTest {
+
+    @Test
+    void dispatchesByScheduleWeight() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 1, 0, 60);
+        PythonEnvironment envA = environment(1, "A", null, 2);
+        PythonEnvironment envB = environment(2, "B", null, 1);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> waiters = new ArrayList<>();
+
+        PythonExecutionScheduler.Permit occupant = scheduler.acquire(envA, null);
+        for (int i = 0; i < 4; i++) {
+            waiters.add(enqueue(scheduler, envA, "u", "A", granted));
+        }
+        for (int i = 0; i < 4; i++) {
+            waiters.add(enqueue(scheduler, envB, "u", "B", granted));
+        }
+        occupant.close();
+        for (Thread waiter : waiters) {
+            waiter.join(5_000);
+        }
+
+        // 每轮A放行2个、B放行1个，A排空后B独占
+        assertEquals(List.of("A", "A", "B", "A", "A", "B", "B", "B"), granted);
+        assertEquals(0, scheduler.stats().get("running"));
+        assertEquals(0, scheduler.stats().get("queued"));
+    }
+
+    @Test
+    void rotatesUsersWithinEnvironment() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 1, 0, 60);
+        PythonEnvironment env = environment(1, "A", null, null);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> waiters = new ArrayList<>();
+
+        PythonExecutionScheduler.Permit occupant = scheduler.acquire(env, null);
+        for (int i = 0; i < 3; i++) {
+            waiters.add(enqueue(scheduler, env, "alice", "alice", granted));
+        }
+        for (int i = 0; i < 2; i++) {
+            waiters.add(enqueue(scheduler, env, "bob", "bob", granted));
+        }
+        occupant.close();
+        for (Thread waiter : waiters) {
+            waiter.join(5_000);
+        }
+
+        assertEquals(List.of("alice", "bob", "alice", "bob", "alice"), granted);
+    }
+
+    @Test
+    void environmentCapDoesNotBlockOtherEnvironments() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 4, 0, 60);
+        PythonEnvironment envA = environment(1, "A", 1, null);
+        PythonEnvironment envB = environment(2, "B", null, null);
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+
+        PythonExecutionScheduler.Permit first = scheduler.acquire(envA, null);
+        Thread second = new Thread(() -> {
+            try (PythonExecutionScheduler.Permit ignored = scheduler.acquire(envA, null)) {
+                granted.add("A");
+            } catch (Exception e) {
+                granted.add(e.toString());
+            }
+        });
+        second.start();
+        waitUntil(() -> queued(scheduler) == 1);
+
+        // A已达到并发上限，B仍可直接获得名额
+        try (PythonExecutionScheduler.Permit other = scheduler.acquire(envB, null)) {
+            assertEquals(2, scheduler.stats().get("running"));
+            assertEquals(1, queued(scheduler));
+            assertTrue(granted.isEmpty());
+        }
+
+        first.close();
+        second.join(5_000);
+        assertEquals(List.of("A"), granted);
+
+        PythonExecutionScheduler.EnvStats statsA = envStats(scheduler, 1);
+        assertEquals(1, statsA.maxConcurrency());
+        assertEquals(2, statsA.acquired());
+        assertEquals(0, statsA.running());
+    }
+
+    @Test
+    void defaultEnvConcurrencyAppliesWhenNotConfigured() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 4, 1, 1);
+        PythonEnvironment env = environment(1, "A", null, null);
+
+        try (PythonExecutionScheduler.Permit ignored = scheduler.acquire(env, null)) {
+            assertThrows(TimeoutException.class, () -> scheduler.acquire(env, null));
+        }
+        assertEquals(1, envStats(scheduler, 1).maxConcurrency());
+    }
+
+    @Test
+    void timesOutWhileQueued() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 1, 0, 1);
+        PythonEnvironment env = environment(1, "A", null, null);
+
+        try (PythonExecutionScheduler.Permit ignored = scheduler.acquire(env, "alice")) {
+            long start = System.nanoTime();
+            TimeoutException e = assertThrows(TimeoutException.class, () -> scheduler.acquire(env, "bob"));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(e.getMessage().contains("等待执行名额超时"));
+            assertTrue(elapsedMillis >= 900, "应排队约1秒，实际 " + elapsedMillis + "ms");
+        }
+
+        PythonExecutionScheduler.EnvStats stats = envStats(scheduler, 1);
+        assertEquals(1, stats.abandoned());
+        assertEquals(0, stats.queued());
+        assertEquals(0, queued(scheduler));
+        assertEquals(0, scheduler.stats().get("running"));
+    }
+
+    @Test
+    void interruptLeavesQueue() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(true, 1, 0, 60);
+        PythonEnvironment env = environment(1, "A", null, null);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        PythonExecutionScheduler.Permit occupant = scheduler.acquire(env, null);
+        Thread waiter = new Thread(() -> {
+            try {
+                scheduler.acquire(env, null).close();
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        waiter.start();
+        waitUntil(() -> queued(scheduler) == 1);
+        waiter.interrupt();
+        waiter.join(5_000);
+
+        assertInstanceOf(InterruptedException.class, failure.get());
+        assertEquals(0, queued(scheduler));
+        assertEquals(1, envStats(scheduler, 1).abandoned());
+
+        // 被中断的请求已移出队列，释放的名额不会分给它
+        occupant.close();
+        assertEquals(0, scheduler.stats().get("running"));
+        try (PythonExecutionScheduler.Permit permit = scheduler.acquire(env, null)) {
+            assertEquals(1, scheduler.stats().get("running"));
+        }
+    }
+
+    @Test
+    void disabledSchedulerDoesNotLimit() throws Exception {
+        PythonExecutionScheduler scheduler = new PythonExecutionScheduler(false, 1, 0, 1);
+        PythonEnvironment env = environment(1, "A", 1, null);
+
+        try (PythonExecutionScheduler.Permit first = scheduler.acquire(env, null);
+             PythonExecutionScheduler.Permit second = scheduler.acquire(env, null)) {
+            assertEquals(0, second.getWaitMillis());
+            assertEquals(0, scheduler.stats().get("running"));
+        }
+    }
+
+    /**
+     * 启动一个排队线程，获得名额后记录标签并立即释放；等到它进入队列后返回，保证入队顺序
+     */
+    private static Thread enqueue(PythonExecutionScheduler scheduler, PythonEnvironment env, String username,
+                                  String label, List<String> granted) {
+        int before = queued(scheduler);
+        Thread thread = new Thread(() -> {
+            try (PythonExecutionScheduler.Permit ignored = scheduler.acquire(env, username)) {
+                granted.add(label);
+            } catch (Exception e) {
+                granted.add(e.toString());
+            }
+        });
+        thread.start();
+        waitUntil(() -> queued(scheduler) == before + 1);
+        return thread;
+    }
+
+    private static PythonEnvironment environment(int id, String name, Integer maxConcurrency, Integer weight) {
+        PythonEnvironment environment = new PythonEnvironment();
+        environment.setId(id);
+        environment.setName(name);
+        environment.setMaxConcurrency(maxConcurrency);
+        environment.setScheduleWeight(weight);
+        return environment;
+    }
+
+    private static int queued(PythonExecutionScheduler scheduler) {
+        return (int) scheduler.stats().get("queued");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PythonExecutionScheduler.EnvStats envStats(PythonExecutionScheduler scheduler, int envId) {
+        List<PythonExecutionScheduler.EnvStats> environments =
+                (List<PythonExecutionScheduler.EnvStats>) scheduler.stats().get("environments");
+        return environments.stream()
+                .filter(stats -> stats.envId() == envId)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待条件超时");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("等待时被中断");
+            }
+        }
+    }
+}
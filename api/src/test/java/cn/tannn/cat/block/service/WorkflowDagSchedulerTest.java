@@ -0,0 +1,335 @@
+package cn.tannn.cat.block.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流程DAG调度：依赖顺序、循环依赖、失败重试与取消
+ *
+ * @author tnnn
+ */
+class WorkflowDagSchedulerTest {
+
+    private WorkflowDagScheduler scheduler;
+    private ExecutionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new WorkflowDagScheduler(4, 4, 4);
+        registry = new ExecutionRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+        registry.shutdown();
+    }
+
+    @Test
+    void runsNodesAfterTheirDependencies() throws Exception {
+        // 0 -> 1, 0 -> 2, 1 -> 3, 2 -> 3
+        int[][] successors = {{1, 2}, {3}, {3}, {}};
+        int[] inDegree = {0, 1, 1, 2};
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        scheduler.run(successors, inDegree, order::add, null, null);
+
+        assertEquals(4, order.size());
+        assertEquals(0, order.get(0));
+        assertEquals(3, order.get(3));
+        assertArrayEquals(new int[]{0, 1, 1, 2}, inDegree, "入度数组不应被修改");
+    }
+
+    @Test
+    void rejectsCycle() {
+        // 0 -> 1 -> 2 -> 1：节点0可以执行，1和2互相等待
+        int[][] successors = {{1}, {2}, {1}};
+        int[] inDegree = {0, 2, 1};
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> scheduler.run(successors, inDegree, executed::add, null, null));
+
+        assertTrue(e.getMessage().contains("循环依赖"));
+        assertEquals(List.of(0), executed);
+    }
+
+    @Test
+    void rejectsCycleInline() {
+        int[][] successors = {{1}, {0}};
+        int[] inDegree = {1, 1};
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> scheduler.runInline(successors, inDegree, nodeIndex -> fail("不应执行任何节点"), null, null));
+
+        assertTrue(e.getMessage().contains("循环依赖"));
+    }
+
+    @Test
+    void retriesFailedNodeAfterBackoff() throws Exception {
+        int[][] successors = {{1}, {}};
+        int[] inDegree = {0, 1};
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger downstream = new AtomicInteger();
+        List<Integer> delaysAsked = Collections.synchronizedList(new ArrayList<>());
+
+        long start = System.nanoTime();
+        scheduler.run(successors, inDegree, nodeIndex -> {
+            if (nodeIndex == 0 && attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("暂时失败");
+            }
+            if (nodeIndex == 1) {
+                downstream.incrementAndGet();
+            }
+        }, null, (nodeIndex, failedAttempts, failure) -> {
+            delaysAsked.add(failedAttempts);
+            return 50L * failedAttempts;
+        });
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, attempts.get());
+        assertEquals(List.of(1, 2), delaysAsked);
+        assertEquals(1, downstream.get());
+        assertTrue(elapsedMillis >= 150, "两次退避共150ms，实际 " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void failsWhenRetryPolicyGivesUp() {
+        int[][] successors = {{1}, {}};
+        int[] inDegree = {0, 1};
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean downstreamRan = new AtomicBoolean();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> scheduler.run(successors, inDegree, nodeIndex -> {
+                    if (nodeIndex == 1) {
+                        downstreamRan.set(true);
+                        return;
+                    }
+                    throw new IllegalStateException("第" + attempts.incrementAndGet() + "次失败");
+                }, null, (nodeIndex, failedAttempts, failure) -> failedAttempts < 2 ? 0 : -1));
+
+        assertEquals("第2次失败", e.getMessage());
+        assertEquals(2, attempts.get());
+        assertFalse(downstreamRan.get());
+    }
+
+    @Test
+    void failureInterruptsRunningSiblings() {
+        // 0 和 1 并行运行，0 失败后不等待 1 结束
+        int[][] successors = {{}, {}};
+        int[] inDegree = {0, 0};
+        CountDownLatch siblingStarted = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        long start = System.nanoTime();
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> scheduler.run(successors, inDegree, nodeIndex -> {
+                    if (nodeIndex == 0) {
+                        siblingStarted.await(5, TimeUnit.SECONDS);
+                        throw new IllegalStateException("节点0失败");
+                    }
+                    siblingStarted.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException ex) {
+                        interrupted.set(true);
+                        throw ex;
+                    }
+                }, null, null));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("节点0失败", e.getMessage());
+        assertTrue(elapsedMillis < 5_000, "失败后应立即返回，实际 " + elapsedMillis + "ms");
+        waitUntil(interrupted::get);
+    }
+
+    @Test
+    void cancellationInterruptsRunningNodeAndSkipsDownstream() throws Exception {
+        int[][] successors = {{1}, {}};
+        int[] inDegree = {0, 1};
+        ExecutionRegistry.RunningExecution running = registry.register(1L, 0, null);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean downstreamRan = new AtomicBoolean();
+
+        Thread canceller = new Thread(() -> {
+            try {
+                if (started.await(5, TimeUnit.SECONDS)) {
+                    // 等节点任务登记到执行中
+                    Thread.sleep(100);
+                    registry.cancel(1L, "用户取消执行");
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        canceller.start();
+
+        CancellationException e = assertThrows(CancellationException.class,
+                () -> scheduler.run(successors, inDegree, nodeIndex -> {
+                    if (nodeIndex == 1) {
+                        downstreamRan.set(true);
+                        return;
+                    }
+                    started.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException ex) {
+                        interrupted.set(true);
+                        throw ex;
+                    }
+                }, running, null));
+        canceller.join();
+
+        assertEquals("用户取消执行", e.getMessage());
+        assertFalse(downstreamRan.get());
+        waitUntil(interrupted::get);
+    }
+
+    @Test
+    void deadlineCancelsExecution() {
+        int[][] successors = {{}};
+        int[] inDegree = {0};
+        ExecutionRegistry.RunningExecution running = registry.register(2L, 1, null);
+
+        long start = System.nanoTime();
+        CancellationException e = assertThrows(CancellationException.class,
+                () -> scheduler.run(successors, inDegree, nodeIndex -> Thread.sleep(10_000), running, null));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(running.isTimedOut());
+        assertTrue(e.getMessage().contains("超时"));
+        assertTrue(elapsedMillis < 5_000, "超时后应立即终止，实际 " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void cancellationDuringBackoffSkipsRetry() {
+        int[][] successors = {{}};
+        int[] inDegree = {0};
+        ExecutionRegistry.RunningExecution running = registry.register(3L, 0, null);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            registry.cancel(3L, "用户取消执行");
+        });
+        canceller.start();
+
+        long start = System.nanoTime();
+        assertThrows(CancellationException.class, () -> scheduler.run(successors, inDegree, nodeIndex -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("失败");
+        }, running, (nodeIndex, failedAttempts, failure) -> 60_000));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, attempts.get());
+        assertTrue(elapsedMillis < 5_000, "退避等待期间应响应取消，实际 " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void runInlineRetriesInCallerThread() throws Exception {
+        int[][] successors = {{1}, {}};
+        int[] inDegree = {0, 1};
+        Thread caller = Thread.currentThread();
+        AtomicInteger attempts = new AtomicInteger();
+        List<Integer> order = new ArrayList<>();
+
+        scheduler.runInline(successors, inDegree, nodeIndex -> {
+            assertSame(caller, Thread.currentThread());
+            if (nodeIndex == 0 && attempts.incrementAndGet() < 2) {
+                throw new IllegalStateException("暂时失败");
+            }
+            order.add(nodeIndex);
+        }, null, (nodeIndex, failedAttempts, failure) -> 10);
+
+        assertEquals(2, attempts.get());
+        assertEquals(List.of(0, 1), order);
+    }
+
+    @Test
+    void runInlineCancellationDuringBackoffSkipsRetry() {
+        int[][] successors = {{}};
+        int[] inDegree = {0};
+        ExecutionRegistry.RunningExecution running = registry.register(4L, 0, null);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            registry.cancel(4L, "用户取消执行");
+        });
+        canceller.start();
+
+        long start = System.nanoTime();
+        CancellationException e = assertThrows(CancellationException.class,
+                () -> scheduler.runInline(successors, inDegree, nodeIndex -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("失败");
+                }, running, (nodeIndex, failedAttempts, failure) -> 60_000));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("用户取消执行", e.getMessage());
+        assertEquals(1, attempts.get());
+        assertTrue(elapsedMillis < 5_000, "退避等待期间应响应取消，实际 " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void forEachFailsFastAndCancelsOtherElements() {
+        AtomicInteger interrupted = new AtomicInteger();
+        CountDownLatch othersStarted = new CountDownLatch(2);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> scheduler.forEach(3, 3, null, elementIndex -> {
+                    if (elementIndex == 0) {
+                        othersStarted.await(5, TimeUnit.SECONDS);
+                        throw new IllegalArgumentException("元素0失败");
+                    }
+                    othersStarted.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException ex) {
+                        interrupted.incrementAndGet();
+                        throw ex;
+                    }
+                }));
+
+        assertEquals("元素0失败", e.getMessage());
+        waitUntil(() -> interrupted.get() == 2);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待条件超时");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("等待时被中断");
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.tannn.cat.block.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 定时触发时间计算
+ *
+ * @author tnnn
+ */
+class WorkflowSchedulerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 15, 10, 20, 30, 500_000_000);
+
+    @Test
+    void cronFiresAtNextMatchingTime() {
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 25, 0),
+                WorkflowScheduler.nextFireTime("0 */5 * * * *", null, NOW));
+        assertEquals(LocalDateTime.of(2024, 3, 16, 2, 0, 0),
+                WorkflowScheduler.nextFireTime(" 0 0 2 * * ? ", null, NOW));
+    }
+
+    @Test
+    void cronNextIsStrictlyAfterBase() {
+        LocalDateTime onTheMinute = LocalDateTime.of(2024, 3, 15, 10, 25, 0, 100_000_000);
+
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 30, 0),
+                WorkflowScheduler.nextFireTime("0 */5 * * * *", null, onTheMinute));
+    }
+
+    @Test
+    void intervalIsAddedToTruncatedTime() {
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 21, 30),
+                WorkflowScheduler.nextFireTime(null, 60, NOW));
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 21, 30),
+                WorkflowScheduler.nextFireTime("  ", 60, NOW));
+    }
+
+    @Test
+    void cronTakesPrecedenceOverInterval() {
+        assertEquals(LocalDateTime.of(2024, 3, 15, 11, 0, 0),
+                WorkflowScheduler.nextFireTime("0 0 * * * *", 10, NOW));
+    }
+
+    @Test
+    void rejectsMissingOrInvalidSchedule() {
+        assertThrows(IllegalArgumentException.class, () -> WorkflowScheduler.nextFireTime(null, null, NOW));
+        assertThrows(IllegalArgumentException.class, () -> WorkflowScheduler.nextFireTime(null, 0, NOW));
+        assertThrows(IllegalArgumentException.class, () -> WorkflowScheduler.nextFireTime("not a cron", null, NOW));
+    }
+
+    @Test
+    void impossibleCronHasNoNextTime() {
+        assertNull(WorkflowScheduler.nextFireTime("0 0 0 30 2 ?", null, NOW));
+    }
+}
@@ -1,5 +1,5 @@
 import { http } from './request';
-import type { ApiResponse, ResultPageVO, Block, BlockPage, BlockCreateDTO, BlockUpdateDTO, BlockTestDTO } from '../types/api';
+import type { ApiResponse, ResultPageVO, Block, BlockPage, BlockCreateDTO, BlockUpdateDTO, BlockTestDTO, BlockBatchTestDTO } from '../types/api';
 
 export const blockApi = {
   // 创建块
@@ -45,6 +45,12 @@ export const blockApi = {
     return http.post(`/blocks/${id}/test`, data);
   },
 
+  // 批量测试块执行
+  // POST /blocks/{id}/test/batch
+  testBatch(id: number, data: BlockBatchTestDTO): Promise<ApiResponse<string>> {
+    return http.post(`/blocks/${id}/test/batch`, data);
+  },
+
   // 克隆块
   // POST /blocks/{id}/clone
   clone(id: number): Promise<ApiResponse<Block>> {
@@ -1,9 +1,12 @@
 import { http } from './request';
+import { authUtils } from '../utils/auth';
 import type {
   ApiResponse,
   ResultPageVO,
   ExecutionLog,
+  ExecutionLogChunk,
   ExecutionLogPage,
+  ExecutionNodeResult,
   WorkflowExecuteDTO
 } from '../types/api';
 
@@ -32,12 +35,43 @@ export const executionApi = {
     return http.get(`/executions/${id}/logs`);
   },
 
+  // 获取执行日志分片（增量读取）
+  // GET /executions/{id}/logs/chunks
+  getLogChunks(id: number, afterSeq = 0): Promise<ApiResponse<ExecutionLogChunk[]>> {
+    return http.get(`/executions/${id}/logs/chunks`, { params: { afterSeq } });
+  },
+
+  // 订阅执行事件（SSE），EventSource 不能设置请求头，token 通过查询参数传递
+  // GET /executions/{id}/stream?token=
+  stream(id: number): EventSource {
+    const token = authUtils.getToken() || '';
+    return new EventSource(`/api/executions/${id}/stream?token=${encodeURIComponent(token)}`);
+  },
+
   // 取消执行
   // POST /executions/{id}/cancel
   cancel(id: number): Promise<ApiResponse<ExecutionLog>> {
     return http.post(`/executions/${id}/cancel`);
   },
 
+  // 恢复执行（复用已成功节点的输出，只重新执行失败的节点及其下游节点）
+  // POST /executions/{id}/resume
+  resume(id: number): Promise<ApiResponse<ExecutionLog>> {
+    return http.post(`/executions/${id}/resume`);
+  },
+
+  // 获取节点执行结果
+  // GET /executions/{id}/nodes
+  getNodeResults(id: number): Promise<ApiResponse<ExecutionNodeResult[]>> {
+    return http.get(`/executions/${id}/nodes`);
+  },
+
+  // 获取子流程执行记录
+  // GET /executions/{id}/children
+  getChildren(id: number): Promise<ApiResponse<ExecutionLog[]>> {
+    return http.get(`/executions/${id}/children`);
+  },
+
   // 删除执行记录
   // DELETE /executions/{id}
   delete(id: number): Promise<ApiResponse<void>> {
@@ -6,7 +6,8 @@ import type {
   PythonEnvironmentPage,
   PythonEnvironmentCreateDTO,
   PythonEnvironmentUpdateDTO,
-  PythonRuntimeUploadResultDTO
+  PythonRuntimeUploadResultDTO,
+  PythonSchedulerStats
 } from '../types/api';
 
 export const pythonEnvApi = {
@@ -64,6 +65,12 @@ export const pythonEnvApi = {
     return http.get('/python-envs/default');
   },
 
+  // 获取脚本调度统计（各环境的正在执行数、排队深度和等待时间）
+  // GET /python-envs/scheduler/stats
+  getSchedulerStats(): Promise<ApiResponse<PythonSchedulerStats>> {
+    return http.get('/python-envs/scheduler/stats');
+  },
+
   // 设置默认Python环境
   // PUT /python-envs/{id}/set-default
   setAsDefault(id: number): Promise<ApiResponse<PythonEnvironment>> {
@@ -2,6 +2,27 @@ import React, { memo } from 'react';
 import { Handle, Position } from '@xyflow/react';
 import { Tooltip, Tag } from 'antd';
 import { PlayCircleOutlined } from '@ant-design/icons';
+import type { ResourceLimits } from '../types/api';
+
+/**
+ * 节点重试策略（指数退避）
+ */
+export interface NodeRetryConfig {
+  maxAttempts: number; // 最大尝试次数（含首次）
+  backoffMillis?: number; // 首次重试前等待时间(毫秒)，默认1000
+  multiplier?: number; // 退避倍数，默认2
+  maxBackoffMillis?: number; // 单次等待上限(毫秒)，默认60000
+  retryOn?: Array<'TIMEOUT' | 'RUNTIME_ERROR' | 'RESOURCE_LIMIT' | 'MODULE_NOT_FOUND' | 'SYNTAX_ERROR' | 'UNKNOWN'>; // 默认 TIMEOUT、RUNTIME_ERROR
+}
+
+/**
+ * map节点配置：对输入数组的每个元素执行同一个块，结果按原顺序收集
+ */
+export interface NodeMapConfig {
+  inputKey: string; // 拆分的输入参数名，每个元素替换该输入后执行一次
+  parallelism?: number; // 最大并行数，默认4
+  outputKey?: string; // 收集结果的输出参数名，默认 results
+}
 
 export interface BlockNodeData {
   blockId: number;
@@ -13,6 +34,10 @@ export interface BlockNodeData {
   outputs?: Record<string, any>;
   icon?: string;
   inputValues?: Record<string, any>; // 存储每个输入参数的配置值（用于未连接的输入）
+  retry?: NodeRetryConfig; // 节点重试策略（优先于块快照中的配置）
+  resourceLimits?: ResourceLimits; // 节点资源限制（优先于块快照中的配置，按字段覆盖Python环境的限制）
+  map?: NodeMapConfig; // 配置后作为map节点执行
+  subWorkflowId?: number; // 配置后作为子流程节点执行（blockName 为子流程名称）
   blockSnapshot?: {
     id?: number;
     name?: string;
@@ -22,22 +47,29 @@ export interface BlockNodeData {
     outputs?: Record<string, any>;
     definitionMode?: string;
     blocklyDefinition?: string;
+    cacheEnabled?: boolean;
+    cacheTtlSeconds?: number;
+    retry?: NodeRetryConfig;
+    resourceLimits?: ResourceLimits;
   };
   [key: string]: any; // 索引签名，允许ReactFlow兼容
 }
 
 const BlockNode: React.FC<any> = ({ data, selected }) => {
-  const { blockName, blockTypeCode, color = '#5C7CFA', description, icon, inputs = {}, outputs = {} } = data;
+  const { blockName, blockTypeCode, color = '#5C7CFA', description, icon, inputs = {}, outputs = {}, map, subWorkflowId } = data;
 
   // 将 inputs 和 outputs 转换为数组
   const inputList = Object.entries(inputs).map(([name, param]: [string, any]) => ({
     name,
     ...param
   }));
-  const outputList = Object.entries(outputs).map(([name, param]: [string, any]) => ({
-    name,
-    ...param
-  }));
+  // map节点只有一个输出：各元素输出组成的数组
+  const outputList = map
+    ? [{ name: map.outputKey || 'results', type: 'array', description: '各元素的输出（按输入顺序）' }]
+    : Object.entries(outputs).map(([name, param]: [string, any]) => ({
+        name,
+        ...param
+      }));
 
   // 类型颜色映射
   const typeColorMap: Record<string, string> = {
@@ -72,6 +104,16 @@ const BlockNode: React.FC<any> = ({ data, selected }) => {
           </div>
           <div style={{ fontSize: '12px', color: '#8c8c8c', marginTop: '2px' }}>
             {blockTypeCode}
+            {map && (
+              <Tooltip title={`对 ${map.inputKey} 的每个元素执行，结果收集到 ${map.outputKey || 'results'}`}>
+                <Tag color="purple" style={{ marginLeft: '6px', fontSize: '11px' }}>map</Tag>
+              </Tooltip>
+            )}
+            {subWorkflowId && (
+              <Tooltip title={`在当前执行中运行流程 #${subWorkflowId}`}>
+                <Tag color="cyan" style={{ marginLeft: '6px', fontSize: '11px' }}>子流程</Tag>
+              </Tooltip>
+            )}
           </div>
         </div>
       </div>
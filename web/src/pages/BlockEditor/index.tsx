@@ -356,6 +356,19 @@ outputs = {
           );
         }
 
+        // 共享输出函数（大数据只写一次文件，节点之间传递引用）
+        if (textBeforeCursor.match(/\bshared_\w*$/)) {
+          suggestions.push({
+            label: 'shared_output',
+            kind: monaco.languages.CompletionItemKind.Function,
+            insertText: 'shared_output(${1:value})',
+            insertTextRules: monaco.languages.CompletionItemInsertTextRule.InsertAsSnippet,
+            detail: '共享大数据输出',
+            documentation: '将数据写入共享存储并返回引用，下游节点通过内存映射读取；bytes/memoryview 按原始字节传递（如 numpy 缓冲区、Arrow IPC），下游收到只读 mmap',
+            range: range,
+          });
+        }
+
         // 5. 提供 inputs. 的智能提示
         if (textBeforeCursor.endsWith('inputs.')) {
           suggestions.push({
@@ -686,6 +699,8 @@ outputs = {
           pythonEnvId: finalPythonEnvId, // 使用检查后的环境ID
           tags: blockData.tags || [],
           isPublic: blockData.isPublic,
+          cacheEnabled: blockData.cacheEnabled ?? false,
+          cacheTtlSeconds: blockData.cacheTtlSeconds,
         });
 
         // 加载输入参数配置
@@ -1634,6 +1649,22 @@ outputs = {
               </Radio.Group>
             </Form.Item>
 
+            <Form.Item
+              label="结果缓存"
+              name="cacheEnabled"
+              initialValue={false}
+              tooltip="仅适用于相同输入必然得到相同输出的块（如解析、查表），相同输入再次执行时直接复用上次的输出"
+            >
+              <Radio.Group>
+                <Radio value={true}>开启</Radio>
+                <Radio value={false}>关闭</Radio>
+              </Radio.Group>
+            </Form.Item>
+
+            <Form.Item label="缓存时长(秒)" name="cacheTtlSeconds" tooltip="为空时使用全局默认值">
+              <InputNumber min={1} style={{ width: '100%' }} placeholder="默认" />
+            </Form.Item>
+
             <Divider />
 
             {/* 参数解析按钮 */}
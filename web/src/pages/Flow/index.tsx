@@ -75,6 +75,8 @@ const Flow: React.FC = () => {
   const [loadingLogs, setLoadingLogs] = useState(false);
   const [selectedLogId, setSelectedLogId] = useState<number | null>(null);
   const [logDetail, setLogDetail] = useState<string>('');
+  // 正在运行的执行的实时日志订阅
+  const logStreamRef = useRef<EventSource | null>(null);
 
   // 流程执行配置状态
   const [executeModalVisible, setExecuteModalVisible] = useState(false);
@@ -387,6 +389,8 @@ const Flow: React.FC = () => {
               outputs: block.outputs, // 包含完整的 outputs 定义
               definitionMode: block.definitionMode,
               blocklyDefinition: block.blocklyDefinition,
+              cacheEnabled: block.cacheEnabled,
+              cacheTtlSeconds: block.cacheTtlSeconds,
             },
           },
         };
@@ -430,6 +434,27 @@ const Flow: React.FC = () => {
     );
   }, [setEdges]);
 
+  // 更新边的执行条件（运算符为空时移除条件）
+  const updateEdgeCondition = useCallback((edgeId: string, condition: { operator?: string; value?: any }) => {
+    setEdges((eds) =>
+      eds.map((edge) => {
+        if (edge.id === edgeId) {
+          const merged = { ...((edge.data as any)?.condition || {}), ...condition };
+          const updatedEdge = {
+            ...edge,
+            data: {
+              ...(edge.data || {}),
+              condition: merged.operator ? merged : undefined,
+            },
+          };
+          setSelectedEdge(updatedEdge);
+          return updatedEdge;
+        }
+        return edge;
+      })
+    );
+  }, [setEdges]);
+
   // 点击画布空白处清除选择
   const onPaneClick = useCallback(() => {
     setSelectedNodeId(null);
@@ -1060,10 +1085,48 @@ const Flow: React.FC = () => {
     }
   };
 
+  // 关闭实时日志订阅
+  const closeLogStream = () => {
+    logStreamRef.current?.close();
+    logStreamRef.current = null;
+  };
+
+  // 订阅正在运行的执行：先拉取已有日志分片，再通过SSE增量追加
+  const openLogStream = async (logId: number) => {
+    const response = await executionApi.getLogChunks(logId);
+    const chunks = response.code === 200 && response.data ? response.data : [];
+    let lastSeq = chunks.length > 0 ? chunks[chunks.length - 1].seq : 0;
+    setLogDetail(chunks.map(chunk => chunk.content).join(''));
+
+    const eventSource = executionApi.stream(logId);
+    logStreamRef.current = eventSource;
+    eventSource.addEventListener('log', (e: MessageEvent) => {
+      const data = JSON.parse(e.data);
+      if (data.seq > lastSeq) {
+        lastSeq = data.seq;
+        setLogDetail(prev => prev + data.content);
+      }
+    });
+    eventSource.addEventListener('run-finished', () => {
+      closeLogStream();
+      loadExecutionLogs();
+    });
+  };
+
+  // 组件卸载时关闭订阅
+  useEffect(() => closeLogStream, []);
+
   // 查看日志详情
   const handleViewLogDetail = async (logId: number) => {
     try {
+      closeLogStream();
       setSelectedLogId(logId);
+      const status = executionLogs.find(log => log.id === logId)?.status;
+      const running = status === 'RUNNING' || status === 'QUEUED';
+      if (running) {
+        await openLogStream(logId);
+        return;
+      }
       const response = await executionApi.getLogs(logId);
       if (response.code === 200 && response.data) {
         setLogDetail(response.data);
@@ -1101,6 +1164,17 @@ const Flow: React.FC = () => {
     }
   };
 
+  // 恢复执行
+  const handleResumeExecution = async (logId: number) => {
+    try {
+      await executionApi.resume(logId);
+      message.success('已提交恢复执行');
+      loadExecutionLogs();
+    } catch (error: any) {
+      message.error(error.message || '恢复失败');
+    }
+  };
+
   // 打开执行日志抽屉
   const handleOpenExecutionLogs = () => {
     if (!currentWorkflow) {
@@ -1116,7 +1190,7 @@ const Flow: React.FC = () => {
     if (!execLogDrawerVisible) return;
 
     // 检查是否有正在运行的执行
-    const hasRunning = executionLogs.some(log => log.status === 'RUNNING');
+    const hasRunning = executionLogs.some(log => log.status === 'RUNNING' || log.status === 'QUEUED');
 
     if (hasRunning) {
       const interval = setInterval(() => {
@@ -1130,6 +1204,8 @@ const Flow: React.FC = () => {
   // 根据状态获取标签颜色
   const getStatusColor = (status: string) => {
     switch (status) {
+      case 'QUEUED':
+        return 'warning';
       case 'RUNNING':
         return 'processing';
       case 'SUCCESS':
@@ -1146,6 +1222,8 @@ const Flow: React.FC = () => {
   // 根据状态获取标签文本
   const getStatusText = (status: string) => {
     switch (status) {
+      case 'QUEUED':
+        return '排队中';
       case 'RUNNING':
         return '运行中';
       case 'SUCCESS':
@@ -1951,6 +2029,49 @@ const Flow: React.FC = () => {
                     allowClear
                   />
                 </Form.Item>
+                <Form.Item
+                  label="执行条件"
+                  extra="条件不满足时连接不生效；节点的入边全部不生效时跳过该节点及其仅经由它的下游"
+                >
+                  <Select
+                    placeholder="无条件（始终生效）"
+                    allowClear
+                    value={(selectedEdge.data as any)?.condition?.operator}
+                    onChange={(operator) => updateEdgeCondition(selectedEdge.id, { operator })}
+                    options={[
+                      { value: 'eq', label: '等于' },
+                      { value: 'ne', label: '不等于' },
+                      { value: 'gt', label: '大于' },
+                      { value: 'gte', label: '大于等于' },
+                      { value: 'lt', label: '小于' },
+                      { value: 'lte', label: '小于等于' },
+                      { value: 'in', label: '在列表中（JSON数组）' },
+                      { value: 'contains', label: '包含' },
+                      { value: 'truthy', label: '为真' },
+                      { value: 'falsy', label: '为假' },
+                    ]}
+                  />
+                  {(selectedEdge.data as any)?.condition?.operator
+                    && !['truthy', 'falsy'].includes((selectedEdge.data as any).condition.operator) && (
+                    <Input
+                      style={{ marginTop: 8 }}
+                      placeholder='比较值，例如: ok、10 或 ["a", "b"]'
+                      defaultValue={typeof (selectedEdge.data as any).condition.value === 'string'
+                        ? (selectedEdge.data as any).condition.value
+                        : JSON.stringify((selectedEdge.data as any).condition.value ?? '')}
+                      key={selectedEdge.id}
+                      onBlur={(e) => {
+                        let value: any = e.target.value;
+                        try {
+                          value = JSON.parse(value);
+                        } catch {
+                          // 非JSON按字符串处理
+                        }
+                        updateEdgeCondition(selectedEdge.id, { value });
+                      }}
+                    />
+                  )}
+                </Form.Item>
                 {/* 显示连接详情 */}
                 {selectedEdge.sourceHandle && selectedEdge.targetHandle && (
                   <Form.Item label="数据流向">
@@ -2288,6 +2409,7 @@ const Flow: React.FC = () => {
         width={800}
         open={execLogDrawerVisible}
         onClose={() => {
+          closeLogStream();
           setExecLogDrawerVisible(false);
           setSelectedLogId(null);
           setLogDetail('');
@@ -2344,7 +2466,28 @@ const Flow: React.FC = () => {
                         }
                       />
                       <div style={{ display: 'flex', gap: '4px' }}>
-                        {log.status === 'RUNNING' && (
+                        {(log.status === 'FAILED' || log.status === 'CANCELLED') && (
+                          <Popconfirm
+                            title="确认恢复"
+                            description="复用已成功节点的输出，只重新执行失败的节点及其下游节点"
+                            onConfirm={(e) => {
+                              e?.stopPropagation();
+                              handleResumeExecution(log.id);
+                            }}
+                            okText="确认"
+                            cancelText="取消"
+                          >
+                            <Button
+                              type="text"
+                              size="small"
+                              icon={<ReloadOutlined />}
+                              onClick={(e) => e.stopPropagation()}
+                            >
+                              恢复
+                            </Button>
+                          </Popconfirm>
+                        )}
+                        {(log.status === 'RUNNING' || log.status === 'QUEUED') && (
                           <Popconfirm
                             title="确认取消"
                             description="确定要取消此次执行吗?"
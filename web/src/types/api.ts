@@ -193,6 +193,8 @@ export interface Block {
   outputs?: Record<string, any>; // JSONObject
   tags?: string[]; // 标签列表
   isPublic: boolean;
+  cacheEnabled?: boolean; // 是否缓存执行结果
+  cacheTtlSeconds?: number; // 结果缓存时长(秒)
   authorUsername?: string; // 作者用户名
   version?: string;
   createTime: string;
@@ -214,6 +216,8 @@ export interface BlockCreateDTO {
   outputs?: Record<string, any>;
   tags?: string[];
   isPublic?: boolean;
+  cacheEnabled?: boolean;
+  cacheTtlSeconds?: number;
   authorUsername?: string;
   version?: string;
 }
@@ -234,6 +238,8 @@ export interface BlockUpdateDTO {
   outputs?: Record<string, any>;
   tags?: string[];
   isPublic?: boolean;
+  cacheEnabled?: boolean;
+  cacheTtlSeconds?: number;
   version?: string;
   // 注意：更新时不允许修改 authorUsername
 }
@@ -255,6 +261,13 @@ export interface BlockTestDTO {
   timeoutSeconds?: number; // 超时时间（秒）
 }
 
+export interface BlockBatchTestDTO {
+  cases: Record<string, any>[]; // 每个元素为一组输入参数（最多1000个）
+  tempScript?: string; // 临时脚本
+  timeoutSeconds?: number; // 单个用例的超时时间（秒）
+  parallelism?: number; // 并行度，默认为CPU核数
+}
+
 // ===================
 // 上下文变量相关（ContextVariable Entity）
 // ===================
@@ -307,6 +320,18 @@ export interface ContextVariableUpdateDTO {
 // Python环境相关（PythonEnvironment Entity）
 // ===================
 
+/**
+ * 脚本资源限制（环境上为默认值，节点/块上按字段覆盖）
+ */
+export interface ResourceLimits {
+  memoryMb?: number; // 内存上限(MB)
+  cpuSeconds?: number; // CPU时间上限(秒)
+  cpuQuota?: number; // CPU配额(核数)，仅cgroup下生效
+  maxProcesses?: number; // 最大进程/线程数，仅cgroup下生效
+  maxOpenFiles?: number; // 最大打开文件数
+  maxOutputBytes?: number; // 标准输出最大字节数
+}
+
 export interface PythonEnvironment {
   id: number;
   name: string;
@@ -318,10 +343,36 @@ export interface PythonEnvironment {
   envRootPath?: string;
   sitePackagesPath?: string;
   pipVersion?: string; // pip版本号
+  resourceLimits?: ResourceLimits;
+  maxConcurrency?: number; // 最大并发执行数
+  scheduleWeight?: number; // 调度权重
   createTime?: string;
   updateTime?: string;
 }
 
+// Python脚本调度统计（单个环境）
+export interface PythonEnvSchedulerStats {
+  envId: number;
+  envName: string;
+  weight: number;
+  maxConcurrency: number; // 0表示只受全局上限约束
+  running: number;
+  queued: number; // 队列深度
+  acquired: number;
+  abandoned: number; // 排队超时/取消数
+  avgWaitMillis: number;
+  maxWaitMillis: number;
+}
+
+// Python脚本调度统计
+export interface PythonSchedulerStats {
+  enabled: boolean;
+  maxConcurrency: number;
+  running: number;
+  queued: number;
+  environments: PythonEnvSchedulerStats[];
+}
+
 // Python环境分页查询参数
 export interface PythonEnvironmentPage {
   name?: string;
@@ -337,6 +388,9 @@ export interface PythonEnvironmentCreateDTO {
   packages?: any;
   isDefault?: boolean;
   pythonExecutable?: string;
+  resourceLimits?: ResourceLimits;
+  maxConcurrency?: number;
+  scheduleWeight?: number;
 }
 
 // Python环境更新DTO
@@ -348,6 +402,9 @@ export interface PythonEnvironmentUpdateDTO {
   packages?: any;
   isDefault?: boolean;
   pythonExecutable?: string;
+  resourceLimits?: ResourceLimits; // 传空对象清除限制
+  maxConcurrency?: number; // 传0表示不单独限制
+  scheduleWeight?: number;
 }
 
 // Python运行时上传结果DTO
@@ -379,10 +436,21 @@ export interface Workflow {
   version: string;
   isActive: boolean;
   isPublic: boolean; // 是否公开
+  scheduleEnabled?: boolean; // 是否启用定时触发
+  scheduleCron?: string; // 定时触发Cron表达式(秒 分 时 日 月 周)
+  scheduleIntervalSeconds?: number; // 定时触发间隔(秒)，未配置Cron表达式时生效
+  scheduleMisfirePolicy?: MisfirePolicy; // 错过触发的处理策略
+  scheduleJitterSeconds?: number; // 触发抖动(秒)
+  nextFireTime?: string; // 下次计划触发时间
+  lastFireTime?: string; // 上次触发时间
+  webhookKey?: string; // Webhook触发密钥（POST /hooks/{webhookKey}）
   createTime: string;
   updateTime: string;
 }
 
+// 定时触发错过策略：FIRE_ONCE 补触发一次，SKIP 跳过
+export type MisfirePolicy = 'FIRE_ONCE' | 'SKIP';
+
 // 流程分页查询参数
 export interface WorkflowPage {
   name?: string;
@@ -405,6 +473,11 @@ export interface WorkflowCreateDTO {
   version?: string;
   isActive?: boolean;
   isPublic?: boolean; // 是否公开
+  scheduleEnabled?: boolean;
+  scheduleCron?: string;
+  scheduleIntervalSeconds?: number;
+  scheduleMisfirePolicy?: MisfirePolicy;
+  scheduleJitterSeconds?: number;
 }
 
 // 流程更新DTO
@@ -419,6 +492,11 @@ export interface WorkflowUpdateDTO {
   version?: string;
   isActive?: boolean;
   isPublic?: boolean; // 是否公开
+  scheduleEnabled?: boolean;
+  scheduleCron?: string;
+  scheduleIntervalSeconds?: number;
+  scheduleMisfirePolicy?: MisfirePolicy;
+  scheduleJitterSeconds?: number;
 }
 
 // 流程执行DTO
@@ -472,21 +550,46 @@ export interface ExecutionLog {
   workflowId: number;
   workflowName: string;
   executorUsername?: string; // 执行者登录名
-  status: 'RUNNING' | 'SUCCESS' | 'FAILED' | 'CANCELLED'; // ExecutionStatus 枚举
-  triggerType: 'MANUAL' | 'SCHEDULE' | 'WEBHOOK' | 'API'; // TriggerType 枚举
+  status: 'QUEUED' | 'RUNNING' | 'SUCCESS' | 'FAILED' | 'CANCELLED'; // ExecutionStatus 枚举
+  triggerType: 'MANUAL' | 'SCHEDULE' | 'WEBHOOK' | 'API' | 'SUBWORKFLOW'; // TriggerType 枚举
   logs?: string;
   errorMessage?: string;
   inputParams?: Record<string, any>; // JSONObject
   outputResult?: Record<string, any>; // JSONObject
+  queuedTime?: string; // 入队时间
   startTime: string;
   endTime?: string;
   duration?: number; // 执行时长（秒）
+  parentExecutionId?: number; // 父执行记录ID（子流程执行时有值）
+  parentNodeId?: string; // 触发子流程的父流程节点ID
+}
+
+// 执行日志分片（ExecutionLogChunk Entity）
+export interface ExecutionLogChunk {
+  id: number;
+  executionId: number;
+  seq: number; // 分片序号，从1开始递增
+  content: string;
+  createTime: string;
+}
+
+// 节点执行结果（ExecutionNodeResult Entity）
+export interface ExecutionNodeResult {
+  id: number;
+  executionId: number;
+  nodeId: string;
+  blockName?: string;
+  status: 'SUCCESS' | 'FAILED' | 'SKIPPED'; // SKIPPED: 入边条件均不满足，未执行
+  output?: Record<string, any>;
+  errorMessage?: string;
+  duration?: number; // 执行耗时(毫秒)
+  finishTime: string;
 }
 
 // 执行记录分页查询参数
 export interface ExecutionLogPage {
   workflowId?: number;
-  status?: 'RUNNING' | 'SUCCESS' | 'FAILED' | 'CANCELLED';
-  triggerType?: 'MANUAL' | 'SCHEDULE' | 'WEBHOOK' | 'API';
+  status?: 'QUEUED' | 'RUNNING' | 'SUCCESS' | 'FAILED' | 'CANCELLED';
+  triggerType?: 'MANUAL' | 'SCHEDULE' | 'WEBHOOK' | 'API' | 'SUBWORKFLOW';
   page?: PagingSorteds;
 }